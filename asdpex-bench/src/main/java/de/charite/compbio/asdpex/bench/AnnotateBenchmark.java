@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.charite.compbio.asdpex.cmd.AnnotateVCFCommand;
+import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
+
+/**
+ * End-to-end benchmark of the <code>annotate</code> command on the {@link SyntheticDataset}, i.e. loading the ASDPs
+ * and regions, streaming the sample VCF file and writing the annotated VCF file.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotateBenchmark {
+
+    /** number of worker threads (-t) */
+    @Param({ "1", "4" })
+    public int threads;
+
+    private SyntheticDataset dataset;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        dataset = SyntheticDataset.create(Files.createTempDirectory("asdpex-bench").toFile());
+        output = new File(dataset.getDirectory(), "annotated.vcf.gz");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataset.delete();
+    }
+
+    @Benchmark
+    public File annotate() throws AltLociSelectorException {
+        new AnnotateVCFCommand(new String[] { "annotate", "-v", dataset.getSampleVcf().getPath(), "-a",
+                dataset.getAltLociVcf().getPath(), "-o", output.getPath(), "-d", dataset.getDataDirectory().getPath(),
+                "-s", dataset.getSqlite().getPath(), "-t", Integer.toString(threads) }).run();
+        return output;
+    }
+
+}
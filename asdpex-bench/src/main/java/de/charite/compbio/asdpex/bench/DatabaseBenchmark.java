@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
+import de.charite.compbio.asdpex.data.AsdpWindow;
+import de.charite.compbio.asdpex.data.RegionInfo;
+import de.charite.compbio.asdpex.db.DatabaseManger;
+import de.charite.compbio.asdpex.db.RegionCatalog;
+
+/**
+ * Benchmarks the lookups of the {@link DatabaseManger} on the {@link SyntheticDataset} database and compares them with
+ * the in-memory {@link RegionCatalog}. The <code>pooled</code> lookups are run by several threads on the read-only
+ * connections of a second manager.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private SyntheticDataset dataset;
+    private DatabaseManger dbMan;
+    private DatabaseManger pooled;
+    private RegionCatalog catalog;
+    private String region;
+    private String altScaffoldAccession;
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        dataset = SyntheticDataset.create(Files.createTempDirectory("asdpex-bench").toFile());
+        // the database is in WAL mode like the ones of create-db
+        pooled = new DatabaseManger(dataset.getSqlite().getAbsolutePath());
+        pooled.openReadPool();
+        dbMan = new DatabaseManger(dataset.getSqlite().getAbsolutePath());
+        catalog = RegionCatalog.load(dbMan);
+        region = dataset.getRegions().get(1);
+        altScaffoldAccession = dataset.getAltScaffoldAccessions().get(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pooled.closeConnection();
+        dbMan.closeConnection();
+        dataset.delete();
+    }
+
+    @Benchmark
+    public ImmutableList<RegionInfo> getRegionNamesOnChromosome() throws SQLException {
+        return dbMan.getRegionNamesOnChromosome("1");
+    }
+
+    @Benchmark
+    public ImmutableList<AltScaffoldPlacementInfo> getAltScaffoldPlacementInfos() throws SQLException {
+        return dbMan.getAltScaffoldPlacementInfos(region);
+    }
+
+    @Benchmark
+    public String getFastaIdentifierAltLocus() throws SQLException {
+        return dbMan.getFastaIdentifierAltLocus(altScaffoldAccession);
+    }
+
+    @Benchmark
+    public String getGffIdentifier() throws SQLException {
+        return dbMan.getGffIdentifier(altScaffoldAccession);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String pooledGetFastaIdentifierAltLocus() throws SQLException {
+        return pooled.getFastaIdentifierAltLocus(altScaffoldAccession);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ImmutableList<AltScaffoldPlacementInfo> pooledGetAltScaffoldPlacementInfos() throws SQLException {
+        return pooled.getAltScaffoldPlacementInfos(region);
+    }
+
+    @Benchmark
+    public int getRegionMinimumAsdpPosition() throws SQLException {
+        return dbMan.getRegionMinimumAsdpPosition(region);
+    }
+
+    @Benchmark
+    public int getRegionMaximumAsdpPosition() throws SQLException {
+        return dbMan.getRegionMaximumAsdpPosition(region);
+    }
+
+    /**
+     * Snapshot of all regions and placements as done once by the <code>annotate</code> command.
+     */
+    @Benchmark
+    public RegionCatalog loadRegionCatalog() throws SQLException {
+        return RegionCatalog.load(dbMan);
+    }
+
+    @Benchmark
+    public ImmutableList<AsdpWindow> catalogGetAsdpWindows() {
+        return catalog.getAsdpWindows("chr1");
+    }
+
+    @Benchmark
+    public ImmutableList<AltScaffoldPlacementInfo> catalogGetAltScaffoldPlacementInfos() {
+        return catalog.getAltScaffoldPlacementInfos(region);
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.charite.compbio.asdpex.io.writer.FastaFileWriter;
+
+/**
+ * Benchmarks the writing of a single sequence fastA file as done for the alternate loci and regions by the
+ * <code>create-fa</code> command. Existing files are not overwritten by the {@link FastaFileWriter}, so the file is
+ * removed before each invocation.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastaFileWriterBenchmark {
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+    /** length of the sequence */
+    @Param({ "100000", "5000000" })
+    public int length;
+
+    private byte[] bases;
+    private File fasta;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(SyntheticDataset.SEED);
+        bases = new byte[length];
+        for (int i = 0; i < length; i++)
+            bases[i] = BASES[random.nextInt(4)];
+        fasta = File.createTempFile("asdpex-bench", ".fa");
+    }
+
+    @Setup(Level.Invocation)
+    public void removeFile() {
+        fasta.delete();
+    }
+
+    @TearDown
+    public void tearDown() {
+        fasta.delete();
+        new File(fasta.getPath() + ".fai").delete();
+        new File(fasta.getPath() + ".gzi").delete();
+    }
+
+    @Benchmark
+    public File createFastaFile() throws IOException {
+        FastaFileWriter.createFastaFile(fasta, "chr1_KI000001v1_alt", bases);
+        return fasta;
+    }
+
+    @Benchmark
+    public File createBgzfFastaFile() throws IOException {
+        FastaFileWriter.createFastaFile(fasta, "chr1_KI000001v1_alt", bases, false, FastaFileWriter.fastaLineLength,
+                true);
+        return fasta;
+    }
+
+}
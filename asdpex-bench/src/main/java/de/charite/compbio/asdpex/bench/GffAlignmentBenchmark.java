@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignment;
+import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentCache;
+import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentParser;
+import de.charite.compbio.asdpex.io.writer.SeedFileWriter;
+import de.charite.compbio.asdpex.util.AlignmentUtil;
+
+/**
+ * Benchmarks the parsing of the NCBI GFF alignment files, the loading from the {@link NCBIgffAlignmentCache} and the
+ * split up of the alignments at large InDels and the writing of the seeds. The synthetic alignment consists of
+ * {@link #elements} gap elements with about every hundredth InDel being large enough to be split at.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GffAlignmentBenchmark {
+
+    /** number of gap elements in the alignment */
+    @Param({ "1000", "100000" })
+    public int elements;
+
+    private File folder;
+    private File gffFile;
+    private NCBIgffAlignment alignment;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(SyntheticDataset.SEED);
+        StringBuilder gap = new StringBuilder();
+        int refLength = 0;
+        int altLength = 0;
+        for (int i = 0; i < elements; i++) {
+            if (i > 0)
+                gap.append(' ');
+            if (i % 2 == 0) {
+                int length = 50 + random.nextInt(1000);
+                gap.append('M').append(length);
+                refLength += length;
+                altLength += length;
+            } else {
+                int length = random.nextInt(100) == 0 ? 5000 + random.nextInt(20000) : 1 + random.nextInt(10);
+                if (random.nextBoolean()) {
+                    gap.append('I').append(length);
+                    altLength += length;
+                } else {
+                    gap.append('D').append(length);
+                    refLength += length;
+                }
+            }
+        }
+        folder = Files.createTempDirectory("asdpex-bench").toFile();
+        gffFile = new File(folder, "NT_000001.1_NC_000001.11.gff");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(gffFile));
+        try {
+            writer.write("##gff-version 3\n");
+            writer.write("NC_000001.11\tRefSeq\tmatch\t1000\t" + (999 + refLength) + "\t.\t+\t.\t"
+                    + "ID=aln0;Target=NT_000001.1 1 " + altLength + " +;Gap=" + gap + "\n");
+        } finally {
+            writer.close();
+        }
+        alignment = new NCBIgffAlignmentParser(gffFile).parse().get(0);
+        // build the cache file
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(folder);
+        cache.get(gffFile);
+        cache.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        gffFile.delete();
+        new File(folder, NCBIgffAlignmentCache.CACHE_FILE).delete();
+        folder.delete();
+    }
+
+    @Benchmark
+    public ImmutableList<NCBIgffAlignment> parse() {
+        return new NCBIgffAlignmentParser(gffFile).parse();
+    }
+
+    @Benchmark
+    public ImmutableList<NCBIgffAlignment> loadCached() {
+        return new NCBIgffAlignmentCache(folder).get(gffFile);
+    }
+
+    @Benchmark
+    public ArrayList<NCBIgffAlignment> splitupAlignmentAtLargeIndels() {
+        return AlignmentUtil.splitupAlignmentAtLargeIndels(alignment);
+    }
+
+    @Benchmark
+    public int writeSeeds() throws IOException {
+        StringWriter out = new StringWriter();
+        SeedFileWriter.writeText(out, SeedFileWriter.getSeeds(alignment.getPackedElements(), 1000, 1000));
+        return out.getBuffer().length();
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.charite.compbio.asdpex.data.PairwiseVariantContextIntersect;
+import de.charite.compbio.asdpex.util.VariantContextUtil;
+import de.charite.compbio.asdpex.util.VariantKeyArray;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Benchmarks the intersection of the sample variants in a region with the ASDPs of its alternate loci and the
+ * selection of the most probable alternate loci. The region holds {@link #LOCI} alternate loci with {@link #size}
+ * ASDPs each, the sample carries most ASDPs of the first one and the same number of random variants.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntersectBenchmark {
+    /** number of alternate loci in the region */
+    public static final int LOCI = 4;
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+    /** number of ASDPs per alternate locus */
+    @Param({ "1000", "10000" })
+    public int size;
+
+    private List<VariantContext> sample;
+    private ArrayList<List<VariantContext>> loci;
+    private VariantKeyArray sampleKeys;
+    private ArrayList<VariantKeyArray> lociKeys;
+    private ArrayList<PairwiseVariantContextIntersect> intersects;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(SyntheticDataset.SEED);
+        int length = 20 * size;
+        byte[] reference = new byte[length + 1];
+        for (int i = 1; i <= length; i++)
+            reference[i] = BASES[random.nextInt(4)];
+
+        loci = new ArrayList<>();
+        for (int l = 0; l < LOCI; l++) {
+            TreeMap<Integer, VariantContext> asdps = new TreeMap<>();
+            while (asdps.size() < size) {
+                int pos = 1 + random.nextInt(length);
+                asdps.put(pos, snv(pos, reference[pos], otherBase(random, reference[pos]), true));
+            }
+            loci.add(new ArrayList<>(asdps.values()));
+        }
+        TreeMap<Integer, VariantContext> variants = new TreeMap<>();
+        for (VariantContext asdp : loci.get(0))
+            if (random.nextDouble() < 0.9)
+                variants.put(asdp.getStart(), asdp);
+        for (int i = 0; i < size; i++) {
+            int pos = 1 + random.nextInt(length);
+            if (!variants.containsKey(pos))
+                variants.put(pos, snv(pos, reference[pos], otherBase(random, reference[pos]), random.nextBoolean()));
+        }
+        sample = new ArrayList<>(variants.values());
+
+        sampleKeys = VariantKeyArray.of(sample);
+        lociKeys = new ArrayList<>();
+        for (List<VariantContext> asdps : loci)
+            lociKeys.add(VariantKeyArray.of(asdps));
+        intersects = VariantContextUtil.intersectVariantContexts(sample, lociKeys);
+    }
+
+    private static VariantContext snv(int pos, byte ref, byte alt, boolean hom) {
+        Allele refAllele = Allele.create(new byte[] { ref }, true);
+        Allele altAllele = Allele.create(new byte[] { alt }, false);
+        return new VariantContextBuilder(null, "chr1", pos, pos, Arrays.asList(refAllele, altAllele))
+                .genotypes(new GenotypeBuilder("S1",
+                        hom ? Arrays.asList(altAllele, altAllele) : Arrays.asList(refAllele, altAllele)).make())
+                .make();
+    }
+
+    private static byte otherBase(Random random, byte base) {
+        byte other;
+        do {
+            other = BASES[random.nextInt(4)];
+        } while (other == base);
+        return other;
+    }
+
+    /**
+     * Intersection of two {@link VariantContext} lists including the extraction of the keys.
+     */
+    @Benchmark
+    public PairwiseVariantContextIntersect intersectVariantContext() {
+        return VariantContextUtil.intersectVariantContext(sample, loci.get(0));
+    }
+
+    /**
+     * The merge kernel on prebuilt {@link VariantKeyArray}s.
+     */
+    @Benchmark
+    public PairwiseVariantContextIntersect intersectVariantKeyArray() {
+        return VariantContextUtil.intersectVariantContext(sampleKeys, lociKeys.get(0));
+    }
+
+    /**
+     * Intersection of the sample with all alternate loci of the region.
+     */
+    @Benchmark
+    public ArrayList<PairwiseVariantContextIntersect> intersectVariantContexts() {
+        return VariantContextUtil.intersectVariantContexts(sample, lociKeys);
+    }
+
+    /**
+     * Selection of the most probable alternate loci. The list is sorted in place, so a copy is used.
+     */
+    @Benchmark
+    public ArrayList<Integer> getMostProbableAlternativeScaffolds() {
+        return VariantContextUtil.getMostProbableAlternativeScaffolds(new ArrayList<>(intersects));
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.charite.compbio.asdpex.reference.PackedSequence;
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * Benchmarks the mismatch scan and the reverse complement of an extended alternate locus and its region, as
+ * <code>byte[]</code> and as {@link PackedSequence}. The alternate locus differs from the region in every 100th base.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedSequenceBenchmark {
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+    /** length of the sequences */
+    @Param({ "100000", "5000000" })
+    public int length;
+
+    private byte[] region;
+    private byte[] altLocus;
+    private PackedSequence packedRegion;
+    private PackedSequence packedAltLocus;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(SyntheticDataset.SEED);
+        region = new byte[length];
+        for (int i = 0; i < length; i++)
+            region[i] = BASES[random.nextInt(4)];
+        altLocus = region.clone();
+        for (int i = 0; i < length; i += 100)
+            altLocus[i] = BASES[(random.nextInt(3) + 1 + "ACGT".indexOf(altLocus[i])) % 4];
+        packedRegion = PackedSequence.pack("region", region);
+        packedAltLocus = PackedSequence.pack("altLocus", altLocus);
+    }
+
+    @Benchmark
+    public int mismatchesBytes() {
+        int mismatches = 0;
+        for (int i = 0; i < length; i++)
+            if (region[i] != altLocus[i])
+                mismatches++;
+        return mismatches;
+    }
+
+    @Benchmark
+    public int mismatchesPacked() {
+        return packedRegion.countMismatches(packedAltLocus, 0, 0, length);
+    }
+
+    @Benchmark
+    public byte[] reverseComplementBytes() {
+        byte[] bases = altLocus.clone();
+        SequenceUtil.reverseComplement(bases);
+        return bases;
+    }
+
+    @Benchmark
+    public PackedSequence reverseComplementPacked() {
+        return packedAltLocus.reverseComplement();
+    }
+
+}
@@ -0,0 +1,462 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import de.charite.compbio.asdpex.data.AccessionInfo;
+import de.charite.compbio.asdpex.data.AccessionInfo.AccessionInfoBuilder;
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo.AltScaffoldPlacementInfoBuilder;
+import de.charite.compbio.asdpex.data.RegionInfo;
+import de.charite.compbio.asdpex.data.RegionInfo.RegionInfoBuilder;
+import de.charite.compbio.asdpex.db.DatabaseManger;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderLineType;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
+
+/**
+ * Small synthetic GRCh38-like dataset for the benchmarks. The dataset is generated deterministically from a fixed
+ * seed, so all benchmark runs work on the same data:
+ * <ul>
+ * <li><code>data/genome/GRCh38.fa</code> with <code>.fai</code> and <code>.dict</code> - random chromosomes and the
+ * alternate loci, which are copies of their regions
+ * <li><code>asdpex.sqlite</code> - accessions, regions, placements and ASDPs
+ * <li><code>alt.vcf.gz</code> - the ASDPs of all alternate loci (tabix indexed)
+ * <li><code>sample.vcf.gz</code> - a single sample carrying most ASDPs of one alternate locus per region plus random
+ * variants (tabix indexed)
+ * </ul>
+ * The dataset can also be written with {@link #main(String[])} to run the <code>annotate</code> command by hand.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class SyntheticDataset {
+    /** seed of the random generator */
+    public static final long SEED = 42;
+    /** number of chromosomes */
+    public static final int CHROMOSOMES = 4;
+    /** length of each chromosome */
+    public static final int CHROMOSOME_LENGTH = 1000000;
+    /** number of regions per chromosome */
+    public static final int REGIONS_PER_CHROMOSOME = 2;
+    /** length of each region */
+    public static final int REGION_LENGTH = 100000;
+    /** number of alternate loci placed in each region */
+    public static final int LOCI_PER_REGION = 3;
+    /** number of ASDPs per alternate locus */
+    public static final int ASDPS_PER_LOCUS = 1000;
+    /** number of random sample variants per chromosome */
+    public static final int NOISE_PER_CHROMOSOME = 20000;
+
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+    private static final int FASTA_LINE_LENGTH = 60;
+
+    private final File directory;
+    /** fasta identifiers of the alternate loci */
+    private final ImmutableList<String> altLoci;
+    /** RefSeq accessions of the alternate loci */
+    private final ImmutableList<String> altScaffoldAccessions;
+    /** names of the regions */
+    private final ImmutableList<String> regions;
+
+    private SyntheticDataset(File directory, ImmutableList<String> altLoci, ImmutableList<String> altScaffoldAccessions,
+            ImmutableList<String> regions) {
+        this.directory = directory;
+        this.altLoci = altLoci;
+        this.altScaffoldAccessions = altScaffoldAccessions;
+        this.regions = regions;
+    }
+
+    /**
+     * Generate the dataset.
+     *
+     * @param directory
+     *            target directory, existing files are overwritten
+     * @return the {@link SyntheticDataset}
+     * @throws IOException
+     * @throws SQLException
+     */
+    public static SyntheticDataset create(File directory) throws IOException, SQLException {
+        Random random = new Random(SEED);
+        new File(directory, "data/genome").mkdirs();
+
+        // chromosomes, regions and alternate loci
+        ArrayList<String> contigs = new ArrayList<>();
+        ArrayList<byte[]> sequences = new ArrayList<>();
+        ImmutableMap.Builder<String, AccessionInfo> accessions = ImmutableMap.builder();
+        ImmutableMap.Builder<String, RegionInfo> regionInfos = ImmutableMap.builder();
+        ImmutableMap.Builder<String, AltScaffoldPlacementInfo> placements = ImmutableMap.builder();
+        ImmutableList.Builder<String> altLoci = ImmutableList.builder();
+        ImmutableList.Builder<String> altAccessions = ImmutableList.builder();
+        ImmutableList.Builder<String> regionNames = ImmutableList.builder();
+        ArrayList<Locus> loci = new ArrayList<>();
+        for (int c = 1; c <= CHROMOSOMES; c++) {
+            byte[] seq = new byte[CHROMOSOME_LENGTH];
+            for (int i = 0; i < seq.length; i++)
+                seq[i] = BASES[random.nextInt(4)];
+            contigs.add("chr" + c);
+            sequences.add(seq);
+            String chrAccession = String.format("NC_%06d.11", c);
+            accessions.put(chrAccession, new AccessionInfoBuilder().chromosome(Integer.toString(c))
+                    .refseqAccessionVersion(chrAccession).refseqGi(c)
+                    .genbankAccessionVersion(String.format("CM%06d.2", c)).genbankGi(c).build());
+        }
+        int id = 0;
+        for (int c = 1; c <= CHROMOSOMES; c++) {
+            String chrAccession = String.format("NC_%06d.11", c);
+            int spacing = CHROMOSOME_LENGTH / REGIONS_PER_CHROMOSOME;
+            for (int r = 0; r < REGIONS_PER_CHROMOSOME; r++) {
+                String region = "REGION" + c + "_" + r;
+                int start = r * spacing + (spacing - REGION_LENGTH) / 2;
+                int stop = start + REGION_LENGTH - 1;
+                regionNames.add(region);
+                regionInfos.put(region, new RegionInfoBuilder().regionName(region).chromosome(chrAccession)
+                        .start(start).stop(stop).build());
+                for (int l = 0; l < LOCI_PER_REGION; l++) {
+                    id++;
+                    String refseq = String.format("NT_%06d.1", id);
+                    AccessionInfo acc = new AccessionInfoBuilder().chromosome(Integer.toString(c))
+                            .refseqAccessionVersion(refseq).refseqGi(100 + id)
+                            .genbankAccessionVersion(String.format("KI%06d.1", id)).genbankGi(100 + id).build();
+                    accessions.put(refseq, acc);
+                    placements.put(refseq,
+                            new AltScaffoldPlacementInfoBuilder().altAssemblyName("ALT_REF_LOCI_" + id)
+                                    .primAssemblyName("Primary Assembly").altScafName("HSCHR" + c + "_" + id)
+                                    .altScafAcc(refseq).parentType("CHROMOSOME").parentName(Integer.toString(c))
+                                    .parentAcc(chrAccession).region(region).strand(true).altScafStart(1)
+                                    .altScafStop(REGION_LENGTH).parentStart(start).parentStop(stop).altStartTail(0)
+                                    .altStopTail(0).build());
+                    altLoci.add(acc.createFastaIdentifier());
+                    altAccessions.add(refseq);
+                    loci.add(new Locus(acc.createFastaIdentifier(), region, c - 1, start, stop));
+                }
+            }
+        }
+        for (Locus locus : loci) {
+            contigs.add(locus.name);
+            sequences.add(Arrays.copyOfRange(sequences.get(locus.contig), locus.start - 1, locus.stop));
+        }
+        SAMSequenceDictionary dictionary = writeReference(new File(directory, "data/genome/GRCh38.fa"), contigs,
+                sequences);
+
+        // ASDPs
+        ArrayList<VariantContext> asdps = new ArrayList<>();
+        for (Locus locus : loci) {
+            byte[] seq = sequences.get(locus.contig);
+            Set<Integer> positions = new HashSet<>();
+            while (positions.size() < ASDPS_PER_LOCUS)
+                positions.add(locus.start + 100 + random.nextInt(locus.stop - locus.start - 200));
+            for (int pos : positions) {
+                byte ref = seq[pos - 1];
+                VariantContext vc = snv(contigs.get(locus.contig), pos, ref, otherBase(random, ref), "SAMPLE", true)
+                        .attribute("AL", locus.name).attribute("RE", locus.region).make();
+                locus.asdps.add(vc);
+                asdps.add(vc);
+            }
+        }
+        Collections.sort(asdps, new VariantContextComparator(dictionary));
+
+        // sample: every region carries most ASDPs of one alternate locus, alternating hom. and het.
+        TreeMap<Long, VariantContext> sample = new TreeMap<>();
+        for (int i = 0; i < loci.size(); i += LOCI_PER_REGION) {
+            Locus locus = loci.get(i + (i / LOCI_PER_REGION) % LOCI_PER_REGION);
+            boolean hom = (i / LOCI_PER_REGION) % 2 == 0;
+            for (VariantContext asdp : locus.asdps) {
+                if (random.nextDouble() < (hom ? 0.9 : 0.8))
+                    sample.put(key(locus.contig, asdp.getStart()),
+                            snv(asdp.getContig(), asdp.getStart(), asdp.getReference().getBases()[0],
+                                    asdp.getAlternateAllele(0).getBases()[0], "S1", hom).make());
+            }
+        }
+        for (int c = 0; c < CHROMOSOMES; c++) {
+            byte[] seq = sequences.get(c);
+            for (int i = 0; i < NOISE_PER_CHROMOSOME; i++) {
+                int pos = 1 + random.nextInt(seq.length);
+                if (sample.containsKey(key(c, pos)))
+                    continue;
+                byte ref = seq[pos - 1];
+                sample.put(key(c, pos), snv(contigs.get(c), pos, ref, otherBase(random, ref), "S1", random.nextBoolean())
+                        .make());
+            }
+        }
+
+        writeVcf(new File(directory, "alt.vcf.gz"), dictionary, "SAMPLE", asdps, true);
+        writeVcf(new File(directory, "sample.vcf.gz"), dictionary, "S1", sample.values(), false);
+
+        // database
+        File sqlite = new File(directory, "asdpex.sqlite");
+        sqlite.delete();
+        DatabaseManger dbMan = new DatabaseManger(sqlite.getAbsolutePath());
+        try {
+            dbMan.beginBulkLoad(true);
+            dbMan.createDatabase();
+            dbMan.addAsdpTable();
+            dbMan.uploadAccessionInfos(accessions.build());
+            dbMan.uploadRegionInfos(regionInfos.build());
+            dbMan.uploadScaffoldPlacement(placements.build());
+            dbMan.uploadAsdp(asdps);
+            dbMan.endBulkLoad();
+            dbMan.setWalJournalMode();
+        } finally {
+            dbMan.closeConnection();
+        }
+        return new SyntheticDataset(directory, altLoci.build(), altAccessions.build(), regionNames.build());
+    }
+
+    private static VariantContextBuilder snv(String contig, int pos, byte ref, byte alt, String sampleName,
+            boolean hom) {
+        Allele refAllele = Allele.create(new byte[] { ref }, true);
+        Allele altAllele = Allele.create(new byte[] { alt }, false);
+        GenotypeBuilder gb = new GenotypeBuilder(sampleName,
+                hom ? Arrays.asList(altAllele, altAllele) : Arrays.asList(refAllele, altAllele));
+        return new VariantContextBuilder(null, contig, pos, pos, Arrays.asList(refAllele, altAllele)).log10PError(-5)
+                .passFilters().genotypes(gb.make());
+    }
+
+    private static byte otherBase(Random random, byte base) {
+        byte other;
+        do {
+            other = BASES[random.nextInt(4)];
+        } while (other == base);
+        return other;
+    }
+
+    private static long key(int contig, int pos) {
+        return ((long) contig << 32) | pos;
+    }
+
+    /**
+     * Write the reference fastA file with its index and sequence dictionary.
+     */
+    private static SAMSequenceDictionary writeReference(File fasta, List<String> contigs, List<byte[]> sequences)
+            throws IOException {
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        FileOutputStream out = new FileOutputStream(fasta);
+        Writer fai = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(fasta.getPath() + ".fai"), StandardCharsets.US_ASCII));
+        Writer dict = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(fasta.getPath().replaceAll("\\.fa$", ".dict")), StandardCharsets.US_ASCII));
+        try {
+            dict.write("@HD\tVN:1.0\tSO:unsorted\n");
+            long offset = 0;
+            for (int i = 0; i < contigs.size(); i++) {
+                byte[] seq = sequences.get(i);
+                byte[] header = (">" + contigs.get(i) + "\n").getBytes(StandardCharsets.US_ASCII);
+                out.write(header);
+                offset += header.length;
+                fai.write(contigs.get(i) + "\t" + seq.length + "\t" + offset + "\t" + FASTA_LINE_LENGTH + "\t"
+                        + (FASTA_LINE_LENGTH + 1) + "\n");
+                dict.write("@SQ\tSN:" + contigs.get(i) + "\tLN:" + seq.length + "\n");
+                dictionary.addSequence(new SAMSequenceRecord(contigs.get(i), seq.length));
+                byte[] line = new byte[FASTA_LINE_LENGTH + 1];
+                for (int p = 0; p < seq.length; p += FASTA_LINE_LENGTH) {
+                    int len = Math.min(FASTA_LINE_LENGTH, seq.length - p);
+                    System.arraycopy(seq, p, line, 0, len);
+                    line[len] = '\n';
+                    out.write(line, 0, len + 1);
+                    offset += len + 1;
+                }
+            }
+        } finally {
+            out.close();
+            fai.close();
+            dict.close();
+        }
+        return dictionary;
+    }
+
+    /**
+     * Write the variants block compressed with a tabix index.
+     */
+    private static void writeVcf(File file, SAMSequenceDictionary dictionary, String sampleName,
+            Iterable<VariantContext> variants, boolean altLoci) {
+        Set<VCFHeaderLine> lines = new LinkedHashSet<>();
+        lines.add(new VCFFormatHeaderLine("GT", 1, VCFHeaderLineType.String, "Genotype"));
+        if (altLoci) {
+            lines.add(new VCFInfoHeaderLine("RE", 1, VCFHeaderLineType.String, "Region"));
+            lines.add(new VCFInfoHeaderLine("AL", 1, VCFHeaderLineType.String, "Alternate Locus"));
+        }
+        VCFHeader header = new VCFHeader(lines, Collections.singletonList(sampleName));
+        header.setSequenceDictionary(dictionary);
+        VariantContextWriter writer = new VariantContextWriterBuilder().setReferenceDictionary(dictionary)
+                .setOutputFile(file).setOptions(EnumSet.of(Options.INDEX_ON_THE_FLY)).build();
+        try {
+            writer.writeHeader(header);
+            for (VariantContext vc : variants)
+                writer.add(vc);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the directory of the dataset
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the data directory containing <code>genome/GRCh38.fa</code>
+     */
+    public File getDataDirectory() {
+        return new File(directory, "data");
+    }
+
+    /**
+     * @return the reference fastA file
+     */
+    public File getReference() {
+        return new File(directory, "data/genome/GRCh38.fa");
+    }
+
+    /**
+     * @return the SQLite database
+     */
+    public File getSqlite() {
+        return new File(directory, "asdpex.sqlite");
+    }
+
+    /**
+     * @return the VCF file with the ASDPs of all alternate loci
+     */
+    public File getAltLociVcf() {
+        return new File(directory, "alt.vcf.gz");
+    }
+
+    /**
+     * @return the sample VCF file
+     */
+    public File getSampleVcf() {
+        return new File(directory, "sample.vcf.gz");
+    }
+
+    /**
+     * @return fasta identifiers of the alternate loci
+     */
+    public ImmutableList<String> getAltLoci() {
+        return altLoci;
+    }
+
+    /**
+     * @return RefSeq accessions of the alternate loci
+     */
+    public ImmutableList<String> getAltScaffoldAccessions() {
+        return altScaffoldAccessions;
+    }
+
+    /**
+     * @return names of the regions
+     */
+    public ImmutableList<String> getRegions() {
+        return regions;
+    }
+
+    /**
+     * Remove the dataset directory.
+     */
+    public void delete() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    /**
+     * Write the dataset to the given directory.
+     *
+     * @param args
+     *            target directory
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: java -cp benchmarks.jar " + SyntheticDataset.class.getName() + " <dir>");
+            System.exit(1);
+        }
+        SyntheticDataset dataset = create(new File(args[0]));
+        System.out.println("[INFO] wrote synthetic dataset with " + dataset.getAltLoci().size()
+                + " alternate loci to: " + dataset.getDirectory());
+    }
+
+    /**
+     * Alternate locus of the dataset.
+     */
+    private static class Locus {
+        final String name;
+        final String region;
+        /** index of the chromosome */
+        final int contig;
+        final int start;
+        final int stop;
+        final ArrayList<VariantContext> asdps = new ArrayList<>();
+
+        Locus(String name, String region, int contig, int start, int stop) {
+            this.name = name;
+            this.region = region;
+            this.contig = contig;
+            this.start = start;
+            this.stop = stop;
+        }
+    }
+
+    /**
+     * Order {@link VariantContext}s by contig index and position.
+     */
+    private static class VariantContextComparator implements Comparator<VariantContext> {
+        private final Map<String, Integer> index = new HashMap<>();
+
+        VariantContextComparator(SAMSequenceDictionary dictionary) {
+            for (SAMSequenceRecord record : dictionary.getSequences())
+                index.put(record.getSequenceName(), record.getSequenceIndex());
+        }
+
+        @Override
+        public int compare(VariantContext o1, VariantContext o2) {
+            int c = Integer.compare(index.get(o1.getContig()), index.get(o2.getContig()));
+            return c != 0 ? c : Integer.compare(o1.getStart(), o2.getStart());
+        }
+    }
+
+}
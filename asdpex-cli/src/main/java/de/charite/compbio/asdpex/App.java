@@ -7,6 +7,8 @@ import de.charite.compbio.asdpex.cmd.CreateDatabaseCommand;
 import de.charite.compbio.asdpex.cmd.CreateFastaCommand;
 import de.charite.compbio.asdpex.cmd.CreateSeedCommand;
 import de.charite.compbio.asdpex.cmd.DownloadCommand;
+import de.charite.compbio.asdpex.cmd.LiftoverCommand;
+import de.charite.compbio.asdpex.cmd.MergeCommand;
 import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
 import de.charite.compbio.asdpex.exceptions.CommandLineParsingException;
 import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
@@ -39,6 +41,10 @@ public class App {
                 cmd = new CreateFastaCommand(args);
             else if (args[0].equals("create-seed"))
                 cmd = new CreateSeedCommand(args);
+            else if (args[0].equals("merge"))
+                cmd = new MergeCommand(args);
+            else if (args[0].equals("liftover"))
+                cmd = new LiftoverCommand(args);
             else if (args[0].equals("download"))
                 cmd = new DownloadCommand(args);
             else
@@ -72,6 +78,10 @@ public class App {
         sb.append("         create-db   creates a SQLite database used for this tool").append("\n");
         sb.append("         create-fa   construct fasta files for the alignments").append("\n");
         sb.append("         create-seed construct seed files for the alignments from the NCBI alignments").append("\n");
+        sb.append("         merge       merge the VCF files of the alignments into sorted and indexed VCF files")
+                .append("\n");
+        sb.append("         liftover    lift VCF records between the alternate loci and the primary assembly")
+                .append("\n");
         // sb.append(" download download transcript database (not yet implemented)").append("\n").append("\n");
         sb.append("Example: java -jar asdpex.jar create-db -s asdpex.sqlite -d data").append("\n");
         sb.append("         java -jar asdpex.jar create-fa -o data/").append("\n").append("\n");
@@ -5,6 +5,8 @@ package de.charite.compbio.asdpex;
 
 import java.io.File;
 
+import de.charite.compbio.asdpex.db.DatabaseManger;
+
 /**
  * Configuration for the Hg38altLociSeletor program.
  * 
@@ -54,6 +56,15 @@ public final class Hg38altLociSeletorOptions {
     /** return alternate Loci fastA as single file or in separate files (default) */
     private boolean singleAltLociFile = false;
 
+    /** write the fastA files BGZF compressed */
+    private boolean fastaBgzf = false;
+
+    /** also write the sequences of the fastA files 2-bit packed into a single file */
+    private boolean fastaPacked = false;
+
+    /** also write the binary seed files */
+    private boolean seedBinary = false;
+
     /** split alignments at large indels = possible inversions etc. */
     private boolean alignmentSplitIndels = true;
 
@@ -65,6 +76,19 @@ public final class Hg38altLociSeletorOptions {
     /** Line length of output fasta files. */
     private int fastaLineLength = 70;
 
+    /** number of worker threads */
+    private int threads = 1;
+    /** number of rows per JDBC batch for the database upload */
+    private int batchSize = DatabaseManger.DEFAULT_BATCH_SIZE;
+    /** timeout of a single alignment job in seconds, 0 for no timeout */
+    private long alignTimeout = 0;
+    /** stream the alignment inputs through named pipes instead of temporary files */
+    private boolean alignFifo = false;
+    /** align with the in-JVM seeded banded aligner instead of the SeqAn program */
+    private boolean alignJava = false;
+    /** lift the variants from the primary assembly to the alternate loci instead of the other way round */
+    private boolean liftToAlt = false;
+
     // +++++++++++++ file paths used by the program +++++++++++++++++++//
 
     /** path to the input VCF file for the annotation */
@@ -75,12 +99,14 @@ public final class Hg38altLociSeletorOptions {
     private String outputVcf;
     /** path to the SQLite file storing programs data */
     private String sqlitePath;
+    /** path to the packed sequences of <code>create-fa -p</code> read by the alignment, <code>null</code> if not used */
+    private String packedSequencesPath;
 
     /**
      * The command that is to be executed.
      */
     public enum Command {
-        DOWNLOAD, ANNOTATE_VCF, CREATE_FASTA, CREATE_SEED, ALIGN, CREATE_DB;
+        DOWNLOAD, ANNOTATE_VCF, CREATE_FASTA, CREATE_SEED, ALIGN, CREATE_DB, MERGE, LIFTOVER;
 
         public String toString() {
             switch (this) {
@@ -96,6 +122,10 @@ public final class Hg38altLociSeletorOptions {
                 return "align";
             case CREATE_DB:
                 return "create-db";
+            case MERGE:
+                return "merge";
+            case LIFTOVER:
+                return "liftover";
             default:
                 return "unknown";
             }
@@ -316,6 +346,51 @@ public final class Hg38altLociSeletorOptions {
         this.singleAltLociFile = singleAltLociFile;
     }
 
+    /**
+     * @return the fastaBgzf
+     */
+    public boolean isFastaBgzf() {
+        return fastaBgzf;
+    }
+
+    /**
+     * @param fastaBgzf
+     *            the fastaBgzf to set
+     */
+    public void setFastaBgzf(boolean fastaBgzf) {
+        this.fastaBgzf = fastaBgzf;
+    }
+
+    /**
+     * @return the fastaPacked
+     */
+    public boolean isFastaPacked() {
+        return fastaPacked;
+    }
+
+    /**
+     * @param fastaPacked
+     *            the fastaPacked to set
+     */
+    public void setFastaPacked(boolean fastaPacked) {
+        this.fastaPacked = fastaPacked;
+    }
+
+    /**
+     * @return the seedBinary
+     */
+    public boolean isSeedBinary() {
+        return seedBinary;
+    }
+
+    /**
+     * @param seedBinary
+     *            the seedBinary to set
+     */
+    public void setSeedBinary(boolean seedBinary) {
+        this.seedBinary = seedBinary;
+    }
+
     /**
      * @return the inputVcf
      */
@@ -411,4 +486,109 @@ public final class Hg38altLociSeletorOptions {
         this.fastaLineLength = fastaLineLength;
     }
 
+    /**
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads
+     *            the number of worker threads to set
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the number of rows per JDBC batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize
+     *            the number of rows per JDBC batch to set
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the timeout of a single alignment job in seconds, 0 for no timeout
+     */
+    public long getAlignTimeout() {
+        return alignTimeout;
+    }
+
+    /**
+     * @param alignTimeout
+     *            the timeout of a single alignment job in seconds to set, 0 for no timeout
+     */
+    public void setAlignTimeout(long alignTimeout) {
+        this.alignTimeout = alignTimeout;
+    }
+
+    /**
+     * @return <code>true</code> if the alignment inputs are streamed through named pipes
+     */
+    public boolean isAlignFifo() {
+        return alignFifo;
+    }
+
+    /**
+     * @param alignFifo
+     *            stream the alignment inputs through named pipes instead of temporary files
+     */
+    public void setAlignFifo(boolean alignFifo) {
+        this.alignFifo = alignFifo;
+    }
+
+    /**
+     * @return <code>true</code> if aligned with the in-JVM seeded banded aligner instead of the SeqAn program
+     */
+    public boolean isAlignJava() {
+        return alignJava;
+    }
+
+    /**
+     * @param alignJava
+     *            align with the in-JVM seeded banded aligner instead of the SeqAn program
+     */
+    public void setAlignJava(boolean alignJava) {
+        this.alignJava = alignJava;
+    }
+
+    /**
+     * @return the path to the packed sequences read by the alignment, <code>null</code> if not used
+     */
+    public String getPackedSequencesPath() {
+        return packedSequencesPath;
+    }
+
+    /**
+     * @param packedSequencesPath
+     *            the path to the packed sequences of <code>create-fa -p</code> read by the alignment
+     */
+    public void setPackedSequencesPath(String packedSequencesPath) {
+        this.packedSequencesPath = packedSequencesPath;
+    }
+
+    /**
+     * @return the liftToAlt
+     */
+    public boolean isLiftToAlt() {
+        return liftToAlt;
+    }
+
+    /**
+     * @param liftToAlt
+     *            the liftToAlt to set
+     */
+    public void setLiftToAlt(boolean liftToAlt) {
+        this.liftToAlt = liftToAlt;
+    }
+
 }
@@ -3,38 +3,53 @@
  */
 package de.charite.compbio.asdpex.cmd;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.ParseException;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
 import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
 import de.charite.compbio.asdpex.data.NCBIgffAlignment;
-import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement;
-import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
+import de.charite.compbio.asdpex.data.RegionInfo;
 import de.charite.compbio.asdpex.db.DatabaseManger;
+import de.charite.compbio.asdpex.exceptions.AlignmentException;
 import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
 import de.charite.compbio.asdpex.exceptions.CommandLineParsingException;
 import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
-import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentParser;
+import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentCache;
+import de.charite.compbio.asdpex.io.writer.AsdpVcfFileWriter;
 import de.charite.compbio.asdpex.io.writer.FastaFileWriter;
+import de.charite.compbio.asdpex.io.writer.SeedFileWriter;
+import de.charite.compbio.asdpex.reference.MappedReference;
+import de.charite.compbio.asdpex.reference.PackedSequenceStore;
 import de.charite.compbio.asdpex.util.AlignmentUtil;
 import de.charite.compbio.asdpex.util.IOUtil;
-import htsjdk.samtools.reference.ReferenceSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
-import htsjdk.samtools.util.SequenceUtil;
+import de.charite.compbio.asdpex.util.SeededBandedAligner;
+import htsjdk.variant.variantcontext.VariantContext;
 
 /**
  * 
@@ -43,6 +58,8 @@ import htsjdk.samtools.util.SequenceUtil;
  *
  */
 public class AlignCommand extends AltLociSelectorCommand {
+    /** name of the {@link AlignmentManifest} in the results folder */
+    public static final String MANIFEST = "align.manifest";
 
     /**
      * @param args
@@ -78,23 +95,42 @@ public class AlignCommand extends AltLociSelectorCommand {
         // TODO not simple kill app but show again the help if terminated by missing file/path
 
         // check the reference file
-        final ReferenceSequenceFile refFile = ReferenceSequenceFileFactory
-                .getReferenceSequenceFile(new File(options.getReferencePath()));
-        if (!refFile.isIndexed()) {
+        MappedReference reference = null;
+        try {
+            reference = new MappedReference(new File(options.getReferencePath()));
+        } catch (IOException e) {
             System.err.println("[ERROR] The FastA is not index - please index file first and run again.");
+            System.err.println("\t" + e.getMessage());
             System.exit(1);
-        } else
-            System.out.println("[INFO] Reference fastA file checked: " + options.getReferencePath());
+        }
+        final MappedReference refFile = reference;
+        System.out.println("[INFO] Reference fastA file checked: " + options.getReferencePath());
+
+        // the packed sequences of create-fa are used instead of the reference where possible
+        PackedSequenceStore packedStore = null;
+        if (options.getPackedSequencesPath() != null) {
+            try {
+                packedStore = new PackedSequenceStore(new File(options.getPackedSequencesPath()));
+            } catch (IOException e) {
+                IOUtil.close(refFile);
+                throw new AlignmentException("Failed to open the packed sequences: " + e.getMessage(), e);
+            }
+            System.out.println("[INFO] Packed sequences checked: " + options.getPackedSequencesPath());
+        }
 
         // check that the SeqAn aligner does exists
-        if (!new File(options.getSeqanAlign()).exists()) {
+        if (options.isAlignJava())
+            System.out.println("[INFO] using the built-in seeded banded aligner");
+        else if (!new File(options.getSeqanAlign()).exists()) {
             System.err.println("[ERROR] The SeqAn aligner could not be found at position: " + options.getSeqanAlign());
             System.exit(0);
         } else
             System.out.println("[INFO] SeqAn aligner checked: " + options.getSeqanAlign());
 
         // Database access
-        DatabaseManger dbman = new DatabaseManger(options.getSqlitePath());
+        final DatabaseManger dbman = new DatabaseManger(options.getSqlitePath());
+        // the GFF files are only parsed if they changed since the last run
+        final NCBIgffAlignmentCache gffCache = new NCBIgffAlignmentCache(new File(options.getAlignmentPath()));
 
         // load placement of the scaffolds
         ImmutableList<AltScaffoldPlacementInfo> placements = null;
@@ -106,6 +142,60 @@ public class AlignCommand extends AltLociSelectorCommand {
                     "[ERROR] Failed to load the alt_scaffold_placements from database: " + options.getSqlitePath());
             e1.printStackTrace();
         }
+        final HashMap<String, RegionInfo> regions = new HashMap<>();
+        if (packedStore != null) {
+            try {
+                for (RegionInfo region : dbman.getRegionInfos())
+                    regions.put(region.getRegionName(), region);
+            } catch (SQLException e) {
+                System.out.println("[WARN] failed to load the regions, the packed sequences are not used");
+            }
+        }
+
+        // check output folders exist
+        System.out.println("[INFO] create outputfolder for 'aln' and 'vcf' files");
+        IOUtil.checkOutFolder(new File(options.getResultsFolder()));
+        IOUtil.checkOutFolder(new File(options.getTempFolder(), "aln"));
+
+        // blocks aligned in previous runs
+        AlignmentManifest manifest;
+        File manifestFile = new File(options.getResultsFolder(), MANIFEST);
+        try {
+            manifest = new AlignmentManifest(manifestFile);
+        } catch (IOException e) {
+            throw new AlignmentException("Failed to open the alignment manifest: " + manifestFile, e);
+        }
+
+        // the blocks of each alt. locus are aligned in order, the alt. loci in parallel
+        final ParallelAlignmentDriver driver = new ParallelAlignmentDriver(options.getThreads(),
+                options.getAlignTimeout(), manifest);
+        final SeededBandedAligner aligner = new SeededBandedAligner();
+        if (options.isAlignJava())
+            System.out.println("[INFO] running up to " + options.getThreads() + " alignment thread(s)");
+        else
+            System.out.println("[INFO] running up to " + options.getThreads() + " alignment process(es)"
+                    + (options.getAlignTimeout() > 0 ? " with a timeout of " + options.getAlignTimeout() + "s" : ""));
+
+        // the alt. loci are prepared in parallel, i.e. the alignments are loaded, the identifiers looked up and the
+        // inputs hashed, but submitted in the order of the placements
+        int preparationThreads = options.getThreads();
+        try {
+            dbman.openReadPool();
+        } catch (SQLException e) {
+            System.out.println("[WARN] failed to open the read-only database connections - preparing on one thread");
+            preparationThreads = 1;
+        }
+        ExecutorService preparation = Executors.newFixedThreadPool(preparationThreads);
+        ArrayList<Future<PreparedLocus>> prepared = new ArrayList<>();
+        final PackedSequenceStore store = packedStore;
+        for (final AltScaffoldPlacementInfo placement : placements) {
+            prepared.add(preparation.submit(new Callable<PreparedLocus>() {
+                @Override
+                public PreparedLocus call() throws Exception {
+                    return prepare(placement, dbman, gffCache, refFile, store, regions, aligner);
+                }
+            }));
+        }
 
         // visualisation
         System.out.println("\t[INFO] processing alt. loci");
@@ -113,73 +203,176 @@ public class AlignCommand extends AltLociSelectorCommand {
         System.out.print("\t|.........|.........|\n\t");
         int c = 1;
         int limit = 0;
-        for (AltScaffoldPlacementInfo placement : placements) {
-            // progress
-            if (100.0 * c++ / placements.size() > limit) {
-                limit += 5;
-                System.out.print("*");
-            }
+        int jobs = 0;
+        int upToDate = 0;
+        int packed = 0;
+        try {
+            for (Future<PreparedLocus> future : prepared) {
+                // progress
+                if (100.0 * c++ / placements.size() > limit) {
+                    limit += 5;
+                    System.out.print("*");
+                }
 
-            // 1. check GFF: file exists and get alignments
-            ArrayList<NCBIgffAlignment> alignments;
-            try {
-                ImmutableList<NCBIgffAlignment> originalAlignments = getAlignments(placement, dbman);
-                // System.out.println("[INFO] no. of original alignments: " + originalAlignments.size());
-                alignments = AlignmentUtil.splitupAlignmentAtLargeIndels(
-                        originalAlignments.toArray(new NCBIgffAlignment[originalAlignments.size()]));
-                // System.out.println("[INFO] no. of split alignments: " + alignments.size());
-            } catch (FileNotFoundException e1) {
-                System.out.println("[WARN] skipping - missing GFF file");
-                e1.printStackTrace();
-                continue;
-            }
-            // System.out.println("n alignments: " + alignments.size());
+                PreparedLocus locus;
+                try {
+                    locus = future.get();
+                } catch (ExecutionException e) {
+                    throw new AlignmentException("Failed to prepare the alignments: " + e.getCause().getMessage(),
+                            e.getCause());
+                }
+                if (locus == null)
+                    continue;
+                if (locus.packed)
+                    packed++;
 
-            // 2. FastA
-            // 2.1 generate identifier used for alt locus fastA and seed file
-            String identifierAltLocusFasta;
-            try {
-                identifierAltLocusFasta = dbman.getFastaIdentifierAltLocus(placement.getAltScafAcc());
-            } catch (SQLException e) {
-                System.out.println("[WARN] skipping - failed to generate the fastA identifier for alternate locus: "
-                        + placement.getAltScafAcc());
-                continue;
+                // 4. skip the unchanged blocks of previous runs
+                int resume;
+                try {
+                    resume = manifest.resume(locus.blocks, locus.vcf);
+                } catch (IOException e) {
+                    System.out.println("[WARN] skipping - failed to truncate the VCF file: " + locus.vcf);
+                    continue;
+                }
+                upToDate += resume;
+                if (resume == locus.blocks.size())
+                    continue;
+                if (!options.isAlignFifo() && !options.isAlignJava()) {
+                    try {
+                        for (int i = resume; i < locus.blocks.size(); i++)
+                            for (AlignmentInput input : locus.blockInputs.get(i))
+                                writeInputFile(input);
+                    } catch (IOException e) {
+                        System.out.println("[WARN] skipping - failed to write the input files of alternate locus: "
+                                + locus.placement.getAltScafAcc() + ": " + e.getMessage());
+                        continue;
+                    }
+                }
+                jobs += locus.blocks.size() - resume;
+                driver.submit(new ArrayList<>(locus.blocks.subList(resume, locus.blocks.size())));
             }
-
-            // 2.2 generate identifier used for ref fastA
-            String identifierRefFasta;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AlignmentException("Interrupted while preparing the alignments", e);
+        } finally {
+            preparation.shutdownNow();
             try {
-                identifierRefFasta = dbman.getFastaIdentifierReference(placement.getAltScafAcc());
-            } catch (SQLException e) {
-                System.out.println("[WARN] skipping - failed to generate the fastA identifier for reference: "
-                        + placement.getAltScafAcc());
-                continue;
+                preparation.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            dbman.closeConnection();
+            gffCache.close();
+        }
+        System.out.println("*");
 
-            // 3. iterate over the NCBIAlignments
-            int block = 1;
-            for (NCBIgffAlignment alignment : alignments) {
-                // ALT LOCI
-                byte[] altLoci = extractSequence(refFile, identifierAltLocusFasta, alignment.getAltStart(),
-                        alignment.getAltStop(), alignment.isAltStrand());
-                // REF
-                byte[] ref = extractSequence(refFile, identifierRefFasta, alignment.getRefStart(),
-                        alignment.getRefStop(), alignment.isRefStrand());
-                writeFilesToDisc(identifierAltLocusFasta, placement.getRegion(), block, altLoci, ref, alignment);
+        if (packedStore != null)
+            System.out.println("[INFO] read the sequences of " + packed + " alt. loci from the packed sequences");
+        if (upToDate > 0)
+            System.out.println("[INFO] skipping " + upToDate + " unchanged alignment job(s) of previous runs");
+        System.out.println("[INFO] waiting for " + jobs + " alignment job(s)");
+        int failed;
+        try {
+            failed = driver.awaitCompletion();
+        } finally {
+            manifest.close();
+            IOUtil.close(refFile);
+        }
+        System.out.println("[INFO] finished " + driver.getFinished() + " alignment job(s)");
+        if (failed > 0)
+            System.out.println("[WARN] " + failed + " alignment job(s) failed or were skipped");
+    }
 
-                try {
-                    runAlignment(identifierAltLocusFasta, block, altLoci, ref, alignment.getRefStart() - 1);
-                } catch (IOException | InterruptedException e) {
-                    System.err.println("Failed to run align command. That's strange ...");
-                    e.printStackTrace();
-                }
+    /**
+     * Prepare the alignment blocks of an alternate locus: load its alignments, look up the identifiers and hash the
+     * inputs of the blocks. Called by several threads at once, so the database lookups use the read-only connections
+     * of the {@link DatabaseManger}.
+     * 
+     * @param placement
+     *            {@link AltScaffoldPlacementInfo} of the alternate locus
+     * @param dbman
+     *            {@link DatabaseManger} with an opened read pool
+     * @param gffCache
+     *            {@link NCBIgffAlignmentCache} of the alignment folder
+     * @param refFile
+     *            the {@link MappedReference}, shared by the workers
+     * @param packedStore
+     *            the {@link PackedSequenceStore} of <code>create-fa -p</code>, <code>null</code> if not used
+     * @param regions
+     *            the {@link RegionInfo}s by name, only used with the packed sequences
+     * @param aligner
+     *            the {@link SeededBandedAligner}, shared by the workers
+     * @return the {@link PreparedLocus} or <code>null</code> if the alternate locus is skipped
+     */
+    private PreparedLocus prepare(AltScaffoldPlacementInfo placement, DatabaseManger dbman,
+            NCBIgffAlignmentCache gffCache, MappedReference refFile, PackedSequenceStore packedStore,
+            Map<String, RegionInfo> regions, SeededBandedAligner aligner) {
+        // 1. check GFF: file exists and get alignments
+        ArrayList<NCBIgffAlignment> alignments;
+        try {
+            ImmutableList<NCBIgffAlignment> originalAlignments = getAlignments(placement, dbman, gffCache);
+            if (originalAlignments == null)
+                return null;
+            alignments = AlignmentUtil.splitupAlignmentAtLargeIndels(
+                    originalAlignments.toArray(new NCBIgffAlignment[originalAlignments.size()]));
+        } catch (FileNotFoundException e1) {
+            System.out.println("[WARN] skipping - missing GFF file");
+            e1.printStackTrace();
+            return null;
+        }
+
+        // 2. FastA
+        // 2.1 generate identifier used for alt locus fastA and seed file
+        String identifierAltLocusFasta;
+        try {
+            identifierAltLocusFasta = dbman.getFastaIdentifierAltLocus(placement.getAltScafAcc());
+        } catch (SQLException e) {
+            System.out.println("[WARN] skipping - failed to generate the fastA identifier for alternate locus: "
+                    + placement.getAltScafAcc());
+            return null;
+        }
 
+        // 2.2 generate identifier used for ref fastA
+        String identifierRefFasta;
+        try {
+            identifierRefFasta = dbman.getFastaIdentifierReference(placement.getAltScafAcc());
+        } catch (SQLException e) {
+            System.out.println("[WARN] skipping - failed to generate the fastA identifier for reference: "
+                    + placement.getAltScafAcc());
+            return null;
+        }
+
+        // 2.3 the sequences of the alt. locus and the region
+        LocusSequences sequences = new LocusSequences(refFile, identifierAltLocusFasta, identifierRefFasta);
+        if (packedStore != null)
+            sequences = sequences.withPacked(packedStore, placement, regions.get(placement.getRegion()));
+
+        // 3. iterate over the NCBIAlignments
+        PreparedLocus locus = new PreparedLocus(placement,
+                new File(options.getResultsFolder(), identifierAltLocusFasta + ".vcf"), sequences.isPacked());
+        int block = 1;
+        try {
+            for (NCBIgffAlignment alignment : alignments) {
+                // extracted when hashed and again when streamed or written
+                ImmutableList<AlignmentInput> inputs = createInputs(sequences, identifierAltLocusFasta,
+                        placement.getRegion(), block, alignment);
+                int offset = alignment.getRefStart() - 1;
+                String hash = hashInputs(options.isAlignJava() ? "java" : "seqan", offset, inputs);
+                if (options.isAlignJava())
+                    locus.blocks.add(createAlignmentTask(sequences, aligner, identifierAltLocusFasta,
+                            placement.getRegion(), block, alignment, locus.vcf, hash));
+                else
+                    locus.blocks.add(createAlignmentJob(identifierAltLocusFasta, block, offset,
+                            options.isAlignFifo() ? inputs : ImmutableList.<AlignmentInput> of(), locus.vcf, hash));
+                locus.blockInputs.add(inputs);
                 block++;
             }
-
-            // System.exit(0);
+        } catch (IOException e) {
+            System.out.println("[WARN] skipping - failed to extract the sequences of alternate locus: "
+                    + placement.getAltScafAcc() + ": " + e.getMessage());
+            return null;
         }
-        System.out.println("*");
+        return locus;
     }
 
     /**
@@ -190,11 +383,13 @@ public class AlignCommand extends AltLociSelectorCommand {
      *            {@link AltScaffoldPlacementInfo} for the alternate loci
      * @param dbman
      *            {@link DatabaseManger} to get the additional infos
+     * @param gffCache
+     *            {@link NCBIgffAlignmentCache} of the alignment folder
      * @return {@link List} of {@link NCBIgffAlignment}s
      * @throws FileNotFoundException
      */
-    private ImmutableList<NCBIgffAlignment> getAlignments(AltScaffoldPlacementInfo placement, DatabaseManger dbman)
-            throws FileNotFoundException {
+    private ImmutableList<NCBIgffAlignment> getAlignments(AltScaffoldPlacementInfo placement, DatabaseManger dbman,
+            NCBIgffAlignmentCache gffCache) throws FileNotFoundException {
         // identifier for the GFF file
         String identifierGFF;
         try {
@@ -207,7 +402,7 @@ public class AlignCommand extends AltLociSelectorCommand {
 
         File gff = new File(options.getAlignmentPath(), identifierGFF + ".gff");
         if (gff.exists()) {
-            return new NCBIgffAlignmentParser(gff).parse();
+            return gffCache.get(gff);
         } else {
             // return null;
             throw new FileNotFoundException("Missing file: " + gff);
@@ -215,54 +410,190 @@ public class AlignCommand extends AltLociSelectorCommand {
     }
 
     /**
+     * Create the {@link AlignmentJob} for a block of an alternate locus. All blocks except the first one are appended
+     * to the VCF file of the alternate locus.
      * 
      * @param identifier
+     *            fasta identifier of the alternate locus
      * @param block
-     * @param altLoci
-     * @param ref
+     *            number of the block, starting with 1
      * @param offset
-     * @throws IOException
-     * @throws InterruptedException
+     *            0-based start of the block on the reference
+     * @param inputs
+     *            {@link AlignmentInput}s streamed to the aligner, empty if the files are written to disc
+     * @param vcf
+     *            the VCF file of the alternate locus
+     * @param hash
+     *            content hash of the inputs of the block
+     * @return the {@link AlignmentJob}
      */
-    private void runAlignment(String identifier, int block, byte[] altLoci, byte[] ref, int offset)
-            throws IOException, InterruptedException {
-
-        StringBuilder cmd = new StringBuilder();
-        cmd.append(options.getSeqanAlign()).append(" -R ")
-                .append(options.getTempFolder() + "/" + identifier + "_ref_" + block + ".fa").append(" -A ")
-                .append(options.getTempFolder() + "/" + identifier + "_altLoci_" + block + ".fa").append(" -S ")
-                .append(options.getTempFolder() + "/" + identifier + "_" + block + ".tab").append(" -V ")
-                .append(options.getResultsFolder() + "/" + identifier + ".vcf").append(" -N ")
-                .append(options.getTempFolder() + "/aln/" + identifier + "_" + block + ".aln").append(" -o ")
-                .append(offset);
+    private AlignmentJob createAlignmentJob(String identifier, int block, int offset,
+            ImmutableList<AlignmentInput> inputs, File vcf, String hash) {
+        ImmutableList.Builder<String> cmd = ImmutableList.builder();
+        cmd.add(options.getSeqanAlign()).add("-R").add(getRefFastaFile(identifier, block).getPath()).add("-A")
+                .add(getAltLociFastaFile(identifier, block).getPath()).add("-S")
+                .add(getSeedFile(identifier, block).getPath()).add("-V").add(vcf.getPath()).add("-N")
+                .add(options.getTempFolder() + "/aln/" + identifier + "_" + block + ".aln").add("-o")
+                .add(Integer.toString(offset));
         if (block > 1)
-            cmd.append(" -a");
-        // check output folders exist
-        System.out.println("[INFO] create outputfolder for 'aln' and 'vcf' files");
-        IOUtil.checkOutFolder(new File(options.getResultsFolder()));
-        IOUtil.checkOutFolder(new File(options.getTempFolder(), "aln"));
+            cmd.add("-a");
+        return new AlignmentJob(identifier, block, cmd.build(), inputs, vcf, hash);
+    }
 
-        Process p = Runtime.getRuntime().exec(cmd.toString());
-        p.waitFor();
-        OutputStream stdin = p.getOutputStream();
-        InputStream stderr = p.getErrorStream();
-        InputStream stdout = p.getInputStream();
-
-        String line;
-        // clean up if any output in stdout
-        BufferedReader brCleanUp = new BufferedReader(new InputStreamReader(stdout));
-        while ((line = brCleanUp.readLine()) != null) {
-            System.out.println("[Stdout] " + line);
+    /**
+     * Create the {@link AlignmentJob} for a block of an alternate locus, which is aligned in the JVM by the
+     * {@link SeededBandedAligner}. The sequences are extracted when the job runs and the variants of all blocks except
+     * the first one are appended to the VCF file of the alternate locus.
+     * 
+     * @param sequences
+     *            the {@link LocusSequences} of the alternate locus, shared by the workers
+     * @param aligner
+     *            the {@link SeededBandedAligner}, shared by the workers
+     * @param idAltLoci
+     *            fasta identifier of the alternate locus
+     * @param idRef
+     *            identifier of the region
+     * @param block
+     *            number of the block, starting with 1
+     * @param alignment
+     *            the {@link NCBIgffAlignment} of the block
+     * @param vcf
+     *            the VCF file of the alternate locus
+     * @param hash
+     *            content hash of the inputs of the block
+     * @return the {@link AlignmentJob}
+     */
+    private AlignmentJob createAlignmentTask(final LocusSequences sequences, final SeededBandedAligner aligner,
+            final String idAltLoci, final String idRef, final int block, final NCBIgffAlignment alignment,
+            final File vcf, String hash) {
+        // the chromosome is the prefix of the alt. locus identifier, e.g. chr1_KI270706v1_alt
+        final String chrom = idAltLoci.indexOf('_') > 0 ? idAltLoci.substring(0, idAltLoci.indexOf('_'))
+                : idAltLoci;
+        return new AlignmentJob(idAltLoci, block, new Callable<Integer>() {
+            @Override
+            public Integer call() throws IOException {
+                byte[] altLoci = sequences.getAltBases(alignment.getAltStart(), alignment.getAltStop(),
+                        alignment.isAltStrand());
+                byte[] ref = sequences.getRefBases(alignment.getRefStart(), alignment.getRefStop(),
+                        alignment.isRefStrand());
+                ImmutableList<VariantContext> variants = aligner.findDifferences(ref, altLoci,
+                        alignment.getPackedElements(), chrom, idRef, idAltLoci, alignment.getRefStart() - 1);
+                AsdpVcfFileWriter.write(vcf, variants, block > 1);
+                return variants.size();
+            }
+        }, vcf, hash);
+    }
+
+    /**
+     * Hash the content of the inputs of a block, which is compared with the {@link AlignmentManifest} to find the
+     * blocks that changed since the last run.
+     * 
+     * @param aligner
+     *            name of the aligner, the results of different aligners differ
+     * @param offset
+     *            0-based start of the block on the reference
+     * @param inputs
+     *            the {@link AlignmentInput}s of the block
+     * @return the hash as hex string
+     * @throws IOException
+     */
+    private static String hashInputs(String aligner, int offset, ImmutableList<AlignmentInput> inputs)
+            throws IOException {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(aligner, StandardCharsets.US_ASCII);
+        hasher.putInt(offset);
+        for (AlignmentInput input : inputs) {
+            Writer out = new BufferedWriter(
+                    new OutputStreamWriter(Funnels.asOutputStream(hasher), StandardCharsets.US_ASCII));
+            input.write(out);
+            out.flush();
+            hasher.putByte((byte) 0);
         }
-        brCleanUp.close();
+        return hasher.hash().toString();
+    }
 
-        // clean up if any output in stderr
-        brCleanUp = new BufferedReader(new InputStreamReader(stderr));
-        while ((line = brCleanUp.readLine()) != null) {
-            System.out.println("[Stderr] " + line);
+    /**
+     * Write an input to its file in the temp folder. It is written to a temporary file first and then renamed, so an
+     * existing file is always complete.
+     * 
+     * @param input
+     *            the {@link AlignmentInput}
+     * @throws IOException
+     */
+    private static void writeInputFile(AlignmentInput input) throws IOException {
+        File file = input.getFile();
+        File part = new File(file.getPath() + ".part");
+        part.getParentFile().mkdirs();
+        BufferedWriter out = IOUtil.getBufferedFileWriter(part);
+        try {
+            input.write(out);
+        } finally {
+            IOUtil.close(out);
         }
-        brCleanUp.close();
-        System.out.println(p.exitValue());
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Create the inputs of a block, which are either streamed to the aligner through named pipes or written to the
+     * temp folder. The sequences are extracted whenever an input is written.
+     * 
+     * @param sequences
+     *            the {@link LocusSequences} of the alternate locus, shared by the workers
+     * @param idAltLoci
+     *            fasta identifier of the alternate locus
+     * @param idRef
+     *            identifier used in the reference fastA header
+     * @param block
+     *            number of the block, starting with 1
+     * @param alignment
+     *            the {@link NCBIgffAlignment} of the block
+     * @return the {@link AlignmentInput}s
+     */
+    private ImmutableList<AlignmentInput> createInputs(final LocusSequences sequences, final String idAltLoci,
+            final String idRef, int block, final NCBIgffAlignment alignment) {
+        AlignmentInput altLoci = new AlignmentInput(getAltLociFastaFile(idAltLoci, block)) {
+            @Override
+            public void write(Writer out) throws IOException {
+                FastaFileWriter.writeFasta(out, idAltLoci, sequences.getAltBases(alignment.getAltStart(),
+                        alignment.getAltStop(), alignment.isAltStrand()), FastaFileWriter.fastaLineLength);
+            }
+        };
+        AlignmentInput ref = new AlignmentInput(getRefFastaFile(idAltLoci, block)) {
+            @Override
+            public void write(Writer out) throws IOException {
+                FastaFileWriter.writeFasta(out, idRef, sequences.getRefBases(alignment.getRefStart(),
+                        alignment.getRefStop(), alignment.isRefStrand()), FastaFileWriter.fastaLineLength);
+            }
+        };
+        AlignmentInput seeds = new AlignmentInput(getSeedFile(idAltLoci, block)) {
+            @Override
+            public void write(Writer out) throws IOException {
+                SeedFileWriter.writeText(out, SeedFileWriter.getSeeds(alignment.getPackedElements(), 0, 0));
+            }
+        };
+        return ImmutableList.of(altLoci, ref, seeds);
+    }
+
+    /**
+     * @return the alt. loci fastA file of the block in the temp folder
+     */
+    private File getAltLociFastaFile(String identifier, int block) {
+        return new File(options.getTempFolder(), identifier + "_altLoci_" + block + ".fa");
+    }
+
+    /**
+     * @return the reference fastA file of the block in the temp folder
+     */
+    private File getRefFastaFile(String identifier, int block) {
+        return new File(options.getTempFolder(), identifier + "_ref_" + block + ".fa");
+    }
+
+    /**
+     * @return the seed file of the block in the temp folder
+     */
+    private File getSeedFile(String identifier, int block) {
+        return new File(options.getTempFolder(), identifier + "_" + block + ".tab");
     }
 
     @SuppressWarnings("unused")
@@ -275,36 +606,6 @@ public class AlignCommand extends AltLociSelectorCommand {
         return result;
     }
 
-    private boolean writeFilesToDisc(String idALtLoci, String idRef, int block, byte[] altLoci, byte[] ref,
-            NCBIgffAlignment alignment) {
-        // FASTA FILES
-        // alt loci
-        try {
-            FastaFileWriter.createFastaFile(new File(options.getTempFolder(), idALtLoci + "_altLoci_" + block + ".fa"),
-                    idALtLoci, altLoci, false);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-        // ref
-        try {
-            FastaFileWriter.createFastaFile(new File(options.getTempFolder(), idALtLoci + "_ref_" + block + ".fa"),
-                    idRef, ref, false);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-
-        // SEED FILES
-        try {
-            createMatchesFile(options.getTempFolder(), idALtLoci + "_" + block + ".tab", alignment.getElements(), 0, 0);
-        } catch (IOException e) {
-            System.err.println("[ERROR] failed to create seed info file for sample: " + idALtLoci);
-            e.printStackTrace();
-        }
-        return true;
-    }
-
     /**
      * Extract list
      * 
@@ -358,76 +659,22 @@ public class AlignCommand extends AltLociSelectorCommand {
     }
 
     /**
-     * Extract the Sequence from the
-     * 
-     * @param refFile
-     *            the {@link ReferenceSequenceFile} object
-     * @param id
-     *            is the associated fasta identifier
-     * @param start
-     *            inclusive, 1-based start of region.
-     * @param stop
-     *            inclusive, 1-based stop of region.
-     * @param strand
-     *            of the sequence.
-     * @return
-     */
-    private byte[] extractSequence(ReferenceSequenceFile refFile, String id, int start, int stop, boolean strand) {
-        byte[] bases = refFile.getSubsequenceAt(id, start, stop).getBases();
-
-        if (!strand)
-            SequenceUtil.reverseComplement(bases);
-
-        return bases;
-    }
-
-    /**
-     * 
-     * @param path
-     * @param filename
-     * @param elements
-     * @param offset
-     * @param tail
-     * @throws IOException
+     * The alignment blocks of an alternate locus with their inputs, ready to be submitted.
      */
-    private void createMatchesFile(String path, String filename, ImmutableList<NCBIgffAlignmentElement> elements,
-            int offset, int tail) throws IOException {
-
-        File file = new File(path, filename);
-        final BufferedWriter out;
-        if (file.exists()) {
-            System.out.println("[WARN] file already exists: " + file.getCanonicalPath());
-        }
-        file.getParentFile().mkdirs();
-        out = IOUtil.getBufferedFileWriter(file);
-        boolean first = true;
-        int c = 0;
-
-        for (NCBIgffAlignmentElement match : elements) {
-            if (match.getType() != NCBIgffAlignmentElementType.MATCH)
-                continue;
-            c++;
-            // extend the first seed to the begin of the region
-            if (first) {
-                // System.out.println(String.format("%d\t%d\t%d\n", 0, 0,
-                // match.getLength() + offset));
-                out.write(String.format("%d\t%d\t%d\n", 0, 0, match.getLength() + offset));
-                first = false;
-                continue;
-            }
-            // System.out.println(c + "\t" + matches.size());
-            if (c == elements.size()) {
-                out.write(String.format("%d\t%d\t%d\n", match.getRef_start() + offset, match.getAlt_start() + offset,
-                        match.getLength() + tail));
-                // System.out.println(String.format("%d\t%d\t%d\n",
-                // match.getRef_start() + offset,
-                // match.getAlt_start() + offset, match.getLength() + tail));
-                continue;
-            }
-            out.write(String.format("%d\t%d\t%d\n", match.getRef_start() + offset, match.getAlt_start() + offset,
-                    match.getLength()));
+    private static class PreparedLocus {
+        final AltScaffoldPlacementInfo placement;
+        /** the VCF file of the alternate locus */
+        final File vcf;
+        /** the sequences are read from the packed sequences */
+        final boolean packed;
+        final ArrayList<AlignmentJob> blocks = new ArrayList<>();
+        final ArrayList<ImmutableList<AlignmentInput>> blockInputs = new ArrayList<>();
+
+        PreparedLocus(AltScaffoldPlacementInfo placement, File vcf, boolean packed) {
+            this.placement = placement;
+            this.vcf = vcf;
+            this.packed = packed;
         }
-        IOUtil.close(out);
     }
 
     /**
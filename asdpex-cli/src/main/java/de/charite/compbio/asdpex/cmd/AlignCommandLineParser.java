@@ -48,6 +48,17 @@ public final class AlignCommandLineParser {
         options.addOption(Option.builder("t").longOpt("tmp").desc(
                 "temporary folder for seeds, fastA, etc. files, defaults to \"<data-dir>" + File.separator + "tmp\"")
                 .hasArg().build());
+        options.addOption(Option.builder("p").longOpt("processes")
+                .desc("number of alignment processes run in parallel (default: 1)").hasArg().build());
+        options.addOption(Option.builder("w").longOpt("timeout")
+                .desc("timeout of a single alignment job in seconds, 0 for no timeout (default: 0)").hasArg()
+                .build());
+        options.addOption(Option.builder("f").longOpt("fifo")
+                .desc("stream the fastA and seed files to the aligner through named pipes instead of temporary files")
+                .build());
+        options.addOption(Option.builder("k").longOpt("packed")
+                .desc("read the alternate loci and regions from the packed sequences written by \"create-fa -p\"")
+                .hasArg().build());
         // required
         options.addOption(Option.builder("o").longOpt("out-dir")
                 .desc("output folder for generated VCF file(s) \"results\" (mandatory)").hasArg().required().build());
@@ -57,7 +68,9 @@ public final class AlignCommandLineParser {
         options.addOption(Option.builder("q").longOpt("sql").desc("path to the final SQLite database").hasArg()
                 .required().build());
         options.addOption(Option.builder("s").longOpt("seqan")
-                .desc("path to the SeqAn aligner \"regionalign2vcf\" (mandatory)").hasArg().required().build());
+                .desc("path to the SeqAn aligner \"regionalign2vcf\" (mandatory unless -j)").hasArg().build());
+        options.addOption(Option.builder("j").longOpt("java")
+                .desc("align with the built-in seeded banded aligner instead of the SeqAn aligner").build());
         parser = new DefaultParser();
     }
 
@@ -84,6 +97,38 @@ public final class AlignCommandLineParser {
         if (cmd.hasOption("noindel"))
             asdpexOptions.setAlignmentSplitIndels(false);
 
+        if (cmd.hasOption("processes")) {
+            try {
+                asdpexOptions.setThreads(Integer.parseInt(cmd.getOptionValue("processes")));
+            } catch (NumberFormatException e) {
+                asdpexOptions.error = "Invalid number of processes: " + cmd.getOptionValue("processes");
+                printHelp(asdpexOptions);
+            }
+            if (asdpexOptions.getThreads() < 1) {
+                asdpexOptions.error = "Number of processes has to be at least 1: -p";
+                printHelp(asdpexOptions);
+            }
+        }
+
+        if (cmd.hasOption("timeout")) {
+            try {
+                asdpexOptions.setAlignTimeout(Long.parseLong(cmd.getOptionValue("timeout")));
+            } catch (NumberFormatException e) {
+                asdpexOptions.error = "Invalid timeout: " + cmd.getOptionValue("timeout");
+                printHelp(asdpexOptions);
+            }
+            if (asdpexOptions.getAlignTimeout() < 0) {
+                asdpexOptions.error = "Timeout has to be positive or 0: -w";
+                printHelp(asdpexOptions);
+            }
+        }
+
+        if (cmd.hasOption("fifo"))
+            asdpexOptions.setAlignFifo(true);
+
+        if (cmd.hasOption("packed"))
+            asdpexOptions.setPackedSequencesPath(cmd.getOptionValue("packed"));
+
         if (cmd.hasOption("out-dir"))
             asdpexOptions.setResultsFolder(cmd.getOptionValue("out-dir"));
         else {
@@ -91,11 +136,14 @@ public final class AlignCommandLineParser {
             throw new HelpRequestedException();
         }
 
+        if (cmd.hasOption("java"))
+            asdpexOptions.setAlignJava(true);
+
         if (cmd.hasOption("seqan"))
             asdpexOptions.setSeqanAlign(cmd.getOptionValue("seqan"));
-        else {
+        else if (!asdpexOptions.isAlignJava()) {
+            asdpexOptions.error = "Missing path to the SeqAn aligner: -s (or -j for the built-in aligner)";
             printHelp(asdpexOptions);
-            throw new HelpRequestedException();
         }
 
         if (cmd.hasOption("sql")) {
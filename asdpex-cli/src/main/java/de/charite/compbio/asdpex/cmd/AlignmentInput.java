@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Input file of an {@link AlignmentJob} that is not written to disc but streamed to the aligner through a named pipe
+ * (FIFO) at the given path. The content is created when the aligner opens the pipe, so nothing is held in memory for
+ * the queued jobs.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public abstract class AlignmentInput {
+    /** path of the named pipe, as passed to the aligner */
+    private final File file;
+
+    /**
+     * @param file
+     *            path of the named pipe, as passed to the aligner
+     */
+    protected AlignmentInput(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return path of the named pipe
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Write the content of the input.
+     *
+     * @param out
+     *            the {@link Writer} of the named pipe, closed by the caller
+     * @throws IOException
+     */
+    public abstract void write(Writer out) throws IOException;
+
+}
@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A single run of the SeqAn aligner on one block of an alternate locus.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class AlignmentJob {
+    /** fasta identifier of the alternate locus */
+    private final String altLocus;
+    /** number of the block, starting with 1 */
+    private final int block;
+    /** the command line, the program followed by its arguments */
+    private final ImmutableList<String> command;
+    /** inputs streamed through named pipes, empty if the inputs are files on disc */
+    private final ImmutableList<AlignmentInput> inputs;
+    /** VCF file the variants are written to, <code>null</code> if not recorded in an {@link AlignmentManifest} */
+    private final File vcf;
+    /** content hash of the inputs, <code>null</code> if not recorded in an {@link AlignmentManifest} */
+    private final String hash;
+    /** alignment run in the JVM instead of the command, returns the number of variants */
+    private final Callable<Integer> task;
+
+    /**
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @param block
+     *            number of the block, starting with 1
+     * @param command
+     *            the command line, the program followed by its arguments
+     */
+    public AlignmentJob(String altLocus, int block, ImmutableList<String> command) {
+        this(altLocus, block, command, ImmutableList.<AlignmentInput> of());
+    }
+
+    /**
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @param block
+     *            number of the block, starting with 1
+     * @param command
+     *            the command line, the program followed by its arguments
+     * @param inputs
+     *            {@link AlignmentInput}s streamed through named pipes while the aligner runs
+     */
+    public AlignmentJob(String altLocus, int block, ImmutableList<String> command,
+            ImmutableList<AlignmentInput> inputs) {
+        this(altLocus, block, command, inputs, null, null);
+    }
+
+    /**
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @param block
+     *            number of the block, starting with 1
+     * @param command
+     *            the command line, the program followed by its arguments
+     * @param inputs
+     *            {@link AlignmentInput}s streamed through named pipes while the aligner runs
+     * @param vcf
+     *            VCF file the variants are written to
+     * @param hash
+     *            content hash of the inputs, recorded in the {@link AlignmentManifest} when the job is finished
+     */
+    public AlignmentJob(String altLocus, int block, ImmutableList<String> command,
+            ImmutableList<AlignmentInput> inputs, File vcf, String hash) {
+        this.altLocus = altLocus;
+        this.block = block;
+        this.command = command;
+        this.inputs = inputs;
+        this.vcf = vcf;
+        this.hash = hash;
+        this.task = null;
+    }
+
+    /**
+     * A job aligning in the JVM instead of running an external program.
+     * 
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @param block
+     *            number of the block, starting with 1
+     * @param task
+     *            the alignment, returns the number of variants written to the VCF file
+     * @param vcf
+     *            VCF file the variants are written to
+     * @param hash
+     *            content hash of the inputs, recorded in the {@link AlignmentManifest} when the job is finished
+     */
+    public AlignmentJob(String altLocus, int block, Callable<Integer> task, File vcf, String hash) {
+        this.altLocus = altLocus;
+        this.block = block;
+        this.command = ImmutableList.of();
+        this.inputs = ImmutableList.of();
+        this.vcf = vcf;
+        this.hash = hash;
+        this.task = task;
+    }
+
+    /**
+     * @return fasta identifier of the alternate locus
+     */
+    public String getAltLocus() {
+        return altLocus;
+    }
+
+    /**
+     * @return number of the block, starting with 1
+     */
+    public int getBlock() {
+        return block;
+    }
+
+    /**
+     * @return the command line, the program followed by its arguments
+     */
+    public ImmutableList<String> getCommand() {
+        return command;
+    }
+
+    /**
+     * @return inputs streamed through named pipes, empty if the inputs are files on disc
+     */
+    public ImmutableList<AlignmentInput> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @return VCF file the variants are written to, <code>null</code> if not recorded in an
+     *         {@link AlignmentManifest}
+     */
+    public File getVcf() {
+        return vcf;
+    }
+
+    /**
+     * @return content hash of the inputs, <code>null</code> if not recorded in an {@link AlignmentManifest}
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return alignment run in the JVM instead of the command, <code>null</code> for an external program
+     */
+    public Callable<Integer> getTask() {
+        return task;
+    }
+
+    @Override
+    public String toString() {
+        return altLocus + "_" + block;
+    }
+
+}
@@ -0,0 +1,166 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import de.charite.compbio.asdpex.util.IOUtil;
+
+/**
+ * Manifest of the finished {@link AlignmentJob}s, so an interrupted or repeated <code>align</code> run only aligns the
+ * blocks that are missing or have changed. For every block the content hash of its inputs (the extracted sequences and
+ * the seeds from the GFF alignment) and the length of the VCF file after the block was appended are recorded, one line
+ * per block:
+ *
+ * <pre>
+ * alt. locus   block   hash   VCF length
+ * </pre>
+ *
+ * The file is only appended to and read in order, a record of a block replaces the records of this and all following
+ * blocks of the alternate locus, because they were appended to the VCF file after it.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class AlignmentManifest {
+    /** the manifest file */
+    private final File file;
+    /** finished blocks from previous runs by alt. locus and block */
+    private final HashMap<String, TreeMap<Integer, Record>> records = new HashMap<>();
+    /** appends the finished blocks of this run */
+    private BufferedWriter out;
+
+    /**
+     * Load the manifest, the file is created if it does not exist.
+     *
+     * @param file
+     *            the manifest file
+     * @throws IOException
+     */
+    public AlignmentManifest(File file) throws IOException {
+        this.file = file;
+        if (file.exists())
+            load();
+        this.out = IOUtil.getBufferedFileWriter(file, true);
+    }
+
+    private void load() throws IOException {
+        BufferedReader reader = IOUtil.getBufferedReaderFromFileName(file);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // skip lines of an interrupted write
+                if (fields.length != 4)
+                    continue;
+                try {
+                    add(fields[0], new Record(Integer.parseInt(fields[1]), fields[2], Long.parseLong(fields[3])));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        } finally {
+            IOUtil.close(reader);
+        }
+    }
+
+    private void add(String altLocus, Record record) {
+        TreeMap<Integer, Record> blocks = records.get(altLocus);
+        if (blocks == null) {
+            blocks = new TreeMap<>();
+            records.put(altLocus, blocks);
+        }
+        blocks.tailMap(record.block).clear();
+        blocks.put(record.block, record);
+    }
+
+    /**
+     * Find the first block of an alternate locus that has to be aligned. The blocks before are unchanged and their
+     * variants are in the VCF file, which is truncated to their end. If the first block has to be aligned the VCF file
+     * is removed.
+     *
+     * @param jobs
+     *            the {@link AlignmentJob}s of one alternate locus in block order
+     * @param vcf
+     *            the VCF file of the alternate locus
+     * @return index of the first job to run, the number of jobs if the alternate locus is up to date
+     * @throws IOException
+     *             if the VCF file could not be truncated
+     */
+    public int resume(List<AlignmentJob> jobs, File vcf) throws IOException {
+        if (jobs.isEmpty())
+            return 0;
+        TreeMap<Integer, Record> blocks = records.get(jobs.get(0).getAltLocus());
+        long vcfLength = vcf.length();
+        int i = 0;
+        long length = 0;
+        if (blocks != null) {
+            for (; i < jobs.size(); i++) {
+                Record record = blocks.get(jobs.get(i).getBlock());
+                if (record == null || !record.hash.equals(jobs.get(i).getHash()) || record.vcfLength > vcfLength)
+                    break;
+                length = record.vcfLength;
+            }
+        }
+        if (i == jobs.size() && length == vcfLength)
+            return i;
+        if (i == 0)
+            vcf.delete();
+        else {
+            RandomAccessFile raf = new RandomAccessFile(vcf, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Record a successfully finished job with the current length of its VCF file.
+     *
+     * @param job
+     *            the {@link AlignmentJob}
+     * @throws IOException
+     */
+    public synchronized void complete(AlignmentJob job) throws IOException {
+        if (job.getHash() == null || job.getVcf() == null)
+            return;
+        out.write(job.getAltLocus() + "\t" + job.getBlock() + "\t" + job.getHash() + "\t" + job.getVcf().length()
+                + "\n");
+        out.flush();
+    }
+
+    /**
+     * Close the manifest file.
+     */
+    public synchronized void close() {
+        IOUtil.close(out);
+        out = null;
+    }
+
+    /**
+     * A finished block.
+     */
+    private static class Record {
+        final int block;
+        final String hash;
+        final long vcfLength;
+
+        Record(int block, String hash, long vcfLength) {
+            this.block = block;
+            this.hash = hash;
+            this.vcfLength = vcfLength;
+        }
+    }
+
+}
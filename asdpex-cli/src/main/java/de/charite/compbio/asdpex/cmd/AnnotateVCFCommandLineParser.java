@@ -45,6 +45,10 @@ public class AnnotateVCFCommandLineParser {
         options.addOption(Option.builder("s").longOpt("sql").desc("path to the final SQLite database").hasArg()
                 .required().build());
 
+        options.addOption(Option.builder("t").longOpt("threads")
+                .desc("number of contigs annotated in parallel, requires an indexed VCF file (default: 1)").hasArg()
+                .build());
+
         options.addOption(Option.builder("h").longOpt("help").desc("show this help").hasArg().build());
         // options.addOption(Option.builder("r").longOpt("ref").desc("reference fasta file with
         // index").hasArg().build());
@@ -104,6 +108,19 @@ public class AnnotateVCFCommandLineParser {
             printHelp(result);
         }
 
+        if (cmd.hasOption("threads")) {
+            try {
+                result.setThreads(Integer.parseInt(cmd.getOptionValue("threads")));
+            } catch (NumberFormatException e) {
+                result.error = "Invalid number of threads: " + cmd.getOptionValue("threads");
+                printHelp(result);
+            }
+            if (result.getThreads() < 1) {
+                result.error = "Number of threads has to be at least 1: -t";
+                printHelp(result);
+            }
+        }
+
         // if (cmd.hasOption("ref"))
         // result.setReferencePath(cmd.getOptionValue("ref"));
         // else {
@@ -5,39 +5,42 @@ import java.util.EnumSet;
 
 import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
 import de.charite.compbio.asdpex.exceptions.AnnotationException;
-import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.Options;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFFilterHeaderLine;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
 import htsjdk.variant.vcf.VCFHeaderLineCount;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
+import htsjdk.variant.vcf.VCFStandardHeaderLines;
 
 /**
  * Writer for the annotated varaints.
  *
  * @author Marten Jäger <marten.jaeger@charite.de>
  */
-public class AnnotatedVariantWriter {
+public class AnnotatedVariantWriter implements VariantContextSink {
     /** writer for annotated VariantContext objects */
     private final VariantContextWriter out;
 
-    public AnnotatedVariantWriter(VCFFileReader reader, ReferenceSequenceFile refFile,
+    public AnnotatedVariantWriter(VCFFileReader reader, SAMSequenceDictionary dictionary,
             Hg38altLociSeletorOptions options) {
         VariantContextWriterBuilder builder = new VariantContextWriterBuilder()
-                .setReferenceDictionary(refFile.getSequenceDictionary())
+                .setReferenceDictionary(dictionary)
                 .setOptions(EnumSet.of(Options.INDEX_ON_THE_FLY)).setOutputFile(options.getOutputVcf());
-        if (refFile.getSequenceDictionary() == null)
+        if (dictionary == null)
             builder.unsetOption(Options.INDEX_ON_THE_FLY);
         this.out = builder.build();
 
         VCFHeader header = new VCFHeader(reader.getFileHeader());
-        // header.setSequenceDictionary(refFile.getSequenceDictionary());
+        // header.setSequenceDictionary(dictionary);
         header.addMetaDataLine(new VCFHeaderLine("hg38altLociSelectorVersion", options.VERSION));
         header.addMetaDataLine(new VCFHeaderLine("hg38altLociSelectorCommand", "TODO ..."));
         // TODO add line with Command line call
@@ -47,6 +50,14 @@ public class AnnotatedVariantWriter {
                 VCFHeaderLineType.String, "most likely alternate locus id replacement"));
         header.addMetaDataLine(new VCFInfoHeaderLine(options.VCFALTLOCUSGENOTYPE, VCFHeaderLineCount.A,
                 VCFHeaderLineType.String, "most likely alternate locus replacement genotype"));
+        if (header.getNGenotypeSamples() > 1) {
+            // multi sample VCF - the assignments are made per sample
+            header.addMetaDataLine(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_FILTER_KEY));
+            header.addMetaDataLine(new VCFFormatHeaderLine(options.VCFALTLOCUSSTRING, 1, VCFHeaderLineType.String,
+                    "most likely alternate locus id replacement of the sample"));
+            header.addMetaDataLine(new VCFFormatHeaderLine(options.VCFALTLOCUSGENOTYPE, 1, VCFHeaderLineType.String,
+                    "most likely alternate locus replacement genotype of the sample"));
+        }
         this.out.writeHeader(header);
     }
 
@@ -58,6 +69,7 @@ public class AnnotatedVariantWriter {
      * @throws IOException
      *             when problem with I/O occurs
      */
+    @Override
     public void put(VariantContext vc) {
         out.add(vc);
     }
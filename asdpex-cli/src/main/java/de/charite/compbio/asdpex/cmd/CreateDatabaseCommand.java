@@ -5,12 +5,9 @@ package de.charite.compbio.asdpex.cmd;
 
 import java.io.File;
 import java.sql.SQLException;
-import java.util.ArrayList;
 
 import org.apache.commons.cli.ParseException;
 
-import com.google.common.collect.Lists;
-
 import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
 import de.charite.compbio.asdpex.db.DatabaseManger;
 import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
@@ -19,7 +16,6 @@ import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
 import de.charite.compbio.asdpex.io.parser.AccessionInfoParser;
 import de.charite.compbio.asdpex.io.parser.AltScaffoldPlacementParser;
 import de.charite.compbio.asdpex.io.parser.RegionInfoParser;
-import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFFileReader;
 
 /**
@@ -67,29 +63,74 @@ public class CreateDatabaseCommand extends AltLociSelectorCommand {
         System.out.println("[INFO] Create database");
         if (options == null)
             System.err.println("[ERROR] option = null");
+        // the unsafe bulk load pragmas are only used for a database file created from scratch
+        boolean newDatabase = !new File(options.getSqlitePath()).exists();
         DatabaseManger dbman = new DatabaseManger(options.getSqlitePath());
-        if (!options.getDataPath().equals(""))
-            createAlternativeScaffoldTables(dbman);
-        if (options.getAltlociVcf() != null)
-            createAsdpTable(dbman);
+        dbman.setBatchSize(options.getBatchSize());
+        boolean loaded = false;
+        try {
+            dbman.beginBulkLoad(newDatabase);
+            loaded = (options.getDataPath().equals("") || createAlternativeScaffoldTables(dbman))
+                    && (options.getAltlociVcf() == null || createAsdpTable(dbman));
+        } catch (SQLException e) {
+            System.err.println("[ERROR] failed to switch the database into bulk load mode");
+            e.printStackTrace();
+        } finally {
+            try {
+                // indexes are built once all data is inserted, nothing is kept after a failed upload
+                if (loaded) {
+                    dbman.endBulkLoad();
+                    if (newDatabase)
+                        setWalJournalMode(dbman);
+                } else
+                    dbman.abortBulkLoad();
+            } catch (SQLException e) {
+                System.err.println("[ERROR] failed to create the database indexes");
+                e.printStackTrace();
+                loaded = false;
+            } finally {
+                dbman.closeConnection();
+            }
+        }
+        if (!loaded)
+            throw new AltLociSelectorException("Failed to create the database: " + options.getSqlitePath());
+    }
 
+    /**
+     * Switch a new database to the WAL journal mode, so the readers and a writer do not block each other.
+     */
+    private void setWalJournalMode(DatabaseManger dbman) {
+        try {
+            dbman.setWalJournalMode();
+        } catch (SQLException e) {
+            System.out.println("[WARN] failed to switch the database to the WAL journal mode: " + e.getMessage());
+        }
     }
 
-    private void createAsdpTable(DatabaseManger dbman) {
+    /**
+     * @return <code>true</code> if the ASDPs are uploaded
+     */
+    private boolean createAsdpTable(DatabaseManger dbman) {
         // add the additional ASDP table
         dbman.addAsdpTable();
-        //
-        ArrayList<VariantContext> variantList = Lists
-                .newArrayList(new VCFFileReader(new File(this.options.getAltlociVcf())).iterator());
+        // stream the ASDPs from the VCF file
+        VCFFileReader reader = new VCFFileReader(new File(this.options.getAltlociVcf()), false);
         try {
-            dbman.uploadAsdp(variantList);
-            System.out.println("[INFO] Updated ASDPs");
+            System.out.println("[INFO] Updated ASDPs: " + dbman.uploadAsdp(reader));
+            return true;
         } catch (SQLException e) {
+            System.err.println("[ERROR] failed to upload the ASDPs");
             e.printStackTrace();
+            return false;
+        } finally {
+            reader.close();
         }
     }
 
-    private void createAlternativeScaffoldTables(DatabaseManger dbman) {
+    /**
+     * @return <code>true</code> if the accessions, regions and placements are uploaded
+     */
+    private boolean createAlternativeScaffoldTables(DatabaseManger dbman) {
         // check files
         dbman.createDatabase();
 
@@ -103,15 +144,19 @@ public class CreateDatabaseCommand extends AltLociSelectorCommand {
             dbman.uploadAccessionInfos(aip.parse());
             System.out.println("[INFO] Updated chromosome accessions");
         } catch (SQLException e) {
+            System.err.println("[ERROR] failed to upload the accessions");
             e.printStackTrace();
+            return false;
         }
         // regions
         RegionInfoParser rip = new RegionInfoParser(this.options.getGenomicRegionsDefinitionsPath());
-        System.out.println("[INFO] Updated regions");
         try {
             dbman.uploadRegionInfos(rip.parse());
+            System.out.println("[INFO] Updated regions");
         } catch (SQLException e) {
+            System.err.println("[ERROR] failed to upload the regions");
             e.printStackTrace();
+            return false;
         }
         // placement
         AltScaffoldPlacementParser aspp = new AltScaffoldPlacementParser(this.options.getAltScaffoldPlacementPath());
@@ -119,8 +164,11 @@ public class CreateDatabaseCommand extends AltLociSelectorCommand {
             dbman.uploadScaffoldPlacement(aspp.parse());
             System.out.println("[INFO] Updated alt scaffold placement");
         } catch (SQLException e) {
+            System.err.println("[ERROR] failed to upload the alt scaffold placement");
             e.printStackTrace();
+            return false;
         }
+        return true;
     }
 
 }
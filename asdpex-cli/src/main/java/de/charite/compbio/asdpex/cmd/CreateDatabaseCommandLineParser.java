@@ -12,6 +12,7 @@ import org.apache.commons.cli.ParseException;
 
 import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
 import de.charite.compbio.asdpex.Hg38altLociSeletorOptions.Command;
+import de.charite.compbio.asdpex.db.DatabaseManger;
 import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
 import de.charite.compbio.asdpex.util.HelpFormatter;
 
@@ -43,6 +44,9 @@ public final class CreateDatabaseCommandLineParser {
         options.addOption(Option.builder("a").longOpt("asdp").desc("path to the ASDP VCF file").hasArg().build());
         options.addOption(Option.builder("s").longOpt("sql").desc("path to the final SQLite database").hasArg()
                 .required().build());
+        options.addOption(Option.builder("b").longOpt("batch-size")
+                .desc("number of rows inserted per batch (default: " + DatabaseManger.DEFAULT_BATCH_SIZE + ")").hasArg()
+                .build());
         parser = new DefaultParser();
     }
 
@@ -76,6 +80,18 @@ public final class CreateDatabaseCommandLineParser {
             asdpexOptions.error = "Missing path to data folder: -d\nor ASDP file: -a";
             printHelp(asdpexOptions);
         }
+        if (cmd.hasOption("batch-size")) {
+            try {
+                asdpexOptions.setBatchSize(Integer.parseInt(cmd.getOptionValue("batch-size")));
+            } catch (NumberFormatException e) {
+                asdpexOptions.error = "Invalid batch size: " + cmd.getOptionValue("batch-size");
+                printHelp(asdpexOptions);
+            }
+            if (asdpexOptions.getBatchSize() < 1) {
+                asdpexOptions.error = "Batch size has to be at least 1: -b";
+                printHelp(asdpexOptions);
+            }
+        }
         return asdpexOptions;
 
     }
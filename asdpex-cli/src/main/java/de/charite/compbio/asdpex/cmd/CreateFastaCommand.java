@@ -7,7 +7,6 @@ import java.io.File;
 import java.io.IOException;
 
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.lang.ArrayUtils;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -21,14 +20,12 @@ import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
 import de.charite.compbio.asdpex.io.parser.AccessionInfoParser;
 import de.charite.compbio.asdpex.io.parser.AltScaffoldPlacementParser;
 import de.charite.compbio.asdpex.io.parser.RegionInfoParser;
-import de.charite.compbio.asdpex.io.writer.FastaFileWriter;
-import htsjdk.samtools.reference.ReferenceSequence;
-import htsjdk.samtools.reference.ReferenceSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
-import htsjdk.samtools.util.SequenceUtil;
+import de.charite.compbio.asdpex.reference.MappedReference;
+import de.charite.compbio.asdpex.util.IOUtil;
 
 /**
- * This command will create the fasta files later on used for the alignments.
+ * This command will create the fasta files later on used for the alignments. The regions are processed in parallel by
+ * the {@link ParallelFastaDriver}.
  *
  * @author Marten Jäger <marten.jaeger@charite.de>
  *
@@ -84,103 +81,23 @@ public class CreateFastaCommand extends AltLociSelectorCommand {
         ImmutableMap<String, RegionInfo> regMap = regParser.parse();
         System.out.println("[INFO] found " + regMap.size() + " regions definitions");
 
-        final ReferenceSequenceFile refFile = ReferenceSequenceFileFactory
-                .getReferenceSequenceFile(new File(options.getReferencePath()));
-        System.out.println(refFile.isIndexed());
-
-        for (AltScaffoldPlacementInfo scaffold : asMap.values()) {
-            AccessionInfo currentAI = aiMap.get(scaffold.getAltScafAcc());
-            RegionInfo currentReg = regMap.get(scaffold.getRegion());
-
-            // TODO ALL OF THIS SHOULD BE PUT INTO A FASTA-FACTORY
-
-            // sequence between region start and alt_loci start - to take from
-            // reference
-            int fiveprimeFillingStart = currentReg.getStart();
-            int fiveprimeFillingStop = scaffold.getParentStart() - 1; // since
-                                                                      // its
-                                                                      // inclusive
-
-            // sequence inserted from the alt loci - w/o the tails
-            int altLociStart = scaffold.getAltScafStart();
-            int altLociStop = scaffold.getAltScafStop();
-
-            // sequence between alt_loci stop and region stop - to take from
-            // reference
-            int threeprimeFillingStart = scaffold.getParentStop() + 1; // since
-                                                                       // its
-                                                                       // inclusive
-            int threeprimeFillingStop = currentReg.getStop();
-
-            byte[] altExtended = new byte[0];
-            // System.out.println(altExtended.length);
-
-            // add 5' Tail
-            if (fiveprimeFillingStart < fiveprimeFillingStop) {
-                ReferenceSequence ref = refFile.getSubsequenceAt("chr" + scaffold.getParentName(),
-                        fiveprimeFillingStart, fiveprimeFillingStop);
-                altExtended = ArrayUtils.addAll(altExtended, ref.getBases());
-            }
-            // System.out.println(altExtended.length);
-
-            String identifier = createFastaIdentifier(currentAI);
-            // add alt_loci
-            byte[] bases = refFile.getSubsequenceAt(identifier, altLociStart, altLociStop).getBases();
-
-            if (!scaffold.isStrand())
-                SequenceUtil.reverseComplement(bases);
-
-            altExtended = ArrayUtils.addAll(altExtended, bases);
-            // System.out.println(altExtended.length);
-
-            // add 3' tail
-            if (threeprimeFillingStart < threeprimeFillingStop) {
-                ReferenceSequence ref = refFile.getSubsequenceAt("chr" + scaffold.getParentName(),
-                        threeprimeFillingStart, threeprimeFillingStop);
-                altExtended = ArrayUtils.addAll(altExtended, ref.getBases());
-            }
-            // System.out.println(altExtended.length + "\t" +
-            // (currentReg.getStop() - currentReg.getStart() + 1));
-
-            try {
-                if (options.isSingleAltLociFile())
-                    FastaFileWriter.createFastaFile(
-                            new File(options.getFastaOutputPath() + "/altLoci_single", identifier + "_extended.fa"),
-                            identifier, altExtended, false);
-                else
-                    FastaFileWriter.createFastaFile(new File(options.getFastaOutputPath() + "/altLoci",
-                            currentReg.getRegionName() + "_altLoci.fa"), identifier, altExtended, true);
-
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            // now we also have to create the corresponding regions references
-            ReferenceSequence reg = refFile.getSubsequenceAt("chr" + scaffold.getParentName(), currentReg.getStart(),
-                    currentReg.getStop());
-            try {
-                FastaFileWriter.createFastaFile(
-                        new File(options.getFastaOutputPath() + "/regions", currentReg.getRegionName() + ".fa"),
-                        currentReg.getRegionName(), reg.getBases(), false);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        // the flanks of all alt_loci of a region are served from the cached windows of the mapped reference
+        final MappedReference refFile;
+        try {
+            refFile = new MappedReference(new File(options.getReferencePath()));
+        } catch (IOException e) {
+            throw new AltLociSelectorException("Failed to open the indexed reference: " + e.getMessage());
         }
-    }
 
-    /**
-     * Creates the Fasta identifier from accessionInfo file row in the format they are used in the reference fasta
-     * files: chr<1-22|X|Y|M>_<GenBank Accession.version with '.'->'v'>_alt<br>
-     * e.g.: chr21_GL383580v2_alt
-     * 
-     * @param info
-     * @return
-     */
-    private String createFastaIdentifier(AccessionInfo info) {
-        StringBuilder identifier = new StringBuilder();
-        identifier.append("chr").append(info.getChromosome()).append("_")
-                .append(info.getGenbankAccessionVersion().replace('.', 'v')).append("_alt");
-        return identifier.toString();
+        // regions are processed in parallel, the flanks of all alt_loci of a region are taken from the region
+        System.out.println("[INFO] Create fastA files of " + asMap.size() + " alt_loci with " + options.getThreads()
+                + " threads");
+        try {
+            new ParallelFastaDriver(refFile, options.getFastaOutputPath(), options.isSingleAltLociFile(),
+                    options.isFastaBgzf(), options.isFastaPacked()).run(aiMap, asMap, regMap, options.getThreads());
+        } finally {
+            IOUtil.close(refFile);
+        }
     }
 
 }
@@ -42,6 +42,10 @@ public final class CreateFastaCommandLineParser {
         options.addOption("o", "out-dir", true, "output folder for created fastA files, defaults to \"../fasta\"");
         options.addOption("s", "single", false,
                 "split the extended alternative loci into single files (default: true)");
+        options.addOption("z", "bgzf", false, "write BGZF compressed fastA files (.fa.gz) with .fai and .gzi index");
+        options.addOption("t", "threads", true, "number of regions processed in parallel (default: 1)");
+        options.addOption("p", "packed", false,
+                "also write all sequences 2-bit packed into \"" + ParallelFastaDriver.PACKED_FILE + "\"");
         parser = new DefaultParser();
     }
 
@@ -70,6 +74,22 @@ public final class CreateFastaCommandLineParser {
         if (cmd.hasOption("single"))
             asdpexOptions.setSingleAltLociFile(true);
 
+        if (cmd.hasOption("bgzf"))
+            asdpexOptions.setFastaBgzf(true);
+
+        if (cmd.hasOption("packed"))
+            asdpexOptions.setFastaPacked(true);
+
+        if (cmd.hasOption("threads")) {
+            try {
+                asdpexOptions.setThreads(Integer.parseInt(cmd.getOptionValue("threads")));
+            } catch (NumberFormatException e) {
+                printHelp(asdpexOptions, "Failure: invalid number of threads: " + cmd.getOptionValue("threads"));
+            }
+            if (asdpexOptions.getThreads() < 1)
+                printHelp(asdpexOptions, "Failure: number of threads has to be at least 1: -t");
+        }
+
         return asdpexOptions;
     }
 
@@ -40,6 +40,8 @@ public class CreateSeedCommandLineParser {
                 "folder with NCBI alignment gff files, defaults to \"data/alignments\"");
         options.addOption("s", "seed-dir", true,
                 "folder where the seed info files will be stored, defaults to \"seed\"");
+        options.addOption("b", "binary", false, "also write the seeds in the binary format (.seed)");
+        options.addOption("t", "threads", true, "number of alt. loci processed in parallel (default: 1)");
         parser = new DefaultParser();
     }
 
@@ -61,6 +63,17 @@ public class CreateSeedCommandLineParser {
             result.setAlignmentPath(cmd.getOptionValue("aln-dir"));
         if (cmd.hasOption("seed-dir"))
             result.setSeedInfoPath(cmd.getOptionValue("seed-dir"));
+        if (cmd.hasOption("binary"))
+            result.setSeedBinary(true);
+        if (cmd.hasOption("threads")) {
+            try {
+                result.setThreads(Integer.parseInt(cmd.getOptionValue("threads")));
+            } catch (NumberFormatException e) {
+                throw new ParseException("invalid number of threads: " + cmd.getOptionValue("threads"));
+            }
+            if (result.getThreads() < 1)
+                throw new ParseException("number of threads has to be at least 1: -t");
+        }
 
         return result;
     }
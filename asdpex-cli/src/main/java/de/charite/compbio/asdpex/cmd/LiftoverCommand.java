@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.cli.ParseException;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
+import de.charite.compbio.asdpex.data.LiftoverIndex;
+import de.charite.compbio.asdpex.data.NCBIgffAlignment;
+import de.charite.compbio.asdpex.db.DatabaseManger;
+import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
+import de.charite.compbio.asdpex.exceptions.CommandLineParsingException;
+import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
+import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentCache;
+import de.charite.compbio.asdpex.reference.MappedReference;
+import de.charite.compbio.asdpex.util.IOUtil;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
+
+/**
+ * Lifts the records of a VCF file from the alternate loci to the primary assembly or, with <code>--to-alt</code>, from
+ * the primary assembly to all alternate loci covering them. The coordinates are lifted with a {@link LiftoverIndex}
+ * build from the NCBI GFF alignments of the alternate loci. The reference alleles of the lifted records are checked
+ * against the reference fastA file, records with a mismatch are rejected. The records are streamed, but the output is
+ * not sorted.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class LiftoverCommand extends AltLociSelectorCommand {
+
+    public LiftoverCommand(String[] args) throws CommandLineParsingException, HelpRequestedException {
+        super(args);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see de.charite.compbio.asdpex.cmd.AltLociSelectorCommand#parseCommandLine(java.lang.String[])
+     */
+    @Override
+    protected Hg38altLociSeletorOptions parseCommandLine(String[] args)
+            throws CommandLineParsingException, HelpRequestedException {
+        try {
+            return new LiftoverCommandLineParser().parse(args);
+        } catch (ParseException e) {
+            throw new CommandLineParsingException("Could not parse the command line.", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see de.charite.compbio.asdpex.cmd.AltLociSelectorCommand#run()
+     */
+    @Override
+    public void run() throws AltLociSelectorException {
+        final LiftoverIndex.Direction direction = options.isLiftToAlt() ? LiftoverIndex.Direction.TO_ALT
+                : LiftoverIndex.Direction.TO_PRIMARY;
+        System.out.println("[INFO] Lifting VCF records " + (options.isLiftToAlt()
+                ? "from the primary assembly to the alternate loci" : "from the alternate loci to the primary assembly"));
+        LiftoverIndex index = buildIndex();
+
+        File outFile = new File(options.getOutputVcf());
+        if (outFile.getAbsoluteFile().getParentFile() != null)
+            IOUtil.checkOutFolder(outFile.getAbsoluteFile().getParentFile());
+
+        final MappedReference reference;
+        try {
+            reference = new MappedReference(new File(options.getReferencePath()));
+        } catch (IOException e) {
+            throw new AltLociSelectorException("Failed to open the reference: " + options.getReferencePath(), e);
+        }
+        final SAMSequenceDictionary dictionary = reference.getSequenceDictionary();
+
+        VCFFileReader reader = new VCFFileReader(new File(options.getInputVcf()), false);
+        CloseableIterator<VariantContext> iterator = reader.iterator();
+        VariantContextWriter writer = null;
+        try {
+            VCFHeader header = new VCFHeader(reader.getFileHeader());
+            if (dictionary != null)
+                header.setSequenceDictionary(dictionary);
+            // the lifted records are not sorted, so no index
+            VariantContextWriterBuilder builder = new VariantContextWriterBuilder().setOutputFile(outFile)
+                    .setOptions(EnumSet.noneOf(Options.class));
+            if (dictionary != null)
+                builder.setReferenceDictionary(dictionary);
+            writer = builder.build();
+            writer.writeHeader(header);
+
+            final VariantContextWriter out = writer;
+            final TreeMap<String, Integer> rejected = new TreeMap<>();
+            int lifted = index.lift(iterator, direction, reference, new LiftoverIndex.Sink() {
+                @Override
+                public void lifted(VariantContext vc) {
+                    out.add(vc);
+                }
+
+                @Override
+                public void rejected(VariantContext vc, String reason) {
+                    Integer n = rejected.get(reason);
+                    rejected.put(reason, n == null ? 1 : n + 1);
+                }
+            });
+            System.out.println("[INFO] lifted " + lifted + " records");
+            for (Map.Entry<String, Integer> e : rejected.entrySet())
+                System.out.println("[INFO] rejected " + e.getValue() + " records: " + e.getKey());
+        } finally {
+            iterator.close();
+            reader.close();
+            if (writer != null)
+                writer.close();
+            IOUtil.close(reference);
+        }
+        System.out.println("[INFO] written: " + outFile);
+    }
+
+    /**
+     * Build the {@link LiftoverIndex} from the GFF alignments of all alternate loci, named by their fastA identifiers.
+     */
+    private LiftoverIndex buildIndex() throws AltLociSelectorException {
+        DatabaseManger dbman = new DatabaseManger(options.getSqlitePath());
+        NCBIgffAlignmentCache gffCache = new NCBIgffAlignmentCache(new File(options.getAlignmentPath()));
+        LiftoverIndex.Builder builder = new LiftoverIndex.Builder();
+        int n = 0;
+        try {
+            ImmutableList<AltScaffoldPlacementInfo> placements = dbman.getAltScaffoldPlacementInfos();
+            for (AltScaffoldPlacementInfo placement : placements) {
+                String altContig;
+                String primaryContig;
+                File gff;
+                try {
+                    altContig = dbman.getFastaIdentifierAltLocus(placement.getAltScafAcc());
+                    primaryContig = dbman.getFastaIdentifierReference(placement.getAltScafAcc());
+                    gff = new File(options.getAlignmentPath(),
+                            dbman.getGffIdentifier(placement.getAltScafAcc()) + ".gff");
+                } catch (SQLException e) {
+                    System.out.println("[WARN] skipping - failed to generate the identifiers for alternate locus: "
+                            + placement.getAltScafAcc());
+                    continue;
+                }
+                if (!gff.exists()) {
+                    System.out.println("[WARN] skipping - missing GFF file: " + gff);
+                    continue;
+                }
+                for (NCBIgffAlignment alignment : gffCache.get(gff))
+                    builder.add(altContig, primaryContig, alignment);
+                n++;
+            }
+        } catch (SQLException e) {
+            throw new AltLociSelectorException(
+                    "Failed to load the alt_scaffold_placements from database: " + options.getSqlitePath());
+        } finally {
+            dbman.closeConnection();
+            gffCache.close();
+        }
+        System.out.println("[INFO] loaded the alignments of " + n + " alternate loci");
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
+import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
+import de.charite.compbio.asdpex.util.HelpFormatter;
+
+/**
+ * Command line parser of the <code>liftover</code> command.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class LiftoverCommandLineParser {
+    /** options representation for the Apache commons command line parser */
+    protected Options options;
+    /** the Apache commons command line parser */
+    protected CommandLineParser parser;
+
+    public LiftoverCommandLineParser() {
+        initializeParser();
+    }
+
+    private void initializeParser() {
+        options = new Options();
+
+        options.addOption(
+                Option.builder("v").longOpt("vcf").desc("VCF file to be lifted (mandatory)").hasArg().required().build());
+        options.addOption(Option.builder("o").longOpt("out").desc("VCF output file with the lifted records (mandatory)")
+                .hasArg().required().build());
+        options.addOption(Option.builder("d").longOpt("data-dir")
+                .desc("folder with the downloaded data files and the alignments (mandatory)").hasArg().required()
+                .build());
+        options.addOption(Option.builder("s").longOpt("sql").desc("path to the final SQLite database (mandatory)")
+                .hasArg().required().build());
+        options.addOption(Option.builder("a").longOpt("to-alt")
+                .desc("lift from the primary assembly to the alternate loci (default: alternate loci to primary)")
+                .build());
+        options.addOption(Option.builder("h").longOpt("help").desc("show this help").build());
+
+        parser = new DefaultParser();
+    }
+
+    public Hg38altLociSeletorOptions parse(String[] args) throws ParseException, HelpRequestedException {
+        // Fill the resulting Options.
+        Hg38altLociSeletorOptions result = new Hg38altLociSeletorOptions();
+        result.command = Hg38altLociSeletorOptions.Command.LIFTOVER;
+
+        CommandLine cmd = null;
+        try {
+            cmd = parser.parse(options, args);
+        } catch (ParseException e) {
+            result.error = e.getMessage();
+            printHelp(result);
+        }
+
+        if (cmd.hasOption("help")) {
+            printHelp(result);
+            throw new HelpRequestedException();
+        }
+
+        if (cmd.hasOption("vcf"))
+            result.setInputVcf(cmd.getOptionValue("vcf"));
+        if (cmd.hasOption("out"))
+            result.setOutputVcf(cmd.getOptionValue("out"));
+        if (cmd.hasOption("data-dir"))
+            result.setDataPath(cmd.getOptionValue("data-dir"));
+        if (cmd.hasOption("sql"))
+            result.setSqlitePath(cmd.getOptionValue("sql"));
+        if (cmd.hasOption("to-alt"))
+            result.setLiftToAlt(true);
+
+        return result;
+    }
+
+    private void printHelp(Hg38altLociSeletorOptions options) {
+        org.apache.commons.cli.HelpFormatter formatter = new org.apache.commons.cli.HelpFormatter();
+        formatter.printHelp("java -jar asdpex.jar " + options.command.toString(), "options:", this.options,
+                options.error, true);
+        System.exit(HelpFormatter.Failure.MISSING_VCF.ordinal());
+    }
+}
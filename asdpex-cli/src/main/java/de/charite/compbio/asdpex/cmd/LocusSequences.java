@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
+import de.charite.compbio.asdpex.data.RegionInfo;
+import de.charite.compbio.asdpex.reference.MappedReference;
+import de.charite.compbio.asdpex.reference.PackedSequence;
+import de.charite.compbio.asdpex.reference.PackedSequenceStore;
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * The sequences of the alignment blocks of an alternate locus and its reference chromosome. By default the bases are
+ * extracted from the {@link MappedReference}. If the {@link PackedSequenceStore} written by <code>create-fa -p</code>
+ * holds the extended alternate locus and the region, the bases are decoded from the packed sequences instead: the
+ * alternate locus from its extended sequence and the reference from the region. Ranges outside of the packed sequences
+ * are still taken from the {@link MappedReference}.<br>
+ * The packed sequences are read-only, so an instance can be used by several threads.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+class LocusSequences {
+    private final MappedReference reference;
+    /** fasta identifier of the alternate locus */
+    private final String altId;
+    /** fasta identifier of the reference chromosome */
+    private final String refId;
+    /** the extended alternate locus, <code>null</code> if not packed */
+    private final PackedSequence extended;
+    /** 0-based start of the alternate locus in the extended sequence */
+    private final int altOffset;
+    private final int altScafStart;
+    private final int altScafStop;
+    /** <code>false</code> if the extended sequence holds the reverse complement of the alternate locus */
+    private final boolean altScafStrand;
+    /** the region on the reference chromosome, <code>null</code> if not packed */
+    private final PackedSequence region;
+    /** 1-based start of the region on the reference chromosome */
+    private final int regionStart;
+
+    /**
+     * Sequences extracted from the {@link MappedReference} only.
+     *
+     * @param reference
+     *            the {@link MappedReference}
+     * @param altId
+     *            fasta identifier of the alternate locus
+     * @param refId
+     *            fasta identifier of the reference chromosome
+     */
+    LocusSequences(MappedReference reference, String altId, String refId) {
+        this(reference, altId, refId, null, null, null, null);
+    }
+
+    private LocusSequences(MappedReference reference, String altId, String refId, PackedSequence extended,
+            AltScaffoldPlacementInfo placement, PackedSequence region, RegionInfo regionInfo) {
+        this.reference = reference;
+        this.altId = altId;
+        this.refId = refId;
+        this.extended = extended;
+        this.region = region;
+        if (extended != null) {
+            this.altOffset = ParallelFastaDriver.getFivePrimeFlank(regionInfo, placement);
+            this.altScafStart = placement.getAltScafStart();
+            this.altScafStop = placement.getAltScafStop();
+            this.altScafStrand = placement.isStrand();
+        } else {
+            this.altOffset = 0;
+            this.altScafStart = 0;
+            this.altScafStop = -1;
+            this.altScafStrand = true;
+        }
+        this.regionStart = region != null ? regionInfo.getStart() : 0;
+    }
+
+    /**
+     * Use the packed sequences of the alternate locus and the region, if the store holds them.
+     *
+     * @param store
+     *            the {@link PackedSequenceStore} of <code>create-fa -p</code>
+     * @param placement
+     *            the {@link AltScaffoldPlacementInfo} of the alternate locus
+     * @param regionInfo
+     *            the {@link RegionInfo} of the region of the placement, <code>null</code> if unknown
+     * @return the {@link LocusSequences}, reading from the packed sequences as far as possible
+     */
+    LocusSequences withPacked(PackedSequenceStore store, AltScaffoldPlacementInfo placement, RegionInfo regionInfo) {
+        if (regionInfo == null)
+            return this;
+        PackedSequence region = store.get(regionInfo.getRegionName());
+        if (region != null && region.length() != regionInfo.getStop() - regionInfo.getStart() + 1)
+            region = null;
+        // the extended alternate locus is assembled like in create-fa, so the lengths have to add up
+        PackedSequence extended = store.get(altId);
+        if (extended != null && extended.length() != ParallelFastaDriver.getFivePrimeFlank(regionInfo, placement)
+                + placement.getAltScafStop() - placement.getAltScafStart() + 1
+                + ParallelFastaDriver.getThreePrimeFlank(regionInfo, placement))
+            extended = null;
+        return new LocusSequences(reference, altId, refId, extended, placement, region, regionInfo);
+    }
+
+    /**
+     * @return <code>true</code> if any bases are decoded from packed sequences
+     */
+    boolean isPacked() {
+        return extended != null || region != null;
+    }
+
+    /**
+     * @param start
+     *            inclusive, 1-based start on the alternate locus
+     * @param stop
+     *            inclusive, 1-based stop on the alternate locus
+     * @param strand
+     *            <code>false</code> for the reverse complement
+     * @return the bases of the alternate locus
+     */
+    byte[] getAltBases(int start, int stop, boolean strand) {
+        if (extended == null || start < altScafStart || stop > altScafStop)
+            return reference.getBases(altId, start, stop, strand);
+        int from = altScafStrand ? altOffset + start - altScafStart : altOffset + altScafStop - stop;
+        return decode(extended, from, stop - start + 1, strand == altScafStrand);
+    }
+
+    /**
+     * @param start
+     *            inclusive, 1-based start on the reference chromosome
+     * @param stop
+     *            inclusive, 1-based stop on the reference chromosome
+     * @param strand
+     *            <code>false</code> for the reverse complement
+     * @return the bases of the reference chromosome
+     */
+    byte[] getRefBases(int start, int stop, boolean strand) {
+        if (region == null || start < regionStart || stop >= regionStart + region.length())
+            return reference.getBases(refId, start, stop, strand);
+        return decode(region, start - regionStart, stop - start + 1, strand);
+    }
+
+    private static byte[] decode(PackedSequence sequence, int from, int length, boolean strand) {
+        byte[] bases = new byte[length];
+        sequence.copyTo(from, length, bases, 0);
+        if (!strand)
+            SequenceUtil.reverseComplement(bases);
+        return bases;
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.PriorityQueue;
+
+import org.apache.commons.cli.ParseException;
+
+import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
+import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
+import de.charite.compbio.asdpex.exceptions.CommandLineParsingException;
+import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
+import de.charite.compbio.asdpex.util.IOUtil;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
+
+/**
+ * Merges the VCF files of the alternate loci created by the <code>align</code> command into a single bgzipped and
+ * tabix indexed VCF file. The files are k-way merged with a heap in the contig order of the reference, so the records
+ * are streamed and never held in memory all at once. In the same pass the records are split into a file with the SNVs
+ * and small indels (<code>.SNV.vcf.gz</code>) and a file with the structural variants (<code>.SV.vcf.gz</code>), i.e.
+ * the records with an SVLEN.<br>
+ * The aligner writes the variants of an alternate locus almost but not strictly sorted, so each file is read through a
+ * small reorder window of {@link #WINDOW} bases.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class MergeCommand extends AltLociSelectorCommand {
+    /** maximal distance in bases a record may be placed before a preceding record of the same file */
+    private static final int WINDOW = 1000;
+
+    public MergeCommand(String[] args) throws CommandLineParsingException, HelpRequestedException {
+        super(args);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see de.charite.compbio.asdpex.cmd.AltLociSelectorCommand#parseCommandLine(java.lang.String[])
+     */
+    @Override
+    protected Hg38altLociSeletorOptions parseCommandLine(String[] args)
+            throws CommandLineParsingException, HelpRequestedException {
+        try {
+            return new MergeCommandLineParser().parse(args);
+        } catch (ParseException e) {
+            throw new CommandLineParsingException("Could not parse the command line.", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see de.charite.compbio.asdpex.cmd.AltLociSelectorCommand#run()
+     */
+    @Override
+    public void run() throws AltLociSelectorException {
+        System.out.println("[INFO] Merging VCF files");
+        final ReferenceSequenceFile refFile = ReferenceSequenceFileFactory
+                .getReferenceSequenceFile(new File(options.getReferencePath()));
+        final SAMSequenceDictionary dictionary = refFile.getSequenceDictionary();
+        if (dictionary == null)
+            throw new AltLociSelectorException("Missing sequence dictionary of the reference: "
+                    + options.getReferencePath());
+
+        File[] files = new File(options.getResultsFolder()).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".vcf");
+            }
+        });
+        if (files == null)
+            throw new AltLociSelectorException("Failed to list the VCF folder: " + options.getResultsFolder());
+        Arrays.sort(files);
+
+        // output files
+        String base = options.getOutputVcf();
+        if (base.endsWith(".gz"))
+            base = base.substring(0, base.length() - 3);
+        if (base.endsWith(".vcf"))
+            base = base.substring(0, base.length() - 4);
+        File allFile = new File(base + ".vcf.gz");
+        File snvFile = new File(base + ".SNV.vcf.gz");
+        File svFile = new File(base + ".SV.vcf.gz");
+        if (allFile.getAbsoluteFile().getParentFile() != null)
+            IOUtil.checkOutFolder(allFile.getAbsoluteFile().getParentFile());
+
+        ArrayList<VcfSource> sources = new ArrayList<>();
+        VariantContextWriter all = null;
+        VariantContextWriter snv = null;
+        VariantContextWriter sv = null;
+        try {
+            VCFHeader header = null;
+            for (File file : files) {
+                if (file.length() == 0) {
+                    System.out.println("[WARN] skipping empty VCF file: " + file.getName());
+                    continue;
+                }
+                VcfSource source = new VcfSource(file, sources.size(), dictionary);
+                sources.add(source);
+                if (header == null)
+                    header = source.getHeader();
+            }
+            if (header == null)
+                throw new AltLociSelectorException("No VCF files found in: " + options.getResultsFolder());
+            System.out.println("[INFO] merging " + sources.size() + " VCF files");
+
+            header = new VCFHeader(header);
+            header.setSequenceDictionary(dictionary);
+            all = createWriter(allFile, dictionary, header);
+            snv = createWriter(snvFile, dictionary, header);
+            sv = createWriter(svFile, dictionary, header);
+
+            final PriorityQueue<VcfSource> heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                    new Comparator<VcfSource>() {
+                        @Override
+                        public int compare(VcfSource o1, VcfSource o2) {
+                            int result = Integer.compare(o1.peekContig(), o2.peekContig());
+                            if (result == 0)
+                                result = Integer.compare(o1.peek().getStart(), o2.peek().getStart());
+                            if (result == 0)
+                                result = Integer.compare(o1.getIndex(), o2.getIndex());
+                            return result;
+                        }
+                    });
+            for (VcfSource source : sources)
+                if (source.hasNext())
+                    heap.add(source);
+
+            int nAll = 0;
+            int nSv = 0;
+            while (!heap.isEmpty()) {
+                VcfSource source = heap.poll();
+                VariantContext vc = source.next();
+                all.add(vc);
+                nAll++;
+                if (vc.hasAttribute("SVLEN")) {
+                    sv.add(vc);
+                    nSv++;
+                } else
+                    snv.add(vc);
+                if (source.hasNext())
+                    heap.add(source);
+            }
+            System.out.println("[INFO] merged " + nAll + " records, " + (nAll - nSv) + " SNVs and small indels, "
+                    + nSv + " SVs");
+        } finally {
+            for (VcfSource source : sources)
+                source.close();
+            if (all != null)
+                all.close();
+            if (snv != null)
+                snv.close();
+            if (sv != null)
+                sv.close();
+        }
+        System.out.println("[INFO] written: " + allFile + ", " + snvFile + ", " + svFile);
+    }
+
+    /**
+     * Create a bgzipped VCF writer with a tabix index created on the fly.
+     */
+    private static VariantContextWriter createWriter(File file, SAMSequenceDictionary dictionary, VCFHeader header) {
+        VariantContextWriter writer = new VariantContextWriterBuilder().setReferenceDictionary(dictionary)
+                .setOptions(EnumSet.of(Options.INDEX_ON_THE_FLY)).setOutputFile(file).build();
+        writer.writeHeader(header);
+        return writer;
+    }
+
+    /**
+     * The records of a single VCF file in contig and position order. Records are read ahead until the start of the
+     * last read record is more than {@link MergeCommand#WINDOW} bases behind the first buffered one and sorted by
+     * insertion into the buffer, keeping the file order of records with the same start.
+     */
+    private static class VcfSource {
+        private final File file;
+        private final int index;
+        private final SAMSequenceDictionary dictionary;
+        private final VCFFileReader reader;
+        private final CloseableIterator<VariantContext> iterator;
+        /** read ahead records in order */
+        private final ArrayDeque<VariantContext> buffer = new ArrayDeque<>();
+        /** contig index of the first buffered record */
+        private int contig = -1;
+        /** the last returned record */
+        private VariantContext last;
+
+        VcfSource(File file, int index, SAMSequenceDictionary dictionary) {
+            this.file = file;
+            this.index = index;
+            this.dictionary = dictionary;
+            this.reader = new VCFFileReader(file, false);
+            this.iterator = reader.iterator();
+        }
+
+        VCFHeader getHeader() {
+            return reader.getFileHeader();
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        boolean hasNext() throws AltLociSelectorException {
+            fill();
+            return !buffer.isEmpty();
+        }
+
+        VariantContext peek() {
+            return buffer.peekFirst();
+        }
+
+        int peekContig() {
+            return contig;
+        }
+
+        VariantContext next() throws AltLociSelectorException {
+            fill();
+            last = buffer.pollFirst();
+            contig = buffer.isEmpty() ? -1 : contigIndex(buffer.peekFirst());
+            return last;
+        }
+
+        private void fill() throws AltLociSelectorException {
+            while (iterator.hasNext() && (buffer.isEmpty() || !isComplete())) {
+                VariantContext vc = iterator.next();
+                int vcContig = contigIndex(vc);
+                if (last != null && (vcContig < contigIndex(last)
+                        || (vcContig == contigIndex(last) && vc.getStart() < last.getStart())))
+                    throw new AltLociSelectorException("VCF file " + file.getName() + " is not sorted: " + vc.getContig()
+                            + ":" + vc.getStart() + " after " + last.getContig() + ":" + last.getStart());
+                insert(vc, vcContig);
+            }
+            if (!buffer.isEmpty())
+                contig = contigIndex(buffer.peekFirst());
+        }
+
+        /**
+         * @return <code>true</code> if no later record can be placed before the first buffered one
+         */
+        private boolean isComplete() throws AltLociSelectorException {
+            VariantContext first = buffer.peekFirst();
+            VariantContext tail = buffer.peekLast();
+            return contigIndex(tail) != contigIndex(first) || tail.getStart() - first.getStart() > WINDOW;
+        }
+
+        private void insert(VariantContext vc, int vcContig) throws AltLociSelectorException {
+            if (buffer.isEmpty() || !isBefore(vc, vcContig, buffer.peekLast())) {
+                buffer.addLast(vc);
+                return;
+            }
+            // out of order, the buffer holds the records of a small window only
+            ArrayList<VariantContext> tail = new ArrayList<>();
+            while (!buffer.isEmpty() && isBefore(vc, vcContig, buffer.peekLast()))
+                tail.add(buffer.pollLast());
+            buffer.addLast(vc);
+            for (int i = tail.size() - 1; i >= 0; i--)
+                buffer.addLast(tail.get(i));
+        }
+
+        private boolean isBefore(VariantContext vc, int vcContig, VariantContext other)
+                throws AltLociSelectorException {
+            int otherContig = contigIndex(other);
+            return vcContig < otherContig || (vcContig == otherContig && vc.getStart() < other.getStart());
+        }
+
+        private int contigIndex(VariantContext vc) throws AltLociSelectorException {
+            int idx = dictionary.getSequenceIndex(vc.getContig());
+            if (idx < 0)
+                throw new AltLociSelectorException(
+                        "Unknown contig " + vc.getContig() + " in VCF file " + file.getName());
+            return idx;
+        }
+
+        void close() {
+            iterator.close();
+            reader.close();
+        }
+    }
+
+}
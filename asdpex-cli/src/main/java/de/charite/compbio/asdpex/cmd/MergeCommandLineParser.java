@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
+import de.charite.compbio.asdpex.exceptions.HelpRequestedException;
+import de.charite.compbio.asdpex.util.HelpFormatter;
+
+/**
+ * Command line parser of the <code>merge</code> command.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class MergeCommandLineParser {
+    /** options representation for the Apache commons command line parser */
+    protected Options options;
+    /** the Apache commons command line parser */
+    protected CommandLineParser parser;
+
+    public MergeCommandLineParser() {
+        initializeParser();
+    }
+
+    private void initializeParser() {
+        options = new Options();
+
+        options.addOption(Option.builder("i").longOpt("in-dir")
+                .desc("folder with the VCF files of the align command \"results\" (mandatory)").hasArg().required()
+                .build());
+        options.addOption(Option.builder("o").longOpt("out")
+                .desc("merged VCF output file, the SNVs and SVs are written next to it (mandatory)").hasArg()
+                .required().build());
+        options.addOption(Option.builder("d").longOpt("data-dir")
+                .desc("folder with the downloaded data files, used for the contig order (mandatory)").hasArg()
+                .required().build());
+        options.addOption(Option.builder("h").longOpt("help").desc("show this help").build());
+
+        parser = new DefaultParser();
+    }
+
+    public Hg38altLociSeletorOptions parse(String[] args) throws ParseException, HelpRequestedException {
+        // Fill the resulting Options.
+        Hg38altLociSeletorOptions result = new Hg38altLociSeletorOptions();
+        result.command = Hg38altLociSeletorOptions.Command.MERGE;
+
+        CommandLine cmd = null;
+        try {
+            cmd = parser.parse(options, args);
+        } catch (ParseException e) {
+            result.error = e.getMessage();
+            printHelp(result);
+        }
+
+        if (cmd.hasOption("help")) {
+            printHelp(result);
+            throw new HelpRequestedException();
+        }
+
+        if (cmd.hasOption("in-dir"))
+            result.setResultsFolder(cmd.getOptionValue("in-dir"));
+        if (cmd.hasOption("out"))
+            result.setOutputVcf(cmd.getOptionValue("out"));
+        if (cmd.hasOption("data-dir"))
+            result.setDataPath(cmd.getOptionValue("data-dir"));
+
+        return result;
+    }
+
+    private void printHelp(Hg38altLociSeletorOptions options) {
+        org.apache.commons.cli.HelpFormatter formatter = new org.apache.commons.cli.HelpFormatter();
+        formatter.printHelp("java -jar asdpex.jar " + options.command.toString(), "options:", this.options,
+                options.error, true);
+        System.exit(HelpFormatter.Failure.MISSING_VCF.ordinal());
+    }
+}
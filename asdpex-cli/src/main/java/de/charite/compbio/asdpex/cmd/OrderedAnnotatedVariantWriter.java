@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+/**
+ * Ordered front end for the {@link AnnotatedVariantWriter} or any other {@link VariantContextSink}.<br>
+ * Workers annotate the contigs independently and hand in the annotated variants of each contig as a
+ * {@link ContigChunk}. The chunks are written in the order of the contigs (e.g. the sequence dictionary) regardless of
+ * the order in which the workers finish. The chunk at the head of the order is written straight through, only the
+ * variants of the following chunks are buffered until their predecessors are written. The number of chunks in flight
+ * (running or waiting to be written) is bounded to limit the memory footprint. After {@link #fail()} nothing more is
+ * written.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class OrderedAnnotatedVariantWriter {
+    /** the underlying writer, closed by the owner */
+    private final VariantContextSink out;
+    /** opened chunks, running or finished, which are not completely written */
+    private final HashMap<Integer, ContigChunk> chunks = new HashMap<>();
+    /** permits for chunks in flight */
+    private final Semaphore inFlight;
+    /** index of the next chunk to be written, i.e. the head */
+    private int next = 0;
+    /** set if the annotation of a chunk failed */
+    private volatile boolean failed = false;
+
+    /**
+     * @param out
+     *            the {@link VariantContextSink}, e.g. the {@link AnnotatedVariantWriter}
+     * @param maxInFlight
+     *            maximal number of chunks running or waiting to be written
+     */
+    public OrderedAnnotatedVariantWriter(VariantContextSink out, int maxInFlight) {
+        this.out = out;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Open a new chunk. Blocks until the number of chunks in flight drops below the limit. The chunks have to be
+     * opened in output order.
+     *
+     * @param index
+     *            the position of the chunk in the output (0-based)
+     * @return a new and empty {@link ContigChunk}
+     * @throws InterruptedException
+     */
+    public ContigChunk open(int index) throws InterruptedException {
+        inFlight.acquire();
+        ContigChunk chunk = new ContigChunk(out, index);
+        synchronized (this) {
+            chunks.put(index, chunk);
+            if (index == next)
+                flush(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Hand in a finished chunk. All directly following finished chunks are written out and the next running chunk
+     * becomes the head, which is written straight through from then on.
+     *
+     * @param chunk
+     *            the finished {@link ContigChunk}
+     */
+    public synchronized void complete(ContigChunk chunk) {
+        chunk.finished = true;
+        ContigChunk head;
+        while ((head = chunks.get(next)) != null && head.finished) {
+            // the variants of a finished successor were buffered
+            flush(head);
+            chunks.remove(next++);
+            inFlight.release();
+        }
+        if (head != null)
+            flush(head);
+    }
+
+    /**
+     * Write the buffered variants of the head chunk and switch it to write through, or drop them after a failure.
+     */
+    private void flush(ContigChunk head) {
+        if (failed)
+            head.drop();
+        else
+            head.writeThrough();
+    }
+
+    /**
+     * Stop writing, the variants of all open chunks are dropped, e.g. if the annotation of a contig failed.
+     */
+    public synchronized void fail() {
+        failed = true;
+        for (ContigChunk chunk : chunks.values())
+            chunk.drop();
+    }
+
+    /**
+     * @return <code>true</code> if {@link #fail()} was called
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * The annotated variants of a single contig, buffered until the chunk becomes the head of the output.
+     *
+     * @author Marten Jäger <marten.jaeger@charite.de>
+     *
+     */
+    public static class ContigChunk implements VariantContextSink {
+        private final VariantContextSink out;
+        private final int index;
+        private final List<VariantContext> variants = new ArrayList<>();
+        /** the chunk is the head, the variants are written straight through */
+        private boolean direct = false;
+        /** the variants are dropped */
+        private boolean dropped = false;
+        /** the annotation of the contig is done, guarded by the {@link OrderedAnnotatedVariantWriter} */
+        private boolean finished = false;
+
+        private ContigChunk(VariantContextSink out, int index) {
+            this.out = out;
+            this.index = index;
+        }
+
+        @Override
+        public synchronized void put(VariantContext vc) {
+            if (dropped)
+                return;
+            if (direct)
+                out.put(vc);
+            else
+                variants.add(vc);
+        }
+
+        private synchronized void writeThrough() {
+            for (VariantContext vc : variants)
+                out.put(vc);
+            variants.clear();
+            direct = true;
+        }
+
+        private synchronized void drop() {
+            variants.clear();
+            dropped = true;
+        }
+    }
+
+}
@@ -0,0 +1,366 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.charite.compbio.asdpex.exceptions.AlignmentException;
+import de.charite.compbio.asdpex.util.IOUtil;
+
+/**
+ * Runs the {@link AlignmentJob}s of the SeqAn aligner on a bounded pool of external processes. The blocks of an
+ * alternate locus are appended (<code>-a</code>) to the same VCF file, so they are run one after another in block
+ * order, while different alternate loci are aligned in parallel. The stdout and stderr of each process are drained
+ * concurrently, so a full pipe buffer does not stall the aligner. A job exceeding the timeout is killed, and after a
+ * killed or failed job the remaining blocks of its alternate locus are skipped.<br>
+ * The {@link AlignmentInput}s of a job are streamed to the aligner through named pipes, each fed by its own thread,
+ * so the order in which the aligner opens its inputs does not matter. Successfully finished jobs are recorded in the
+ * {@link AlignmentManifest}, if given. Jobs with a task are aligned in the worker thread itself, without timeout.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class ParallelAlignmentDriver {
+    /** time to wait for the output of a killed process in milliseconds */
+    private static final long DRAIN_TIMEOUT_MS = 1000;
+    /** buffer size of the writers feeding the named pipes */
+    private static final int PIPE_BUFFER_SIZE = 1 << 16;
+
+    /** pool running one alternate locus per worker */
+    private final ExecutorService pool;
+    /** timeout of a single job in seconds, 0 for no timeout */
+    private final long timeout;
+    /** records the finished jobs, may be <code>null</code> */
+    private final AlignmentManifest manifest;
+    /** pending alternate loci */
+    private final ArrayList<Future<Void>> futures = new ArrayList<>();
+    /** number of jobs that failed, timed out or were skipped */
+    private final AtomicInteger failed = new AtomicInteger();
+    /** number of finished jobs */
+    private final AtomicInteger finished = new AtomicInteger();
+
+    /**
+     * @param processes
+     *            maximal number of aligner processes running at the same time
+     * @param timeout
+     *            timeout of a single job in seconds, 0 for no timeout
+     */
+    public ParallelAlignmentDriver(int processes, long timeout) {
+        this(processes, timeout, null);
+    }
+
+    /**
+     * @param processes
+     *            maximal number of aligner processes running at the same time
+     * @param timeout
+     *            timeout of a single job in seconds, 0 for no timeout
+     * @param manifest
+     *            {@link AlignmentManifest} the successfully finished jobs are recorded in
+     */
+    public ParallelAlignmentDriver(int processes, long timeout, AlignmentManifest manifest) {
+        this.pool = Executors.newFixedThreadPool(processes);
+        this.timeout = timeout;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Queue the blocks of an alternate locus. The jobs are run in the order of the list.
+     *
+     * @param jobs
+     *            the {@link AlignmentJob}s of one alternate locus in block order
+     */
+    public void submit(final List<AlignmentJob> jobs) {
+        futures.add(pool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (int i = 0; i < jobs.size(); i++) {
+                    if (!runJob(jobs.get(i))) {
+                        int skipped = jobs.size() - i - 1;
+                        if (skipped > 0)
+                            System.out.println("[WARN] skipping " + skipped + " remaining block(s) of: "
+                                    + jobs.get(i).getAltLocus());
+                        failed.addAndGet(skipped);
+                        break;
+                    }
+                }
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Wait for all queued jobs and shut down the pool.
+     *
+     * @return number of jobs that failed, timed out or were skipped
+     * @throws AlignmentException
+     *             if waiting was interrupted or a worker failed unexpectedly
+     */
+    public int awaitCompletion() throws AlignmentException {
+        try {
+            for (Future<Void> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AlignmentException("Interrupted while waiting for the alignments", e);
+        } catch (ExecutionException e) {
+            throw new AlignmentException("Failed to run alignment: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return failed.get();
+    }
+
+    /**
+     * @return number of finished jobs
+     */
+    public int getFinished() {
+        return finished.get();
+    }
+
+    /**
+     * Run a single job. The named pipes of the streamed inputs are created before and removed after the run.
+     *
+     * @param job
+     *            the {@link AlignmentJob}
+     * @return <code>false</code> if the job could not be started, timed out or failed
+     * @throws InterruptedException
+     */
+    private boolean runJob(AlignmentJob job) throws InterruptedException {
+        if (job.getTask() != null)
+            return runTask(job);
+        ArrayList<PipeFeeder> feeders = new ArrayList<>();
+        try {
+            for (AlignmentInput input : job.getInputs())
+                feeders.add(new PipeFeeder(input));
+            return runProcess(job, feeders);
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to run align command for " + job + ": " + e.getMessage());
+            failed.incrementAndGet();
+            return false;
+        } finally {
+            for (PipeFeeder feeder : feeders)
+                feeder.getInput().getFile().delete();
+        }
+    }
+
+    /**
+     * Run a job aligning in the JVM. The timeout does not apply, a running alignment cannot be stopped.
+     * 
+     * @param job
+     *            the {@link AlignmentJob}
+     * @return <code>false</code> if the alignment failed
+     */
+    private boolean runTask(AlignmentJob job) {
+        try {
+            job.getTask().call();
+        } catch (Exception e) {
+            System.err.println("[ERROR] alignment " + job + " failed: " + e);
+            failed.incrementAndGet();
+            return false;
+        }
+        finished.incrementAndGet();
+        record(job);
+        return true;
+    }
+
+    /**
+     * Record a successfully finished job in the manifest.
+     */
+    private void record(AlignmentJob job) {
+        if (manifest == null)
+            return;
+        try {
+            manifest.complete(job);
+        } catch (IOException e) {
+            System.out.println("[WARN] failed to record alignment " + job + " in manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start the aligner, feed the named pipes and wait for the process.
+     */
+    private boolean runProcess(AlignmentJob job, ArrayList<PipeFeeder> feeders)
+            throws IOException, InterruptedException {
+        Process p = new ProcessBuilder(job.getCommand()).start();
+        try {
+            // the aligner does not read from stdin
+            p.getOutputStream().close();
+        } catch (IOException e) {
+            // ignore
+        }
+        StreamDrainer stdout = new StreamDrainer(p.getInputStream(), "[Stdout] " + job + ": ");
+        StreamDrainer stderr = new StreamDrainer(p.getErrorStream(), "[Stderr] " + job + ": ");
+        stdout.start();
+        stderr.start();
+        for (PipeFeeder feeder : feeders)
+            feeder.start();
+        boolean done = false;
+        try {
+            if (timeout > 0)
+                done = p.waitFor(timeout, TimeUnit.SECONDS);
+            else {
+                p.waitFor();
+                done = true;
+            }
+        } finally {
+            if (!done)
+                p.destroyForcibly();
+            // pipes not (completely) read by the aligner
+            for (PipeFeeder feeder : feeders)
+                feeder.release();
+            // children of a killed aligner may keep the streams open
+            stdout.join(done ? 0 : DRAIN_TIMEOUT_MS);
+            stderr.join(done ? 0 : DRAIN_TIMEOUT_MS);
+        }
+        if (!done) {
+            System.err.println("[ERROR] alignment " + job + " killed after " + timeout + "s");
+            failed.incrementAndGet();
+            return false;
+        }
+        // the VCF of the alternate locus is incomplete, the following blocks are skipped like after a timeout
+        if (p.exitValue() != 0) {
+            System.out.println("[WARN] alignment " + job + " exited with " + p.exitValue());
+            failed.incrementAndGet();
+            return false;
+        }
+        for (PipeFeeder feeder : feeders)
+            if (feeder.getError() != null) {
+                System.out.println("[WARN] alignment " + job + " failed to stream "
+                        + feeder.getInput().getFile().getName() + ": " + feeder.getError().getMessage());
+                failed.incrementAndGet();
+                return false;
+            }
+        finished.incrementAndGet();
+        record(job);
+        return true;
+    }
+
+    /**
+     * Create a named pipe (FIFO) with <code>mkfifo</code>, an existing file is replaced.
+     *
+     * @param file
+     *            path of the named pipe
+     * @throws IOException
+     *             if the named pipe could not be created
+     * @throws InterruptedException
+     */
+    private static void createNamedPipe(File file) throws IOException, InterruptedException {
+        file.delete();
+        file.getParentFile().mkdirs();
+        Process mkfifo = new ProcessBuilder("mkfifo", file.getPath()).redirectErrorStream(true).start();
+        mkfifo.getOutputStream().close();
+        mkfifo.getInputStream().close();
+        if (mkfifo.waitFor() != 0)
+            throw new IOException("failed to create named pipe: " + file);
+    }
+
+    /**
+     * Writes an {@link AlignmentInput} into its named pipe. Opening the pipe blocks until the aligner opens it for
+     * reading.
+     */
+    private static class PipeFeeder extends Thread {
+        private final AlignmentInput input;
+        private volatile IOException error;
+
+        PipeFeeder(AlignmentInput input) throws IOException, InterruptedException {
+            this.input = input;
+            setDaemon(true);
+            createNamedPipe(input.getFile());
+        }
+
+        @Override
+        public void run() {
+            Writer out = null;
+            try {
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(input.getFile()),
+                        StandardCharsets.US_ASCII), PIPE_BUFFER_SIZE);
+                input.write(out);
+                out.close();
+            } catch (IOException e) {
+                // broken pipe if the aligner stopped reading
+                this.error = e;
+                IOUtil.close(out);
+            }
+        }
+
+        /**
+         * Unblock the feeder if the aligner exited without (completely) reading the pipe and wait for it.
+         */
+        void release() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            while (isAlive() && System.currentTimeMillis() < deadline) {
+                // a pending open for writing returns once the pipe is opened by a reader, opening it for reading and
+                // writing does not block on Linux, pending writes fail after closing it again
+                try {
+                    new RandomAccessFile(input.getFile(), "rw").close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                join(50);
+            }
+            if (isAlive() && error == null)
+                error = new IOException("pipe not read");
+        }
+
+        AlignmentInput getInput() {
+            return input;
+        }
+
+        IOException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Copies the lines of a process stream to stdout.
+     */
+    private static class StreamDrainer extends Thread {
+        private final InputStream stream;
+        private final String prefix;
+
+        StreamDrainer(InputStream stream, String prefix) {
+            this.stream = stream;
+            this.prefix = prefix;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    System.out.println(prefix + line);
+            } catch (IOException e) {
+                // stream closed by killing the process
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+}
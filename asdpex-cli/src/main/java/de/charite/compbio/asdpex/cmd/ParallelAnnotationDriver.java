@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.charite.compbio.asdpex.cmd.OrderedAnnotatedVariantWriter.ContigChunk;
+import de.charite.compbio.asdpex.data.AsdpCatalogIndex;
+import de.charite.compbio.asdpex.db.RegionCatalog;
+import de.charite.compbio.asdpex.exceptions.AnnotationException;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Annotates the contigs of the sample VCF on a pool of worker threads. Each worker uses its own indexed
+ * {@link VCFFileReader} and runs a {@link StreamingAnnotationEngine} on a single contig. The {@link RegionCatalog} and
+ * the {@link AsdpCatalogIndex} are shared, no database connection is needed. The results are merged back in sequence
+ * dictionary order by the {@link OrderedAnnotatedVariantWriter}.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class ParallelAnnotationDriver {
+    /** indexed sample VCF file */
+    private final File inputVcf;
+    /** snapshot of the regions and placements, shared by all workers */
+    private final RegionCatalog regions;
+    /** index of all known ASDPs, shared by all workers */
+    private final AsdpCatalogIndex asdps;
+    /** sequence dictionary defining contigs and output order */
+    private final SAMSequenceDictionary dictionary;
+
+    /**
+     * @param inputVcf
+     *            the tabix indexed sample VCF file
+     * @param regions
+     *            {@link RegionCatalog} with the regions and placements
+     * @param asdps
+     *            {@link AsdpCatalogIndex} of all known ASDPs
+     * @param dictionary
+     *            {@link SAMSequenceDictionary} of the reference
+     */
+    public ParallelAnnotationDriver(File inputVcf, RegionCatalog regions, AsdpCatalogIndex asdps,
+            SAMSequenceDictionary dictionary) {
+        this.inputVcf = inputVcf;
+        this.regions = regions;
+        this.asdps = asdps;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Annotate all contigs of the dictionary and write them ordered to the writer. If the annotation of a contig fails,
+     * nothing more is written and the output is incomplete.
+     *
+     * @param writer
+     *            the {@link AnnotatedVariantWriter}
+     * @param threads
+     *            number of worker threads
+     * @throws AnnotationException
+     *             if the annotation of a contig failed
+     */
+    public void run(AnnotatedVariantWriter writer, int threads) throws AnnotationException {
+        // the head contig is written through, at most two contigs per worker are buffered
+        final OrderedAnnotatedVariantWriter ordered = new OrderedAnnotatedVariantWriter(writer, 2 * threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Void>> futures = new ArrayList<>();
+        try {
+            int index = 0;
+            for (final SAMSequenceRecord record : dictionary.getSequences()) {
+                // the failure is thrown by the future of the failed contig
+                if (ordered.isFailed())
+                    break;
+                final ContigChunk chunk = ordered.open(index++);
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            annotateContig(record, chunk);
+                        } catch (Exception e) {
+                            ordered.fail();
+                            throw e;
+                        } finally {
+                            ordered.complete(chunk);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnnotationException("Interrupted while annotating contigs", e);
+        } catch (ExecutionException e) {
+            throw new AnnotationException("Failed to annotate contig: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Annotate a single contig.
+     *
+     * @param record
+     *            the contig
+     * @param chunk
+     *            {@link ContigChunk} taking the annotated variants
+     */
+    private void annotateContig(SAMSequenceRecord record, ContigChunk chunk) {
+        VCFFileReader reader = new VCFFileReader(inputVcf, true);
+        CloseableIterator<VariantContext> variants = null;
+        try {
+            variants = reader.query(record.getSequenceName(), 1, record.getSequenceLength());
+            new StreamingAnnotationEngine(regions, chunk, asdps, dictionary).annotate(variants);
+        } finally {
+            if (variants != null)
+                variants.close();
+            reader.close();
+        }
+    }
+
+}
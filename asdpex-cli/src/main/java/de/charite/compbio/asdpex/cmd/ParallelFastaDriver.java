@@ -0,0 +1,251 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.charite.compbio.asdpex.data.AccessionInfo;
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
+import de.charite.compbio.asdpex.data.RegionInfo;
+import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
+import de.charite.compbio.asdpex.io.writer.FastaFileWriter;
+import de.charite.compbio.asdpex.io.writer.FastaWriterPool;
+import de.charite.compbio.asdpex.reference.MappedReference;
+import de.charite.compbio.asdpex.reference.PackedSequence;
+import de.charite.compbio.asdpex.reference.PackedSequenceStore;
+
+/**
+ * Creates the fastA files of the regions and the extended alternate loci on a pool of worker threads, one region per
+ * task. The sequence of a region is extracted once and written to the region file. The extended alternate loci of the
+ * region, i.e. the alternate locus with the flanking sequences of the region, are assembled in a buffer of the final
+ * size: the flanks are copied from the region sequence and the alternate locus directly from the
+ * {@link MappedReference}.<br>
+ * The multi fastA files of the regions are kept open in a {@link FastaWriterPool} for the whole run. All records of a
+ * multi fastA file belong to one region, so a file is only written by a single worker and the records are in the order
+ * of the placements. Optionally all sequences are also written 2-bit packed into a {@link PackedSequenceStore}, which
+ * the <code>align</code> command reads instead of the reference (see {@link LocusSequences}).
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class ParallelFastaDriver {
+    /** name of the file with the packed sequences in the output folder */
+    public static final String PACKED_FILE = "sequences.packed";
+
+    /** the reference, shared by all workers */
+    private final MappedReference reference;
+    /** output folder of the fastA files */
+    private final String outputPath;
+    /** write each extended alternate locus into its own file */
+    private final boolean singleAltLociFile;
+    /** write BGZF compressed files */
+    private final boolean bgzf;
+    /** also write the packed sequences */
+    private final boolean packed;
+
+    /**
+     * @param reference
+     *            the {@link MappedReference} with the primary assembly and the alternate loci
+     * @param outputPath
+     *            output folder of the fastA files
+     * @param singleAltLociFile
+     *            write each extended alternate locus into its own file instead of a file per region
+     * @param bgzf
+     *            write BGZF compressed files
+     * @param packed
+     *            also write the sequences into a {@link PackedSequenceStore}
+     */
+    public ParallelFastaDriver(MappedReference reference, String outputPath, boolean singleAltLociFile,
+            boolean bgzf, boolean packed) {
+        this.reference = reference;
+        this.outputPath = outputPath;
+        this.singleAltLociFile = singleAltLociFile;
+        this.bgzf = bgzf;
+        this.packed = packed;
+    }
+
+    /**
+     * Create the fastA files of all placements.
+     *
+     * @param aiMap
+     *            the {@link AccessionInfo}s of the alternate loci
+     * @param asMap
+     *            the {@link AltScaffoldPlacementInfo}s
+     * @param regMap
+     *            the {@link RegionInfo}s
+     * @param threads
+     *            number of worker threads
+     * @throws AltLociSelectorException
+     *             if the sequences of a region could not be created
+     */
+    public void run(final ImmutableMap<String, AccessionInfo> aiMap,
+            ImmutableMap<String, AltScaffoldPlacementInfo> asMap, final ImmutableMap<String, RegionInfo> regMap,
+            int threads) throws AltLociSelectorException {
+        // placements by region in placement order
+        LinkedHashMap<String, List<AltScaffoldPlacementInfo>> byRegion = new LinkedHashMap<>();
+        for (AltScaffoldPlacementInfo scaffold : asMap.values()) {
+            List<AltScaffoldPlacementInfo> scaffolds = byRegion.get(scaffold.getRegion());
+            if (scaffolds == null) {
+                scaffolds = new ArrayList<>();
+                byRegion.put(scaffold.getRegion(), scaffolds);
+            }
+            scaffolds.add(scaffold);
+        }
+
+        // the multi fastA files of the regions stay open for the whole run
+        final FastaWriterPool pool = new FastaWriterPool(FastaFileWriter.fastaLineLength, bgzf);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<List<PackedSequence>>> futures = new ArrayList<>();
+        try {
+            for (final Map.Entry<String, List<AltScaffoldPlacementInfo>> e : byRegion.entrySet()) {
+                futures.add(workers.submit(new Callable<List<PackedSequence>>() {
+                    @Override
+                    public List<PackedSequence> call() throws Exception {
+                        return createRegion(regMap.get(e.getKey()), e.getValue(), aiMap, pool);
+                    }
+                }));
+            }
+            ArrayList<PackedSequence> sequences = new ArrayList<>();
+            for (Future<List<PackedSequence>> future : futures) {
+                List<PackedSequence> region = future.get();
+                if (region != null)
+                    sequences.addAll(region);
+            }
+            if (packed) {
+                File file = new File(outputPath, PACKED_FILE);
+                file.getAbsoluteFile().getParentFile().mkdirs();
+                PackedSequenceStore.write(file, sequences);
+                System.out.println("[INFO] written " + sequences.size() + " packed sequences: " + file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AltLociSelectorException("Interrupted while creating the fastA files", e);
+        } catch (ExecutionException e) {
+            throw new AltLociSelectorException("Failed to create the fastA files: " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (IOException e) {
+            throw new AltLociSelectorException("Failed to write the packed sequences: " + e.getMessage(), e);
+        } finally {
+            workers.shutdownNow();
+            // the workers may still write to the pool after a failure
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                pool.close();
+            } catch (IOException e) {
+                throw new AltLociSelectorException("Failed to close the fastA files: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Create the fastA files of a region and its extended alternate loci.
+     *
+     * @return the packed sequences of the region and the extended alternate loci, <code>null</code> if not requested
+     * @throws IOException
+     *             if a fastA file could not be written
+     */
+    private List<PackedSequence> createRegion(RegionInfo region, List<AltScaffoldPlacementInfo> scaffolds,
+            ImmutableMap<String, AccessionInfo> aiMap, FastaWriterPool pool) throws IOException {
+        String chromosome = "chr" + scaffolds.get(0).getParentName();
+        byte[] reg = reference.getBases(chromosome, region.getStart(), region.getStop(), true);
+        // the sequences are only collected for the packed sequence file
+        ArrayList<PackedSequence> sequences = packed ? new ArrayList<PackedSequence>() : null;
+        if (packed)
+            sequences.add(PackedSequence.pack(region.getRegionName(), reg));
+
+        for (AltScaffoldPlacementInfo scaffold : scaffolds) {
+            String identifier = createFastaIdentifier(aiMap.get(scaffold.getAltScafAcc()));
+
+            // sequence between region start and alt_loci start - to take from the region
+            int fiveprimeFillingStart = region.getStart();
+            int fiveprime = getFivePrimeFlank(region, scaffold);
+
+            // sequence inserted from the alt loci - w/o the tails
+            int altLoci = scaffold.getAltScafStop() - scaffold.getAltScafStart() + 1;
+
+            // sequence between alt_loci stop and region stop - to take from the region
+            int threeprimeFillingStart = scaffold.getParentStop() + 1; // since its inclusive
+            int threeprime = getThreePrimeFlank(region, scaffold);
+
+            byte[] altExtended = new byte[fiveprime + altLoci + threeprime];
+            System.arraycopy(reg, fiveprimeFillingStart - region.getStart(), altExtended, 0, fiveprime);
+            reference.copyBases(identifier, scaffold.getAltScafStart(), scaffold.getAltScafStop(),
+                    scaffold.isStrand(), altExtended, fiveprime);
+            if (threeprime > 0)
+                System.arraycopy(reg, threeprimeFillingStart - region.getStart(), altExtended, fiveprime + altLoci,
+                        threeprime);
+            if (packed)
+                sequences.add(PackedSequence.pack(identifier, altExtended));
+
+            String extension = bgzf ? ".fa.gz" : ".fa";
+            if (singleAltLociFile)
+                FastaFileWriter.createFastaFile(
+                        new File(outputPath + "/altLoci_single", identifier + "_extended" + extension), identifier,
+                        altExtended, false, FastaFileWriter.fastaLineLength, bgzf);
+            else
+                pool.add(new File(outputPath + "/altLoci", region.getRegionName() + "_altLoci" + extension),
+                        identifier, altExtended);
+        }
+
+        // the region reference is written once
+        FastaFileWriter.createFastaFile(
+                new File(outputPath + "/regions", region.getRegionName() + (bgzf ? ".fa.gz" : ".fa")),
+                region.getRegionName(), reg, false, FastaFileWriter.fastaLineLength, bgzf);
+        return sequences;
+    }
+
+    /**
+     * @return the length of the sequence between the region start and the alternate locus, which is taken from the
+     *         region for the extended alternate locus
+     */
+    static int getFivePrimeFlank(RegionInfo region, AltScaffoldPlacementInfo scaffold) {
+        int fiveprimeFillingStart = region.getStart();
+        int fiveprimeFillingStop = scaffold.getParentStart() - 1; // since its inclusive
+        return fiveprimeFillingStart < fiveprimeFillingStop ? fiveprimeFillingStop - fiveprimeFillingStart + 1 : 0;
+    }
+
+    /**
+     * @return the length of the sequence between the alternate locus and the region stop, which is taken from the
+     *         region for the extended alternate locus
+     */
+    static int getThreePrimeFlank(RegionInfo region, AltScaffoldPlacementInfo scaffold) {
+        int threeprimeFillingStart = scaffold.getParentStop() + 1; // since its inclusive
+        int threeprimeFillingStop = region.getStop();
+        return threeprimeFillingStart < threeprimeFillingStop ? threeprimeFillingStop - threeprimeFillingStart + 1
+                : 0;
+    }
+
+    /**
+     * Creates the Fasta identifier from accessionInfo file row in the format they are used in the reference fasta
+     * files: chr<1-22|X|Y|M>_<GenBank Accession.version with '.'->'v'>_alt<br>
+     * e.g.: chr21_GL383580v2_alt
+     *
+     * @param info
+     * @return
+     */
+    private static String createFastaIdentifier(AccessionInfo info) {
+        StringBuilder identifier = new StringBuilder();
+        identifier.append("chr").append(info.getChromosome()).append("_")
+                .append(info.getGenbankAccessionVersion().replace('.', 'v')).append("_alt");
+        return identifier.toString();
+    }
+
+}
@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.Hg38altLociSeletorOptions;
+import de.charite.compbio.asdpex.data.AsdpCatalogIndex;
+import de.charite.compbio.asdpex.data.AsdpStore;
+import de.charite.compbio.asdpex.data.AsdpWindow;
+import de.charite.compbio.asdpex.data.PairwiseVariantContextIntersect;
+import de.charite.compbio.asdpex.db.RegionCatalog;
+import de.charite.compbio.asdpex.util.VariantContextUtil;
+import de.charite.compbio.asdpex.util.VariantKeyArray;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypeType;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Single pass annotation engine.<br>
+ * The sample variants are read only once in the order of the input VCF file and merged against the sorted
+ * {@link AsdpWindow}s of the current contig. Variants inside a window are buffered, scored against the ASDPs of the
+ * alternate loci placed in the region and flushed annotated to the {@link VariantContextSink}. All other variants
+ * are passed through directly. No index on the input VCF file is needed. All samples of a multi sample VCF file are
+ * scored in the same pass.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class StreamingAnnotationEngine {
+    /** snapshot of the regions and the alternate loci placements */
+    private final RegionCatalog regions;
+    /** target for the annotated variants */
+    private final VariantContextSink writer;
+    /** index of all known ASDPs */
+    private final AsdpCatalogIndex asdps;
+    /** contigs known by the reference, <code>null</code> if no dictionary is available */
+    private final SAMSequenceDictionary dictionary;
+
+    /** contig of the last seen variant */
+    private String currentContig;
+    /** skip all variants on the current contig */
+    private boolean skipContig;
+    /** plan of ASDP windows on the current contig */
+    private ImmutableList<AsdpWindow> windows = ImmutableList.of();
+    /** index of the active window in the plan */
+    private int windowIdx;
+    /** buffered variants of the active window */
+    private final ArrayList<VariantContext> buffer = new ArrayList<>();
+
+    /**
+     * @param regions
+     *            {@link RegionCatalog} to build the window plan from
+     * @param writer
+     *            {@link VariantContextSink} the variants are flushed to, e.g. the {@link AnnotatedVariantWriter}
+     * @param asdps
+     *            {@link AsdpCatalogIndex} of all known ASDPs (e.g. from the alt-loci VCF file)
+     * @param dictionary
+     *            {@link SAMSequenceDictionary} of the reference, variants on unknown contigs are skipped
+     */
+    public StreamingAnnotationEngine(RegionCatalog regions, VariantContextSink writer, AsdpCatalogIndex asdps,
+            SAMSequenceDictionary dictionary) {
+        this.regions = regions;
+        this.writer = writer;
+        this.asdps = asdps;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Annotate all variants provided by the iterator. The variants have to be sorted by position within each contig.
+     *
+     * @param variants
+     *            the sample variants e.g. from {@link htsjdk.variant.vcf.VCFFileReader#iterator()}
+     */
+    public void annotate(Iterator<VariantContext> variants) {
+        while (variants.hasNext())
+            put(variants.next());
+        flushWindow();
+    }
+
+    /**
+     * Route a single variant either to the buffer of the active window or directly to the writer.
+     *
+     * @param vc
+     *            next variant of the input
+     */
+    private void put(VariantContext vc) {
+        if (!vc.getContig().equals(currentContig)) {
+            flushWindow();
+            switchContig(vc.getContig());
+        }
+        if (skipContig)
+            return;
+
+        // move on to the window containing the variant or the next one downstream
+        while (windowIdx < windows.size() && vc.getStart() > windows.get(windowIdx).getStop()) {
+            flushWindow();
+            windowIdx++;
+        }
+        if (windowIdx < windows.size() && windows.get(windowIdx).contains(vc.getStart()))
+            buffer.add(vc);
+        else
+            writer.put(vc);
+    }
+
+    /**
+     * Load the window plan for the new contig.
+     *
+     * @param contig
+     *            name of the contig
+     */
+    private void switchContig(String contig) {
+        this.currentContig = contig;
+        this.windows = ImmutableList.of();
+        this.windowIdx = 0;
+        // TODO should we really skip non toplevel contigs or add extra flag
+        this.skipContig = contig.contains("_") || (dictionary != null && dictionary.getSequence(contig) == null);
+        if (skipContig) {
+            System.out.println("[INFO] Skipping contig: " + contig);
+            return;
+        }
+        this.windows = regions.getAsdpWindows(contig);
+        if (windows.isEmpty())
+            System.out.println("[INFO] " + contig + " w/o region(s)");
+        else
+            System.out.println("[INFO] " + contig + " with " + windows.size() + " region(s)");
+    }
+
+    /**
+     * Score the buffered variants of the active window and flush them to the writer.
+     */
+    private void flushWindow() {
+        if (buffer.isEmpty())
+            return;
+        annotateWindow(windows.get(windowIdx), buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Compare the variants in the window with the ASDPs of each alternate locus in the region and write them out. If a
+     * most probable alternate locus is found, the variants explained by its ASDPs are flagged. In a single sample VCF
+     * file the assignment is written to the site (FILTER and INFO fields), in a multi sample VCF file each sample is
+     * scored on its own and the assignment is written to the sample (FT and FORMAT fields).
+     *
+     * @param window
+     *            the {@link AsdpWindow}
+     * @param refVariantList
+     *            sorted sample variants inside the window
+     */
+    private void annotateWindow(AsdpWindow window, ArrayList<VariantContext> refVariantList) {
+        ArrayList<VariantKeyArray> locusKeyArrays = new ArrayList<>();
+        for (String altLocus : window.getAltLoci()) {
+            AsdpStore store = asdps.getStore(altLocus);
+            locusKeyArrays.add(store == null ? VariantKeyArray.of(ImmutableList.<VariantContext> of())
+                    : VariantKeyArray.of(store, altLocus));
+        }
+        if (refVariantList.get(0).getNSamples() > 1)
+            annotateSamples(window, refVariantList, locusKeyArrays);
+        else
+            annotateSite(window, refVariantList, locusKeyArrays);
+    }
+
+    /**
+     * Annotate the variants of a single sample VCF file on site level.
+     */
+    private void annotateSite(AsdpWindow window, ArrayList<VariantContext> refVariantList,
+            ArrayList<VariantKeyArray> locusKeyArrays) {
+        Assignment assignment = score(window, refVariantList, locusKeyArrays, 0);
+        if (assignment == null) { // no alt. scaffold identified
+            for (VariantContext vc : refVariantList)
+                writer.put(vc);
+            return;
+        }
+        VariantContextBuilder builder;
+        for (int i = 0; i < refVariantList.size(); i++) {
+            if (assignment.flagged[i]) {
+                builder = new VariantContextBuilder(refVariantList.get(i));
+                builder.filter(Hg38altLociSeletorOptions.VCFASDP);
+                builder.attribute(Hg38altLociSeletorOptions.VCFALTLOCUSSTRING, assignment.altLocus);
+                builder.attribute(Hg38altLociSeletorOptions.VCFALTLOCUSGENOTYPE, assignment.type.toString());
+                writer.put(builder.make());
+            } else
+                writer.put(refVariantList.get(i));
+        }
+    }
+
+    /**
+     * Annotate the variants of a multi sample VCF file per sample. Only the variants called non reference in a sample
+     * are compared with the ASDPs.
+     */
+    private void annotateSamples(AsdpWindow window, ArrayList<VariantContext> refVariantList,
+            ArrayList<VariantKeyArray> locusKeyArrays) {
+        final int nSamples = refVariantList.get(0).getNSamples();
+        // assignment per variant and sample, null if not flagged
+        Assignment[][] flagged = new Assignment[refVariantList.size()][];
+        ArrayList<VariantContext> sampleVariants = new ArrayList<>();
+        int[] sampleIdx = new int[refVariantList.size()];
+        for (int s = 0; s < nSamples; s++) {
+            sampleVariants.clear();
+            for (int i = 0; i < refVariantList.size(); i++) {
+                Genotype gt = refVariantList.get(i).getGenotype(s);
+                if (gt.isCalled() && !gt.isHomRef()) {
+                    sampleIdx[sampleVariants.size()] = i;
+                    sampleVariants.add(refVariantList.get(i));
+                }
+            }
+            if (sampleVariants.isEmpty())
+                continue;
+            Assignment assignment = score(window, sampleVariants, locusKeyArrays, s);
+            if (assignment == null)
+                continue;
+            for (int j = 0; j < sampleVariants.size(); j++) {
+                if (!assignment.flagged[j])
+                    continue;
+                int i = sampleIdx[j];
+                if (flagged[i] == null)
+                    flagged[i] = new Assignment[nSamples];
+                flagged[i][s] = assignment;
+            }
+        }
+
+        for (int i = 0; i < refVariantList.size(); i++) {
+            VariantContext vc = refVariantList.get(i);
+            if (flagged[i] == null) {
+                writer.put(vc);
+                continue;
+            }
+            ArrayList<Genotype> genotypes = new ArrayList<>(nSamples);
+            for (int s = 0; s < nSamples; s++) {
+                Assignment assignment = flagged[i][s];
+                if (assignment == null) {
+                    genotypes.add(vc.getGenotype(s));
+                    continue;
+                }
+                GenotypeBuilder gb = new GenotypeBuilder(vc.getGenotype(s));
+                gb.filter(Hg38altLociSeletorOptions.VCFASDP);
+                gb.attribute(Hg38altLociSeletorOptions.VCFALTLOCUSSTRING, assignment.altLocus);
+                gb.attribute(Hg38altLociSeletorOptions.VCFALTLOCUSGENOTYPE, assignment.type.toString());
+                genotypes.add(gb.make());
+            }
+            writer.put(new VariantContextBuilder(vc).genotypes(genotypes).make());
+        }
+    }
+
+    /**
+     * Score the variants of a sample against the ASDPs of each alternate locus in the region.
+     *
+     * @param window
+     *            the {@link AsdpWindow}
+     * @param variants
+     *            sorted variants of the sample
+     * @param locusKeyArrays
+     *            {@link VariantKeyArray}s of the ASDPs in the order of {@link AsdpWindow#getAltLoci()}
+     * @param sample
+     *            index of the sample genotype
+     * @return the {@link Assignment} or <code>null</code> if no alternate locus is identified
+     */
+    private Assignment score(AsdpWindow window, List<VariantContext> variants,
+            ArrayList<VariantKeyArray> locusKeyArrays, int sample) {
+        ArrayList<PairwiseVariantContextIntersect> intersectList = VariantContextUtil
+                .intersectVariantContexts(variants, locusKeyArrays);
+        // the most probable alt. scaffolds are reported as indices of the sorted list
+        ArrayList<PairwiseVariantContextIntersect> unsorted = new ArrayList<>(intersectList);
+        ArrayList<Integer> mostProbableAlleles = VariantContextUtil.getMostProbableAlternativeScaffolds(intersectList,
+                sample);
+        if (mostProbableAlleles.isEmpty())
+            return null;
+        PairwiseVariantContextIntersect intersect = intersectList.get(mostProbableAlleles.get(0));
+        String altLocusID = window.getAltLoci().get(unsorted.indexOf(intersect));
+        GenotypeType type = mostProbableAlleles.size() == 2
+                && mostProbableAlleles.get(0).equals(mostProbableAlleles.get(1)) ? GenotypeType.HOM_VAR
+                        : GenotypeType.HET;
+        return new Assignment(altLocusID, type, intersect.getSet1flagged());
+    }
+
+    /**
+     * Most probable alternate locus of a sample in a window.
+     */
+    private static class Assignment {
+        /** fasta identifier of the alternate locus */
+        final String altLocus;
+        /** genotype of the alternate locus */
+        final GenotypeType type;
+        /** flags of the variants explained by the ASDPs of the alternate locus */
+        final boolean[] flagged;
+
+        Assignment(String altLocus, GenotypeType type, boolean[] flagged) {
+            this.altLocus = altLocus;
+            this.type = type;
+            this.flagged = flagged;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+/**
+ * Target for the (annotated) variants produced by the {@link StreamingAnnotationEngine}.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public interface VariantContextSink {
+
+    /**
+     * Take the next variant.
+     *
+     * @param vc
+     *            the {@link VariantContext}
+     */
+    void put(VariantContext vc);
+
+}
@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.charite.compbio.asdpex.exceptions.AltLociSelectorException;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Tests the <code>merge</code> command: the k-way merge of the VCF files in the contig order of the sequence
+ * dictionary, the reorder window for almost sorted files and the error for files which are not sorted.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class MergeCommandTest {
+    private static final String HEADER = "##fileformat=VCFv4.2\n"
+            + "##INFO=<ID=SVLEN,Number=1,Type=Integer,Description=\"Length of the structural variant\">\n"
+            + "##INFO=<ID=END,Number=1,Type=Integer,Description=\"End position of the variant\">\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File data;
+
+    @Before
+    public void setUp() throws IOException {
+        // the contig order of the dictionary is not the lexicographic one
+        data = folder.newFolder("data");
+        File genome = new File(data, "genome");
+        genome.mkdirs();
+        write(new File(genome, "GRCh38.fa"), ">chr1\nACGT\n>chr2\nACGT\n>chr10\nACGT\n");
+        write(new File(genome, "GRCh38.dict"), "@HD\tVN:1.5\n@SQ\tSN:chr1\tLN:10000\n@SQ\tSN:chr2\tLN:10000\n"
+                + "@SQ\tSN:chr10\tLN:10000\n");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        PrintWriter out = new PrintWriter(file);
+        out.print(content);
+        out.close();
+    }
+
+    /** a VCF file with the records given as "contig:pos:id" or "contig:pos:id:SV" */
+    private static void writeVcf(File file, String... records) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER);
+        for (String record : records) {
+            String[] fields = record.split(":");
+            sb.append(fields[0]).append('\t').append(fields[1]).append('\t').append(fields[2]).append("\tA\t");
+            if (fields.length > 3)
+                sb.append("<DEL>\t.\t.\tSVLEN=-100;END=").append(Integer.parseInt(fields[1]) + 100).append('\n');
+            else
+                sb.append("C\t.\t.\t.\n");
+        }
+        write(file, sb.toString());
+    }
+
+    private void merge(File in, File out) throws Exception {
+        new MergeCommand(new String[] { "-i", in.getPath(), "-o", out.getPath(), "-d", data.getPath() }).run();
+    }
+
+    /** the records as "contig:pos:id" */
+    private static List<String> read(File file) {
+        ArrayList<String> records = new ArrayList<>();
+        VCFFileReader reader = new VCFFileReader(file, false);
+        for (VariantContext vc : reader)
+            records.add(vc.getContig() + ":" + vc.getStart() + ":" + vc.getID());
+        reader.close();
+        return records;
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        File in = folder.newFolder("alignresults");
+        // chr1:1200 is placed behind chr1:1500, but within the reorder window
+        writeVcf(new File(in, "chr1_A_alt.vcf"), "chr1:100:a1", "chr1:1500:a2", "chr1:1200:a3", "chr2:50:a4:SV",
+                "chr10:5:a5");
+        writeVcf(new File(in, "chr1_B_alt.vcf"), "chr1:100:b1", "chr1:1300:b2", "chr2:10:b3", "chr10:1:b4");
+        new File(in, "chr1_C_alt.vcf").createNewFile();
+        File out = new File(folder.getRoot(), "allASDPs.vcf.gz");
+        merge(in, out);
+
+        // records at the same position in the order of the files
+        assertEquals(Arrays.asList("chr1:100:a1", "chr1:100:b1", "chr1:1200:a3", "chr1:1300:b2", "chr1:1500:a2",
+                "chr2:10:b3", "chr2:50:a4", "chr10:1:b4", "chr10:5:a5"), read(out));
+        assertEquals(Arrays.asList("chr1:100:a1", "chr1:100:b1", "chr1:1200:a3", "chr1:1300:b2", "chr1:1500:a2",
+                "chr2:10:b3", "chr10:1:b4", "chr10:5:a5"),
+                read(new File(folder.getRoot(), "allASDPs.SNV.vcf.gz")));
+        assertEquals(Arrays.asList("chr2:50:a4"), read(new File(folder.getRoot(), "allASDPs.SV.vcf.gz")));
+        for (String name : new String[] { "allASDPs.vcf.gz", "allASDPs.SNV.vcf.gz", "allASDPs.SV.vcf.gz" })
+            assertTrue(name, new File(folder.getRoot(), name + ".tbi").exists());
+    }
+
+    @Test
+    public void testNotSorted() throws Exception {
+        File in = folder.newFolder("alignresults");
+        writeVcf(new File(in, "chr1_B_alt.vcf"), "chr1:100:b1");
+        // chr1:200 is more than the reorder window behind chr1:5000, which is already written
+        writeVcf(new File(in, "chr1_A_alt.vcf"), "chr1:100:a1", "chr1:5000:a2", "chr1:7000:a3", "chr1:200:a4");
+        try {
+            merge(in, new File(folder.getRoot(), "allASDPs.vcf.gz"));
+            fail("unsorted VCF file merged");
+        } catch (AltLociSelectorException e) {
+            assertEquals("VCF file chr1_A_alt.vcf is not sorted: chr1:200 after chr1:5000", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnknownContig() throws Exception {
+        File in = folder.newFolder("alignresults");
+        writeVcf(new File(in, "chr3_A_alt.vcf"), "chr3:100:a1");
+        try {
+            merge(in, new File(folder.getRoot(), "allASDPs.vcf.gz"));
+            fail("unknown contig merged");
+        } catch (AltLociSelectorException e) {
+            assertEquals("Unknown contig chr3 in VCF file chr3_A_alt.vcf", e.getMessage());
+        }
+    }
+
+}
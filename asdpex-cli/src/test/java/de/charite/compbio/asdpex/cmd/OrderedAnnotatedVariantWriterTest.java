@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.cmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import de.charite.compbio.asdpex.cmd.OrderedAnnotatedVariantWriter.ContigChunk;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Tests that the {@link OrderedAnnotatedVariantWriter} writes the chunks in the order they were opened, regardless of
+ * the order in which they are completed.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class OrderedAnnotatedVariantWriterTest {
+
+    private static VariantContext variant(int chunk, int pos) {
+        return new VariantContextBuilder("test", "chr" + chunk, pos, pos,
+                Arrays.asList(Allele.create("A", true), Allele.create("C"))).make();
+    }
+
+    /** the written variants as "contig:pos" */
+    private static class Sink implements VariantContextSink {
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void put(VariantContext vc) {
+            written.add(vc.getContig() + ":" + vc.getStart());
+        }
+    }
+
+    @Test
+    public void testCompleteOutOfOrder() throws InterruptedException {
+        Sink sink = new Sink();
+        OrderedAnnotatedVariantWriter ordered = new OrderedAnnotatedVariantWriter(sink, 4);
+        ContigChunk[] chunks = new ContigChunk[4];
+        for (int i = 0; i < chunks.length; i++)
+            chunks[i] = ordered.open(i);
+
+        // the successors finish first and are buffered
+        chunks[3].put(variant(3, 1));
+        ordered.complete(chunks[3]);
+        chunks[2].put(variant(2, 1));
+        chunks[2].put(variant(2, 2));
+        ordered.complete(chunks[2]);
+        assertEquals(0, sink.written.size());
+
+        // the head is written straight through
+        chunks[0].put(variant(0, 1));
+        assertEquals(Arrays.asList("chr0:1"), sink.written);
+        chunks[1].put(variant(1, 1));
+        assertEquals(1, sink.written.size());
+
+        // the running chunk 1 becomes the head, its buffered variants are written
+        ordered.complete(chunks[0]);
+        assertEquals(Arrays.asList("chr0:1", "chr1:1"), sink.written);
+        chunks[1].put(variant(1, 2));
+        assertEquals(3, sink.written.size());
+
+        // the finished successors follow
+        ordered.complete(chunks[1]);
+        assertEquals(Arrays.asList("chr0:1", "chr1:1", "chr1:2", "chr2:1", "chr2:2", "chr3:1"), sink.written);
+    }
+
+    @Test
+    public void testConcurrentChunks() throws Exception {
+        final Sink sink = new Sink();
+        final OrderedAnnotatedVariantWriter ordered = new OrderedAnnotatedVariantWriter(sink, 3);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        final Random random = new Random(42);
+        List<Future<Void>> futures = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                final int index = i;
+                final int n = random.nextInt(20);
+                final long sleep = random.nextInt(5);
+                for (int pos = 1; pos <= n; pos++)
+                    expected.add("chr" + index + ":" + pos);
+                // blocks while 3 chunks are in flight
+                final ContigChunk chunk = ordered.open(index);
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int pos = 1; pos <= n; pos++) {
+                            chunk.put(variant(index, pos));
+                            Thread.sleep(sleep);
+                        }
+                        ordered.complete(chunk);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures)
+                future.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(expected, sink.written);
+    }
+
+    @Test
+    public void testFail() throws InterruptedException {
+        Sink sink = new Sink();
+        OrderedAnnotatedVariantWriter ordered = new OrderedAnnotatedVariantWriter(sink, 2);
+        ContigChunk first = ordered.open(0);
+        ContigChunk second = ordered.open(1);
+        first.put(variant(0, 1));
+        second.put(variant(1, 1));
+        ordered.fail();
+        assertTrue(ordered.isFailed());
+        first.put(variant(0, 2));
+        ordered.complete(second);
+        ordered.complete(first);
+        assertEquals(Arrays.asList("chr0:1"), sink.written);
+    }
+
+}
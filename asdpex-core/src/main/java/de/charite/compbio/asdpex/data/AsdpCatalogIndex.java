@@ -0,0 +1,274 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.AsdpStore.AsdpStoreBuilder;
+import de.charite.compbio.asdpex.util.IOUtil;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Index of the ASDP catalog (the alt-loci VCF file) keyed by the alternate locus fasta identifier (the <code>AL</code>
+ * attribute) and the region (the <code>RE</code> attribute).<br>
+ * The index is either built with a single pass over the catalog or, if the catalog is tabix indexed, loaded from a
+ * small sidecar file (<code>&lt;catalog&gt;.alidx</code>) with the span of each alternate locus. In the latter case
+ * the ASDPs of a locus are fetched on first request. The ASDPs are kept in the compact columnar {@link AsdpStore}, once
+ * loaded the store of a locus is returned in O(1).
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class AsdpCatalogIndex {
+    /** file extension of the sidecar file */
+    public static final String SIDECAR_EXTENSION = ".alidx";
+
+    /** span of each alternate locus in the catalog */
+    private final ImmutableList<LocusSpan> spans;
+    /** alternate locus fasta identifier to span */
+    private final Map<String, LocusSpan> spansByLocus = new LinkedHashMap<>();
+    /** region name to alternate loci fasta identifiers */
+    private final Map<String, ImmutableList<String>> lociByRegion = new LinkedHashMap<>();
+    /** {@link AsdpStore} holding the ASDPs per alternate locus */
+    private final ConcurrentHashMap<String, AsdpStore> stores = new ConcurrentHashMap<>();
+    /** tabix indexed catalog used to fetch the ASDPs lazily, <code>null</code> if all ASDPs are loaded */
+    private final VCFFileReader reader;
+
+    private AsdpCatalogIndex(List<LocusSpan> spans, VCFFileReader reader) {
+        this.spans = ImmutableList.copyOf(spans);
+        this.reader = reader;
+        Map<String, ImmutableList.Builder<String>> builders = new LinkedHashMap<>();
+        for (LocusSpan span : spans) {
+            spansByLocus.put(span.altLocus, span);
+            if (!builders.containsKey(span.region))
+                builders.put(span.region, new ImmutableList.Builder<String>());
+            builders.get(span.region).add(span.altLocus);
+        }
+        for (Map.Entry<String, ImmutableList.Builder<String>> entry : builders.entrySet())
+            lociByRegion.put(entry.getKey(), entry.getValue().build());
+    }
+
+    /**
+     * Load the index for the catalog. The sidecar file is used if it is up to date and the catalog is tabix indexed,
+     * otherwise the index is built with a full pass over the catalog and the sidecar is (re)written.
+     *
+     * @param catalog
+     *            the alt-loci VCF file
+     * @return the {@link AsdpCatalogIndex}
+     */
+    public static AsdpCatalogIndex load(File catalog) {
+        File sidecar = new File(catalog.getPath() + SIDECAR_EXTENSION);
+        boolean indexed = new File(catalog.getPath() + TabixUtils.STANDARD_INDEX_EXTENSION).exists()
+                || Tribble.indexFile(catalog).exists();
+        if (sidecar.exists() && sidecar.lastModified() >= catalog.lastModified() && indexed) {
+            try {
+                ArrayList<LocusSpan> spans = readSidecar(sidecar);
+                System.out.println("[INFO] loaded ASDP catalog index for " + spans.size() + " alt. loci: " + sidecar);
+                return new AsdpCatalogIndex(spans, new VCFFileReader(catalog, true));
+            } catch (IOException e) {
+                System.out.println("[WARN] failed to read ASDP catalog index: " + sidecar + " - rebuild");
+            }
+        }
+        AsdpCatalogIndex index = build(catalog);
+        try {
+            index.writeSidecar(sidecar);
+        } catch (IOException e) {
+            System.out.println("[WARN] failed to write ASDP catalog index: " + sidecar);
+        }
+        return index;
+    }
+
+    /**
+     * Build the index with a single pass over the catalog. All ASDPs are kept in memory.
+     *
+     * @param catalog
+     *            the alt-loci VCF file
+     * @return the {@link AsdpCatalogIndex}
+     */
+    public static AsdpCatalogIndex build(File catalog) {
+        AsdpStore store = AsdpStore.fromVcf(catalog);
+        ArrayList<LocusSpan> spans = new ArrayList<>();
+        for (String altLocus : store.getAltLoci()) {
+            int id = store.getAltLocusId(altLocus);
+            int first = store.getFrom(id);
+            int last = store.getTo(id) - 1;
+            spans.add(new LocusSpan(altLocus, store.getRegion(first), store.getContig(first), store.getPosition(first),
+                    store.getEnd(last), last - first + 1));
+        }
+        AsdpCatalogIndex index = new AsdpCatalogIndex(spans, null);
+        for (String altLocus : store.getAltLoci())
+            index.stores.put(altLocus, store);
+        System.out.println("[INFO] indexed ASDP catalog with " + spans.size() + " alt. loci: " + catalog);
+        return index;
+    }
+
+    /**
+     * Returns the {@link AsdpStore} with the ASDPs of the alternate locus.
+     *
+     * @param altLocus
+     *            fasta identifier of the alternate locus (e.g. chr1_KI270762v1_alt)
+     * @return the {@link AsdpStore}, <code>null</code> if the locus is unknown
+     */
+    public AsdpStore getStore(String altLocus) {
+        AsdpStore store = stores.get(altLocus);
+        if (store != null)
+            return store;
+        LocusSpan span = spansByLocus.get(altLocus);
+        if (span == null || reader == null)
+            return null;
+        return fetch(span);
+    }
+
+    /**
+     * Returns the sorted ASDPs of the alternate locus. The {@link VariantContext}s are materialized from the
+     * {@link AsdpStore} on access.
+     *
+     * @param altLocus
+     *            fasta identifier of the alternate locus (e.g. chr1_KI270762v1_alt)
+     * @return sorted ASDPs, an empty list if the locus is unknown
+     */
+    public List<VariantContext> getAsdps(String altLocus) {
+        AsdpStore store = getStore(altLocus);
+        return store == null ? ImmutableList.<VariantContext> of() : store.getAsdps(altLocus);
+    }
+
+    /**
+     * Returns the alternate loci with ASDPs in the region.
+     *
+     * @param region
+     *            name of the region (e.g. REGION108)
+     * @return fasta identifiers of the alternate loci
+     */
+    public ImmutableList<String> getAltLoci(String region) {
+        ImmutableList<String> list = lociByRegion.get(region);
+        return list == null ? ImmutableList.<String> of() : list;
+    }
+
+    /**
+     * Returns the number of ASDPs of the alternate locus.
+     *
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @return number of ASDPs
+     */
+    public int getAsdpCount(String altLocus) {
+        LocusSpan span = spansByLocus.get(altLocus);
+        return span == null ? 0 : span.count;
+    }
+
+    /**
+     * @return number of alternate loci in the catalog
+     */
+    public int size() {
+        return spans.size();
+    }
+
+    /**
+     * Close the underlying catalog reader if there is one.
+     */
+    public void close() {
+        if (reader != null)
+            reader.close();
+    }
+
+    /**
+     * Fetch the ASDPs of the locus from the tabix indexed catalog. The reader is not thread-safe, so fetching is
+     * serialized.
+     *
+     * @param span
+     *            {@link LocusSpan} of the alternate locus
+     * @return {@link AsdpStore} with the ASDPs of the locus
+     */
+    private synchronized AsdpStore fetch(LocusSpan span) {
+        AsdpStore store = stores.get(span.altLocus);
+        if (store != null)
+            return store;
+        AsdpStoreBuilder builder = new AsdpStoreBuilder();
+        CloseableIterator<VariantContext> it = reader.query(span.contig, span.start, span.stop);
+        while (it.hasNext()) {
+            VariantContext vc = it.next();
+            if (span.altLocus.equals(vc.getAttribute("AL")))
+                builder.add(vc);
+        }
+        it.close();
+        store = builder.build();
+        stores.put(span.altLocus, store);
+        return store;
+    }
+
+    /**
+     * Write the sidecar file with the span of each alternate locus.
+     *
+     * @param sidecar
+     *            the sidecar file
+     * @throws IOException
+     */
+    public void writeSidecar(File sidecar) throws IOException {
+        BufferedWriter out = IOUtil.getBufferedFileWriter(sidecar);
+        out.write("#altLocus\tregion\tcontig\tstart\tstop\tcount\n");
+        for (LocusSpan span : spans) {
+            out.write(span.altLocus + "\t" + span.region + "\t" + span.contig + "\t" + span.start + "\t" + span.stop
+                    + "\t" + span.count + "\n");
+        }
+        IOUtil.close(out);
+    }
+
+    private static ArrayList<LocusSpan> readSidecar(File sidecar) throws IOException {
+        ArrayList<LocusSpan> spans = new ArrayList<>();
+        BufferedReader in = IOUtil.getBufferedReaderFromFileName(sidecar);
+        String line;
+        try {
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\t");
+                if (fields.length != 6)
+                    throw new IOException("Malformed line in ASDP catalog index: " + line);
+                spans.add(new LocusSpan(fields[0], fields[1], fields[2], Integer.parseInt(fields[3]),
+                        Integer.parseInt(fields[4]), Integer.parseInt(fields[5])));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed number in ASDP catalog index", e);
+        } finally {
+            IOUtil.close(in);
+        }
+        return spans;
+    }
+
+    /**
+     * Span of an alternate locus in the catalog.
+     */
+    private static class LocusSpan {
+        final String altLocus;
+        final String region;
+        final String contig;
+        final int start;
+        final int stop;
+        final int count;
+
+        LocusSpan(String altLocus, String region, String contig, int start, int stop, int count) {
+            this.altLocus = altLocus;
+            this.region = region;
+            this.contig = contig;
+            this.start = start;
+            this.stop = stop;
+            this.count = count;
+        }
+    }
+
+}
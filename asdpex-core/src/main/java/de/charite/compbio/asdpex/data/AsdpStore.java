@@ -0,0 +1,429 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.data;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContext.Type;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Compact columnar store of ASDPs.<br>
+ * Instead of a full {@link VariantContext} per ASDP only the columns needed for the annotation are kept: the start
+ * position and reference length as <code>int</code> arrays, the contig, region (<code>RE</code>) and alternate locus
+ * (<code>AL</code>) as ids into small dictionaries and the alleles as bytes in a single pool. The rows are grouped by
+ * alternate locus and sorted by position within each locus.<br>
+ * If needed, e.g. for the database upload, a row can be materialized as a {@link VariantContext}, see
+ * {@link #getVariantContext(int)} and {@link #getAsdps(String)}.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class AsdpStore {
+    /** separator of multiple alternate alleles in the allele pool */
+    private static final byte ALT_SEPARATOR = ',';
+
+    /** contig dictionary */
+    private final String[] contigs;
+    /** region dictionary */
+    private final String[] regions;
+    /** alternate locus dictionary */
+    private final String[] altLoci;
+    /** alternate locus to id */
+    private final HashMap<String, Integer> altLocusIdx = new HashMap<>();
+
+    /** start position per row, 1-based */
+    private final int[] positions;
+    /** length of the reference span per row (end - start + 1) */
+    private final int[] lengths;
+    /** contig id per row */
+    private final int[] contigIds;
+    /** region id per row */
+    private final int[] regionIds;
+    /** alternate locus id per row */
+    private final int[] altLocusIds;
+    /** symbolic (SV) rows */
+    private final BitSet symbolic;
+    /** pool of the allele bytes, per row the reference followed by the alternate allele(s) */
+    private final byte[] alleles;
+    /** offset of the reference allele per row, the last entry is the pool size */
+    private final int[] refOffsets;
+    /** offset of the alternate allele(s) per row */
+    private final int[] altOffsets;
+
+    /** first row per alternate locus */
+    private final int[] locusFrom;
+    /** last row (excl.) per alternate locus */
+    private final int[] locusTo;
+
+    private AsdpStore(AsdpStoreBuilder builder) {
+        final int n = builder.size;
+        this.contigs = builder.contigs.toArray(new String[builder.contigs.size()]);
+        this.regions = builder.regions.toArray(new String[builder.regions.size()]);
+        this.altLoci = builder.altLoci.toArray(new String[builder.altLoci.size()]);
+        for (int i = 0; i < altLoci.length; i++)
+            altLocusIdx.put(altLoci[i], i);
+
+        // stable sort of the rows by alternate locus and position
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        final int[] bPositions = builder.positions;
+        final int[] bLoci = builder.altLocusIds;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int cmp = Integer.compare(bLoci[o1], bLoci[o2]);
+                return cmp != 0 ? cmp : Integer.compare(bPositions[o1], bPositions[o2]);
+            }
+        });
+
+        this.positions = new int[n];
+        this.lengths = new int[n];
+        this.contigIds = new int[n];
+        this.regionIds = new int[n];
+        this.altLocusIds = new int[n];
+        this.symbolic = new BitSet(n);
+        this.alleles = new byte[builder.alleleSize];
+        this.refOffsets = new int[n + 1];
+        this.altOffsets = new int[n];
+        this.locusFrom = new int[altLoci.length];
+        this.locusTo = new int[altLoci.length];
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            int row = order[i];
+            positions[i] = builder.positions[row];
+            lengths[i] = builder.lengths[row];
+            contigIds[i] = builder.contigIds[row];
+            regionIds[i] = builder.regionIds[row];
+            altLocusIds[i] = builder.altLocusIds[row];
+            symbolic.set(i, builder.symbolic.get(row));
+            int from = builder.refOffsets[row];
+            int to = builder.refOffsets[row + 1];
+            refOffsets[i] = offset;
+            altOffsets[i] = offset + builder.altOffsets[row] - from;
+            System.arraycopy(builder.alleles, from, alleles, offset, to - from);
+            offset += to - from;
+            if (i == 0 || altLocusIds[i] != altLocusIds[i - 1])
+                locusFrom[altLocusIds[i]] = i;
+            locusTo[altLocusIds[i]] = i + 1;
+        }
+        refOffsets[n] = offset;
+    }
+
+    /**
+     * Build the store with a single pass over the alt-loci VCF file.
+     *
+     * @param catalog
+     *            the alt-loci VCF file
+     * @return the {@link AsdpStore}
+     */
+    public static AsdpStore fromVcf(File catalog) {
+        VCFFileReader reader = new VCFFileReader(catalog, false);
+        try {
+            return new AsdpStoreBuilder().addAll(reader.iterator()).build();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return number of ASDPs
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * @return fasta identifiers of the alternate loci in order of their first appearance
+     */
+    public ImmutableList<String> getAltLoci() {
+        return ImmutableList.copyOf(altLoci);
+    }
+
+    /**
+     * Returns the id of the alternate locus.
+     *
+     * @param altLocus
+     *            fasta identifier of the alternate locus (e.g. chr1_KI270762v1_alt)
+     * @return the id or -1 if unknown
+     */
+    public int getAltLocusId(String altLocus) {
+        Integer id = altLocusIdx.get(altLocus);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param altLocusId
+     *            id of the alternate locus
+     * @return first row of the alternate locus
+     */
+    public int getFrom(int altLocusId) {
+        return locusFrom[altLocusId];
+    }
+
+    /**
+     * @param altLocusId
+     *            id of the alternate locus
+     * @return last row (excl.) of the alternate locus
+     */
+    public int getTo(int altLocusId) {
+        return locusTo[altLocusId];
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return start position, 1-based
+     */
+    public int getPosition(int row) {
+        return positions[row];
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return length of the reference span
+     */
+    public int getLength(int row) {
+        return lengths[row];
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return end position, 1-based incl.
+     */
+    public int getEnd(int row) {
+        return positions[row] + lengths[row] - 1;
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return name of the contig
+     */
+    public String getContig(int row) {
+        return contigs[contigIds[row]];
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return name of the region (e.g. REGION108)
+     */
+    public String getRegion(int row) {
+        return regions[regionIds[row]];
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return fasta identifier of the alternate locus
+     */
+    public String getAltLocus(int row) {
+        return altLoci[altLocusIds[row]];
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return <code>true</code> for a symbolic (SV) ASDP
+     */
+    public boolean isSymbolic(int row) {
+        return symbolic.get(row);
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return copy of the reference allele bases
+     */
+    public byte[] getRef(int row) {
+        return Arrays.copyOfRange(alleles, refOffsets[row], altOffsets[row]);
+    }
+
+    /**
+     * @param row
+     *            the row
+     * @return the alternate allele(s), comma separated
+     */
+    public String getAlt(int row) {
+        return new String(alleles, altOffsets[row], refOffsets[row + 1] - altOffsets[row]);
+    }
+
+    /**
+     * Materialize the row as a {@link VariantContext} with the <code>AL</code> and <code>RE</code> attributes.
+     *
+     * @param row
+     *            the row
+     * @return the {@link VariantContext}
+     */
+    public VariantContext getVariantContext(int row) {
+        ArrayList<Allele> list = new ArrayList<>();
+        list.add(Allele.create(getRef(row), true));
+        for (String alt : getAlt(row).split(String.valueOf((char) ALT_SEPARATOR)))
+            list.add(Allele.create(alt, false));
+        VariantContextBuilder builder = new VariantContextBuilder("asdp", getContig(row), getPosition(row),
+                getEnd(row), list);
+        builder.attribute("AL", getAltLocus(row));
+        builder.attribute("RE", getRegion(row));
+        if (isSymbolic(row))
+            builder.attribute("END", getEnd(row));
+        return builder.make();
+    }
+
+    /**
+     * Returns a view of the sorted ASDPs of the alternate locus. The {@link VariantContext}s are materialized on each
+     * access.
+     *
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @return the ASDPs, an empty list if the locus is unknown
+     */
+    public List<VariantContext> getAsdps(String altLocus) {
+        int id = getAltLocusId(altLocus);
+        if (id < 0)
+            return ImmutableList.of();
+        return getAsdps(id);
+    }
+
+    /**
+     * @see #getAsdps(String)
+     * @param altLocusId
+     *            id of the alternate locus
+     * @return view of the ASDPs of the alternate locus
+     */
+    public List<VariantContext> getAsdps(final int altLocusId) {
+        final int id = altLocusId;
+        return new AbstractList<VariantContext>() {
+            @Override
+            public VariantContext get(int index) {
+                if (index < 0 || index >= size())
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                return getVariantContext(locusFrom[id] + index);
+            }
+
+            @Override
+            public int size() {
+                return locusTo[id] - locusFrom[id];
+            }
+        };
+    }
+
+    /**
+     * Streaming builder of the {@link AsdpStore}. The ASDPs can be added in any order.
+     *
+     * @author Marten Jäger <marten.jaeger@charite.de>
+     *
+     */
+    public static class AsdpStoreBuilder {
+        private final ArrayList<String> contigs = new ArrayList<>();
+        private final HashMap<String, Integer> contigIdx = new HashMap<>();
+        private final ArrayList<String> regions = new ArrayList<>();
+        private final HashMap<String, Integer> regionIdx = new HashMap<>();
+        private final ArrayList<String> altLoci = new ArrayList<>();
+        private final HashMap<String, Integer> altLocusIdx = new HashMap<>();
+
+        private int size = 0;
+        private int[] positions = new int[1024];
+        private int[] lengths = new int[1024];
+        private int[] contigIds = new int[1024];
+        private int[] regionIds = new int[1024];
+        private int[] altLocusIds = new int[1024];
+        private final BitSet symbolic = new BitSet();
+        private int alleleSize = 0;
+        private byte[] alleles = new byte[4096];
+        private int[] refOffsets = new int[1025];
+        private int[] altOffsets = new int[1024];
+
+        /**
+         * Add a single ASDP. The <code>AL</code> and <code>RE</code> attributes are required.
+         *
+         * @param vc
+         *            the ASDP
+         * @return the builder
+         */
+        public AsdpStoreBuilder add(VariantContext vc) {
+            if (size == positions.length)
+                grow();
+            positions[size] = vc.getStart();
+            lengths[size] = vc.getEnd() - vc.getStart() + 1;
+            contigIds[size] = id(vc.getContig(), contigs, contigIdx);
+            regionIds[size] = id((String) vc.getAttribute("RE"), regions, regionIdx);
+            altLocusIds[size] = id((String) vc.getAttribute("AL"), altLoci, altLocusIdx);
+            symbolic.set(size, vc.getType() == Type.SYMBOLIC);
+            refOffsets[size] = alleleSize;
+            append(vc.getReference().getBases());
+            altOffsets[size] = alleleSize;
+            for (int i = 0; i < vc.getAlternateAlleles().size(); i++) {
+                if (i > 0)
+                    append(new byte[] { ALT_SEPARATOR });
+                append(vc.getAlternateAllele(i).getDisplayBases());
+            }
+            size++;
+            refOffsets[size] = alleleSize;
+            return this;
+        }
+
+        /**
+         * Add all ASDPs provided by the iterator.
+         *
+         * @param it
+         *            the ASDPs, e.g. from {@link VCFFileReader#iterator()}
+         * @return the builder
+         */
+        public AsdpStoreBuilder addAll(Iterator<VariantContext> it) {
+            while (it.hasNext())
+                add(it.next());
+            return this;
+        }
+
+        public AsdpStore build() {
+            return new AsdpStore(this);
+        }
+
+        private void append(byte[] bytes) {
+            if (alleleSize + bytes.length > alleles.length)
+                alleles = Arrays.copyOf(alleles, Math.max(2 * alleles.length, alleleSize + bytes.length));
+            System.arraycopy(bytes, 0, alleles, alleleSize, bytes.length);
+            alleleSize += bytes.length;
+        }
+
+        private void grow() {
+            int capacity = 2 * positions.length;
+            positions = Arrays.copyOf(positions, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            contigIds = Arrays.copyOf(contigIds, capacity);
+            regionIds = Arrays.copyOf(regionIds, capacity);
+            altLocusIds = Arrays.copyOf(altLocusIds, capacity);
+            refOffsets = Arrays.copyOf(refOffsets, capacity + 1);
+            altOffsets = Arrays.copyOf(altOffsets, capacity);
+        }
+
+        private static int id(String value, ArrayList<String> dictionary, HashMap<String, Integer> index) {
+            Integer id = index.get(value);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.add(value);
+                index.put(value, id);
+            }
+            return id;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.data;
+
+import java.io.Serializable;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A window on a reference contig spanning all ASDPs of a {@link Region} from the first to the last ASDP position. All
+ * variants inside this window have to be compared to the ASDPs of the alternate loci placed in the region.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class AsdpWindow implements Serializable, Comparable<AsdpWindow> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** contig name as used in the reference fasta file (e.g. chr6) */
+    private final String contig;
+    /** name of the region (e.g. REGION108) */
+    private final String regionName;
+    /** first ASDP position in the region, 1-based incl. */
+    private final int start;
+    /** last ASDP position + ref length in the region, 1-based incl. */
+    private final int stop;
+    /** {@link AltScaffoldPlacementInfo}s of the alternate loci placed in this region */
+    private final ImmutableList<AltScaffoldPlacementInfo> placements;
+    /** fasta identifiers of the alternate loci (e.g. chr1_KI270762v1_alt), same order as the placements */
+    private final ImmutableList<String> altLoci;
+
+    private AsdpWindow(AsdpWindowBuilder builder) {
+        this.contig = builder.contig;
+        this.regionName = builder.regionName;
+        this.start = builder.start;
+        this.stop = builder.stop;
+        this.placements = builder.placements.build();
+        this.altLoci = builder.altLoci.build();
+    }
+
+    public String getContig() {
+        return contig;
+    }
+
+    public String getRegionName() {
+        return regionName;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getStop() {
+        return stop;
+    }
+
+    public ImmutableList<AltScaffoldPlacementInfo> getPlacements() {
+        return placements;
+    }
+
+    public ImmutableList<String> getAltLoci() {
+        return altLoci;
+    }
+
+    /**
+     * Checks if the position is located in the window.
+     *
+     * @param position
+     *            1-based position on the contig
+     * @return <code>true</code> if start <= position <= stop
+     */
+    public boolean contains(int position) {
+        return start <= position && position <= stop;
+    }
+
+    @Override
+    public int compareTo(AsdpWindow o) {
+        if (this.start != o.start)
+            return this.start < o.start ? -1 : 1;
+        if (this.stop != o.stop)
+            return this.stop < o.stop ? -1 : 1;
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(regionName).append("\t").append(contig).append(":").append(start).append("-").append(stop)
+                .append("\t").append(altLoci.size()).append(" alt. loci");
+        return sb.toString();
+    }
+
+    /**
+     * Nested builder for the {@link AsdpWindow}s.
+     *
+     *
+     * @author Marten Jäger <marten.jaeger@charite.de>
+     *
+     */
+    public static class AsdpWindowBuilder {
+        private String contig;
+        private String regionName;
+        private int start;
+        private int stop;
+        private ImmutableList.Builder<AltScaffoldPlacementInfo> placements = new ImmutableList.Builder<>();
+        private ImmutableList.Builder<String> altLoci = new ImmutableList.Builder<>();
+
+        public AsdpWindowBuilder contig(String contig) {
+            this.contig = contig;
+            return this;
+        }
+
+        public AsdpWindowBuilder regionName(String name) {
+            this.regionName = name;
+            return this;
+        }
+
+        public AsdpWindowBuilder start(int value) {
+            this.start = value;
+            return this;
+        }
+
+        public AsdpWindowBuilder stop(int value) {
+            this.stop = value;
+            return this;
+        }
+
+        public AsdpWindowBuilder addAltLocus(AltScaffoldPlacementInfo placement, String fastaIdentifier) {
+            this.placements.add(placement);
+            this.altLoci.add(fastaIdentifier);
+            return this;
+        }
+
+        public AsdpWindow build() {
+            return new AsdpWindow(this);
+        }
+    }
+
+}
@@ -0,0 +1,423 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import de.charite.compbio.asdpex.reference.MappedReference;
+import htsjdk.samtools.util.Interval;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Coordinate liftover between the alternate loci and the primary assembly based on the {@link NCBIgffAlignment}s. For
+ * each alignment the match blocks are stored as arrays of their offsets along the alignment, which are the prefix sums
+ * of the {@link PackedAlignmentElements}, and a position is lifted with a binary search over these offsets.<br>
+ * A primary assembly position may be covered by several alternate loci, so a lift to the alternate loci returns all of
+ * them. Positions in the unaligned tails of an alternate locus or in gaps of the alignment are not lifted. If a
+ * reference is given, the reference allele of a lifted variant must match the target assembly.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class LiftoverIndex {
+
+    /**
+     * Direction of the liftover.
+     */
+    public enum Direction {
+        /** from the alternate loci to the primary assembly */
+        TO_PRIMARY,
+        /** from the primary assembly to the alternate loci */
+        TO_ALT
+    }
+
+    /**
+     * Receives the results of {@link LiftoverIndex#lift(Iterator, Direction, MappedReference, Sink)}.
+     */
+    public interface Sink {
+        /**
+         * A lifted variant, or an unchanged variant not on an alternate locus for {@link Direction#TO_PRIMARY}.
+         */
+        void lifted(VariantContext vc);
+
+        /**
+         * A variant that could not be lifted.
+         */
+        void rejected(VariantContext vc, String reason);
+    }
+
+    /** alignments by alt. contig, sorted by alt. start */
+    private final HashMap<String, Chain[]> byAlt;
+    /** alignments by primary contig, sorted by ref. start */
+    private final HashMap<String, Chain[]> byPrimary;
+
+    private LiftoverIndex(HashMap<String, Chain[]> byAlt, HashMap<String, Chain[]> byPrimary) {
+        this.byAlt = byAlt;
+        this.byPrimary = byPrimary;
+    }
+
+    /**
+     * @return <code>true</code> if the contig is an alternate locus of the index
+     */
+    public boolean isAltContig(String contig) {
+        return byAlt.containsKey(contig);
+    }
+
+    /**
+     * Lift an interval from an alternate locus to the primary assembly. The interval must be placed within a single
+     * match block of the alignment.
+     *
+     * @param contig
+     *            the alternate locus
+     * @param start
+     *            1-based start
+     * @param end
+     *            1-based end (incl.)
+     * @return the {@link Interval} on the primary assembly, negative strand if the alternate locus is aligned in
+     *         reverse, or <code>null</code> if it can not be lifted
+     */
+    public Interval liftToPrimary(String contig, int start, int end) {
+        Chain[] chains = byAlt.get(contig);
+        if (chains == null)
+            return null;
+        Chain chain = findChain(chains, start);
+        return chain == null ? null : chain.lift(start, end, false);
+    }
+
+    /**
+     * Lift an interval from the primary assembly to all alternate loci aligned to it. The interval must be placed
+     * within a single match block of each alignment.
+     *
+     * @param contig
+     *            the primary chromosome
+     * @param start
+     *            1-based start
+     * @param end
+     *            1-based end (incl.)
+     * @return the {@link Interval}s on the alternate loci, empty if it can not be lifted
+     */
+    public List<Interval> liftToAlt(String contig, int start, int end) {
+        ArrayList<Interval> result = new ArrayList<>();
+        Chain[] chains = byPrimary.get(contig);
+        if (chains == null)
+            return result;
+        for (Chain chain : chains) {
+            // the chains are sorted by start, the alt. loci of a chromosome are few
+            if (chain.refStart > start)
+                break;
+            if (chain.refStop < end)
+                continue;
+            Interval interval = chain.lift(start, end, true);
+            if (interval != null)
+                result.add(interval);
+        }
+        return result;
+    }
+
+    /**
+     * Lift a stream of variants. The records are lifted in the order of the stream, but the lifted records are not
+     * sorted on the target contigs.<br>
+     * For {@link Direction#TO_PRIMARY} the variants on contigs other than the alternate loci are passed on unchanged,
+     * for {@link Direction#TO_ALT} a variant is lifted to all alternate loci covering it. If the alternate locus is
+     * aligned in reverse the alleles are reverse complemented, this is only possible for SNVs and MNVs. Lifted variants
+     * whose reference allele differs from the bases of the target assembly are rejected.
+     *
+     * @param variants
+     *            the {@link VariantContext}s
+     * @param direction
+     *            the {@link Direction}
+     * @param reference
+     *            the {@link MappedReference} with the primary assembly and the alternate loci to check the reference
+     *            alleles of the lifted variants, or <code>null</code> to skip the check
+     * @param sink
+     *            the {@link Sink} receiving the lifted and rejected variants
+     * @return the number of lifted variants
+     */
+    public int lift(Iterator<VariantContext> variants, Direction direction, MappedReference reference, Sink sink) {
+        int lifted = 0;
+        // consecutive variants are often on the same alignment
+        String lastContig = null;
+        Chain[] chains = null;
+        Chain last = null;
+        while (variants.hasNext()) {
+            VariantContext vc = variants.next();
+            if (!vc.getContig().equals(lastContig)) {
+                lastContig = vc.getContig();
+                chains = direction == Direction.TO_PRIMARY ? byAlt.get(lastContig) : byPrimary.get(lastContig);
+                last = null;
+            }
+            if (chains == null) {
+                if (direction == Direction.TO_PRIMARY) {
+                    sink.lifted(vc);
+                    lifted++;
+                } else
+                    sink.rejected(vc, "not on a primary chromosome with alternate loci");
+                continue;
+            }
+            if (direction == Direction.TO_PRIMARY) {
+                if (last == null || !last.containsAlt(vc.getStart()))
+                    last = findChain(chains, vc.getStart());
+                String reason = last == null ? "outside of the aligned part of the alternate locus"
+                        : liftVariant(vc, last, false, reference, sink);
+                if (reason == null)
+                    lifted++;
+                else
+                    sink.rejected(vc, reason);
+            } else {
+                int n = 0;
+                String reason = "not covered by an alternate locus";
+                for (Chain chain : chains) {
+                    if (chain.refStart > vc.getStart())
+                        break;
+                    if (chain.refStop < vc.getStart())
+                        continue;
+                    String r = liftVariant(vc, chain, true, reference, sink);
+                    if (r == null)
+                        n++;
+                    else
+                        reason = r;
+                }
+                if (n == 0)
+                    sink.rejected(vc, reason);
+                lifted += n;
+            }
+        }
+        return lifted;
+    }
+
+    /**
+     * @return <code>null</code> if the variant was lifted, the reason otherwise
+     */
+    private static String liftVariant(VariantContext vc, Chain chain, boolean toAlt, MappedReference reference,
+            Sink sink) {
+        Interval interval = chain.lift(vc.getStart(), vc.getEnd(), toAlt);
+        if (interval == null)
+            return "overlaps a gap of the alignment";
+        VariantContextBuilder builder = new VariantContextBuilder(vc).chr(interval.getContig())
+                .start(interval.getStart()).stop(interval.getEnd());
+        if (vc.hasAttribute("END"))
+            builder.attribute("END", interval.getEnd());
+        if (interval.isNegativeStrand()) {
+            if (!vc.isSNP() && !vc.isMNP())
+                return "only SNVs and MNVs can be lifted to the reverse strand";
+            reverseComplement(vc, builder);
+        }
+        VariantContext lifted = builder.make();
+        if (reference != null) {
+            String reason = checkReference(lifted, reference);
+            if (reason != null)
+                return reason;
+        }
+        sink.lifted(lifted);
+        return null;
+    }
+
+    /**
+     * Compare the reference allele of a lifted variant with the bases of the target assembly.
+     *
+     * @return <code>null</code> if the allele matches, the reason otherwise
+     */
+    private static String checkReference(VariantContext vc, MappedReference reference) {
+        if (!reference.hasSequence(vc.getContig()))
+            return "target contig is missing in the reference";
+        byte[] allele = vc.getReference().getBases();
+        int end = vc.getStart() + allele.length - 1;
+        if (end > reference.getLength(vc.getContig()))
+            return "reference allele does not match the target assembly";
+        byte[] bases = reference.getBases(vc.getContig(), vc.getStart(), end, true);
+        for (int i = 0; i < allele.length; i++)
+            if (Character.toUpperCase((char) allele[i]) != Character.toUpperCase((char) bases[i]))
+                return "reference allele does not match the target assembly";
+        return null;
+    }
+
+    private static void reverseComplement(VariantContext vc, VariantContextBuilder builder) {
+        HashMap<Allele, Allele> alleles = new HashMap<>();
+        for (Allele allele : vc.getAlleles())
+            alleles.put(allele, Allele.create(SequenceUtil.reverseComplement(allele.getBaseString()),
+                    allele.isReference()));
+        ArrayList<Allele> newAlleles = new ArrayList<>();
+        for (Allele allele : vc.getAlleles())
+            newAlleles.add(alleles.get(allele));
+        builder.alleles(newAlleles);
+        if (vc.hasGenotypes()) {
+            ArrayList<Genotype> genotypes = new ArrayList<>();
+            for (Genotype genotype : vc.getGenotypes()) {
+                ArrayList<Allele> gtAlleles = new ArrayList<>();
+                for (Allele allele : genotype.getAlleles())
+                    gtAlleles.add(allele.isCalled() ? alleles.get(allele) : allele);
+                genotypes.add(new GenotypeBuilder(genotype).alleles(gtAlleles).make());
+            }
+            builder.genotypes(genotypes);
+        }
+    }
+
+    /**
+     * Find the alignment containing the alt. position with a binary search over the alt. starts.
+     */
+    private static Chain findChain(Chain[] chains, int pos) {
+        int lo = 0;
+        int hi = chains.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chains[mid].altStop < pos)
+                lo = mid + 1;
+            else if (chains[mid].altStart > pos)
+                hi = mid - 1;
+            else
+                return chains[mid];
+        }
+        return null;
+    }
+
+    /**
+     * The match blocks of a single alignment.
+     */
+    private static class Chain {
+        final String altContig;
+        final String primaryContig;
+        final int refStart;
+        final int refStop;
+        final boolean refStrand;
+        final int altStart;
+        final int altStop;
+        final boolean altStrand;
+        /** offset of the match blocks along the reference */
+        final int[] refOffsets;
+        /** offset of the match blocks along the alt. locus */
+        final int[] altOffsets;
+        final int[] lengths;
+
+        Chain(String altContig, String primaryContig, NCBIgffAlignment alignment) {
+            this.altContig = altContig;
+            this.primaryContig = primaryContig;
+            this.refStart = alignment.getRefStart();
+            this.refStop = alignment.getRefStop();
+            this.refStrand = alignment.isRefStrand();
+            this.altStart = alignment.getAltStart();
+            this.altStop = alignment.getAltStop();
+            this.altStrand = alignment.isAltStrand();
+            PackedAlignmentElements elements = alignment.getPackedElements();
+            int n = 0;
+            for (int i = 0; i < elements.size(); i++)
+                if (elements.getType(i) == NCBIgffAlignmentElementType.MATCH)
+                    n++;
+            refOffsets = new int[n];
+            altOffsets = new int[n];
+            lengths = new int[n];
+            n = 0;
+            for (int i = 0; i < elements.size(); i++) {
+                if (elements.getType(i) != NCBIgffAlignmentElementType.MATCH)
+                    continue;
+                refOffsets[n] = elements.getRefOffset(i);
+                altOffsets[n] = elements.getAltOffset(i);
+                lengths[n] = elements.getLength(i);
+                n++;
+            }
+        }
+
+        boolean containsAlt(int pos) {
+            return altStart <= pos && pos <= altStop;
+        }
+
+        /**
+         * Lift the interval, both ends must be in the same match block.
+         */
+        Interval lift(int start, int end, boolean toAlt) {
+            int[] from = toAlt ? refOffsets : altOffsets;
+            int[] to = toAlt ? altOffsets : refOffsets;
+            int fromStart = toAlt ? refStart : altStart;
+            int fromStop = toAlt ? refStop : altStop;
+            boolean fromStrand = toAlt ? refStrand : altStrand;
+            int toStart = toAlt ? altStart : refStart;
+            int toStop = toAlt ? altStop : refStop;
+            boolean toStrand = toAlt ? altStrand : refStrand;
+            if (start < fromStart || end > fromStop)
+                return null;
+            // offsets along the alignment
+            int o1 = fromStrand ? start - fromStart : fromStop - end;
+            int o2 = fromStrand ? end - fromStart : fromStop - start;
+            int block = Arrays.binarySearch(from, o1);
+            if (block < 0)
+                block = -block - 2;
+            if (block < 0 || o2 >= from[block] + lengths[block])
+                return null;
+            int t1 = to[block] + o1 - from[block];
+            int t2 = to[block] + o2 - from[block];
+            int s = toStrand ? toStart + t1 : toStop - t2;
+            int e = toStrand ? toStart + t2 : toStop - t1;
+            return new Interval(toAlt ? altContig : primaryContig, s, e, fromStrand != toStrand, null);
+        }
+    }
+
+    /**
+     * Builder for the {@link LiftoverIndex}.
+     */
+    public static class Builder {
+        private final HashMap<String, List<Chain>> byAlt = new HashMap<>();
+        private final HashMap<String, List<Chain>> byPrimary = new HashMap<>();
+
+        /**
+         * Add an alignment of an alternate locus.
+         *
+         * @param altContig
+         *            name of the alternate locus contig, e.g. chr1_KI270706v1_alt
+         * @param primaryContig
+         *            name of the primary chromosome, e.g. chr1
+         * @param alignment
+         *            the {@link NCBIgffAlignment}
+         * @return the builder
+         */
+        public Builder add(String altContig, String primaryContig, NCBIgffAlignment alignment) {
+            Chain chain = new Chain(altContig, primaryContig, alignment);
+            add(byAlt, altContig, chain);
+            add(byPrimary, primaryContig, chain);
+            return this;
+        }
+
+        private static void add(HashMap<String, List<Chain>> map, String contig, Chain chain) {
+            List<Chain> chains = map.get(contig);
+            if (chains == null) {
+                chains = new ArrayList<>();
+                map.put(contig, chains);
+            }
+            chains.add(chain);
+        }
+
+        public LiftoverIndex build() {
+            return new LiftoverIndex(sort(byAlt, new Comparator<Chain>() {
+                @Override
+                public int compare(Chain o1, Chain o2) {
+                    return Integer.compare(o1.altStart, o2.altStart);
+                }
+            }), sort(byPrimary, new Comparator<Chain>() {
+                @Override
+                public int compare(Chain o1, Chain o2) {
+                    return Integer.compare(o1.refStart, o2.refStart);
+                }
+            }));
+        }
+
+        private static HashMap<String, Chain[]> sort(HashMap<String, List<Chain>> map, Comparator<Chain> comparator) {
+            HashMap<String, Chain[]> result = new HashMap<>();
+            for (String contig : map.keySet()) {
+                Chain[] chains = map.get(contig).toArray(new Chain[0]);
+                Arrays.sort(chains, comparator);
+                result.put(contig, chains);
+            }
+            return result;
+        }
+    }
+
+}
@@ -20,10 +20,20 @@ public class NCBIgffAlignment {
     private final int altStart;
     private final int altStop;
     private final boolean altStrand;
-    private final ImmutableList<NCBIgffAlignmentElement> elements;
+    /** the elements packed into primitive arrays */
+    private final PackedAlignmentElements packedElements;
+    /** the elements as objects, created on first request */
+    private ImmutableList<NCBIgffAlignmentElement> elements;
 
     public NCBIgffAlignment(String refId, String altId, int refStart, int refStop, boolean refStrand, int altStart,
             int altStop, boolean altStrand, ImmutableList<NCBIgffAlignmentElement> elements) {
+        this(refId, altId, refStart, refStop, refStrand, altStart, altStop, altStrand,
+                PackedAlignmentElements.of(elements));
+        this.elements = elements;
+    }
+
+    public NCBIgffAlignment(String refId, String altId, int refStart, int refStop, boolean refStrand, int altStart,
+            int altStop, boolean altStrand, PackedAlignmentElements elements) {
         this.refId = refId;
         this.altId = altId;
         this.refStart = refStart;
@@ -32,7 +42,7 @@ public class NCBIgffAlignment {
         this.altStart = altStart;
         this.altStop = altStop;
         this.altStrand = altStrand;
-        this.elements = elements;
+        this.packedElements = elements;
     }
 
     public String getRefId() {
@@ -67,10 +77,22 @@ public class NCBIgffAlignment {
         return altStrand;
     }
 
+    /**
+     * @return the elements as {@link NCBIgffAlignmentElement} objects, prefer {@link #getPackedElements()}
+     */
     public ImmutableList<NCBIgffAlignmentElement> getElements() {
+        if (elements == null)
+            elements = packedElements.toList();
         return elements;
     }
 
+    /**
+     * @return the {@link PackedAlignmentElements}
+     */
+    public PackedAlignmentElements getPackedElements() {
+        return packedElements;
+    }
+
     /**
      * 
      */
@@ -80,8 +102,8 @@ public class NCBIgffAlignment {
                 .append("\t0\t").append(isRefStrand() ? "+" : "-").append("\t.\tTarget=").append(getAltId())
                 .append("\t").append(getAltStart()).append("\t").append(getAltStop()).append("\t")
                 .append(isAltStrand() ? "+" : "-").append(";Gap=");
-        for (NCBIgffAlignmentElement element : elements) {
-            switch (element.getType()) {
+        for (int i = 0; i < packedElements.size(); i++) {
+            switch (packedElements.getType(i)) {
             case MATCH:
                 sb.append("M");
                 break;
@@ -94,7 +116,7 @@ public class NCBIgffAlignment {
             default:
                 break;
             }
-            sb.append(element.getLength()).append(" ");
+            sb.append(packedElements.getLength(i)).append(" ");
         }
         return sb.toString();
     }
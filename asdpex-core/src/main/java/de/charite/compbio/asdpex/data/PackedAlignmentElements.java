@@ -0,0 +1,263 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement.NCBIgffAlignmentElementBuilder;
+
+/**
+ * Primitive representation of the {@link NCBIgffAlignmentElement}s of an {@link NCBIgffAlignment}. Each element is a
+ * single <code>int</code> with the {@link NCBIgffAlignmentElementType} in the upper two and the length in the lower
+ * bits. The '0'-based starts on the reference and the alternate locus are the prefix sums of the lengths, so a
+ * sub-list is a view on the same arrays and created in constant time.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class PackedAlignmentElements implements Iterable<NCBIgffAlignmentElement> {
+    /** bit position of the type in the packed element */
+    public static final int TYPE_SHIFT = 30;
+    /** mask of the length in the packed element */
+    public static final int LENGTH_MASK = (1 << TYPE_SHIFT) - 1;
+    private static final NCBIgffAlignmentElementType[] TYPES = NCBIgffAlignmentElementType.values();
+
+    /** the packed elements, shared by the views */
+    private final int[] elements;
+    /** ref. start of each element relative to the first one, one more entry for the end */
+    private final int[] refPrefix;
+    /** alt. start of each element relative to the first one, one more entry for the end */
+    private final int[] altPrefix;
+    /** first element of the view */
+    private final int from;
+    /** end of the view (excl.) */
+    private final int to;
+    /** ref. start of the first element */
+    private final int refStart;
+    /** alt. start of the first element */
+    private final int altStart;
+
+    private PackedAlignmentElements(int[] elements, int[] refPrefix, int[] altPrefix, int from, int to, int refStart,
+            int altStart) {
+        this.elements = elements;
+        this.refPrefix = refPrefix;
+        this.altPrefix = altPrefix;
+        this.from = from;
+        this.to = to;
+        this.refStart = refStart;
+        this.altStart = altStart;
+    }
+
+    /**
+     * Pack the elements of a list.
+     *
+     * @param elements
+     *            the {@link NCBIgffAlignmentElement}s
+     * @return the packed elements
+     */
+    public static PackedAlignmentElements of(ImmutableList<NCBIgffAlignmentElement> elements) {
+        if (elements.isEmpty())
+            return new Builder(0, 0).build();
+        Builder builder = new Builder(elements.get(0).getRef_start(), elements.get(0).getAlt_start(), false);
+        for (NCBIgffAlignmentElement element : elements)
+            builder.add(element.getType(), element.getLength());
+        return builder.build();
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * @return <code>true</code> if there are no elements
+     */
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    /**
+     * @param i
+     *            index of the element
+     * @return the element packed into an <code>int</code>
+     */
+    public int getPacked(int i) {
+        return elements[from + i];
+    }
+
+    public NCBIgffAlignmentElementType getType(int i) {
+        return TYPES[elements[from + i] >>> TYPE_SHIFT];
+    }
+
+    public int getLength(int i) {
+        return elements[from + i] & LENGTH_MASK;
+    }
+
+    /**
+     * @return '0'-based start of the element on the reference
+     */
+    public int getRefStart(int i) {
+        return refStart + refPrefix[from + i] - refPrefix[from];
+    }
+
+    /**
+     * @return '0'-based start of the element on the alternate locus
+     */
+    public int getAltStart(int i) {
+        return altStart + altPrefix[from + i] - altPrefix[from];
+    }
+
+    /**
+     * @return number of reference bases covered by the elements
+     */
+    public int getRefLength() {
+        return refPrefix[to] - refPrefix[from];
+    }
+
+    /**
+     * @return number of alternate locus bases covered by the elements
+     */
+    public int getAltLength() {
+        return altPrefix[to] - altPrefix[from];
+    }
+
+    /**
+     * @return number of reference bases covered by the elements before the element <code>i</code>
+     */
+    public int getRefOffset(int i) {
+        return refPrefix[from + i] - refPrefix[from];
+    }
+
+    /**
+     * @return number of alternate locus bases covered by the elements before the element <code>i</code>
+     */
+    public int getAltOffset(int i) {
+        return altPrefix[from + i] - altPrefix[from];
+    }
+
+    /**
+     * View of the elements <code>fromIndex</code> (incl.) to <code>toIndex</code> (excl.), the starts of the view
+     * begin with '0' for ref and alt.
+     *
+     * @return the view on the same arrays
+     */
+    public PackedAlignmentElements subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("sub list " + fromIndex + "-" + toIndex + " of size " + size());
+        return new PackedAlignmentElements(elements, refPrefix, altPrefix, from + fromIndex, from + toIndex, 0, 0);
+    }
+
+    /**
+     * @return the element <code>i</code> as {@link NCBIgffAlignmentElement}
+     */
+    public NCBIgffAlignmentElement get(int i) {
+        return new NCBIgffAlignmentElementBuilder().refStart(getRefStart(i)).altStart(getAltStart(i))
+                .length(getLength(i)).type(getType(i)).build();
+    }
+
+    /**
+     * @return the elements as {@link NCBIgffAlignmentElement} objects
+     */
+    public ImmutableList<NCBIgffAlignmentElement> toList() {
+        ImmutableList.Builder<NCBIgffAlignmentElement> list = ImmutableList.builder();
+        for (int i = 0; i < size(); i++)
+            list.add(get(i));
+        return list.build();
+    }
+
+    @Override
+    public Iterator<NCBIgffAlignmentElement> iterator() {
+        return new Iterator<NCBIgffAlignmentElement>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size();
+            }
+
+            @Override
+            public NCBIgffAlignmentElement next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return get(i++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Builder for the {@link PackedAlignmentElements}, continuous elements of the same type are collapsed into a single
+     * one of the cumulative length.
+     */
+    public static class Builder {
+        private final int refStart;
+        private final int altStart;
+        private final boolean collapse;
+        private int[] elements = new int[16];
+        private int size = 0;
+
+        /**
+         * @param refStart
+         *            '0'-based ref. start of the first element
+         * @param altStart
+         *            '0'-based alt. start of the first element
+         */
+        public Builder(int refStart, int altStart) {
+            this(refStart, altStart, true);
+        }
+
+        private Builder(int refStart, int altStart, boolean collapse) {
+            this.refStart = refStart;
+            this.altStart = altStart;
+            this.collapse = collapse;
+        }
+
+        public Builder add(NCBIgffAlignmentElementType type, int length) {
+            return addPacked(type.ordinal() << TYPE_SHIFT | length);
+        }
+
+        /**
+         * Add an element packed into an <code>int</code>, see {@link PackedAlignmentElements#getPacked(int)}.
+         */
+        public Builder addPacked(int packed) {
+            if (collapse && size > 0 && elements[size - 1] >>> TYPE_SHIFT == packed >>> TYPE_SHIFT) {
+                elements[size - 1] += packed & LENGTH_MASK;
+                return this;
+            }
+            if (size == elements.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(elements, 0, grown, 0, size);
+                elements = grown;
+            }
+            elements[size++] = packed;
+            return this;
+        }
+
+        public PackedAlignmentElements build() {
+            int[] packed = new int[size];
+            System.arraycopy(elements, 0, packed, 0, size);
+            int[] refPrefix = new int[size + 1];
+            int[] altPrefix = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                NCBIgffAlignmentElementType type = TYPES[packed[i] >>> TYPE_SHIFT];
+                int length = packed[i] & LENGTH_MASK;
+                refPrefix[i + 1] = refPrefix[i] + (type == NCBIgffAlignmentElementType.INSERTION
+                        || type == NCBIgffAlignmentElementType.UNKNOWN ? 0 : length);
+                altPrefix[i + 1] = altPrefix[i] + (type == NCBIgffAlignmentElementType.DELETION
+                        || type == NCBIgffAlignmentElementType.UNKNOWN ? 0 : length);
+            }
+            return new PackedAlignmentElements(packed, refPrefix, altPrefix, 0, size, refStart, altStart);
+        }
+    }
+
+}
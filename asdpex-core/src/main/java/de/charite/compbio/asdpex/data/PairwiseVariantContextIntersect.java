@@ -5,6 +5,7 @@ package de.charite.compbio.asdpex.data;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
 
 import htsjdk.variant.variantcontext.VariantContext;
 
@@ -21,16 +22,16 @@ public class PairwiseVariantContextIntersect implements Serializable, Comparable
     private static final long serialVersionUID = 1L;
     // private final CloseableIterator<VariantContext> set1;
     /** SNVs in the first set */
-    private final ArrayList<VariantContext> set1SNVs;
+    private final List<VariantContext> set1SNVs;
     /** SV in the first set */
-    private final ArrayList<VariantContext> set1SVs;
+    private final List<VariantContext> set1SVs;
     // private final int onlySet1SNVs;
 
     // private final CloseableIterator<VariantContext> set2;
     /** SNVs in the second set */
-    private final ArrayList<VariantContext> set2SNVs;
+    private final List<VariantContext> set2SNVs;
     /** SV in the second set */
-    private final ArrayList<VariantContext> set2SVs;
+    private final List<VariantContext> set2SVs;
     // private final int onlySet2SNVs;
 
     /** overlapping SNVs between the first and second set */
@@ -91,14 +92,14 @@ public class PairwiseVariantContextIntersect implements Serializable, Comparable
     /**
      * @return the set1SNVs
      */
-    public ArrayList<VariantContext> getSet1SNVs() {
+    public List<VariantContext> getSet1SNVs() {
         return set1SNVs;
     }
 
     /**
      * @return the set1SVs
      */
-    public ArrayList<VariantContext> getSet1SVs() {
+    public List<VariantContext> getSet1SVs() {
         return set1SVs;
     }
 
@@ -119,14 +120,14 @@ public class PairwiseVariantContextIntersect implements Serializable, Comparable
     /**
      * @return the set2SNVs
      */
-    public ArrayList<VariantContext> getSet2SNVs() {
+    public List<VariantContext> getSet2SNVs() {
         return set2SNVs;
     }
 
     /**
      * @return the set2SVs
      */
-    public ArrayList<VariantContext> getSet2SVs() {
+    public List<VariantContext> getSet2SVs() {
         return set2SVs;
     }
 
@@ -162,13 +163,13 @@ public class PairwiseVariantContextIntersect implements Serializable, Comparable
 
     public static class PairwiseVariantContextIntersectBuilder {
         // private CloseableIterator<VariantContext> set1;
-        private ArrayList<VariantContext> set1SNVs;
-        private ArrayList<VariantContext> set1SVs;
+        private List<VariantContext> set1SNVs;
+        private List<VariantContext> set1SVs;
         private int onlySet1SNVs;
 
         // private CloseableIterator<VariantContext> set2;
-        private ArrayList<VariantContext> set2SNVs;
-        private ArrayList<VariantContext> set2SVs;
+        private List<VariantContext> set2SNVs;
+        private List<VariantContext> set2SVs;
         private int onlySet2SNVs;
 
         private ArrayList<VariantContext> intersectSNVs;
@@ -188,12 +189,12 @@ public class PairwiseVariantContextIntersect implements Serializable, Comparable
         // return this;
         // }
 
-        public PairwiseVariantContextIntersectBuilder set1SNVs(ArrayList<VariantContext> set1snv) {
+        public PairwiseVariantContextIntersectBuilder set1SNVs(List<VariantContext> set1snv) {
             this.set1SNVs = set1snv;
             return this;
         }
 
-        public PairwiseVariantContextIntersectBuilder set1SVs(ArrayList<VariantContext> set1sv) {
+        public PairwiseVariantContextIntersectBuilder set1SVs(List<VariantContext> set1sv) {
             this.set1SVs = set1sv;
             return this;
         }
@@ -203,12 +204,12 @@ public class PairwiseVariantContextIntersect implements Serializable, Comparable
             return this;
         }
 
-        public PairwiseVariantContextIntersectBuilder set2SNVs(ArrayList<VariantContext> set2snv) {
+        public PairwiseVariantContextIntersectBuilder set2SNVs(List<VariantContext> set2snv) {
             this.set2SNVs = set2snv;
             return this;
         }
 
-        public PairwiseVariantContextIntersectBuilder set2SVs(ArrayList<VariantContext> set2sv) {
+        public PairwiseVariantContextIntersectBuilder set2SVs(List<VariantContext> set2sv) {
             this.set2SVs = set2sv;
             return this;
         }
@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.db;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Pool of read-only connections to the SQLite database, one per thread, so the database can be queried by several
+ * worker threads at once. The journal mode is not changed by the pool, see {@link DatabaseManger#openReadPool()}. The
+ * connection of a thread is opened on its first use and prepares each SQL statement only once, all connections are
+ * closed with the pool. The connections are held by the pool and not by the threads, so nothing is left in long living
+ * worker threads after the pool is closed.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class ConnectionPool implements Closeable {
+
+    private final String url;
+    /** the connections by thread */
+    private final ConcurrentHashMap<Thread, PooledConnection> connections = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Create the pool, no connection is opened until the first use.
+     *
+     * @param path
+     *            to the SQLite DB file
+     * @throws SQLException
+     *             if the SQLite JDBC driver is missing
+     */
+    public ConnectionPool(String path) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite JDBC driver not found", e);
+        }
+        this.url = "jdbc:sqlite:" + path;
+    }
+
+    /**
+     * @return the read-only {@link Connection} of the current thread
+     * @throws SQLException
+     *             if the connection could not be opened or the pool is closed
+     */
+    public Connection getConnection() throws SQLException {
+        return get().connection;
+    }
+
+    /**
+     * Get the {@link PreparedStatement} of the SQL command on the connection of the current thread. The statement is
+     * prepared on the first call and must not be closed by the caller, only its {@link ResultSet}.
+     *
+     * @param sql
+     *            the SQL command
+     * @return the {@link PreparedStatement}
+     * @throws SQLException
+     *             if the statement could not be prepared or the pool is closed
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        PooledConnection pooled = get();
+        PreparedStatement stmt = pooled.statements.get(sql);
+        if (stmt == null) {
+            stmt = pooled.connection.prepareStatement(sql);
+            pooled.statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    private PooledConnection get() throws SQLException {
+        PooledConnection pooled = connections.get(Thread.currentThread());
+        if (pooled != null && !closed)
+            return pooled;
+        synchronized (this) {
+            if (closed)
+                throw new SQLException("The connection pool is closed");
+            if (pooled == null) {
+                SQLiteConfig config = new SQLiteConfig();
+                config.setReadOnly(true);
+                pooled = new PooledConnection(DriverManager.getConnection(url, config.toProperties()));
+                connections.put(Thread.currentThread(), pooled);
+            }
+        }
+        return pooled;
+    }
+
+    /**
+     * Close the statements and connections of all threads.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (PooledConnection pooled : connections.values())
+            pooled.close();
+        connections.clear();
+    }
+
+    /**
+     * A connection of the pool with its prepared statements, used by a single thread.
+     */
+    private static class PooledConnection {
+        final Connection connection;
+        /** the prepared statements by SQL command */
+        final HashMap<String, PreparedStatement> statements = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        void close() {
+            try {
+                for (PreparedStatement stmt : statements.values())
+                    stmt.close();
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+}
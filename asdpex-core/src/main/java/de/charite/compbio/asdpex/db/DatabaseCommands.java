@@ -27,4 +27,8 @@ public final class DatabaseCommands {
             + "FOREIGN KEY(region) REFERENCES region(name), "
             + "FOREIGN KEY(alt_scaffold) REFERENCES accession(genbank_accession), "
             + "PRIMARY KEY (position, magic, alt_scaffold))";
+    /** secondary indexes, created after a bulk load */
+    public static final String CREATE_INDEX_REGION_ACCESSION = "CREATE INDEX IF NOT EXISTS region_refseq_accession ON region (refseq_accession)";
+    public static final String CREATE_INDEX_PLACEMENT_REGION = "CREATE INDEX IF NOT EXISTS placement_region_name ON placement (region_name)";
+    public static final String CREATE_INDEX_ASDP_REGION = "CREATE INDEX IF NOT EXISTS asdp_region_position ON asdp (region, position)";
 }
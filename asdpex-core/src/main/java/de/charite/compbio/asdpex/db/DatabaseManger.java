@@ -11,10 +11,9 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
-import javax.sql.DataSource;
-
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -27,15 +26,30 @@ import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContext.Type;
 
 /**
- * Simple class to manage the SQLite database
+ * Simple class to manage the SQLite database.<br>
+ * The lookups prepare their statements only once per connection. By default they use the single connection of the
+ * manager, which must not be shared by several threads. After {@link #openReadPool()} the lookups use a read-only
+ * connection of the calling thread from a {@link ConnectionPool} and can be called concurrently from worker threads.
  *
  * @author Marten Jäger <marten.jaeger@charite.de>
  *
  */
 public class DatabaseManger {
+    /** default number of rows per JDBC batch */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    /** SQLite page cache size in KiB used during a bulk load */
+    public static final int BULK_LOAD_CACHE_SIZE_KIB = 200000;
+
     private String databasePath;
-    private static DataSource dataSource;
     private Connection connectionInstance;
+    /** the prepared statements of the lookups on the connection by SQL command */
+    private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+    /** read-only connections of the worker threads, <code>null</code> if not opened */
+    private volatile ConnectionPool readPool;
+    /** number of rows per JDBC batch */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /** pragma settings before the bulk load, <code>null</code> if not in bulk load mode */
+    private String[] pragmasBeforeBulkLoad;
 
     /**
      * hidden empty constructor
@@ -135,10 +149,49 @@ public class DatabaseManger {
     }
 
     /**
-     * Close the {@link Connection} to the SQLite database.
+     * Open the pool of read-only connections, from then on the lookups can be called concurrently by several threads.
+     * The journal mode is not changed, readers do not block each other in any mode. Databases created by
+     * <code>create-db</code> use the WAL journal mode, see {@link #setWalJournalMode()}.
+     * 
+     * @throws SQLException
+     *             if the pool could not be created
+     */
+    public void openReadPool() throws SQLException {
+        if (readPool != null)
+            return;
+        if (pragmasBeforeBulkLoad != null)
+            throw new IllegalStateException("The read pool can not be opened during a bulk load");
+        // the readers see the committed state only
+        this.connectionInstance.commit();
+        readPool = new ConnectionPool(this.databasePath);
+    }
+
+    /**
+     * Switch the database to the WAL journal mode. The mode is stored in the database file, so it is set once when the
+     * database is created. Afterwards readers do not block a writer and vice versa.
+     * 
+     * @throws SQLException
+     *             if the mode could not be changed, e.g. because another connection is using the database
+     */
+    public void setWalJournalMode() throws SQLException {
+        if (pragmasBeforeBulkLoad != null)
+            throw new IllegalStateException("The journal mode can not be changed during a bulk load");
+        setPragmas("journal_mode = WAL");
+    }
+
+    /**
+     * Close the {@link Connection} to the SQLite database, the prepared statements and the pool of read-only
+     * connections.
      */
     public void closeConnection() {
+        if (readPool != null) {
+            readPool.close();
+            readPool = null;
+        }
         try {
+            for (PreparedStatement stmt : statements.values())
+                stmt.close();
+            statements.clear();
             this.connectionInstance.close();
         } catch (SQLException e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
@@ -146,6 +199,174 @@ public class DatabaseManger {
         }
     }
 
+    /**
+     * Set the number of rows inserted with a single JDBC batch.
+     * 
+     * @param batchSize
+     *            number of rows per batch (&gt;0)
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of rows per JDBC batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Switch the connection into bulk load mode. All uploads run in a single transaction, which is committed by
+     * {@link #endBulkLoad()} or rolled back by {@link #abortBulkLoad()}, and the page cache is enlarged until then. For
+     * a database which is created from scratch the journal is kept in memory and the synchronous writes are turned
+     * off as well. This is not crash safe, so it must not be used for an existing database. The former settings are
+     * restored afterwards.
+     * 
+     * @param newDatabase
+     *            <code>true</code> if the database file was created from scratch
+     * @throws SQLException
+     */
+    public void beginBulkLoad(boolean newDatabase) throws SQLException {
+        if (pragmasBeforeBulkLoad != null)
+            return;
+        String cacheSize = queryPragma("cache_size");
+        if (newDatabase) {
+            String[] former = new String[] { "journal_mode = " + queryPragma("journal_mode"),
+                    "synchronous = " + queryPragma("synchronous"), "cache_size = " + cacheSize };
+            setPragmas("journal_mode = MEMORY", "synchronous = OFF", "cache_size = -" + BULK_LOAD_CACHE_SIZE_KIB);
+            pragmasBeforeBulkLoad = former;
+        } else {
+            setPragmas("cache_size = -" + BULK_LOAD_CACHE_SIZE_KIB);
+            pragmasBeforeBulkLoad = new String[] { "cache_size = " + cacheSize };
+        }
+    }
+
+    /**
+     * Leave the bulk load mode, i.e. build the secondary indexes, commit the uploads and restore the former pragma
+     * settings. If the indexes can not be created, all uploads are rolled back.
+     * 
+     * @throws SQLException
+     */
+    public void endBulkLoad() throws SQLException {
+        if (pragmasBeforeBulkLoad == null)
+            return;
+        try {
+            createIndexes();
+        } catch (SQLException e) {
+            this.connectionInstance.rollback();
+            throw e;
+        } finally {
+            restorePragmas();
+        }
+    }
+
+    /**
+     * Leave the bulk load mode after a failed upload, i.e. roll back all uploads without building the indexes and
+     * restore the former pragma settings.
+     * 
+     * @throws SQLException
+     */
+    public void abortBulkLoad() throws SQLException {
+        if (pragmasBeforeBulkLoad == null)
+            return;
+        try {
+            this.connectionInstance.rollback();
+        } finally {
+            restorePragmas();
+        }
+    }
+
+    private void restorePragmas() throws SQLException {
+        String[] pragmas = pragmasBeforeBulkLoad;
+        pragmasBeforeBulkLoad = null;
+        setPragmas(pragmas);
+    }
+
+    /**
+     * Create the secondary indexes of all existing tables. Creating them after the insert is much faster than
+     * maintaining them row by row.
+     * 
+     * @throws SQLException
+     */
+    public void createIndexes() throws SQLException {
+        Statement stmt = this.connectionInstance.createStatement();
+        try {
+            if (tableExists("region"))
+                stmt.executeUpdate(DatabaseCommands.CREATE_INDEX_REGION_ACCESSION);
+            if (tableExists("placement"))
+                stmt.executeUpdate(DatabaseCommands.CREATE_INDEX_PLACEMENT_REGION);
+            if (tableExists("asdp"))
+                stmt.executeUpdate(DatabaseCommands.CREATE_INDEX_ASDP_REGION);
+        } finally {
+            stmt.close();
+        }
+        this.connectionInstance.commit();
+    }
+
+    private boolean tableExists(String tableName) throws SQLException {
+        PreparedStatement stmt = this.connectionInstance
+                .prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?");
+        try {
+            stmt.setString(1, tableName);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private String queryPragma(String pragma) throws SQLException {
+        Statement stmt = this.connectionInstance.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery("PRAGMA " + pragma);
+            return rs.next() ? rs.getString(1) : null;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * The journal mode can not be changed inside a transaction, so the pragmas are set in auto-commit mode.
+     */
+    private void setPragmas(String... pragmas) throws SQLException {
+        this.connectionInstance.commit();
+        this.connectionInstance.setAutoCommit(true);
+        Statement stmt = this.connectionInstance.createStatement();
+        try {
+            for (String pragma : pragmas)
+                stmt.execute("PRAGMA " + pragma);
+        } finally {
+            stmt.close();
+            this.connectionInstance.setAutoCommit(false);
+        }
+    }
+
+    /**
+     * Commit an upload, unless in bulk load mode where all uploads are committed together.
+     */
+    private void commitUpload() throws SQLException {
+        if (pragmasBeforeBulkLoad == null)
+            this.connectionInstance.commit();
+    }
+
+    /**
+     * Add the current row to the batch and flush the batch if it is full.
+     * 
+     * @param stmt
+     *            the {@link PreparedStatement} with the current row
+     * @param rows
+     *            number of rows added so far, including the current one
+     * @throws SQLException
+     */
+    private void addBatch(PreparedStatement stmt, int rows) throws SQLException {
+        stmt.addBatch();
+        if (rows % batchSize == 0)
+            stmt.executeBatch();
+    }
+
     /**
      * Upload all {@link AccessionInfo} into the database.
      * 
@@ -158,16 +379,21 @@ public class DatabaseManger {
         // Statement stmt = this.connectionInstance.createStatement();
         PreparedStatement stmt = this.connectionInstance.prepareStatement(
                 "INSERT INTO accession (chromosome, refseq_accession, refseq_gi, genbank_accession, genbank_gi) VALUES (?,?,?,?,?)");
-        for (AccessionInfo acc : accessions.values()) {
-            stmt.setString(1, acc.getChromosome());
-            stmt.setString(2, acc.getRefseqAccessionVersion());
-            stmt.setInt(3, acc.getRefseqGi());
-            stmt.setString(4, acc.getGenbankAccessionVersion());
-            stmt.setInt(5, acc.getGenbankGi());
-            stmt.execute();
+        int rows = 0;
+        try {
+            for (AccessionInfo acc : accessions.values()) {
+                stmt.setString(1, acc.getChromosome());
+                stmt.setString(2, acc.getRefseqAccessionVersion());
+                stmt.setInt(3, acc.getRefseqGi());
+                stmt.setString(4, acc.getGenbankAccessionVersion());
+                stmt.setInt(5, acc.getGenbankGi());
+                addBatch(stmt, ++rows);
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.close();
         }
-        stmt.close();
-        this.connectionInstance.commit();
+        commitUpload();
     }
 
     /**
@@ -180,19 +406,24 @@ public class DatabaseManger {
     public void uploadRegionInfos(ImmutableMap<String, RegionInfo> regions) throws SQLException {
         PreparedStatement stmt = this.connectionInstance
                 .prepareStatement("INSERT INTO region (name, refseq_accession, start, stop) VALUES (?,?,?,?)");
-        for (RegionInfo region : regions.values()) {
-            if (region.getChromosomeInfo() == null) {
-                System.out.println("[WARN] failed to get Chromosome info for region: " + region.getRegionName());
-                continue;
+        int rows = 0;
+        try {
+            for (RegionInfo region : regions.values()) {
+                if (region.getChromosomeInfo() == null) {
+                    System.out.println("[WARN] failed to get Chromosome info for region: " + region.getRegionName());
+                    continue;
+                }
+                stmt.setString(1, region.getRegionName());
+                stmt.setString(2, region.getChromosomeInfo());
+                stmt.setInt(3, region.getStart());
+                stmt.setInt(4, region.getStop());
+                addBatch(stmt, ++rows);
             }
-            stmt.setString(1, region.getRegionName());
-            stmt.setString(2, region.getChromosomeInfo());
-            stmt.setInt(3, region.getStart());
-            stmt.setInt(4, region.getStop());
-            stmt.execute();
+            stmt.executeBatch();
+        } finally {
+            stmt.close();
         }
-        stmt.close();
-        this.connectionInstance.commit();
+        commitUpload();
     }
 
     /**
@@ -205,56 +436,91 @@ public class DatabaseManger {
     public void uploadScaffoldPlacement(ImmutableMap<String, AltScaffoldPlacementInfo> placements) throws SQLException {
         PreparedStatement stmt = this.connectionInstance.prepareStatement(
                 "INSERT INTO placement (alt_scaf_acc, region_name, orientation, alt_scaf_start, alt_scaf_stop, alt_start_tail, alt_stop_tail, parent_start, parent_stop) VALUES (?,?,?,?,?,?,?,?,?)");
-        for (AltScaffoldPlacementInfo place : placements.values()) {
-            stmt.setString(1, place.getAltScafAcc());
-            stmt.setString(2, place.getRegion());
-            stmt.setInt(3, place.isStrand() ? 1 : 0);
-            stmt.setInt(4, place.getAltScafStart());
-            stmt.setInt(5, place.getAltScafStop());
-            stmt.setInt(6, place.getAltStartTail());
-            stmt.setInt(7, place.getAltStopTail());
-            stmt.setInt(8, place.getParentStart());
-            stmt.setInt(9, place.getParentStop());
-            stmt.execute();
+        int rows = 0;
+        try {
+            for (AltScaffoldPlacementInfo place : placements.values()) {
+                stmt.setString(1, place.getAltScafAcc());
+                stmt.setString(2, place.getRegion());
+                stmt.setInt(3, place.isStrand() ? 1 : 0);
+                stmt.setInt(4, place.getAltScafStart());
+                stmt.setInt(5, place.getAltScafStop());
+                stmt.setInt(6, place.getAltStartTail());
+                stmt.setInt(7, place.getAltStopTail());
+                stmt.setInt(8, place.getParentStart());
+                stmt.setInt(9, place.getParentStop());
+                addBatch(stmt, ++rows);
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.close();
         }
-        stmt.close();
-        this.connectionInstance.commit();
+        commitUpload();
     }
 
     /**
-     * Uploads the {@link List} of ASDP {@link VariantContext}s into the database.
+     * Uploads the ASDP {@link VariantContext}s into the database. The variants are inserted in batches, so they can be
+     * streamed directly from the {@link htsjdk.variant.vcf.VCFFileReader}.
      * 
      * @param variantList
+     * @return number of uploaded ASDPs
      * @throws SQLException
      */
-    public void uploadAsdp(ArrayList<VariantContext> variantList) throws SQLException {
+    public int uploadAsdp(Iterable<VariantContext> variantList) throws SQLException {
         PreparedStatement stmt = this.connectionInstance.prepareStatement(
                 "INSERT INTO asdp (region, position, magic, ref, alt, alt_scaffold, type, length) VALUES (?,?,?,?,?,?,?,?)");
-        String alt_scaffold;
-        for (VariantContext variant : variantList) {
-            stmt.setString(1, (String) variant.getAttribute("RE"));
-            stmt.setInt(2, variant.getStart());
-            stmt.setInt(3, variant.getReference().getDisplayString().length()
-                    - variant.getAlternateAllele(0).getDisplayString().length());
-            stmt.setString(4, variant.getReference().getDisplayString());
-            stmt.setString(5, variant.getAlternateAllele(0).getDisplayString());
-            alt_scaffold = (String) variant.getAttribute("AL");
-            alt_scaffold = alt_scaffold.substring(alt_scaffold.indexOf('_') + 1, alt_scaffold.length() - 4);
-            alt_scaffold = alt_scaffold.replace('v', '.');
-            stmt.setString(6, alt_scaffold);
-            if (variant.getType() == Type.SYMBOLIC)
-                stmt.setString(7, (String) variant.getAttribute("SVTYPE"));
-            else
-                stmt.setString(7, "SNV");
-            Object svlen = variant.getAttribute("SVLEN");
-            if (svlen != null)
-                stmt.setInt(8, Integer.parseInt((String) svlen));
-            else
-                stmt.setNull(8, Types.INTEGER);
-            stmt.execute();
+        int rows = 0;
+        try {
+            String alt_scaffold;
+            for (VariantContext variant : variantList) {
+                stmt.setString(1, (String) variant.getAttribute("RE"));
+                stmt.setInt(2, variant.getStart());
+                stmt.setInt(3, variant.getReference().getDisplayString().length()
+                        - variant.getAlternateAllele(0).getDisplayString().length());
+                stmt.setString(4, variant.getReference().getDisplayString());
+                stmt.setString(5, variant.getAlternateAllele(0).getDisplayString());
+                alt_scaffold = (String) variant.getAttribute("AL");
+                alt_scaffold = alt_scaffold.substring(alt_scaffold.indexOf('_') + 1, alt_scaffold.length() - 4);
+                alt_scaffold = alt_scaffold.replace('v', '.');
+                stmt.setString(6, alt_scaffold);
+                if (variant.getType() == Type.SYMBOLIC)
+                    stmt.setString(7, (String) variant.getAttribute("SVTYPE"));
+                else
+                    stmt.setString(7, "SNV");
+                Object svlen = variant.getAttribute("SVLEN");
+                if (svlen != null)
+                    stmt.setInt(8, Integer.parseInt((String) svlen));
+                else
+                    stmt.setNull(8, Types.INTEGER);
+                addBatch(stmt, ++rows);
+            }
+            stmt.executeBatch();
+        } finally {
+            stmt.close();
         }
-        stmt.close();
-        this.connectionInstance.commit();
+        commitUpload();
+        return rows;
+    }
+
+    /**
+     * Get the {@link PreparedStatement} of a lookup, either on the read-only connection of the calling thread or on
+     * the connection of the manager. The statement is prepared only once per connection and must not be closed, only
+     * its {@link ResultSet}.
+     * 
+     * @param sql
+     *            the SQL command
+     * @return the {@link PreparedStatement}
+     * @throws SQLException
+     */
+    private PreparedStatement prepareQuery(String sql) throws SQLException {
+        ConnectionPool pool = readPool;
+        if (pool != null)
+            return pool.prepareStatement(sql);
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = this.connectionInstance.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
     }
 
     /**
@@ -267,9 +533,13 @@ public class DatabaseManger {
      */
     public int getTableSize(String tableName) throws SQLException {
 
-        PreparedStatement stmt = this.connectionInstance.prepareStatement("SELECT COUNT(*) AS size FROM " + tableName);
+        PreparedStatement stmt = prepareQuery("SELECT COUNT(*) AS size FROM " + tableName);
         ResultSet rs = stmt.executeQuery();
-        return (rs.getInt("size"));
+        try {
+            return (rs.getInt("size"));
+        } finally {
+            rs.close();
+        }
     }
 
     /**
@@ -282,32 +552,50 @@ public class DatabaseManger {
     public ImmutableList<RegionInfo> getRegionNamesOnChromosome(String chromosome) throws SQLException {
         ImmutableList.Builder<RegionInfo> builder = new ImmutableList.Builder<>();
         RegionInfoBuilder regionInfoBuilder;
-        PreparedStatement stmt = this.connectionInstance
-                .prepareStatement("SELECT DISTINCT r.name, r.start, r.stop FROM region r, accession a, placement p "
+        PreparedStatement stmt = prepareQuery(
+                "SELECT DISTINCT r.name, r.start, r.stop FROM region r, accession a, placement p "
                         + "WHERE r.refseq_accession = a.refseq_accession " + "AND r.name = p.region_name "
                         + "AND a.chromosome = ? " + "ORDER BY r.start ASC");
         stmt.setString(1, chromosome.replaceFirst("^chr", ""));
         ResultSet rs = stmt.executeQuery();
-        while (rs.next()) {
-            regionInfoBuilder = new RegionInfoBuilder();
-            regionInfoBuilder.chromosome(null);
-            regionInfoBuilder.regionName(rs.getString(1));
-            regionInfoBuilder.start(rs.getInt(2));
-            regionInfoBuilder.stop(rs.getInt(3));
-            builder.add(regionInfoBuilder.build());
+        try {
+            while (rs.next()) {
+                regionInfoBuilder = new RegionInfoBuilder();
+                regionInfoBuilder.chromosome(null);
+                regionInfoBuilder.regionName(rs.getString(1));
+                regionInfoBuilder.start(rs.getInt(2));
+                regionInfoBuilder.stop(rs.getInt(3));
+                builder.add(regionInfoBuilder.build());
+            }
+        } finally {
+            rs.close();
         }
         return (builder.build());
     }
 
+    /**
+     * Returns all regions with the RefSeq accession of their chromosome as chromosome info.
+     * 
+     * @return list of {@link RegionInfo}s
+     * @throws SQLException
+     */
     public ImmutableList<RegionInfo> getRegionInfos() throws SQLException {
         ImmutableList.Builder<RegionInfo> builder = new ImmutableList.Builder<>();
 
         RegionInfoBuilder regionInfoBuilder;
-        PreparedStatement stmt = this.connectionInstance.prepareStatement("SELECT * FROM region");
+        PreparedStatement stmt = prepareQuery("SELECT * FROM region");
         ResultSet rs = stmt.executeQuery();
-        while (rs.next()) {
-            regionInfoBuilder = new RegionInfoBuilder();
-            regionInfoBuilder.regionName(rs.getString("name"));
+        try {
+            while (rs.next()) {
+                regionInfoBuilder = new RegionInfoBuilder();
+                regionInfoBuilder.regionName(rs.getString("name"));
+                regionInfoBuilder.chromosome(rs.getString("refseq_accession"));
+                regionInfoBuilder.start(rs.getInt("start"));
+                regionInfoBuilder.stop(rs.getInt("stop"));
+                builder.add(regionInfoBuilder.build());
+            }
+        } finally {
+            rs.close();
         }
 
         return (builder.build());
@@ -322,24 +610,8 @@ public class DatabaseManger {
      * @throws SQLException
      */
     public ImmutableList<AltScaffoldPlacementInfo> getAltScaffoldPlacementInfos() throws SQLException {
-        ImmutableList.Builder<AltScaffoldPlacementInfo> builder = new ImmutableList.Builder<>();
-        AltScaffoldPlacementInfoBuilder aspBuilder;
-        PreparedStatement stmt = this.connectionInstance.prepareStatement("SELECT * FROM placement");
-        ResultSet rs = stmt.executeQuery();
-        while (rs.next()) {
-            aspBuilder = new AltScaffoldPlacementInfoBuilder();
-            aspBuilder.altScafAcc(rs.getString(1));
-            aspBuilder.region(rs.getString(2));
-            aspBuilder.strand(rs.getInt(3) == 1 ? true : false);
-            aspBuilder.altScafStart(rs.getInt(4));
-            aspBuilder.altScafStop(rs.getInt(5));
-            aspBuilder.altStartTail(rs.getInt(6));
-            aspBuilder.altStopTail(rs.getInt(7));
-            aspBuilder.parentStart(rs.getInt(8));
-            aspBuilder.parentStop(rs.getInt(9));
-            builder.add(aspBuilder.build());
-        }
-        return (builder.build());
+        PreparedStatement stmt = prepareQuery("SELECT * FROM placement");
+        return readAltScaffoldPlacementInfos(stmt.executeQuery());
     }
 
     /**
@@ -351,24 +623,33 @@ public class DatabaseManger {
      * @throws SQLException
      */
     public ImmutableList<AltScaffoldPlacementInfo> getAltScaffoldPlacementInfos(String regionName) throws SQLException {
+        PreparedStatement stmt = prepareQuery("SELECT * FROM placement p WHERE p.region_name = ?");
+        stmt.setString(1, regionName);
+        return readAltScaffoldPlacementInfos(stmt.executeQuery());
+    }
+
+    /**
+     * Read the {@link AltScaffoldPlacementInfo}s of the placement rows and close the {@link ResultSet}.
+     */
+    private ImmutableList<AltScaffoldPlacementInfo> readAltScaffoldPlacementInfos(ResultSet rs) throws SQLException {
         ImmutableList.Builder<AltScaffoldPlacementInfo> builder = new ImmutableList.Builder<>();
         AltScaffoldPlacementInfoBuilder aspBuilder;
-        PreparedStatement stmt = this.connectionInstance
-                .prepareStatement("SELECT * FROM placement p WHERE p.region_name = ?");
-        stmt.setString(1, regionName);
-        ResultSet rs = stmt.executeQuery();
-        while (rs.next()) {
-            aspBuilder = new AltScaffoldPlacementInfoBuilder();
-            aspBuilder.altScafAcc(rs.getString(1));
-            aspBuilder.region(rs.getString(2));
-            aspBuilder.strand(rs.getInt(3) == 1 ? true : false);
-            aspBuilder.altScafStart(rs.getInt(4));
-            aspBuilder.altScafStop(rs.getInt(5));
-            aspBuilder.altStartTail(rs.getInt(6));
-            aspBuilder.altStopTail(rs.getInt(7));
-            aspBuilder.parentStart(rs.getInt(8));
-            aspBuilder.parentStop(rs.getInt(9));
-            builder.add(aspBuilder.build());
+        try {
+            while (rs.next()) {
+                aspBuilder = new AltScaffoldPlacementInfoBuilder();
+                aspBuilder.altScafAcc(rs.getString(1));
+                aspBuilder.region(rs.getString(2));
+                aspBuilder.strand(rs.getInt(3) == 1 ? true : false);
+                aspBuilder.altScafStart(rs.getInt(4));
+                aspBuilder.altScafStop(rs.getInt(5));
+                aspBuilder.altStartTail(rs.getInt(6));
+                aspBuilder.altStopTail(rs.getInt(7));
+                aspBuilder.parentStart(rs.getInt(8));
+                aspBuilder.parentStop(rs.getInt(9));
+                builder.add(aspBuilder.build());
+            }
+        } finally {
+            rs.close();
         }
         return (builder.build());
     }
@@ -382,17 +663,21 @@ public class DatabaseManger {
      * @throws SQLException
      */
     public String getFastaIdentifierAltLocus(String altScaffoldAccession) throws SQLException {
-        PreparedStatement stmt = this.connectionInstance.prepareStatement(
+        PreparedStatement stmt = prepareQuery(
                 "SELECT a.chromosome, a.genbank_accession FROM accession a WHERE a.refseq_accession = ?");
         stmt.setString(1, altScaffoldAccession);
         ResultSet rs = stmt.executeQuery();
-        StringBuilder sb = new StringBuilder();
-        if (rs.next()) {
-            sb.append("chr").append(rs.getString(1)).append("_").append(rs.getString(2).replace(".", "v"))
-                    .append("_alt");
-            return sb.toString();
-        } else
-            return null;
+        try {
+            StringBuilder sb = new StringBuilder();
+            if (rs.next()) {
+                sb.append("chr").append(rs.getString(1)).append("_").append(rs.getString(2).replace(".", "v"))
+                        .append("_alt");
+                return sb.toString();
+            } else
+                return null;
+        } finally {
+            rs.close();
+        }
     }
 
     /**
@@ -404,16 +689,19 @@ public class DatabaseManger {
      * @throws SQLException
      */
     public String getFastaIdentifierReference(String altScaffoldAccession) throws SQLException {
-        PreparedStatement stmt = this.connectionInstance
-                .prepareStatement("SELECT a.chromosome FROM accession a WHERE a.refseq_accession = ?");
+        PreparedStatement stmt = prepareQuery("SELECT a.chromosome FROM accession a WHERE a.refseq_accession = ?");
         stmt.setString(1, altScaffoldAccession);
         ResultSet rs = stmt.executeQuery();
-        StringBuilder sb = new StringBuilder();
-        if (rs.next()) {
-            sb.append("chr").append(rs.getString(1));
-            return sb.toString();
-        } else
-            return null;
+        try {
+            StringBuilder sb = new StringBuilder();
+            if (rs.next()) {
+                sb.append("chr").append(rs.getString(1));
+                return sb.toString();
+            } else
+                return null;
+        } finally {
+            rs.close();
+        }
     }
 
     /**
@@ -425,16 +713,20 @@ public class DatabaseManger {
      * @throws SQLException
      */
     public String getGffIdentifier(String altScaffoldAccession) throws SQLException {
-        PreparedStatement stmt = this.connectionInstance.prepareStatement(
+        PreparedStatement stmt = prepareQuery(
                 "SELECT r.refseq_accession FROM placement p, region r WHERE p.region_name = r.name AND  p.alt_scaf_acc = ?");
         stmt.setString(1, altScaffoldAccession);
         ResultSet rs = stmt.executeQuery();
-        StringBuilder sb = new StringBuilder();
-        if (rs.next()) {
-            sb.append(altScaffoldAccession).append("_").append(rs.getString(1));
-            return sb.toString();
-        } else
-            return null;
+        try {
+            StringBuilder sb = new StringBuilder();
+            if (rs.next()) {
+                sb.append(altScaffoldAccession).append("_").append(rs.getString(1));
+                return sb.toString();
+            } else
+                return null;
+        } finally {
+            rs.close();
+        }
     }
 
     /**
@@ -447,11 +739,14 @@ public class DatabaseManger {
      */
     public int getRegionMinimumAsdpPosition(String region) throws SQLException {
 
-        PreparedStatement stmt = this.connectionInstance
-                .prepareStatement("SELECT MIN(a.position) AS min FROM asdp a WHERE a.region = ?");
+        PreparedStatement stmt = prepareQuery("SELECT MIN(a.position) AS min FROM asdp a WHERE a.region = ?");
         stmt.setString(1, region);
         ResultSet rs = stmt.executeQuery();
-        return (rs.getInt("min"));
+        try {
+            return (rs.getInt("min"));
+        } finally {
+            rs.close();
+        }
     }
 
     /**
@@ -465,14 +760,16 @@ public class DatabaseManger {
      */
     public int getRegionMaximumAsdpPosition(String region) throws SQLException {
 
-        PreparedStatement stmt = this.connectionInstance
-                .prepareStatement("SELECT * FROM asdp a WHERE a.region = ? ORDER BY a.position DESC LIMIT 1");
+        PreparedStatement stmt = prepareQuery(
+                "SELECT * FROM asdp a WHERE a.region = ? ORDER BY a.position DESC LIMIT 1");
         stmt.setString(1, region);
         ResultSet rs = stmt.executeQuery();
         try {
             return (rs.getInt("position") + rs.getString("ref").length());
         } catch (SQLException e) {
             return 0;
+        } finally {
+            rs.close();
         }
     }
 
@@ -0,0 +1,347 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo;
+import de.charite.compbio.asdpex.data.AltScaffoldPlacementInfo.AltScaffoldPlacementInfoBuilder;
+import de.charite.compbio.asdpex.data.AsdpWindow;
+import de.charite.compbio.asdpex.data.AsdpWindow.AsdpWindowBuilder;
+import de.charite.compbio.asdpex.data.RegionInfo;
+import de.charite.compbio.asdpex.data.RegionInfo.RegionInfoBuilder;
+
+/**
+ * Immutable in-memory snapshot of the regions, alt. scaffold placements, accessions and the per region ASDP
+ * statistics of the SQLite database.<br>
+ * The snapshot is loaded with a few bulk queries and answers the lookups used during the annotation (the same as the
+ * corresponding {@link DatabaseManger} methods) without any further SQL traffic. The regions are addressed by their
+ * index, all per region values are stored in primitive arrays. The snapshot is thread-safe.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class RegionCatalog {
+
+    /** region names */
+    private final String[] regionNames;
+    /** region start, 1-based */
+    private final int[] regionStart;
+    /** region stop, 1-based incl. */
+    private final int[] regionStop;
+    /** minimum ASDP position per region, 0 if no ASDP */
+    private final int[] asdpMin;
+    /** maximum ASDP position + ref length per region, 0 if no ASDP */
+    private final int[] asdpMax;
+    /** number of ASDPs per region */
+    private final int[] asdpCount;
+    /** region name to region index */
+    private final HashMap<String, Integer> regionIdx = new HashMap<>();
+    /** chromosome (w/o 'chr') to indices of the regions with placements, sorted by region start */
+    private final HashMap<String, int[]> regionsByChromosome = new HashMap<>();
+
+    /** all placements */
+    private final ImmutableList<AltScaffoldPlacementInfo> placements;
+    /** offsets into {@link #regionPlacements} per region index, length = number of regions + 1 */
+    private final int[] regionPlacementOffsets;
+    /** placement indices grouped by region */
+    private final int[] regionPlacements;
+
+    /** alt. scaffold refseq accession to fasta identifier (e.g. chr1_KI270762v1_alt) */
+    private final HashMap<String, String> fastaIdentifierAltLocus = new HashMap<>();
+    /** alt. scaffold refseq accession to reference fasta identifier (e.g. chr1) */
+    private final HashMap<String, String> fastaIdentifierReference = new HashMap<>();
+    /** alt. scaffold refseq accession to GFF identifier (e.g. NT_187514.1_NC_000001.11) */
+    private final HashMap<String, String> gffIdentifier = new HashMap<>();
+
+    private RegionCatalog(Connection connection) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            // accessions
+            HashMap<String, String> chromosomeByAccession = new HashMap<>();
+            ResultSet rs = stmt.executeQuery("SELECT refseq_accession, chromosome, genbank_accession FROM accession");
+            while (rs.next()) {
+                String chromosome = rs.getString(2);
+                chromosomeByAccession.put(rs.getString(1), chromosome);
+                fastaIdentifierAltLocus.put(rs.getString(1),
+                        "chr" + chromosome + "_" + rs.getString(3).replace(".", "v") + "_alt");
+                fastaIdentifierReference.put(rs.getString(1), "chr" + chromosome);
+            }
+            rs.close();
+
+            // regions
+            ArrayList<String> names = new ArrayList<>();
+            ArrayList<int[]> ranges = new ArrayList<>();
+            HashMap<String, String> refseqByRegion = new HashMap<>();
+            rs = stmt.executeQuery("SELECT name, refseq_accession, start, stop FROM region");
+            while (rs.next()) {
+                regionIdx.put(rs.getString(1), names.size());
+                names.add(rs.getString(1));
+                refseqByRegion.put(rs.getString(1), rs.getString(2));
+                ranges.add(new int[] { rs.getInt(3), rs.getInt(4) });
+            }
+            rs.close();
+            int n = names.size();
+            this.regionNames = names.toArray(new String[n]);
+            this.regionStart = new int[n];
+            this.regionStop = new int[n];
+            for (int i = 0; i < n; i++) {
+                regionStart[i] = ranges.get(i)[0];
+                regionStop[i] = ranges.get(i)[1];
+            }
+
+            // placements grouped by region
+            ImmutableList.Builder<AltScaffoldPlacementInfo> placementBuilder = new ImmutableList.Builder<>();
+            ArrayList<Integer> placementRegion = new ArrayList<>();
+            int[] counts = new int[n + 1];
+            AltScaffoldPlacementInfoBuilder aspBuilder;
+            rs = stmt.executeQuery("SELECT * FROM placement");
+            while (rs.next()) {
+                aspBuilder = new AltScaffoldPlacementInfoBuilder();
+                aspBuilder.altScafAcc(rs.getString(1));
+                aspBuilder.region(rs.getString(2));
+                aspBuilder.strand(rs.getInt(3) == 1 ? true : false);
+                aspBuilder.altScafStart(rs.getInt(4));
+                aspBuilder.altScafStop(rs.getInt(5));
+                aspBuilder.altStartTail(rs.getInt(6));
+                aspBuilder.altStopTail(rs.getInt(7));
+                aspBuilder.parentStart(rs.getInt(8));
+                aspBuilder.parentStop(rs.getInt(9));
+                placementBuilder.add(aspBuilder.build());
+                Integer idx = regionIdx.get(rs.getString(2));
+                placementRegion.add(idx == null ? -1 : idx);
+                if (idx != null)
+                    counts[idx + 1]++;
+                String refseq = idx == null ? null : refseqByRegion.get(rs.getString(2));
+                if (refseq != null)
+                    gffIdentifier.putIfAbsent(rs.getString(1), rs.getString(1) + "_" + refseq);
+            }
+            rs.close();
+            this.placements = placementBuilder.build();
+            this.regionPlacementOffsets = new int[n + 1];
+            for (int i = 0; i < n; i++)
+                regionPlacementOffsets[i + 1] = regionPlacementOffsets[i] + counts[i + 1];
+            this.regionPlacements = new int[regionPlacementOffsets[n]];
+            int[] fill = Arrays.copyOf(regionPlacementOffsets, n);
+            for (int p = 0; p < placementRegion.size(); p++) {
+                int idx = placementRegion.get(p);
+                if (idx >= 0)
+                    regionPlacements[fill[idx]++] = p;
+            }
+
+            // ASDP statistics per region
+            this.asdpMin = new int[n];
+            this.asdpMax = new int[n];
+            this.asdpCount = new int[n];
+            rs = stmt.executeQuery("SELECT region, MIN(position), COUNT(*) FROM asdp GROUP BY region");
+            while (rs.next()) {
+                Integer idx = regionIdx.get(rs.getString(1));
+                if (idx == null)
+                    continue;
+                asdpMin[idx] = rs.getInt(2);
+                asdpCount[idx] = rs.getInt(3);
+            }
+            rs.close();
+            // the bare column 'ref' is taken from the row with the maximal position
+            rs = stmt.executeQuery("SELECT region, MAX(position), ref FROM asdp GROUP BY region");
+            while (rs.next()) {
+                Integer idx = regionIdx.get(rs.getString(1));
+                if (idx == null)
+                    continue;
+                asdpMax[idx] = rs.getInt(2) + rs.getString(3).length();
+            }
+            rs.close();
+
+            // regions with placements per chromosome sorted by start
+            HashMap<String, ArrayList<Integer>> byChromosome = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                String chromosome = chromosomeByAccession.get(refseqByRegion.get(regionNames[i]));
+                if (chromosome == null || regionPlacementOffsets[i + 1] == regionPlacementOffsets[i])
+                    continue;
+                if (!byChromosome.containsKey(chromosome))
+                    byChromosome.put(chromosome, new ArrayList<Integer>());
+                byChromosome.get(chromosome).add(i);
+            }
+            for (Map.Entry<String, ArrayList<Integer>> entry : byChromosome.entrySet()) {
+                ArrayList<Integer> list = entry.getValue();
+                Collections.sort(list, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer o1, Integer o2) {
+                        return Integer.compare(regionStart[o1], regionStart[o2]);
+                    }
+                });
+                int[] idx = new int[list.size()];
+                for (int i = 0; i < idx.length; i++)
+                    idx[i] = list.get(i);
+                regionsByChromosome.put(entry.getKey(), idx);
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Load the snapshot from the database.
+     *
+     * @param dbMan
+     *            the {@link DatabaseManger}
+     * @return the {@link RegionCatalog}
+     * @throws SQLException
+     */
+    public static RegionCatalog load(DatabaseManger dbMan) throws SQLException {
+        RegionCatalog catalog = new RegionCatalog(dbMan.getConnectionInstance());
+        System.out.println("[INFO] loaded region catalog: " + catalog.regionNames.length + " regions, "
+                + catalog.placements.size() + " alt. scaffold placements");
+        return catalog;
+    }
+
+    /**
+     * Returns the regions with at least one placed alt. scaffold on the chromosome sorted by start.
+     *
+     * @param chromosome
+     *            chromosome name with or without 'chr' prefix
+     * @return {@link RegionInfo}s on the chromosome
+     */
+    public ImmutableList<RegionInfo> getRegionNamesOnChromosome(String chromosome) {
+        ImmutableList.Builder<RegionInfo> builder = new ImmutableList.Builder<>();
+        RegionInfoBuilder regionInfoBuilder;
+        for (int idx : getRegionIndices(chromosome)) {
+            regionInfoBuilder = new RegionInfoBuilder();
+            regionInfoBuilder.chromosome(null);
+            regionInfoBuilder.regionName(regionNames[idx]);
+            regionInfoBuilder.start(regionStart[idx]);
+            regionInfoBuilder.stop(regionStop[idx]);
+            builder.add(regionInfoBuilder.build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the {@link AltScaffoldPlacementInfo}s in the region.
+     *
+     * @param regionName
+     *            name of the region
+     * @return list of {@link AltScaffoldPlacementInfo}s in the region
+     */
+    public ImmutableList<AltScaffoldPlacementInfo> getAltScaffoldPlacementInfos(String regionName) {
+        Integer idx = regionIdx.get(regionName);
+        if (idx == null)
+            return ImmutableList.of();
+        ImmutableList.Builder<AltScaffoldPlacementInfo> builder = new ImmutableList.Builder<>();
+        for (int i = regionPlacementOffsets[idx]; i < regionPlacementOffsets[idx + 1]; i++)
+            builder.add(placements.get(regionPlacements[i]));
+        return builder.build();
+    }
+
+    /**
+     * @return all {@link AltScaffoldPlacementInfo}s
+     */
+    public ImmutableList<AltScaffoldPlacementInfo> getAltScaffoldPlacementInfos() {
+        return placements;
+    }
+
+    /**
+     * @see DatabaseManger#getFastaIdentifierAltLocus(String)
+     */
+    public String getFastaIdentifierAltLocus(String altScaffoldAccession) {
+        return fastaIdentifierAltLocus.get(altScaffoldAccession);
+    }
+
+    /**
+     * @see DatabaseManger#getFastaIdentifierReference(String)
+     */
+    public String getFastaIdentifierReference(String altScaffoldAccession) {
+        return fastaIdentifierReference.get(altScaffoldAccession);
+    }
+
+    /**
+     * @see DatabaseManger#getGffIdentifier(String)
+     */
+    public String getGffIdentifier(String altScaffoldAccession) {
+        return gffIdentifier.get(altScaffoldAccession);
+    }
+
+    /**
+     * @see DatabaseManger#getRegionMinimumAsdpPosition(String)
+     */
+    public int getRegionMinimumAsdpPosition(String region) {
+        Integer idx = regionIdx.get(region);
+        return idx == null ? 0 : asdpMin[idx];
+    }
+
+    /**
+     * @see DatabaseManger#getRegionMaximumAsdpPosition(String)
+     */
+    public int getRegionMaximumAsdpPosition(String region) {
+        Integer idx = regionIdx.get(region);
+        return idx == null ? 0 : asdpMax[idx];
+    }
+
+    /**
+     * Returns the number of ASDPs in the region.
+     *
+     * @param region
+     *            name of the region (e.g. REGION108)
+     * @return number of ASDPs
+     */
+    public int getRegionAsdpCount(String region) {
+        Integer idx = regionIdx.get(region);
+        return idx == null ? 0 : asdpCount[idx];
+    }
+
+    /**
+     * Returns the sorted list of {@link AsdpWindow}s on the given contig. Each window spans the ASDPs of one region
+     * with alternate loci. If no ASDP is known for a region the window falls back to the region boundaries.
+     *
+     * @param contig
+     *            contig name as used in the reference fasta file (e.g. chr6)
+     * @return {@link AsdpWindow}s on the contig sorted by start position
+     */
+    public ImmutableList<AsdpWindow> getAsdpWindows(String contig) {
+        ArrayList<AsdpWindow> windows = new ArrayList<>();
+        AsdpWindowBuilder windowBuilder;
+        for (int idx : getRegionIndices(contig)) {
+            windowBuilder = new AsdpWindowBuilder();
+            windowBuilder.contig(contig);
+            windowBuilder.regionName(regionNames[idx]);
+            int start = asdpMin[idx];
+            if (start == 0) {
+                System.out.println(
+                        "[WARN] found no 'first' ASDP for region " + regionNames[idx] + " set to region start.");
+                start = regionStart[idx];
+            }
+            int stop = asdpMax[idx];
+            if (stop == 0) {
+                System.out.println("[WARN] found no 'last' ASDP for region " + regionNames[idx] + " set to region stop.");
+                stop = regionStop[idx];
+            }
+            windowBuilder.start(start);
+            windowBuilder.stop(stop);
+            for (int i = regionPlacementOffsets[idx]; i < regionPlacementOffsets[idx + 1]; i++) {
+                AltScaffoldPlacementInfo placement = placements.get(regionPlacements[i]);
+                windowBuilder.addAltLocus(placement, fastaIdentifierAltLocus.get(placement.getAltScafAcc()));
+            }
+            windows.add(windowBuilder.build());
+        }
+        Collections.sort(windows);
+        return ImmutableList.copyOf(windows);
+    }
+
+    private int[] getRegionIndices(String chromosome) {
+        int[] idx = regionsByChromosome.get(chromosome.replaceFirst("^chr", ""));
+        return idx == null ? new int[0] : idx;
+    }
+
+}
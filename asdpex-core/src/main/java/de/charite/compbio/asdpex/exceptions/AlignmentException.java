@@ -0,0 +1,25 @@
+package de.charite.compbio.asdpex.exceptions;
+
+/**
+ * Alignment exceptions are thrown when the external alignment jobs could not
+ * be run or were interrupted.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ */
+public class AlignmentException extends AltLociSelectorException {
+
+    public static final long serialVersionUID = 2L;
+
+    public AlignmentException() {
+        super();
+    }
+
+    public AlignmentException(String msg) {
+        super(msg);
+    }
+
+    public AlignmentException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
+}
\ No newline at end of file
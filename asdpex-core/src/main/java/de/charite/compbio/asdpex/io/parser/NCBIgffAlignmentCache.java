@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignment;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
+import de.charite.compbio.asdpex.util.IOUtil;
+
+/**
+ * Binary cache of the parsed NCBI GFF alignment files of a folder, so the text files are only parsed with the
+ * {@link NCBIgffAlignmentParser} once. The cache file {@link #CACHE_FILE} is memory mapped and the alignments are
+ * decoded from it on request. The elements of an alignment are stored as {@link PackedAlignmentElements}, i.e. packed
+ * integers with the element type in the upper two and the length in the lower bits.<br>
+ * An entry is used if the modification time and length of the GFF file are unchanged. If only the modification time
+ * changed, e.g. after a copy, the entry is still used if the SHA-1 hash of the content is unchanged. Changed and new
+ * files are parsed and the cache file is rewritten on {@link #close()}.
+ *
+ * <pre>
+ * header:  magic, number of files
+ * files:   name, modification time, length, SHA-1, offset of the alignments
+ * data:    number of alignments
+ *          ref. id, alt. id, ref. start, ref. stop, alt. start, alt. stop, strands,
+ *          ref. and alt. start of the first element, number of elements, packed elements
+ * </pre>
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class NCBIgffAlignmentCache {
+    /** name of the cache file in the alignment folder */
+    public static final String CACHE_FILE = "gff.cache";
+    private static final long MAGIC = 0x4153445047464631L; // ASDPGFF1
+
+    /** the cache file */
+    private final File file;
+    /** the mapped cache file, <code>null</code> if there is no valid cache */
+    private ByteBuffer data;
+    /** GFF files in the cache by name */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** files parsed in this run, written to the cache on close */
+    private boolean changed = false;
+
+    /**
+     * Open the cache of the GFF files in the folder. A missing or corrupt cache file is ignored and created on
+     * {@link #close()}.
+     *
+     * @param folder
+     *            the folder with the GFF alignment files
+     */
+    public NCBIgffAlignmentCache(File folder) {
+        this.file = new File(folder, CACHE_FILE);
+        if (file.exists()) {
+            try {
+                load();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("[WARN] ignoring corrupt GFF alignment cache: " + file);
+                entries.clear();
+                data = null;
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (data.getLong(0) != MAGIC)
+            throw new IOException("no GFF alignment cache: " + file);
+        ByteBuffer in = data.duplicate();
+        in.position(8);
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            String name = readString(in);
+            long lastModified = in.getLong();
+            long length = in.getLong();
+            byte[] hash = new byte[20];
+            in.get(hash);
+            entries.put(name, new Entry(name, lastModified, length, hash, in.getLong()));
+        }
+    }
+
+    /**
+     * Get the alignments of a GFF file, from the cache if it is unchanged. The cache can be used by several threads, a
+     * changed file is parsed outside of the lock, so different files are parsed in parallel.
+     *
+     * @param gff
+     *            the GFF file in the folder of the cache
+     * @return the {@link NCBIgffAlignment}s of the file
+     */
+    public ImmutableList<NCBIgffAlignment> get(File gff) {
+        synchronized (this) {
+            Entry entry = entries.get(gff.getName());
+            if (entry != null && entry.isValid(gff)) {
+                try {
+                    if (entry.alignments == null)
+                        entry.alignments = decode(entry.offset);
+                    return entry.alignments;
+                } catch (RuntimeException e) {
+                    System.out.println("[WARN] corrupt GFF alignment cache entry, parse the file: " + gff.getName());
+                }
+            }
+        }
+        ImmutableList<NCBIgffAlignment> alignments = new NCBIgffAlignmentParser(gff).parse();
+        Entry entry;
+        try {
+            entry = new Entry(gff.getName(), gff.lastModified(), gff.length(), hash(gff), -1);
+            entry.alignments = alignments;
+        } catch (IOException e) {
+            entry = null;
+        }
+        synchronized (this) {
+            if (entry != null) {
+                entries.put(gff.getName(), entry);
+                changed = true;
+            } else
+                entries.remove(gff.getName());
+        }
+        return alignments;
+    }
+
+    /**
+     * Write the cache file if files were parsed. The file is written to a temporary file first and then renamed.
+     */
+    public synchronized void close() {
+        if (!changed)
+            return;
+        File part = new File(file.getPath() + ".part");
+        try {
+            // decode all entries, the mapped file is replaced
+            TreeMap<String, ImmutableList<NCBIgffAlignment>> alignments = new TreeMap<>();
+            for (Entry entry : entries.values()) {
+                if (!new File(file.getParentFile(), entry.name).exists())
+                    continue;
+                alignments.put(entry.name, entry.alignments != null ? entry.alignments : decode(entry.offset));
+            }
+            write(part, alignments);
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            System.out.println("[WARN] failed to write the GFF alignment cache: " + file + ": " + e.getMessage());
+            part.delete();
+        }
+    }
+
+    private void write(File out, TreeMap<String, ImmutableList<NCBIgffAlignment>> alignments) throws IOException {
+        // data blocks first to know the offsets
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(blocks);
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        long header = 8 + 4;
+        for (String name : alignments.keySet())
+            header += 2 + name.getBytes(StandardCharsets.UTF_8).length + 8 + 8 + 20 + 8;
+        for (Map.Entry<String, ImmutableList<NCBIgffAlignment>> e : alignments.entrySet()) {
+            offsets.put(e.getKey(), header + dataOut.size());
+            encode(dataOut, e.getValue());
+        }
+        dataOut.flush();
+
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+        try {
+            os.writeLong(MAGIC);
+            os.writeInt(alignments.size());
+            for (String name : alignments.keySet()) {
+                Entry entry = entries.get(name);
+                writeString(os, name);
+                os.writeLong(entry.lastModified);
+                os.writeLong(entry.length);
+                os.write(entry.hash);
+                os.writeLong(offsets.get(name));
+            }
+            blocks.writeTo(os);
+        } finally {
+            IOUtil.close(os);
+        }
+    }
+
+    private static void encode(DataOutputStream out, ImmutableList<NCBIgffAlignment> alignments) throws IOException {
+        out.writeInt(alignments.size());
+        for (NCBIgffAlignment alignment : alignments) {
+            writeString(out, alignment.getRefId());
+            writeString(out, alignment.getAltId());
+            out.writeInt(alignment.getRefStart());
+            out.writeInt(alignment.getRefStop());
+            out.writeInt(alignment.getAltStart());
+            out.writeInt(alignment.getAltStop());
+            out.writeByte((alignment.isRefStrand() ? 1 : 0) | (alignment.isAltStrand() ? 2 : 0));
+            PackedAlignmentElements elements = alignment.getPackedElements();
+            out.writeInt(elements.isEmpty() ? 0 : elements.getRefStart(0));
+            out.writeInt(elements.isEmpty() ? 0 : elements.getAltStart(0));
+            out.writeInt(elements.size());
+            for (int i = 0; i < elements.size(); i++)
+                out.writeInt(elements.getPacked(i));
+        }
+    }
+
+    private ImmutableList<NCBIgffAlignment> decode(long offset) {
+        ByteBuffer in = data.duplicate();
+        in.position((int) offset);
+        int n = in.getInt();
+        ImmutableList.Builder<NCBIgffAlignment> alignments = ImmutableList.builder();
+        for (int i = 0; i < n; i++) {
+            String refId = readString(in);
+            String altId = readString(in);
+            int refStart = in.getInt();
+            int refStop = in.getInt();
+            int altStart = in.getInt();
+            int altStop = in.getInt();
+            byte strands = in.get();
+            int ref = in.getInt();
+            int alt = in.getInt();
+            int m = in.getInt();
+            PackedAlignmentElements.Builder elements = new PackedAlignmentElements.Builder(ref, alt);
+            for (int j = 0; j < m; j++)
+                elements.addPacked(in.getInt());
+            alignments.add(new NCBIgffAlignment(refId, altId, refStart, refStop, (strands & 1) != 0, altStart,
+                    altStop, (strands & 2) != 0, elements.build()));
+        }
+        return alignments.build();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hash(File gff) throws IOException {
+        return com.google.common.io.Files.hash(gff, Hashing.sha1()).asBytes();
+    }
+
+    /**
+     * A GFF file in the cache.
+     */
+    private class Entry {
+        final String name;
+        long lastModified;
+        final long length;
+        /** SHA-1 hash of the content */
+        final byte[] hash;
+        /** offset of the alignments in the mapped file, -1 if parsed in this run */
+        final long offset;
+        /** the decoded or parsed alignments */
+        ImmutableList<NCBIgffAlignment> alignments;
+
+        Entry(String name, long lastModified, long length, byte[] hash, long offset) {
+            this.name = name;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+            this.offset = offset;
+        }
+
+        boolean isValid(File gff) {
+            if (gff.length() != length)
+                return false;
+            if (gff.lastModified() == lastModified)
+                return true;
+            try {
+                if (!Arrays.equals(hash(gff), hash))
+                    return false;
+            } catch (IOException e) {
+                return false;
+            }
+            // same content, only touched or copied
+            lastModified = gff.lastModified();
+            changed = true;
+            return true;
+        }
+    }
+
+}
@@ -11,9 +11,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 
 import de.charite.compbio.asdpex.data.NCBIgffAlignment;
-import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement;
 import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
-import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement.NCBIgffAlignmentElementBuilder;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
 import de.charite.compbio.asdpex.exceptions.NCBIgffAlignmentInfoParseException;
 import de.charite.compbio.asdpex.util.IOUtil;
 
@@ -85,7 +84,7 @@ public class NCBIgffAlignmentParser {
 		int altStop = 0;
 		boolean refStrand = true;
 		boolean altStrand = true;
-		ImmutableList.Builder<NCBIgffAlignmentElement> elements = new ImmutableList.Builder<NCBIgffAlignmentElement>();
+		PackedAlignmentElements.Builder elements = null;
 
 		String[] fields = line.split("\t");
 		if (fields.length != NCBIgffAlignmentParser.NFIELDS) {
@@ -128,56 +127,19 @@ public class NCBIgffAlignmentParser {
 			}
 
 			if (att.startsWith("Gap=")) {
+				// the builder collapses continuous elements of the same type
+				elements = new PackedAlignmentElements.Builder(this.start_ref, this.start_alt);
 				feedBuilderWithMatches(elements, att.substring(4));
 				break;
 			}
 		}
-		// System.out.println("before collapse: " + elements.build().size());
-		// collapse the Alignment elements
-		elements = collapseElements(elements.build());
-		// System.out.println("after collapse: " + elements.build().size());
+		if (elements == null)
+			elements = new PackedAlignmentElements.Builder(0, 0);
 
 		alignments.add(new NCBIgffAlignment(refId, altId, refStart, refStop, refStrand, altStart, altStop, altStrand,
 				elements.build()));
 	}
 
-	/**
-	 * Collapses {@link NCBIgffAlignmentElement}s. If there are contiuous Insertions/deletions/matches these elements
-	 * will be condensed into a single one of the cummulative length.
-	 * 
-	 * @param elements
-	 * @return
-	 */
-	private ImmutableList.Builder<NCBIgffAlignmentElement> collapseElements(
-			ImmutableList<NCBIgffAlignmentElement> elements) {
-
-		ImmutableList.Builder<NCBIgffAlignmentElement> collapsedElements = new ImmutableList.Builder<NCBIgffAlignmentElement>();
-		if (elements.size() == 0)
-			return collapsedElements;
-		NCBIgffAlignmentElement prev_element = null;
-		NCBIgffAlignmentElementBuilder matchBuilder;
-		for (NCBIgffAlignmentElement cur_element : elements) {
-			if (prev_element != null) {
-				if (prev_element.getType() == cur_element.getType()) { // collapse continuous same types
-					matchBuilder = new NCBIgffAlignmentElementBuilder();
-					matchBuilder.refStart(prev_element.getRef_start());
-					matchBuilder.altStart(prev_element.getAlt_start());
-					matchBuilder.type(prev_element.getType());
-					matchBuilder.length(prev_element.getLength() + cur_element.getLength());
-					prev_element = matchBuilder.build();
-				} else {
-					collapsedElements.add(prev_element);
-					prev_element = cur_element;
-				}
-			} else {
-				prev_element = cur_element;
-			}
-
-		}
-		collapsedElements.add(prev_element);
-		return collapsedElements;
-	}
-
 	/**
 	 * Feed the provided builder with the matches extracted from
 	 * 
@@ -185,36 +147,30 @@ public class NCBIgffAlignmentParser {
 	 * @param elements
 	 * @throws NCBIgffAlignmentInfoParseException
 	 */
-	private void feedBuilderWithMatches(Builder<NCBIgffAlignmentElement> builder, String elements)
+	private void feedBuilderWithMatches(PackedAlignmentElements.Builder builder, String elements)
 			throws NCBIgffAlignmentInfoParseException {
 
-		NCBIgffAlignmentElementBuilder matchBuilder = new NCBIgffAlignmentElementBuilder();
 		String[] fields = elements.split(" ");
 		for (String elem : fields) {
 			int length = Integer.parseInt(elem.substring(1));
 
-			matchBuilder.refStart(this.start_ref);
-			matchBuilder.altStart(this.start_alt);
-			matchBuilder.length(length);
-			//
 			switch (elem.charAt(0)) {
 			case 'M':
 				this.start_alt += length;
 				this.start_ref += length;
-				matchBuilder.type(NCBIgffAlignmentElementType.MATCH);
+				builder.add(NCBIgffAlignmentElementType.MATCH, length);
 				break;
 			case 'I':
 				this.start_alt += length;
-				matchBuilder.type(NCBIgffAlignmentElementType.INSERTION);
+				builder.add(NCBIgffAlignmentElementType.INSERTION, length);
 				break;
 			case 'D':
 				this.start_ref += length;
-				matchBuilder.type(NCBIgffAlignmentElementType.DELETION);
+				builder.add(NCBIgffAlignmentElementType.DELETION, length);
 				break;
 			default:
 				throw new NCBIgffAlignmentInfoParseException("unknown alignment block description: " + elem);
 			}
-			builder.add(matchBuilder.build());
 			// switch (elem.charAt(0)) {
 			// case 'M':
 			// // System.out.println(
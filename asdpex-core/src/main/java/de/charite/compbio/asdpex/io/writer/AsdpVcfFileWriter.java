@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.writer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+
+import de.charite.compbio.asdpex.util.IOUtil;
+import de.charite.compbio.asdpex.util.SeededBandedAligner;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderLineCount;
+import htsjdk.variant.vcf.VCFHeaderLineType;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
+
+/**
+ * Writer for the VCF files of the alternate loci with the ASDPs found by the {@link SeededBandedAligner}. The files
+ * have the same header as the ones of the SeqAn program <code>regionalign2vcf</code> and the variants of the blocks
+ * of an alternate locus are appended one after another.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class AsdpVcfFileWriter {
+
+    /**
+     * @return the VCF header of the ASDP files
+     */
+    public static VCFHeader createHeader() {
+        VCFHeader header = new VCFHeader(Collections.<VCFHeaderLine> emptySet(),
+                Collections.singletonList(SeededBandedAligner.SAMPLE));
+        header.addMetaDataLine(new VCFFormatHeaderLine("GT", 1, VCFHeaderLineType.String, "Genotype"));
+        header.addMetaDataLine(new VCFInfoHeaderLine("SVLEN", VCFHeaderLineCount.UNBOUNDED, VCFHeaderLineType.Integer,
+                "Difference in length between REF and ALT alleles"));
+        header.addMetaDataLine(
+                new VCFInfoHeaderLine("SVTYPE", 1, VCFHeaderLineType.String, "Type of structural variant"));
+        header.addMetaDataLine(
+                new VCFInfoHeaderLine("END", 1, VCFHeaderLineType.Integer, "End position of the structural variant"));
+        header.addMetaDataLine(new VCFInfoHeaderLine("RE", 1, VCFHeaderLineType.String, "Region"));
+        header.addMetaDataLine(new VCFInfoHeaderLine("AL", 1, VCFHeaderLineType.String, "Alternate Locus"));
+        header.addMetaDataLine(new VCFInfoHeaderLine("RP", 1, VCFHeaderLineType.Integer, "position in region"));
+        return header;
+    }
+
+    /**
+     * Write the variants of a block to the VCF file.
+     *
+     * @param file
+     *            the VCF file of the alternate locus
+     * @param variants
+     *            the {@link VariantContext}s of the block
+     * @param append
+     *            append to an existing file, otherwise the file is created with the header
+     * @throws IOException
+     */
+    public static void write(File file, Iterable<VariantContext> variants, boolean append) throws IOException {
+        VCFHeader header = createHeader();
+        boolean newFile = !append || !file.exists();
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        BufferedWriter out = IOUtil.getBufferedFileWriter(file, !newFile);
+        try {
+            if (newFile)
+                writeHeader(out, header);
+            VCFEncoder encoder = new VCFEncoder(header, false, false);
+            for (VariantContext vc : variants) {
+                out.write(encoder.encode(vc));
+                out.write("\n");
+            }
+            out.close();
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+
+    /**
+     * Write the header lines of the SeqAn program, the lines of the {@link VCFHeader} are only used for encoding.
+     */
+    private static void writeHeader(Writer out, VCFHeader header) throws IOException {
+        out.write("##" + VCFHeaderVersion.VCF4_1.getFormatString() + "=" + VCFHeaderVersion.VCF4_1.getVersionString()
+                + "\n");
+        for (VCFHeaderLine line : header.getMetaDataInInputOrder())
+            if (!VCFHeaderVersion.isFormatString(line.getKey()))
+                out.write("##" + line + "\n");
+        out.write("##ALT=<ID=DEL,Description=\"Deletion\">\n");
+        out.write("##ALT=<ID=INS,Description=\"Insertion\">\n");
+        out.write("#");
+        for (VCFHeader.HEADER_FIELDS field : header.getHeaderFields())
+            out.write(field + "\t");
+        out.write("FORMAT");
+        for (String sample : header.getGenotypeSamples())
+            out.write("\t" + sample);
+        out.write("\n");
+    }
+
+}
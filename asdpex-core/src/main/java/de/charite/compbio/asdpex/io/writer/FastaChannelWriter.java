@@ -0,0 +1,297 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import de.charite.compbio.asdpex.util.IOUtil;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+/**
+ * Writer for (multi) fastA files working on bytes. The lines of a sequence are copied in bulk from the
+ * <code>byte[]</code> into a buffer, which is written to the file channel, or optionally compressed as BGZF. The
+ * <code>.fai</code> index is created while writing, for BGZF output together with the <code>.gzi</code> index of the
+ * block offsets, so the files can be used by <code>samtools faidx</code> without re-indexing.<br>
+ * Records can be appended to an existing file if its indices exist, e.g. written by a previous writer.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class FastaChannelWriter implements Closeable {
+    /** size of the write buffer, smaller than a BGZF block so a write crosses at most one block boundary */
+    private static final int BUFFER_SIZE = 1 << 15;
+
+    private final File file;
+    private final int lineLength;
+    /** the channel of plain output, <code>null</code> for BGZF */
+    private final FileChannel channel;
+    /** the stream of BGZF output, <code>null</code> for plain */
+    private final BlockCompressedOutputStream bgzf;
+    /** size of the file before a BGZF stream was appended */
+    private final long compressedBase;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int fill = 0;
+    /** number of uncompressed bytes written, incl. the buffer */
+    private long position;
+    /** the lines of the <code>.fai</code> index, <code>null</code> if no index is written */
+    private ArrayList<String> index = new ArrayList<>();
+    /** compressed and uncompressed offsets of the BGZF blocks except the first */
+    private final ArrayList<long[]> blocks = new ArrayList<>();
+
+    /**
+     * Create a new fastA file, an existing file is overwritten.
+     *
+     * @param file
+     *            the fastA file
+     * @param lineLength
+     *            number of bases per line
+     * @param bgzf
+     *            <code>true</code> to compress the file as BGZF
+     * @throws IOException
+     */
+    public FastaChannelWriter(File file, int lineLength, boolean bgzf) throws IOException {
+        this(file, lineLength, bgzf, false);
+    }
+
+    /**
+     * Create a fastA file or append to an existing one.
+     *
+     * @param file
+     *            the fastA file
+     * @param lineLength
+     *            number of bases per line
+     * @param bgzf
+     *            <code>true</code> to compress the file as BGZF
+     * @param append
+     *            <code>true</code> to append the records to an existing file
+     * @throws IOException
+     *             if the file can not be opened or a BGZF file can not be appended without its indices
+     */
+    public FastaChannelWriter(File file, int lineLength, boolean bgzf, boolean append) throws IOException {
+        this.file = file;
+        if (lineLength < 1) {
+            System.out.println("[WARN] fastA line length to small (" + lineLength + ") set to default value: "
+                    + FastaFileWriter.fastaLineLength);
+            lineLength = FastaFileWriter.fastaLineLength;
+        }
+        this.lineLength = lineLength;
+        append = append && file.exists() && file.length() > 0;
+        if (append)
+            readIndices(bgzf);
+        if (bgzf) {
+            this.compressedBase = append ? file.length() : 0;
+            this.bgzf = new BlockCompressedOutputStream(new FileOutputStream(file, append), file);
+            this.channel = null;
+        } else {
+            this.compressedBase = 0;
+            this.bgzf = null;
+            this.channel = append
+                    ? FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                    : FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            if (append)
+                position = channel.size();
+        }
+    }
+
+    /**
+     * Read the indices of an existing file to continue them.
+     */
+    private void readIndices(boolean bgzf) throws IOException {
+        File fai = new File(file.getPath() + ".fai");
+        if (!fai.exists()) {
+            if (bgzf)
+                throw new IOException("Can not append to the BGZF file without the index: " + fai);
+            System.out.println("[WARN] no index written for the fastA file, missing the index to append: " + fai);
+            index = null;
+            return;
+        }
+        BufferedReader reader = IOUtil.getBufferedReaderFromFileName(fai);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (!line.isEmpty())
+                    index.add(line);
+        } finally {
+            IOUtil.close(reader);
+        }
+        if (!bgzf)
+            return;
+        // uncompressed length from the last record, all records are followed by a line break
+        if (!index.isEmpty()) {
+            String[] fields = index.get(index.size() - 1).split("\t");
+            long length = Long.parseLong(fields[1]);
+            long basesPerLine = Long.parseLong(fields[3]);
+            long bytesPerLine = Long.parseLong(fields[4]);
+            position = Long.parseLong(fields[2]) + length / basesPerLine * bytesPerLine
+                    + (length % basesPerLine == 0 ? 0 : length % basesPerLine + bytesPerLine - basesPerLine);
+        }
+        File gzi = new File(file.getPath() + ".gzi");
+        if (!gzi.exists())
+            throw new IOException("Can not append to the BGZF file without the index: " + gzi);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(gzi)));
+        try {
+            long n = readLong(in);
+            for (long i = 0; i < n; i++)
+                blocks.add(new long[] { readLong(in), readLong(in) });
+        } finally {
+            IOUtil.close(in);
+        }
+        // the previous stream ended with an empty EOF block, the appended stream starts with a new block
+        blocks.add(new long[] { file.length(), position });
+    }
+
+    /**
+     * Write a fastA record.
+     *
+     * @param name
+     *            Name or identifier in the fastA header
+     * @param bases
+     *            Sequence representation in {@link Byte}
+     * @throws IOException
+     */
+    public void add(String name, byte[] bases) throws IOException {
+        add(name, bases, 0, bases.length);
+    }
+
+    /**
+     * Write a fastA record of a range of the array.
+     *
+     * @param name
+     *            Name or identifier in the fastA header
+     * @param bases
+     *            Sequence representation in {@link Byte}
+     * @param from
+     *            start of the sequence in the array
+     * @param length
+     *            number of bases
+     * @throws IOException
+     */
+    public void add(String name, byte[] bases, int from, int length) throws IOException {
+        put(('>' + name + '\n').getBytes(StandardCharsets.US_ASCII));
+        if (index != null)
+            index.add(name + "\t" + length + "\t" + position + "\t" + lineLength + "\t" + (lineLength + 1));
+        int end = from + length;
+        for (int i = from; i < end; i += lineLength) {
+            put(bases, i, Math.min(lineLength, end - i));
+            put((byte) '\n');
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        put(bytes, 0, bytes.length);
+    }
+
+    private void put(byte[] bytes, int from, int length) throws IOException {
+        while (length > 0) {
+            if (fill == buffer.length)
+                flushBuffer();
+            int n = Math.min(length, buffer.length - fill);
+            System.arraycopy(bytes, from, buffer, fill, n);
+            fill += n;
+            from += n;
+            length -= n;
+            position += n;
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (fill == buffer.length)
+            flushBuffer();
+        buffer[fill++] = b;
+        position++;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (channel != null) {
+            ByteBuffer bb = ByteBuffer.wrap(buffer, 0, fill);
+            while (bb.hasRemaining())
+                channel.write(bb);
+        } else {
+            long before = bgzf.getFilePointer();
+            bgzf.write(buffer, 0, fill);
+            long after = bgzf.getFilePointer();
+            // a new block was started within this write
+            if (after >>> 16 != before >>> 16)
+                blocks.add(new long[] { compressedBase + (after >>> 16), position - (after & 0xffff) });
+        }
+        fill = 0;
+    }
+
+    /**
+     * Flush and close the file and write the indices.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            if (channel != null)
+                channel.close();
+            else
+                bgzf.close();
+        }
+        if (index != null) {
+            BufferedWriter out = IOUtil.getBufferedFileWriter(new File(file.getPath() + ".fai"));
+            try {
+                for (String line : index) {
+                    out.write(line);
+                    out.write("\n");
+                }
+            } finally {
+                IOUtil.close(out);
+            }
+        }
+        if (bgzf != null) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file.getPath() + ".gzi")));
+            try {
+                writeLong(out, blocks.size());
+                for (long[] block : blocks) {
+                    writeLong(out, block[0]);
+                    writeLong(out, block[1]);
+                }
+            } finally {
+                IOUtil.close(out);
+            }
+        }
+    }
+
+    /**
+     * The <code>.gzi</code> index is little endian.
+     */
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        for (int i = 0; i < 8; i++)
+            out.write((int) (value >>> (8 * i)) & 0xff);
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = in.read();
+            if (b < 0)
+                throw new IOException("Unexpected end of the BGZF index");
+            value |= (long) b << (8 * i);
+        }
+        return value;
+    }
+
+}
@@ -3,15 +3,15 @@
  */
 package de.charite.compbio.asdpex.io.writer;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-
-import de.charite.compbio.asdpex.util.IOUtil;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
- * Writer for fastA files.
+ * Writer for fastA files. The files are written by the {@link FastaChannelWriter} together with their index.
  *
  * @author Marten Jäger <marten.jaeger@charite.de>
  *
@@ -98,35 +98,89 @@ public class FastaFileWriter {
      */
     public static void createFastaFile(File file, String name, byte[] bases, boolean multiFasta, int length)
             throws UnsupportedEncodingException, IOException {
+        createFastaFile(file, name, bases, multiFasta, length, false);
+    }
 
-        final BufferedWriter out;
+    /**
+     * Create the fastA file with the {@link FastaChannelWriter}, the <code>.fai</code> index (and <code>.gzi</code>
+     * index for BGZF) is written next to it.
+     * 
+     * @param file
+     *            {@link File} object for the fastA file to be created
+     * @param name
+     *            Name or identifier in the fastA header
+     * @param bases
+     *            Sequence representation in {@link Byte}
+     * @param multiFasta
+     *            append to an existing fastA file / multifastA
+     * @param length
+     *            line length in the fastA file
+     * @param bgzf
+     *            compress the file as BGZF
+     * @throws IOException
+     */
+    public static void createFastaFile(File file, String name, byte[] bases, boolean multiFasta, int length,
+            boolean bgzf) throws IOException {
         if (file.exists()) {
             if (!multiFasta) {
                 System.out.println("[INFO] file already exists. Skipping. " + name);
                 return;
             }
         }
-        if (length < 1) {
-            System.out.println("[WARN] fastA line length to small (" + length + ") set to default value: "
-                    + FastaFileWriter.fastaLineLength);
-        }
         file.getParentFile().mkdirs();
-        if (multiFasta)
-            out = IOUtil.getBufferedFileWriter(file, true);
-        else
-            out = IOUtil.getBufferedFileWriter(file);
+        if (multiFasta) {
+            FastaChannelWriter out = new FastaChannelWriter(file, length, bgzf, true);
+            try {
+                out.add(name, bases);
+            } finally {
+                out.close();
+            }
+        } else {
+            // written to a temporary file and renamed, so an existing file skipped above is always complete
+            File part = new File(file.getPath() + ".part");
+            FastaChannelWriter out = new FastaChannelWriter(part, length, bgzf);
+            try {
+                out.add(name, bases);
+            } finally {
+                out.close();
+            }
+            for (String index : bgzf ? new String[] { ".fai", ".gzi" } : new String[] { ".fai" })
+                Files.move(new File(part.getPath() + index).toPath(), new File(file.getPath() + index).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Write a single fastA entry to the {@link Writer}, e.g. a named pipe read by an external program.
+     * 
+     * @param out
+     *            the {@link Writer}, not closed
+     * @param name
+     *            Name or identifier in the fastA header
+     * @param bases
+     *            Sequence representation in {@link Byte}
+     * @param length
+     *            line length in the fastA file
+     * @throws IOException
+     */
+    public static void writeFasta(Writer out, String name, byte[] bases, int length) throws IOException {
         out.write(">");
         out.write(name);
         out.write("\n");
 
-        for (int i = 0; i < bases.length; ++i) {
-            if (i > 0 && i % length == 0)
-                out.write("\n");
-            out.write(bases[i]);
+        // whole lines are written at once
+        char[] line = new char[length + 1];
+        for (int i = 0; i < bases.length; i += length) {
+            int n = Math.min(length, bases.length - i);
+            for (int j = 0; j < n; j++)
+                line[j] = (char) (bases[i + j] & 0xff);
+            line[n] = '\n';
+            out.write(line, 0, n + 1);
         }
-
-        out.write("\n");
-        IOUtil.close(out);
+        if (bases.length == 0)
+            out.write("\n");
     }
 
 }
@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.writer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Pool of {@link FastaChannelWriter}s for multi fastA files that receive their records one by one, e.g. the file of
+ * the extended alternate loci of a region. The writers are kept open for the life of the pool instead of reopening
+ * the file for every record. At most {@link #getMaxOpen()} files are open at once, the least recently used writer is
+ * closed, and reopened in append mode on the next record for its file.<br>
+ * The pool can be used by several threads. The records of a file are written in the order of the calls to
+ * {@link #add(File, String, byte[])}. A file is created new on its first record, an existing file is overwritten.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class FastaWriterPool implements Closeable {
+    /** default maximal number of open files */
+    public static final int DEFAULT_MAX_OPEN = 64;
+
+    private final int lineLength;
+    private final boolean bgzf;
+    private final int maxOpen;
+    /** all files of the pool */
+    private final HashMap<File, Entry> entries = new HashMap<>();
+    /** the files with an open writer in access order */
+    private final LinkedHashMap<File, Entry> open = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean closed = false;
+
+    /**
+     * @param lineLength
+     *            number of bases per line
+     * @param bgzf
+     *            <code>true</code> to compress the files as BGZF
+     */
+    public FastaWriterPool(int lineLength, boolean bgzf) {
+        this(lineLength, bgzf, DEFAULT_MAX_OPEN);
+    }
+
+    /**
+     * @param lineLength
+     *            number of bases per line
+     * @param bgzf
+     *            <code>true</code> to compress the files as BGZF
+     * @param maxOpen
+     *            maximal number of open files, at least 1
+     */
+    public FastaWriterPool(int lineLength, boolean bgzf, int maxOpen) {
+        if (maxOpen < 1)
+            throw new IllegalArgumentException("At least one open file is required: " + maxOpen);
+        this.lineLength = lineLength;
+        this.bgzf = bgzf;
+        this.maxOpen = maxOpen;
+    }
+
+    /**
+     * @return the maximal number of open files
+     */
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    /**
+     * Append a record to a file of the pool.
+     *
+     * @param file
+     *            the fastA file
+     * @param name
+     *            Name or identifier in the fastA header
+     * @param bases
+     *            Sequence representation in {@link Byte}
+     * @throws IOException
+     *             if the file could not be written or the pool is closed
+     */
+    public void add(File file, String name, byte[] bases) throws IOException {
+        Entry entry;
+        Entry evicted = null;
+        synchronized (this) {
+            if (closed)
+                throw new IOException("The fastA writer pool is closed");
+            entry = entries.get(file);
+            if (entry == null) {
+                entry = new Entry(file);
+                entries.put(file, entry);
+            }
+            open.put(file, entry);
+            if (open.size() > maxOpen) {
+                Iterator<Entry> eldest = open.values().iterator();
+                evicted = eldest.next();
+                eldest.remove();
+            }
+        }
+        // a writer in use by another thread is closed after its record
+        if (evicted != null)
+            evicted.close();
+        entry.add(name, bases);
+    }
+
+    /**
+     * Close all writers and write the indices of the files.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            open.clear();
+        }
+        IOException exception = null;
+        for (Entry entry : entries.values()) {
+            try {
+                entry.close();
+            } catch (IOException e) {
+                if (exception == null)
+                    exception = e;
+            }
+        }
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * A file of the pool, the writer is guarded by the entry.
+     */
+    private class Entry {
+        final File file;
+        /** the open writer, <code>null</code> if closed */
+        FastaChannelWriter writer;
+        /** the file was created by this pool, so later writers append */
+        boolean created = false;
+
+        Entry(File file) {
+            this.file = file;
+        }
+
+        synchronized void add(String name, byte[] bases) throws IOException {
+            if (writer == null) {
+                if (file.getParentFile() != null)
+                    file.getParentFile().mkdirs();
+                writer = new FastaChannelWriter(file, lineLength, bgzf, created);
+                created = true;
+            }
+            writer.add(name, bases);
+        }
+
+        synchronized void close() throws IOException {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } finally {
+                    writer = null;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import de.charite.compbio.asdpex.data.AccessionInfo;
+import de.charite.compbio.asdpex.data.AlternativeLocus;
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
+import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentCache;
+import de.charite.compbio.asdpex.util.IOUtil;
+
+/**
+ * Creates the seed files of the alternate loci for the alignment with the SeqAn program, i.e. the matches of the NCBI
+ * GFF alignment of an alternate locus with the primary assembly, one per line with the start on the reference, the
+ * start on the alternate locus and the length. The loci are processed on a pool of worker threads, the GFF files are
+ * read through a shared {@link NCBIgffAlignmentCache}.<br>
+ * Optionally the seeds are also written in a binary format next to the <code>.tab</code> files:
+ *
+ * <pre>
+ * header: magic, number of seeds
+ * seeds:  ref. start, alt. start, length
+ * </pre>
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class SeedFileWriter {
+    /** extension of the text seed files */
+    public static final String TEXT_EXTENSION = ".tab";
+    /** extension of the binary seed files */
+    public static final String BINARY_EXTENSION = ".seed";
+    private static final long MAGIC = 0x4153445053454544L; // ASDPSEED
+
+    /** folder with the GFF alignment files */
+    private final File alignmentFolder;
+    /** output folder of the seed files */
+    private final File seedFolder;
+    /** also write the binary seed files */
+    private final boolean binary;
+
+    /**
+     * @param alignmentFolder
+     *            folder with the NCBI GFF alignment files
+     * @param seedFolder
+     *            output folder of the seed files
+     * @param binary
+     *            also write the seeds in the binary format
+     */
+    public SeedFileWriter(File alignmentFolder, File seedFolder, boolean binary) {
+        this.alignmentFolder = alignmentFolder;
+        this.seedFolder = seedFolder;
+        this.binary = binary;
+    }
+
+    /**
+     * Create the seed files of the alternate loci. Loci without GFF alignment file or whose seed files could not be
+     * written are skipped.
+     *
+     * @param loci
+     *            the {@link AlternativeLocus}s
+     * @param threads
+     *            number of worker threads
+     * @return number of written seed files
+     * @throws IOException
+     *             if the run was interrupted or failed
+     */
+    public int write(List<AlternativeLocus> loci, int threads) throws IOException {
+        seedFolder.mkdirs();
+        // the GFF files are only parsed if they changed since the last run
+        final NCBIgffAlignmentCache gffCache = new NCBIgffAlignmentCache(alignmentFolder);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (final AlternativeLocus locus : loci) {
+                futures.add(workers.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        try {
+                            return write(gffCache, locus);
+                        } catch (IOException e) {
+                            System.err.println("[ERROR] failed to create seed info file for sample: "
+                                    + locus.getPlacementInfo().getAltScafAcc());
+                            e.printStackTrace();
+                            return false;
+                        }
+                    }
+                }));
+            }
+            int written = 0;
+            for (Future<Boolean> future : futures)
+                if (future.get())
+                    written++;
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating the seed files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Failed to create the seed files: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+            // the cache file is only written after the workers stopped using the cache
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            gffCache.close();
+        }
+    }
+
+    /**
+     * Write the seed files of a locus.
+     *
+     * @return <code>true</code> if the files were written, <code>false</code> if the GFF file is missing
+     */
+    private boolean write(NCBIgffAlignmentCache gffCache, AlternativeLocus locus) throws IOException {
+        String gff = locus.getPlacementInfo().getAltScafAcc() + "_" + locus.getPlacementInfo().getParentAcc()
+                + ".gff";
+        File gffFile = new File(alignmentFolder, gff);
+        if (!gffFile.exists()) {
+            System.err.println("File is missing: " + gff);
+            return false;
+        }
+        int[] seeds = getSeeds(gffCache.get(gffFile).get(0).getPackedElements(),
+                locus.getPlacementInfo().getParentStart() - locus.getRegionInfo().getStart(),
+                locus.getRegionInfo().getStop() - locus.getPlacementInfo().getParentStop());
+
+        String name = createFastaIdentifier(locus.getAccessionInfo()) + "_extended";
+        File file = new File(seedFolder, name + TEXT_EXTENSION);
+        if (file.exists())
+            System.out.println("[WARN] file already exists: " + file.getCanonicalPath());
+        Writer out = IOUtil.getBufferedFileWriter(file);
+        try {
+            writeText(out, seeds);
+        } finally {
+            IOUtil.close(out);
+        }
+        if (binary)
+            writeBinary(new File(seedFolder, name + BINARY_EXTENSION), seeds);
+        return true;
+    }
+
+    /**
+     * Extract the seeds from the matches of the alignment elements. The first match is extended by
+     * <code>offset</code> to the begin of the region, and all following seeds are shifted by it. If the alignment has
+     * no gaps, the last match is extended by <code>tail</code> to the end of the region.
+     *
+     * @param elements
+     *            the {@link PackedAlignmentElements} of the alignment
+     * @param offset
+     *            number of bases between the region start and the alignment start
+     * @param tail
+     *            number of bases between the alignment end and the region end
+     * @return the seeds as consecutive triples of ref. start, alt. start and length
+     */
+    public static int[] getSeeds(PackedAlignmentElements elements, int offset, int tail) {
+        int[] seeds = new int[3 * elements.size()];
+        int n = 0;
+        int c = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            if (elements.getType(i) != NCBIgffAlignmentElementType.MATCH)
+                continue;
+            c++;
+            if (n == 0) {
+                // extend the first seed to the begin of the region
+                seeds[n++] = 0;
+                seeds[n++] = 0;
+                seeds[n++] = elements.getLength(i) + offset;
+                continue;
+            }
+            seeds[n++] = elements.getRefStart(i) + offset;
+            seeds[n++] = elements.getAltStart(i) + offset;
+            seeds[n++] = elements.getLength(i) + (c == elements.size() ? tail : 0);
+        }
+        return n == seeds.length ? seeds : Arrays.copyOf(seeds, n);
+    }
+
+    /**
+     * Write the seeds as text, one per line with the start on the reference, the start on the alternate locus and the
+     * length separated by tabs.
+     *
+     * @param out
+     *            the {@link Writer}, not closed
+     * @param seeds
+     *            the seeds as consecutive triples of ref. start, alt. start and length
+     * @throws IOException
+     */
+    public static void writeText(Writer out, int[] seeds) throws IOException {
+        // at most 11 characters per number, two tabs and the line break
+        char[] line = new char[36];
+        for (int i = 0; i + 2 < seeds.length; i += 3) {
+            int n = putInt(line, 0, seeds[i]);
+            line[n++] = '\t';
+            n = putInt(line, n, seeds[i + 1]);
+            line[n++] = '\t';
+            n = putInt(line, n, seeds[i + 2]);
+            line[n++] = '\n';
+            out.write(line, 0, n);
+        }
+    }
+
+    /**
+     * Write the decimal digits of the value into the buffer.
+     *
+     * @return the position after the last digit
+     */
+    private static int putInt(char[] buffer, int pos, int value) {
+        if (value == Integer.MIN_VALUE) {
+            String s = Integer.toString(value);
+            s.getChars(0, s.length(), buffer, pos);
+            return pos + s.length();
+        }
+        if (value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        int end = pos;
+        for (int v = value; v >= 10; v /= 10)
+            end++;
+        for (int i = end; i >= pos; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end + 1;
+    }
+
+    /**
+     * Write the seeds to a binary seed file.
+     *
+     * @param file
+     *            the binary seed file
+     * @param seeds
+     *            the seeds as consecutive triples of ref. start, alt. start and length
+     * @throws IOException
+     */
+    public static void writeBinary(File file, int[] seeds) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeLong(MAGIC);
+            out.writeInt(seeds.length / 3);
+            for (int i = 0; i < seeds.length / 3 * 3; i++)
+                out.writeInt(seeds[i]);
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+
+    /**
+     * Read the seeds of a binary seed file.
+     *
+     * @param file
+     *            the binary seed file
+     * @return the seeds as consecutive triples of ref. start, alt. start and length
+     * @throws IOException
+     *             if the file could not be read or is no seed file
+     */
+    public static int[] readBinary(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readLong() != MAGIC)
+                throw new IOException("No binary seed file: " + file);
+            int[] seeds = new int[3 * in.readInt()];
+            for (int i = 0; i < seeds.length; i++)
+                seeds[i] = in.readInt();
+            return seeds;
+        } finally {
+            IOUtil.close(in);
+        }
+    }
+
+    /**
+     * Creates the Fasta identifier from accessionInfo file row in the format they are used in the reference fasta
+     * files: chr<1-22|X|Y|M>_<GenBank Accession.version with '.'->'v'>_alt<br>
+     * e.g.: chr21_GL383580v2_alt
+     *
+     * @param info
+     * @return
+     */
+    private static String createFastaIdentifier(AccessionInfo info) {
+        StringBuilder identifier = new StringBuilder();
+        identifier.append("chr").append(info.getChromosome()).append("_")
+                .append(info.getGenbankAccessionVersion().replace('.', 'v')).append("_alt");
+        return identifier.toString();
+    }
+
+}
@@ -0,0 +1,331 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.reference;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.charite.compbio.asdpex.util.IOUtil;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.util.BufferedLineReader;
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * Read only access to an indexed reference fastA file. The positions of the sequences are taken from the
+ * <code>.fai</code> index and the file is memory mapped instead of read through a stream. The bases of a range are
+ * copied from the mapped file into an array, either a new one ({@link #getBases(String, int, int, boolean)}) or a given
+ * one ({@link #copyBases(String, int, int, boolean, byte[], int)}). The decoded bases, i.e. without the line breaks, of
+ * the last used windows of {@link #WINDOW} bases are kept in a small LRU cache, which serves the repeated extraction of
+ * the same ranges, e.g. the regions and the flanks around the alternate loci.<br>
+ * In contrast to the htsjdk {@link htsjdk.samtools.reference.ReferenceSequenceFile} the accessor can be shared by
+ * threads without locking.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class MappedReference implements Closeable {
+    /** size of the mapped chunks of the file, a single {@link MappedByteBuffer} is limited to 2GB */
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    /** number of bases of a cached window */
+    static final int WINDOW = 1 << 16;
+    /** number of cached windows */
+    static final int CACHE_SIZE = 64;
+    /** complement of all bytes, same as {@link SequenceUtil#complement(byte)} */
+    private static final byte[] COMPLEMENT = new byte[256];
+
+    static {
+        for (int i = 0; i < COMPLEMENT.length; i++)
+            COMPLEMENT[i] = SequenceUtil.complement((byte) i);
+    }
+
+    /** the fastA file */
+    private final File fasta;
+    private final RandomAccessFile file;
+    /** the mapped chunks of the file */
+    private final MappedByteBuffer[] chunks;
+    /** the sequences of the index in file order */
+    private final LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<>();
+    private final SAMSequenceDictionary dictionary;
+    /** decoded windows by sequence and window index in access order */
+    private final LinkedHashMap<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(CACHE_SIZE * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Open and map the reference fastA file.
+     *
+     * @param fasta
+     *            the fastA file, the index <code>fasta.fai</code> is required
+     * @throws IOException
+     *             if the file or the index could not be read
+     */
+    public MappedReference(File fasta) throws IOException {
+        this.fasta = fasta;
+        File fai = new File(fasta.getPath() + ".fai");
+        if (!fai.exists())
+            throw new IOException("Missing index of the fastA file: " + fai);
+        readIndex(fai);
+        this.file = new RandomAccessFile(fasta, "r");
+        FileChannel channel = file.getChannel();
+        long size = channel.size();
+        ArrayList<MappedByteBuffer> buffers = new ArrayList<>();
+        for (long pos = 0; pos < size; pos += 1L << CHUNK_BITS)
+            buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(1L << CHUNK_BITS, size - pos)));
+        this.chunks = buffers.toArray(new MappedByteBuffer[buffers.size()]);
+        this.dictionary = readSequenceDictionary(fasta);
+    }
+
+    private void readIndex(File fai) throws IOException {
+        BufferedReader reader = IOUtil.getBufferedReaderFromFileName(fai);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                String[] fields = line.split("\t");
+                if (fields.length < 5)
+                    throw new IOException("Malformed line in fastA index " + fai + ": " + line);
+                try {
+                    IndexEntry entry = new IndexEntry(index.size(), fields[0], Integer.parseInt(fields[1]),
+                            Long.parseLong(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+                    index.put(entry.name, entry);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed line in fastA index " + fai + ": " + line, e);
+                }
+            }
+        } finally {
+            IOUtil.close(reader);
+        }
+    }
+
+    /**
+     * Read the sequence dictionary next to a fastA file (<code>GRCh38.dict</code> or <code>GRCh38.fa.dict</code>)
+     * without opening the fastA file itself.
+     *
+     * @param fasta
+     *            the fastA file
+     * @return the sequence dictionary or <code>null</code> if there is no dictionary file
+     * @throws IOException
+     *             if the dictionary file could not be read
+     */
+    public static SAMSequenceDictionary readSequenceDictionary(File fasta) throws IOException {
+        String path = fasta.getPath();
+        for (String extension : new String[] { ".fasta.gz", ".fa.gz", ".fasta", ".fa", ".fna" }) {
+            if (path.endsWith(extension)) {
+                path = path.substring(0, path.length() - extension.length());
+                break;
+            }
+        }
+        File dict = new File(path + ".dict");
+        if (!dict.exists())
+            dict = new File(fasta.getPath() + ".dict");
+        if (dict.exists()) {
+            InputStream in = new FileInputStream(dict);
+            try {
+                return new SAMTextHeaderCodec().decode(new BufferedLineReader(in), dict.toString())
+                        .getSequenceDictionary();
+            } finally {
+                in.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the sequence dictionary of the reference or <code>null</code> if there is no dictionary file
+     */
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @param name
+     *            the sequence name
+     * @return <code>true</code> if the sequence is in the index
+     */
+    public boolean hasSequence(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * @param name
+     *            the sequence name
+     * @return the length of the sequence
+     */
+    public int getLength(String name) {
+        return getEntry(name).length;
+    }
+
+    /**
+     * Copy the bases of a sequence range into an array.
+     *
+     * @param name
+     *            the sequence name
+     * @param start
+     *            inclusive, 1-based start of the range
+     * @param stop
+     *            inclusive, 1-based stop of the range
+     * @param strand
+     *            <code>false</code> for the reverse complement of the range
+     * @param dest
+     *            the destination array
+     * @param destPos
+     *            start position in the destination array
+     */
+    public void copyBases(String name, int start, int stop, boolean strand, byte[] dest, int destPos) {
+        IndexEntry entry = getEntry(name);
+        if (start < 1 || stop > entry.length || stop < start - 1)
+            throw new IllegalArgumentException("Malformed query " + name + ":" + start + "-" + stop
+                    + " for sequence with length " + entry.length);
+        int length = stop - start + 1;
+        copyBases(entry, start - 1, length, dest, destPos);
+        if (!strand)
+            reverseComplement(dest, destPos, length);
+    }
+
+    /**
+     * The bases of a sequence range, see {@link #copyBases(String, int, int, boolean, byte[], int)}.
+     *
+     * @return a copy of the bases
+     */
+    public byte[] getBases(String name, int start, int stop, boolean strand) {
+        byte[] bases = new byte[Math.max(0, stop - start + 1)];
+        copyBases(name, start, stop, strand, bases, 0);
+        return bases;
+    }
+
+    private IndexEntry getEntry(String name) {
+        IndexEntry entry = index.get(name);
+        if (entry == null)
+            throw new IllegalArgumentException("Unknown sequence " + name + " in the reference " + fasta);
+        return entry;
+    }
+
+    /**
+     * Copy the bases of a range from the cached windows.
+     */
+    private void copyBases(IndexEntry entry, int start, int length, byte[] dest, int destPos) {
+        int pos = start;
+        int end = start + length;
+        while (pos < end) {
+            int window = pos / WINDOW;
+            byte[] bases = getWindow(entry, window);
+            int from = pos - window * WINDOW;
+            int n = Math.min(bases.length - from, end - pos);
+            System.arraycopy(bases, from, dest, destPos, n);
+            destPos += n;
+            pos += n;
+        }
+    }
+
+    private byte[] getWindow(IndexEntry entry, int window) {
+        Long key = ((long) entry.index << 32) | window;
+        synchronized (cache) {
+            byte[] bases = cache.get(key);
+            if (bases != null)
+                return bases;
+        }
+        // decode outside of the lock, a window decoded twice by concurrent threads is identical
+        int start = window * WINDOW;
+        byte[] bases = new byte[Math.min(WINDOW, entry.length - start)];
+        int pos = 0;
+        while (pos < bases.length) {
+            int column = (start + pos) % entry.basesPerLine;
+            int n = Math.min(entry.basesPerLine - column, bases.length - pos);
+            read(entry.offset(start + pos), bases, pos, n);
+            pos += n;
+        }
+        synchronized (cache) {
+            cache.put(key, bases);
+        }
+        return bases;
+    }
+
+    /**
+     * Read bytes of the file, crossing the chunk boundaries.
+     */
+    private void read(long offset, byte[] dest, int destPos, int length) {
+        while (length > 0) {
+            ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_BITS)].duplicate();
+            int within = (int) (offset & CHUNK_MASK);
+            int n = Math.min(length, chunk.capacity() - within);
+            chunk.position(within);
+            chunk.get(dest, destPos, n);
+            offset += n;
+            destPos += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Reverse complement the bases of an array range in place.
+     */
+    private static void reverseComplement(byte[] bases, int from, int length) {
+        int i = from;
+        int j = from + length - 1;
+        for (; i < j; i++, j--) {
+            byte tmp = COMPLEMENT[bases[i] & 0xff];
+            bases[i] = COMPLEMENT[bases[j] & 0xff];
+            bases[j] = tmp;
+        }
+        if (i == j)
+            bases[i] = COMPLEMENT[bases[i] & 0xff];
+    }
+
+    /**
+     * Close the file, the mapped chunks are released by the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * A line of the fastA index.
+     */
+    private static class IndexEntry {
+        final int index;
+        final String name;
+        final int length;
+        /** file offset of the first base */
+        final long offset;
+        final int basesPerLine;
+        final int bytesPerLine;
+
+        IndexEntry(int index, String name, int length, long offset, int basesPerLine, int bytesPerLine) {
+            this.index = index;
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.basesPerLine = basesPerLine;
+            this.bytesPerLine = bytesPerLine;
+        }
+
+        /**
+         * @return the file offset of the 0-based position
+         */
+        long offset(int pos) {
+            return offset + (long) (pos / basesPerLine) * bytesPerLine + pos % basesPerLine;
+        }
+    }
+
+}
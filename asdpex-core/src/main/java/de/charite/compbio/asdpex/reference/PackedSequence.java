@@ -0,0 +1,411 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.reference;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * Nucleotide sequence packed with two bits per base, 32 bases per <code>long</code>: A=0, C=1, G=2, T=3, the base
+ * <code>i</code> in the bits <code>2*(i%32)</code> of the word <code>i/32</code>. All other bytes, mostly runs of
+ * 'N', are stored as runs in a side table and packed as A, the lower case (soft masked) bases as runs in a second side
+ * table. So the packing is lossless and a sequence takes about a quarter of the memory of a <code>byte[]</code>.<br>
+ * The words are held in a {@link LongBuffer}, which is either an array or a memory mapped
+ * {@link PackedSequenceStore}. The reverse complement is computed on whole words and sequences are compared 32 bases
+ * at a time, see {@link #countMismatches(PackedSequence, int, int, int)}.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class PackedSequence {
+    /** the bases of the 2-bit codes */
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+    /** 2-bit codes of the bytes, -1 for bytes stored in the side table */
+    private static final byte[] CODES = new byte[256];
+    /** the lower bit of each 2-bit code */
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    static {
+        Arrays.fill(CODES, (byte) -1);
+        for (int i = 0; i < BASES.length; i++) {
+            CODES[BASES[i]] = (byte) i;
+            CODES[Character.toLowerCase(BASES[i])] = (byte) i;
+        }
+    }
+
+    private final String name;
+    private final int length;
+    /** the packed bases, bits after the last base are 0 */
+    private final LongBuffer words;
+    /** runs of bytes other than ACGT: start, length and the byte */
+    private final int[] exceptionStarts;
+    private final int[] exceptionLengths;
+    private final byte[] exceptionBytes;
+    /** runs of lower case bases: start and length */
+    private final int[] maskStarts;
+    private final int[] maskLengths;
+
+    PackedSequence(String name, int length, LongBuffer words, int[] exceptionStarts, int[] exceptionLengths,
+            byte[] exceptionBytes, int[] maskStarts, int[] maskLengths) {
+        this.name = name;
+        this.length = length;
+        this.words = words;
+        this.exceptionStarts = exceptionStarts;
+        this.exceptionLengths = exceptionLengths;
+        this.exceptionBytes = exceptionBytes;
+        this.maskStarts = maskStarts;
+        this.maskLengths = maskLengths;
+    }
+
+    /**
+     * Pack the bases of an array.
+     *
+     * @param name
+     *            the sequence name
+     * @param bases
+     *            the bases
+     * @return the {@link PackedSequence}
+     */
+    public static PackedSequence pack(String name, byte[] bases) {
+        return pack(name, bases, 0, bases.length);
+    }
+
+    /**
+     * Pack a range of the bases of an array.
+     *
+     * @param name
+     *            the sequence name
+     * @param bases
+     *            the bases
+     * @param from
+     *            start of the range
+     * @param length
+     *            number of bases
+     * @return the {@link PackedSequence}
+     */
+    public static PackedSequence pack(String name, byte[] bases, int from, int length) {
+        long[] words = new long[(length + 31) >>> 5];
+        Runs exceptions = new Runs();
+        Runs masks = new Runs();
+        for (int i = 0; i < length; i++) {
+            byte b = bases[from + i];
+            int code = CODES[b & 0xff];
+            if (code < 0) {
+                exceptions.add(i, b);
+                continue;
+            }
+            if (b >= 'a')
+                masks.add(i, (byte) 0);
+            words[i >>> 5] |= (long) code << ((i & 31) << 1);
+        }
+        return new PackedSequence(name, length, LongBuffer.wrap(words), exceptions.starts(), exceptions.lengths(),
+                exceptions.bytes(), masks.starts(), masks.lengths());
+    }
+
+    /**
+     * @return the sequence name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of bases
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the number of packed <code>long</code> words
+     */
+    public int getWordCount() {
+        return (length + 31) >>> 5;
+    }
+
+    /**
+     * @param i
+     *            0-based position
+     * @return the base at the position
+     */
+    public byte byteAt(int i) {
+        if (i < 0 || i >= length)
+            throw new IndexOutOfBoundsException("position " + i + " outside of sequence with length " + length);
+        int run = findRun(exceptionStarts, i);
+        if (run >= 0 && i < exceptionStarts[run] + exceptionLengths[run])
+            return exceptionBytes[run];
+        byte base = BASES[code(i)];
+        run = findRun(maskStarts, i);
+        if (run >= 0 && i < maskStarts[run] + maskLengths[run])
+            base = (byte) Character.toLowerCase(base);
+        return base;
+    }
+
+    /**
+     * @return the 2-bit code of the base at the 0-based position, 0 for bytes in the side table
+     */
+    public int code(int i) {
+        return (int) (words.get(i >>> 5) >>> ((i & 31) << 1)) & 3;
+    }
+
+    /**
+     * Decode a range of the bases into an array.
+     *
+     * @param from
+     *            0-based start of the range
+     * @param length
+     *            number of bases
+     * @param dest
+     *            the destination array
+     * @param destPos
+     *            start position in the destination array
+     */
+    public void copyTo(int from, int length, byte[] dest, int destPos) {
+        if (from < 0 || length < 0 || from + length > this.length)
+            throw new IndexOutOfBoundsException(
+                    "range " + from + "+" + length + " outside of sequence with length " + this.length);
+        int i = 0;
+        while (i < length) {
+            int pos = from + i;
+            long word = words.get(pos >>> 5) >>> ((pos & 31) << 1);
+            int n = Math.min(32 - (pos & 31), length - i);
+            for (int j = 0; j < n; j++, word >>>= 2)
+                dest[destPos + i + j] = BASES[(int) word & 3];
+            i += n;
+        }
+        int end = from + length;
+        for (int run = Math.max(0, findRun(maskStarts, from)); run < maskStarts.length
+                && maskStarts[run] < end; run++) {
+            int s = Math.max(from, maskStarts[run]);
+            int e = Math.min(end, maskStarts[run] + maskLengths[run]);
+            for (int p = s; p < e; p++)
+                dest[destPos + p - from] |= 0x20;
+        }
+        for (int run = Math.max(0, findRun(exceptionStarts, from)); run < exceptionStarts.length
+                && exceptionStarts[run] < end; run++) {
+            int s = Math.max(from, exceptionStarts[run]);
+            int e = Math.min(end, exceptionStarts[run] + exceptionLengths[run]);
+            if (s < e)
+                Arrays.fill(dest, destPos + s - from, destPos + e - from, exceptionBytes[run]);
+        }
+    }
+
+    /**
+     * @return the bases as array
+     */
+    public byte[] toBytes() {
+        byte[] bases = new byte[length];
+        copyTo(0, length, bases, 0);
+        return bases;
+    }
+
+    /**
+     * The reverse complement, computed on whole words: the 2-bit codes of a word are reversed and complemented with
+     * <code>3 - code</code>.
+     *
+     * @return the reverse complement with the same name
+     */
+    public PackedSequence reverseComplement() {
+        int n = getWordCount();
+        long[] reversed = new long[n];
+        for (int i = 0; i < n; i++)
+            reversed[i] = ~reverseCodes(words.get(n - 1 - i));
+        // the reversed sequence starts after the unused bits of the last word
+        int shift = ((n << 5) - length) << 1;
+        if (shift > 0) {
+            for (int i = 0; i < n; i++)
+                reversed[i] = (reversed[i] >>> shift) | (i + 1 < n ? reversed[i + 1] << (64 - shift) : 0);
+        }
+        if ((length & 31) != 0)
+            reversed[n - 1] &= (1L << ((length & 31) << 1)) - 1;
+
+        int m = exceptionStarts.length;
+        int[] starts = new int[m];
+        int[] lengths = new int[m];
+        byte[] bytes = new byte[m];
+        for (int i = 0; i < m; i++) {
+            int run = m - 1 - i;
+            starts[i] = length - exceptionStarts[run] - exceptionLengths[run];
+            lengths[i] = exceptionLengths[run];
+            bytes[i] = SequenceUtil.complement(exceptionBytes[run]);
+        }
+        // the codes of the side table bytes are complemented to 3 and have to be 0
+        for (int i = 0; i < m; i++)
+            for (int p = starts[i]; p < starts[i] + lengths[i]; p++)
+                reversed[p >>> 5] &= ~(3L << ((p & 31) << 1));
+        m = maskStarts.length;
+        int[] masks = new int[m];
+        int[] maskLens = new int[m];
+        for (int i = 0; i < m; i++) {
+            int run = m - 1 - i;
+            masks[i] = length - maskStarts[run] - maskLengths[run];
+            maskLens[i] = maskLengths[run];
+        }
+        return new PackedSequence(name, length, LongBuffer.wrap(reversed), starts, lengths, bytes, masks, maskLens);
+    }
+
+    /**
+     * Reverse the order of the 2-bit codes of a word.
+     */
+    private static long reverseCodes(long word) {
+        word = Long.reverse(word);
+        return ((word >>> 1) & LOW_BITS) | ((word & LOW_BITS) << 1);
+    }
+
+    /**
+     * Count the mismatches of a range with a range of another sequence, 32 bases at a time. The comparison ignores the
+     * case, bytes other than ACGT are compared by value, e.g. 'N' matches 'N' but no base.
+     *
+     * @param other
+     *            the other sequence
+     * @param from
+     *            0-based start in this sequence
+     * @param otherFrom
+     *            0-based start in the other sequence
+     * @param length
+     *            number of bases to compare
+     * @return the number of mismatches
+     */
+    public int countMismatches(PackedSequence other, int from, int otherFrom, int length) {
+        if (from < 0 || otherFrom < 0 || length < 0 || from + length > this.length
+                || otherFrom + length > other.length)
+            throw new IndexOutOfBoundsException("range outside of the sequences");
+        int mismatches = 0;
+        int i = 0;
+        for (; i + 32 <= length; i += 32) {
+            long x = window(from + i) ^ other.window(otherFrom + i);
+            mismatches += Long.bitCount((x | (x >>> 1)) & LOW_BITS);
+        }
+        if (i < length) {
+            long x = (window(from + i) ^ other.window(otherFrom + i)) & ((1L << ((length - i) << 1)) - 1);
+            mismatches += Long.bitCount((x | (x >>> 1)) & LOW_BITS);
+        }
+        // the codes of the side table bytes are 0, compare their values
+        int end = from + length;
+        for (int run = Math.max(0, findRun(exceptionStarts, from)); run < exceptionStarts.length
+                && exceptionStarts[run] < end; run++) {
+            int s = Math.max(from, exceptionStarts[run]);
+            int e = Math.min(end, exceptionStarts[run] + exceptionLengths[run]);
+            for (int p = s; p < e; p++)
+                mismatches += correction(other, p, otherFrom + p - from);
+        }
+        int otherEnd = otherFrom + length;
+        int[] otherStarts = other.exceptionStarts;
+        for (int run = Math.max(0, findRun(otherStarts, otherFrom)); run < otherStarts.length
+                && otherStarts[run] < otherEnd; run++) {
+            int s = Math.max(otherFrom, other.exceptionStarts[run]);
+            int e = Math.min(otherEnd, other.exceptionStarts[run] + other.exceptionLengths[run]);
+            for (int q = s; q < e; q++) {
+                int p = from + q - otherFrom;
+                if (!isException(p))
+                    mismatches += correction(other, p, q);
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * @return the correction of the code comparison by the byte comparison of the positions
+     */
+    private int correction(PackedSequence other, int p, int q) {
+        int byCode = code(p) != other.code(q) ? 1 : 0;
+        int byByte = Character.toUpperCase(byteAt(p)) != Character.toUpperCase(other.byteAt(q)) ? 1 : 0;
+        return byByte - byCode;
+    }
+
+    private boolean isException(int p) {
+        int run = findRun(exceptionStarts, p);
+        return run >= 0 && p < exceptionStarts[run] + exceptionLengths[run];
+    }
+
+    /**
+     * @return the 32 codes starting at the position, 0 after the end of the sequence
+     */
+    private long window(int pos) {
+        int w = pos >>> 5;
+        int shift = (pos & 31) << 1;
+        long codes = words.get(w) >>> shift;
+        if (shift != 0 && w + 1 < getWordCount())
+            codes |= words.get(w + 1) << (64 - shift);
+        return codes;
+    }
+
+    /**
+     * @return the index of the last run starting at or before the position, -1 if there is none
+     */
+    private static int findRun(int[] starts, int pos) {
+        int idx = Arrays.binarySearch(starts, pos);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    LongBuffer getWords() {
+        return words;
+    }
+
+    int[] getExceptionStarts() {
+        return exceptionStarts;
+    }
+
+    int[] getExceptionLengths() {
+        return exceptionLengths;
+    }
+
+    byte[] getExceptionBytes() {
+        return exceptionBytes;
+    }
+
+    int[] getMaskStarts() {
+        return maskStarts;
+    }
+
+    int[] getMaskLengths() {
+        return maskLengths;
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + length + "bp";
+    }
+
+    /**
+     * Growing side table of runs of the same byte.
+     */
+    private static class Runs {
+        private int[] starts = new int[4];
+        private int[] lengths = new int[4];
+        private byte[] bytes = new byte[4];
+        private int size = 0;
+
+        void add(int pos, byte b) {
+            if (size > 0 && starts[size - 1] + lengths[size - 1] == pos && bytes[size - 1] == b) {
+                lengths[size - 1]++;
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            starts[size] = pos;
+            lengths[size] = 1;
+            bytes[size] = b;
+            size++;
+        }
+
+        int[] starts() {
+            return Arrays.copyOf(starts, size);
+        }
+
+        int[] lengths() {
+            return Arrays.copyOf(lengths, size);
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.reference;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+import de.charite.compbio.asdpex.util.IOUtil;
+
+/**
+ * Binary file of {@link PackedSequence}s, e.g. the regions and extended alternate loci of the <code>create-fa</code>
+ * command. The file is memory mapped and the packed words of a sequence are used directly from the mapped file, only
+ * the small side tables are read into memory.
+ *
+ * <pre>
+ * header:    magic, number of sequences
+ * sequences: name, length, exception runs (start, length, byte), lower case runs (start, length), word offset
+ * words:     the packed words of the sequences, 8 byte aligned
+ * </pre>
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class PackedSequenceStore {
+    private static final long MAGIC = 0x4153445032424954L; // ASDP2BIT
+
+    /** the sequences by name in file order */
+    private final LinkedHashMap<String, PackedSequence> sequences = new LinkedHashMap<>();
+
+    /**
+     * Map the store file.
+     *
+     * @param file
+     *            the store file
+     * @throws IOException
+     *             if the file could not be read or is no store
+     */
+    public PackedSequenceStore(File file) throws IOException {
+        ByteBuffer data;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() > Integer.MAX_VALUE)
+                throw new IOException("Packed sequence file larger than 2GB: " + file);
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        try {
+            if (data.getLong() != MAGIC)
+                throw new IOException("No packed sequence file: " + file);
+            int n = data.getInt();
+            for (int i = 0; i < n; i++) {
+                byte[] name = new byte[data.getShort() & 0xffff];
+                data.get(name);
+                int length = data.getInt();
+                int m = data.getInt();
+                int[] exceptionStarts = new int[m];
+                int[] exceptionLengths = new int[m];
+                byte[] exceptionBytes = new byte[m];
+                for (int j = 0; j < m; j++) {
+                    exceptionStarts[j] = data.getInt();
+                    exceptionLengths[j] = data.getInt();
+                    exceptionBytes[j] = data.get();
+                }
+                m = data.getInt();
+                int[] maskStarts = new int[m];
+                int[] maskLengths = new int[m];
+                for (int j = 0; j < m; j++) {
+                    maskStarts[j] = data.getInt();
+                    maskLengths[j] = data.getInt();
+                }
+                long offset = data.getLong();
+                ByteBuffer words = data.duplicate();
+                words.position((int) offset);
+                words.limit((int) offset + 8 * ((length + 31) >>> 5));
+                String s = new String(name, StandardCharsets.UTF_8);
+                sequences.put(s, new PackedSequence(s, length, words.slice().asLongBuffer(), exceptionStarts,
+                        exceptionLengths, exceptionBytes, maskStarts, maskLengths));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt packed sequence file: " + file, e);
+        }
+    }
+
+    /**
+     * @return the names of the sequences in file order
+     */
+    public Set<String> getNames() {
+        return sequences.keySet();
+    }
+
+    /**
+     * @param name
+     *            the sequence name
+     * @return the {@link PackedSequence} or <code>null</code> if it is not in the store
+     */
+    public PackedSequence get(String name) {
+        return sequences.get(name);
+    }
+
+    /**
+     * Write the sequences to a store file. The file is written to a temporary file first and then renamed. Like the
+     * mapping of the file the size is limited to 2GB.
+     *
+     * @param file
+     *            the store file
+     * @param sequences
+     *            the {@link PackedSequence}s
+     * @throws IOException
+     *             if the file could not be written or would be larger than 2GB
+     */
+    public static void write(File file, Collection<PackedSequence> sequences) throws IOException {
+        // the header size to know the word offsets
+        long offset = 8 + 4;
+        long size = 0;
+        for (PackedSequence sequence : sequences) {
+            offset += 2 + sequence.getName().getBytes(StandardCharsets.UTF_8).length + 4
+                    + 4 + 9 * sequence.getExceptionStarts().length + 4 + 8 * sequence.getMaskStarts().length + 8;
+            size += 8L * sequence.getWordCount();
+        }
+        int padding = (int) ((8 - offset % 8) % 8);
+        offset += padding;
+        if (offset + size > Integer.MAX_VALUE)
+            throw new IOException("Packed sequence file larger than 2GB: " + file);
+
+        File part = new File(file.getPath() + ".part");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part), 1 << 16));
+        try {
+            out.writeLong(MAGIC);
+            out.writeInt(sequences.size());
+            for (PackedSequence sequence : sequences) {
+                byte[] name = sequence.getName().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeInt(sequence.length());
+                out.writeInt(sequence.getExceptionStarts().length);
+                for (int j = 0; j < sequence.getExceptionStarts().length; j++) {
+                    out.writeInt(sequence.getExceptionStarts()[j]);
+                    out.writeInt(sequence.getExceptionLengths()[j]);
+                    out.writeByte(sequence.getExceptionBytes()[j]);
+                }
+                out.writeInt(sequence.getMaskStarts().length);
+                for (int j = 0; j < sequence.getMaskStarts().length; j++) {
+                    out.writeInt(sequence.getMaskStarts()[j]);
+                    out.writeInt(sequence.getMaskLengths()[j]);
+                }
+                out.writeLong(offset);
+                offset += 8L * sequence.getWordCount();
+            }
+            out.write(new byte[padding]);
+            for (PackedSequence sequence : sequences) {
+                LongBuffer words = sequence.getWords();
+                for (int j = 0; j < sequence.getWordCount(); j++)
+                    out.writeLong(words.get(j));
+            }
+            out.close();
+        } finally {
+            // only closed quietly after a failure, the file is not renamed then
+            IOUtil.close(out);
+        }
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -10,8 +10,8 @@ import com.google.common.collect.ImmutableList;
 
 import de.charite.compbio.asdpex.data.NCBIgffAlignment;
 import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement;
-import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement.NCBIgffAlignmentElementBuilder;
 import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
 
 /**
  * Util to perform several task on the {@link NCBIgffAlignment}s.
@@ -89,33 +89,12 @@ public class AlignmentUtil {
         int start = 0;
         int stop = start;
         int obacht = 0;
-        // ------- TEST ---------
-        // NCBIgffAlignmentElement previos = null;
-        // int obacht2 = 0;
-        // ------- END ---------
-
-        for (NCBIgffAlignmentElement element : alignment.getElements()) {
-            // ------- TEST ---------
-            // if (element.getType() == NCBIgffAlignmentElementType.INSERTION) {
-            // obacht2++;
-            // previos = element;
-            // } else if (element.getType() == NCBIgffAlignmentElementType.DELETION) {
-            // obacht2++;
-            // } else {
-            // obacht2 = 0;
-            // previos = null;
-            // }
-            // if (obacht2 > 1) {
-            // System.out.println("Ref: " + alignment.getRefId() + "\talt: " + alignment.getAltId());
-            // System.out.println("previous: " + previos);
-            // System.out.println("current: " + element);
-            // }
-
-            // ------- END ---------
-
-            if (element.getType() == NCBIgffAlignmentElementType.INSERTION && element.getLength() >= limit)
+        PackedAlignmentElements elements = alignment.getPackedElements();
+        for (int i = 0; i < elements.size(); i++) {
+            NCBIgffAlignmentElementType type = elements.getType(i);
+            if (type == NCBIgffAlignmentElementType.INSERTION && elements.getLength(i) >= limit)
                 obacht++;
-            else if (element.getType() == NCBIgffAlignmentElementType.DELETION && element.getLength() >= limit)
+            else if (type == NCBIgffAlignmentElementType.DELETION && elements.getLength(i) >= limit)
                 obacht++;
             else
                 obacht = 0;
@@ -252,7 +231,8 @@ public class AlignmentUtil {
 
     /**
      * Extracts the subalignment from the {@link NCBIgffAlignment} object and returns a new {@link NCBIgffAlignment}
-     * object.
+     * object. The elements of the subalignment are a view on the {@link PackedAlignmentElements} of the parent, the
+     * coordinates are taken from their prefix sums, so no element is copied.
      * 
      * @param alignment
      *            parent {@link NCBIgffAlignment} object from where the subalignment should be extracted
@@ -264,87 +244,16 @@ public class AlignmentUtil {
      *         startElem and endElem and updated coordinates for reference and alternative.
      */
     private static NCBIgffAlignment getSubAlignment(NCBIgffAlignment alignment, int startElem, int endElem) {
+        PackedAlignmentElements elements = alignment.getPackedElements();
+        // 1-based --> remove 1 from cumulative length for the stops
+        int refStart = alignment.getRefStart() + elements.getRefOffset(startElem);
+        int refStop = alignment.getRefStart() - 1 + elements.getRefOffset(endElem);
+        int altStart = alignment.getAltStart() + elements.getAltOffset(startElem);
+        int altStop = alignment.getAltStart() - 1 + elements.getAltOffset(endElem);
 
-        int refStart = alignment.getRefStart();
-        int refStop = alignment.getRefStart() - 1; // 1-based --> remove 1 from cumulative length
-        int altStart = alignment.getAltStart();
-        int altStop = alignment.getAltStart() - 1; // 1-based --> remove 1 from cumulative length
-
-        NCBIgffAlignmentElement element;
-        for (int i = 0; i < endElem; i++) {
-            element = alignment.getElements().get(i);
-            // update refStart and altStart for elements before the startElem
-            if (i < startElem) {
-                switch (element.getType()) {
-                case INSERTION:
-                    altStart += element.getLength();
-                    break;
-                case DELETION:
-                    refStart += element.getLength();
-                    break;
-                case MATCH:
-                    refStart += element.getLength();
-                    altStart += element.getLength();
-                    break;
-
-                default:
-                    break;
-                }
-            }
-
-            // update the refStop and altStop
-            switch (element.getType()) {
-            case INSERTION:
-                altStop += element.getLength();
-                break;
-            case DELETION:
-                refStop += element.getLength();
-                break;
-            case MATCH:
-                refStop += element.getLength();
-                altStop += element.getLength();
-                break;
-
-            default:
-                break;
-            }
-
-        }
-
-        ImmutableList<NCBIgffAlignmentElement> subListElements = updateElementsSublist(
-                alignment.getElements().subList(startElem, endElem));
         return new NCBIgffAlignment(alignment.getRefId(), alignment.getAltId(), refStart, refStop,
-                alignment.isRefStrand(), altStart, altStop, alignment.isAltStrand(), subListElements);
-    }
-
-    /**
-     * Update the {@link NCBIgffAlignmentElement}s in the subList, so the first element starts again with '0' for ref
-     * and alt and the remaining elements are updated by subtracting the former start form each ref and alt
-     * correspondingly.
-     * 
-     * @param subList
-     * @return
-     */
-    private static ImmutableList<NCBIgffAlignmentElement> updateElementsSublist(
-            ImmutableList<NCBIgffAlignmentElement> subList) {
-        if (subList.size() < 1)
-            return subList;
-        ImmutableList.Builder<NCBIgffAlignmentElement> elements = new ImmutableList.Builder<NCBIgffAlignmentElement>();
-
-        int firstElement_ref_start = subList.get(0).getRef_start();
-        int firstElement_alt_start = subList.get(0).getAlt_start();
-        NCBIgffAlignmentElementBuilder builder;
-
-        for (NCBIgffAlignmentElement element : subList) {
-            builder = new NCBIgffAlignmentElementBuilder();
-            builder.type(element.getType());
-            builder.refStart(element.getRef_start() - firstElement_ref_start);
-            builder.altStart(element.getAlt_start() - firstElement_alt_start);
-            builder.length(element.getLength());
-            elements.add(builder.build());
-        }
-
-        return elements.build();
+                alignment.isRefStrand(), altStart, altStop, alignment.isAltStrand(),
+                elements.subList(startElem, endElem));
     }
 
 }
@@ -0,0 +1,410 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement;
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Seeded banded global aligner of a reference region and an alternate locus, the in-JVM counterpart of the SeqAn
+ * program <code>regionalign2vcf</code>. The match elements of the {@link NCBIgffAlignmentElement}s are used as seeds,
+ * which are aligned in a band of {@link #BAND_EXTENSION} diagonals around them, while the gaps between the seeds are
+ * aligned completely (Gotoh, affine gap costs). The differences are returned as ASDP {@link VariantContext}s in the
+ * same representation as the VCF files written by the SeqAn program.<br>
+ * The aligner has no state, so one instance can be used by several threads, each aligning its own block.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class SeededBandedAligner {
+    /** score of a match */
+    public static final int MATCH = 5;
+    /** score of a mismatch */
+    public static final int MISMATCH = -2;
+    /** score of the first position of a gap */
+    public static final int GAP_OPEN = -20;
+    /** score of every further position of a gap */
+    public static final int GAP_EXTEND = 0;
+    /** number of diagonals the band is extended on both sides of a seed */
+    public static final int BAND_EXTENSION = 10;
+    /** InDels longer than this are reported as symbolic <code>&lt;INS&gt;</code> and <code>&lt;DEL&gt;</code> */
+    public static final int SV_MIN = 50;
+    /** maximal number of cells to align the gap between two seeds completely */
+    public static final long MAX_GAP_CELLS = 1L << 24;
+    /** half width of the band along the diagonal of a gap between seeds exceeding {@link #MAX_GAP_CELLS} */
+    public static final int GAP_BAND = 1000;
+    /** name of the sample column */
+    public static final String SAMPLE = "SAMPLE";
+
+    private static final Allele INS = Allele.create("<INS>", false);
+    private static final Allele DEL = Allele.create("<DEL>", false);
+    private static final int NEG = Integer.MIN_VALUE / 4;
+    private static final byte FROM_M = 0;
+    private static final byte FROM_I = 1;
+    private static final byte FROM_D = 2;
+    /** alignment column with a (mis)match */
+    private static final byte OP_MATCH = 'M';
+    /** alignment column with a gap in the reference */
+    private static final byte OP_INSERTION = 'I';
+    /** alignment column with a gap in the alternate locus */
+    private static final byte OP_DELETION = 'D';
+    /** upper case bases, everything else is 'N' like the SeqAn Dna5 alphabet */
+    private static final byte[] DNA5 = new byte[256];
+
+    static {
+        Arrays.fill(DNA5, (byte) 'N');
+        for (byte b : new byte[] { 'A', 'C', 'G', 'T' }) {
+            DNA5[b] = b;
+            DNA5[b + 'a' - 'A'] = b;
+        }
+    }
+
+    private final int bandExtension;
+
+    public SeededBandedAligner() {
+        this(BAND_EXTENSION);
+    }
+
+    /**
+     * @param bandExtension
+     *            number of diagonals the band is extended on both sides of a seed
+     */
+    public SeededBandedAligner(int bandExtension) {
+        this.bandExtension = bandExtension;
+    }
+
+    /**
+     * Align the reference region and the alternate locus and return the differences.
+     *
+     * @param ref
+     *            the reference region
+     * @param alt
+     *            the alternate locus
+     * @param elements
+     *            the {@link PackedAlignmentElements} of the block, '0'-based relative to the block
+     * @param chrom
+     *            the chromosome of the variants
+     * @param regionId
+     *            identifier of the region (INFO field RE)
+     * @param altLocusId
+     *            identifier of the alternate locus (INFO field AL)
+     * @param offset
+     *            '0'-based start of the region on the chromosome
+     * @return the ASDPs as {@link VariantContext}s in order of the region
+     */
+    public ImmutableList<VariantContext> findDifferences(byte[] ref, byte[] alt,
+            PackedAlignmentElements elements, String chrom, String regionId, String altLocusId, int offset) {
+        byte[] refSeq = toDna5(ref);
+        byte[] altSeq = toDna5(alt);
+        byte[] ops = align(refSeq, altSeq, getSeeds(elements, refSeq.length, altSeq.length));
+        return findDifferences(ops, refSeq, altSeq, chrom, regionId, altLocusId, offset);
+    }
+
+    /**
+     * Extract the seed chain from the matches like the seed files of the SeqAn program: the first match is extended to
+     * the begin of the block, matches shorter than {@link #SV_MIN} after trimming 5% (but at most {@link #SV_MIN}
+     * bases) on both ends are skipped. Seeds overlapping the previous seed or the sequence ends are skipped as well.
+     *
+     * @return the seeds as <code>{ref start, alt start, length}</code>
+     */
+    static List<int[]> getSeeds(PackedAlignmentElements elements, int refLength, int altLength) {
+        ArrayList<int[]> seeds = new ArrayList<>();
+        boolean first = true;
+        int refEnd = 0;
+        int altEnd = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            if (elements.getType(i) != NCBIgffAlignmentElementType.MATCH)
+                continue;
+            int r = first ? 0 : elements.getRefStart(i);
+            int a = first ? 0 : elements.getAltStart(i);
+            int length = elements.getLength(i);
+            first = false;
+            if (Math.floor(length * 0.9) < SV_MIN)
+                continue;
+            int trim = Math.min((int) Math.floor(length * 0.05), SV_MIN);
+            r += trim;
+            a += trim;
+            length -= 2 * trim;
+            if (r < refEnd || a < altEnd || r + length > refLength || a + length > altLength)
+                continue;
+            seeds.add(new int[] { r, a, length });
+            refEnd = r + length;
+            altEnd = a + length;
+        }
+        return seeds;
+    }
+
+    /**
+     * Global alignment of the sequences within the band given by the seed chain.
+     *
+     * @return the alignment columns, {@link #OP_MATCH}, {@link #OP_INSERTION} or {@link #OP_DELETION}
+     */
+    byte[] align(byte[] ref, byte[] alt, List<int[]> seeds) {
+        final int n = ref.length;
+        final int m = alt.length;
+        // band of alt. positions (columns) for each ref. position (row)
+        int[] lo = new int[n + 1];
+        int[] hi = new int[n + 1];
+        Arrays.fill(lo, Integer.MAX_VALUE);
+        Arrays.fill(hi, Integer.MIN_VALUE);
+        int r0 = 0;
+        int a0 = 0;
+        for (int[] seed : seeds) {
+            coverGap(lo, hi, r0, a0, seed[0], seed[1]);
+            for (int i = seed[0]; i <= seed[0] + seed[2]; i++)
+                cover(lo, hi, i, i - seed[0] + seed[1] - bandExtension, i - seed[0] + seed[1] + bandExtension);
+            r0 = seed[0] + seed[2];
+            a0 = seed[1] + seed[2];
+        }
+        coverGap(lo, hi, r0, a0, n, m);
+
+        int[] rowStart = new int[n + 1];
+        long cells = 0;
+        int width = 0;
+        for (int i = 0; i <= n; i++) {
+            lo[i] = Math.max(lo[i], 0);
+            hi[i] = Math.min(hi[i], m);
+            if (cells > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("band of the alignment too large: " + cells + " cells");
+            rowStart[i] = (int) cells;
+            cells += Math.max(0, hi[i] - lo[i] + 1);
+            width = Math.max(width, hi[i] - lo[i] + 1);
+        }
+        if (cells > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("band of the alignment too large: " + cells + " cells");
+
+        // traceback: bits 0-1 predecessor of M, bits 2-3 of I and bits 4-5 of D
+        byte[] trace = new byte[(int) cells];
+        int[] prevM = new int[width];
+        int[] prevI = new int[width];
+        int[] prevD = new int[width];
+        int[] curM = new int[width];
+        int[] curI = new int[width];
+        int[] curD = new int[width];
+        int prevLo = 0;
+        int prevHi = -1;
+        for (int i = 0; i <= n; i++) {
+            for (int j = lo[i]; j <= hi[i]; j++) {
+                int k = j - lo[i];
+                if (i == 0 && j == 0) {
+                    curM[k] = 0;
+                    curI[k] = NEG;
+                    curD[k] = NEG;
+                    continue;
+                }
+                int tb = 0;
+                // (mis)match from the previous row and column
+                int score = NEG;
+                if (i > 0 && j > 0 && j - 1 >= prevLo && j - 1 <= prevHi) {
+                    int p = j - 1 - prevLo;
+                    score = prevM[p];
+                    if (prevI[p] > score) {
+                        score = prevI[p];
+                        tb = FROM_I;
+                    }
+                    if (prevD[p] > score) {
+                        score = prevD[p];
+                        tb = FROM_D;
+                    }
+                    score += ref[i - 1] == alt[j - 1] ? MATCH : MISMATCH;
+                }
+                curM[k] = score;
+                // insertion, gap in the ref. from the previous column
+                score = NEG;
+                if (j > lo[i]) {
+                    score = curM[k - 1] + GAP_OPEN;
+                    if (curI[k - 1] + GAP_EXTEND > score) {
+                        score = curI[k - 1] + GAP_EXTEND;
+                        tb |= FROM_I << 2;
+                    }
+                    if (curD[k - 1] + GAP_OPEN > score) {
+                        score = curD[k - 1] + GAP_OPEN;
+                        tb = (tb & ~(3 << 2)) | FROM_D << 2;
+                    }
+                }
+                curI[k] = score;
+                // deletion, gap in the alt. locus from the previous row
+                score = NEG;
+                if (i > 0 && j >= prevLo && j <= prevHi) {
+                    int p = j - prevLo;
+                    score = prevM[p] + GAP_OPEN;
+                    if (prevI[p] + GAP_OPEN > score) {
+                        score = prevI[p] + GAP_OPEN;
+                        tb |= FROM_I << 4;
+                    }
+                    if (prevD[p] + GAP_EXTEND > score) {
+                        score = prevD[p] + GAP_EXTEND;
+                        tb = (tb & ~(3 << 4)) | FROM_D << 4;
+                    }
+                }
+                curD[k] = score;
+                trace[rowStart[i] + k] = (byte) tb;
+            }
+            int[] tmp = prevM;
+            prevM = curM;
+            curM = tmp;
+            tmp = prevI;
+            prevI = curI;
+            curI = tmp;
+            tmp = prevD;
+            prevD = curD;
+            curD = tmp;
+            prevLo = lo[i];
+            prevHi = hi[i];
+        }
+
+        // traceback from the end, matches are preferred, so gaps are placed left
+        int p = m - prevLo;
+        int state = FROM_M;
+        if (prevI[p] > prevM[p])
+            state = FROM_I;
+        if (prevD[p] > Math.max(prevM[p], prevI[p]))
+            state = FROM_D;
+        byte[] ops = new byte[n + m];
+        int c = ops.length;
+        int i = n;
+        int j = m;
+        while (i > 0 || j > 0) {
+            int tb = trace[rowStart[i] + j - lo[i]];
+            switch (state) {
+            case FROM_M:
+                ops[--c] = OP_MATCH;
+                state = tb & 3;
+                i--;
+                j--;
+                break;
+            case FROM_I:
+                ops[--c] = OP_INSERTION;
+                state = (tb >> 2) & 3;
+                j--;
+                break;
+            default:
+                ops[--c] = OP_DELETION;
+                state = (tb >> 4) & 3;
+                i--;
+                break;
+            }
+        }
+        return Arrays.copyOfRange(ops, c, ops.length);
+    }
+
+    /**
+     * Add the gap between two seeds (or the sequence ends) to the band, completely or along its diagonal if it is too
+     * large.
+     */
+    private static void coverGap(int[] lo, int[] hi, int r0, int a0, int r1, int a1) {
+        if ((long) (r1 - r0 + 1) * (a1 - a0 + 1) <= MAX_GAP_CELLS || r1 == r0) {
+            for (int i = r0; i <= r1; i++)
+                cover(lo, hi, i, a0, a1);
+            return;
+        }
+        // the rows overlap with the following one, so the band is connected
+        for (int i = r0; i <= r1; i++) {
+            int from = a0 + (int) ((long) (i - r0) * (a1 - a0) / (r1 - r0));
+            int to = a0 + (int) ((long) Math.min(i + 1 - r0, r1 - r0) * (a1 - a0) / (r1 - r0));
+            cover(lo, hi, i, Math.max(a0, from - GAP_BAND), Math.min(a1, to + GAP_BAND));
+        }
+    }
+
+    private static void cover(int[] lo, int[] hi, int row, int from, int to) {
+        if (row < 0 || row >= lo.length)
+            return;
+        lo[row] = Math.min(lo[row], from);
+        hi[row] = Math.max(hi[row], to);
+    }
+
+    /**
+     * Convert the alignment columns into {@link VariantContext}s like the SeqAn program: InDels are anchored at the
+     * preceding base and mismatches are reported per base.
+     */
+    private static ImmutableList<VariantContext> findDifferences(byte[] ops, byte[] ref, byte[] alt, String chrom,
+            String regionId, String altLocusId, int offset) {
+        ImmutableList.Builder<VariantContext> variants = ImmutableList.builder();
+        int posRef = 0;
+        int posAlt = 0;
+        int c = 0;
+        while (c < ops.length) {
+            byte op = ops[c];
+            if (op == OP_MATCH) {
+                if (ref[posRef] != alt[posAlt])
+                    variants.add(createVariant(chrom, posRef + 1 + offset, posRef + 1 + offset,
+                            Arrays.copyOfRange(ref, posRef, posRef + 1), Arrays.copyOfRange(alt, posAlt, posAlt + 1),
+                            regionId, altLocusId, posRef).make());
+                posRef++;
+                posAlt++;
+                c++;
+                continue;
+            }
+            int length = 1;
+            while (c + length < ops.length && ops[c + length] == op)
+                length++;
+            c += length;
+            // without a preceding base the InDel cannot be anchored
+            if (posRef == 0 || posAlt == 0) {
+                if (op == OP_INSERTION)
+                    posAlt += length;
+                else
+                    posRef += length;
+                continue;
+            }
+            int pos = posRef + offset;
+            byte[] anchor = Arrays.copyOfRange(ref, posRef - 1, posRef);
+            if (op == OP_INSERTION) {
+                if (length > SV_MIN)
+                    variants.add(createVariant(chrom, pos, pos, anchor, INS, regionId, altLocusId, posRef)
+                            .attribute("SVTYPE", "INS").attribute("SVLEN", length).attribute("END", pos).make());
+                else
+                    variants.add(createVariant(chrom, pos, pos, anchor,
+                            Arrays.copyOfRange(alt, posAlt - 1, posAlt + length), regionId, altLocusId, posRef)
+                                    .make());
+                posAlt += length;
+            } else {
+                if (length > SV_MIN)
+                    variants.add(createVariant(chrom, pos, pos + length, anchor, DEL, regionId, altLocusId, posRef)
+                            .attribute("SVTYPE", "DEL").attribute("SVLEN", -length).attribute("END", pos + length)
+                            .make());
+                else
+                    variants.add(createVariant(chrom, pos, pos + length,
+                            Arrays.copyOfRange(ref, posRef - 1, posRef + length),
+                            Arrays.copyOfRange(alt, posAlt - 1, posAlt), regionId, altLocusId, posRef).make());
+                posRef += length;
+            }
+        }
+        return variants.build();
+    }
+
+    private static VariantContextBuilder createVariant(String chrom, int start, int stop, byte[] refBases,
+            byte[] altBases, String regionId, String altLocusId, int posRef) {
+        return createVariant(chrom, start, stop, refBases, Allele.create(altBases, false), regionId, altLocusId,
+                posRef);
+    }
+
+    private static VariantContextBuilder createVariant(String chrom, int start, int stop, byte[] refBases,
+            Allele altAllele, String regionId, String altLocusId, int posRef) {
+        Allele refAllele = Allele.create(refBases, true);
+        return new VariantContextBuilder(null, chrom, start, stop, Arrays.asList(refAllele, altAllele))
+                .log10PError(-4.0).passFilters().attribute("AL", altLocusId).attribute("RE", regionId)
+                .attribute("RP", posRef)
+                .genotypes(new GenotypeBuilder(SAMPLE, Arrays.asList(refAllele, altAllele)).phased(true).make());
+    }
+
+    private static byte[] toDna5(byte[] bases) {
+        byte[] result = new byte[bases.length];
+        for (int i = 0; i < bases.length; i++)
+            result[i] = DNA5[bases[i] & 0xff];
+        return result;
+    }
+
+}
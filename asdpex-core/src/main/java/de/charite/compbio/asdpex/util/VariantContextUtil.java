@@ -4,12 +4,15 @@
 package de.charite.compbio.asdpex.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import de.charite.compbio.asdpex.data.PairwiseVariantContextIntersect;
 import de.charite.compbio.asdpex.data.PairwiseVariantContextIntersect.PairwiseVariantContextIntersectBuilder;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.VariantContext.Type;
 
 /**
  * Collection of tools to perform on {@link VariantContext} collections.
@@ -18,84 +21,139 @@ import htsjdk.variant.variantcontext.VariantContext.Type;
  *
  */
 public class VariantContextUtil {
+    /** minimal number of alternative scaffolds in a region to compute the intersects in parallel */
+    public static final int FORK_THRESHOLD = 4;
 
     /**
      * Compares the entries in set1 to these in set2 and generates a {@link PairwiseVariantContextIntersect} object with
-     * the results. The sets have to be naturally sorted.
+     * the results. The sets have to be naturally sorted and on a single contig, see
+     * {@link #intersectVariantContext(VariantKeyArray, VariantKeyArray)}.
      * 
      * @param set1
      * @param set2
      * @return
      */
-    public static PairwiseVariantContextIntersect intersectVariantContext(ArrayList<VariantContext> set1,
-            ArrayList<VariantContext> set2) {
+    public static PairwiseVariantContextIntersect intersectVariantContext(List<VariantContext> set1,
+            List<VariantContext> set2) {
         if (set1 == null || set2 == null)
             return null;
+        return intersectVariantContext(VariantKeyArray.of(set1), VariantKeyArray.of(set2));
+    }
+
+    /**
+     * Sort-merge kernel of {@link #intersectVariantContext(List, List)}. A set1 SNV intersects with the first set2 SNV
+     * at the same position with the same reference allele at or behind the last intersecting set2 SNV. Both sets are
+     * walked once with two pointers, so the runtime is linear in the size of both sets. The reference alleles are
+     * compared by their {@link VariantKeyArray} keys, for negative (hash based) keys the raw bases are compared.<br>
+     * The pointers rely on the positions being sorted, so both sets have to be restricted to a single contig, e.g. the
+     * variants of a region and the ASDPs of its alternate loci. The contig names are still compared per intersection.
+     * 
+     * @param set1
+     *            {@link VariantKeyArray} of the first set, on a single contig and sorted by position
+     * @param set2
+     *            {@link VariantKeyArray} of the second set, on the same contig and sorted by position
+     * @return the {@link PairwiseVariantContextIntersect}
+     */
+    public static PairwiseVariantContextIntersect intersectVariantContext(VariantKeyArray set1, VariantKeyArray set2) {
         PairwiseVariantContextIntersectBuilder builder = new PairwiseVariantContextIntersectBuilder();
-        // System.out.println("Compare Variants");
-        // System.out.println("set1.size: " + set1.size());
-        // System.out.println("set2.size: " + set2.size());
-
-        ArrayList<VariantContext> set1SV = new ArrayList<>();
-        ArrayList<VariantContext> set1SNV = new ArrayList<>();
-        ArrayList<VariantContext> set2SV = new ArrayList<>();
-        ArrayList<VariantContext> set2SNV = new ArrayList<>();
         ArrayList<VariantContext> intersectSNV = new ArrayList<>();
         boolean[] set1IntersectFlag = new boolean[set1.size()];
 
-        // calc SVs
-        for (VariantContext variantContext : set2) {
-            if (variantContext.getType() == Type.SYMBOLIC)
-                set2SV.add(variantContext);
-            else
-                set2SNV.add(variantContext);
-        }
+        final int[] pos1 = set1.positions;
+        final int[] pos2 = set2.positions;
+        final int n1 = pos1.length;
+        final int n2 = pos2.length;
+        // first set2 entry not before the current set1 position
+        int lower = 0;
+        // last intersecting set2 entry, it may intersect again
         int offset = 0;
-        boolean intersect;
-        int index = 0;
-        for (VariantContext vc1 : set1) {
-            if (vc1.getType() == Type.SYMBOLIC) {
-                set1SV.add(vc1);
+        for (int i = 0; i < n1; i++) {
+            if (set1.symbolic[i])
                 continue;
-            }
-            set1SNV.add(vc1);
-            intersect = false;
-            VariantContext vc2;
-            for (int i = offset; i < set2.size(); i++) {
-                vc2 = set2.get(i);
-                if (vc2.getType() == Type.SYMBOLIC)
+            while (lower < n2 && pos2[lower] < pos1[i])
+                lower++;
+            for (int k = Math.max(lower, offset); k < n2 && pos2[k] == pos1[i]; k++) {
+                if (set2.symbolic[k] || set1.keys[i] != set2.keys[k])
                     continue;
-                String contig1 = vc1.getContig().startsWith("chr") ? vc1.getContig() : "chr" + vc1.getContig();
-                String contig2 = vc2.getContig().startsWith("chr") ? vc2.getContig() : "chr" + vc1.getContig();
-                if (contig1.equals(contig2) && vc1.getStart() == vc2.getStart()
-                        && vc1.hasAllele(vc2.getAlleles().get(0))) {
-                    intersectSNV.add(vc1);
-                    intersect = true;
-                    set1IntersectFlag[index] = true;
-                    offset = i;
-                    break;
-                }
-                if (intersect)
-                    break;
-
-                // if (vc1.getStart() > vc2.getStart()) {
-                // break;
-                // }
+                if (set1.keys[i] < 0 && !Arrays.equals(set1.getRefBases(i), set2.getRefBases(k)))
+                    continue;
+                if (!set1.contigs[i].equals(set2.contigs[k]))
+                    continue;
+                intersectSNV.add(set1.variants.get(i));
+                set1IntersectFlag[i] = true;
+                offset = k;
+                break;
             }
-            index++;
         }
-        builder.set1SNVs(set1SNV);
-        builder.set1SVs(set1SV);
-        builder.set2SNVs(set2SNV);
-        builder.set2SVs(set2SV);
+        builder.set1SNVs(set1.snvs);
+        builder.set1SVs(set1.svs);
+        builder.set2SNVs(set2.snvs);
+        builder.set2SVs(set2.svs);
         builder.intersectSNVs(intersectSNV);
-        builder.onlySet1SNVs(set1.size() - set1SV.size() - intersectSNV.size());
-        builder.onlySet2SNVs(set2.size() - set2SV.size() - intersectSNV.size());
+        builder.onlySet1SNVs(set1.size() - set1.svs.size() - intersectSNV.size());
+        builder.onlySet2SNVs(set2.size() - set2.svs.size() - intersectSNV.size());
         builder.set1flagged(set1IntersectFlag);
 
         return builder.build();
     }
 
+    /**
+     * Compares the entries in set1 to the ASDPs of each alternative scaffold and returns the
+     * {@link PairwiseVariantContextIntersect}s in the order of the scaffolds. The intersections are computed as
+     * fork/join tasks if there are at least {@link #FORK_THRESHOLD} scaffolds, the result is identical to calling
+     * {@link #intersectVariantContext(VariantKeyArray, VariantKeyArray)} for each scaffold one after another.
+     * 
+     * @param set1
+     *            naturally sorted variants of the sample in the region
+     * @param scaffolds
+     *            {@link VariantKeyArray}s of the naturally sorted ASDPs per alternative scaffold
+     * @return the intersects, one per scaffold
+     */
+    public static ArrayList<PairwiseVariantContextIntersect> intersectVariantContexts(List<VariantContext> set1,
+            List<VariantKeyArray> scaffolds) {
+        PairwiseVariantContextIntersect[] results = new PairwiseVariantContextIntersect[scaffolds.size()];
+        IntersectTask task = new IntersectTask(VariantKeyArray.of(set1), scaffolds, results, 0, scaffolds.size());
+        if (scaffolds.size() < FORK_THRESHOLD)
+            task.compute();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Fork/join task computing the intersects for a range of scaffolds. Each result is stored at the index of its
+     * scaffold, so the order does not depend on the scheduling.
+     */
+    private static class IntersectTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final VariantKeyArray set1;
+        private final List<VariantKeyArray> scaffolds;
+        private final PairwiseVariantContextIntersect[] results;
+        private final int from;
+        private final int to;
+
+        IntersectTask(VariantKeyArray set1, List<VariantKeyArray> scaffolds,
+                PairwiseVariantContextIntersect[] results, int from, int to) {
+            this.set1 = set1;
+            this.scaffolds = scaffolds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int i = from; i < to; i++)
+                    results[i] = intersectVariantContext(set1, scaffolds.get(i));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new IntersectTask(set1, scaffolds, results, from, mid),
+                    new IntersectTask(set1, scaffolds, results, mid, to));
+        }
+    }
+
     /**
      * Iterate over the list of alternative Scaffolds and check if there are some with a high probability to be present.
      * 
@@ -103,6 +161,21 @@ public class VariantContextUtil {
      */
     public static ArrayList<Integer> getMostProbableAlternativeScaffolds(
             ArrayList<PairwiseVariantContextIntersect> intersectList) {
+        return getMostProbableAlternativeScaffolds(intersectList, 0);
+    }
+
+    /**
+     * Iterate over the list of alternative Scaffolds and check if there are some with a high probability to be present
+     * in the sample with the given index, i.e. the zygosity is taken from the genotype of this sample.
+     * 
+     * @param intersectList
+     *            the intersects of the sample variants with each alternative scaffold, sorted in place
+     * @param sample
+     *            index of the sample genotype
+     * @return indices of the most probable scaffolds in the sorted list, the same index twice if homozygous
+     */
+    public static ArrayList<Integer> getMostProbableAlternativeScaffolds(
+            ArrayList<PairwiseVariantContextIntersect> intersectList, int sample) {
 
         ArrayList<Integer> result = new ArrayList<>();
         // Integer scaffoldA = null;
@@ -124,7 +197,7 @@ public class VariantContextUtil {
                     if (vc.getAlternateAlleles().size() > 1)
                         continue;
                     else {
-                        if (vc.getGenotype(0).isHom())
+                        if (vc.getGenotype(sample).isHom())
                             homo++;
                     }
                 }
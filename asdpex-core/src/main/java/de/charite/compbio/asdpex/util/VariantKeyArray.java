@@ -0,0 +1,236 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.charite.compbio.asdpex.data.AsdpStore;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContext.Type;
+
+/**
+ * Primitive view of a sorted {@link VariantContext} list used by the intersection kernel in
+ * {@link VariantContextUtil}. Per variant the start position and a packed key of the reference allele are extracted
+ * once, either from the {@link VariantContext}s or directly from the columns of an {@link AsdpStore}, so the kernel
+ * does not touch the {@link VariantContext} objects except for the rare cases in which the key is ambiguous.<br>
+ * The reference allele is packed with 2 bits per base and its length into a <code>long</code> if it consists of at
+ * most {@link #MAX_PACKED_BASES} upper case A, C, G, T bases:
+ *
+ * <pre>
+ * key = length &lt;&lt; 2n | code(base 1) &lt;&lt; 2(n-1) | ... | code(base n)   with A=0, C=1, G=2, T=3
+ * </pre>
+ *
+ * Such a key is non negative and identifies the allele, so equal keys mean equal alleles. All other alleles (longer
+ * ones, 'N' and other IUPAC codes, lower case bases) get a negative key, the sign bit set and the hash code of the
+ * bases in the lower 32 bits. Equal negative keys may stem from different alleles, so the raw bases of the reference
+ * alleles (see {@link #getRefBases(int)}) are compared with {@link Arrays#equals(byte[], byte[])} in this case. A
+ * negative key never equals a non negative one.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public final class VariantKeyArray {
+    /** maximal number of bases packed into a key */
+    public static final int MAX_PACKED_BASES = 28;
+
+    /** the variants */
+    final List<VariantContext> variants;
+    /** start position per variant */
+    final int[] positions;
+    /** packed reference allele per variant */
+    final long[] keys;
+    /** symbolic (SV) variants are not compared */
+    final boolean[] symbolic;
+    /** contig names normalized to the 'chr' prefix */
+    final String[] contigs;
+    /** the non symbolic variants in input order */
+    final List<VariantContext> snvs;
+    /** the symbolic variants in input order */
+    final List<VariantContext> svs;
+    /** the backing {@link AsdpStore}, <code>null</code> if built from {@link VariantContext}s */
+    private final AsdpStore store;
+    /** first row in the {@link AsdpStore} */
+    private final int from;
+
+    private VariantKeyArray(List<VariantContext> variants) {
+        this.variants = variants;
+        this.store = null;
+        this.from = 0;
+        int n = variants.size();
+        this.positions = new int[n];
+        this.keys = new long[n];
+        this.symbolic = new boolean[n];
+        this.contigs = new String[n];
+        ArrayList<VariantContext> snvs = new ArrayList<>();
+        ArrayList<VariantContext> svs = new ArrayList<>();
+        String lastContig = null;
+        String lastNormalized = null;
+        for (int i = 0; i < n; i++) {
+            VariantContext vc = variants.get(i);
+            positions[i] = vc.getStart();
+            if (!vc.getContig().equals(lastContig)) {
+                lastContig = vc.getContig();
+                lastNormalized = lastContig.startsWith("chr") ? lastContig : "chr" + lastContig;
+            }
+            contigs[i] = lastNormalized;
+            if (vc.getType() == Type.SYMBOLIC) {
+                symbolic[i] = true;
+                svs.add(vc);
+            } else {
+                keys[i] = pack(vc.getReference().getBases());
+                snvs.add(vc);
+            }
+        }
+        this.snvs = snvs;
+        this.svs = svs;
+    }
+
+    private VariantKeyArray(AsdpStore store, int altLocusId) {
+        this.store = store;
+        this.from = store.getFrom(altLocusId);
+        int n = store.getTo(altLocusId) - from;
+        this.variants = store.getAsdps(altLocusId);
+        this.positions = new int[n];
+        this.keys = new long[n];
+        this.symbolic = new boolean[n];
+        this.contigs = new String[n];
+        int[] snvIdx = new int[n];
+        int[] svIdx = new int[n];
+        int snvCount = 0;
+        int svCount = 0;
+        String lastContig = null;
+        String lastNormalized = null;
+        for (int i = 0; i < n; i++) {
+            int row = from + i;
+            positions[i] = store.getPosition(row);
+            if (!store.getContig(row).equals(lastContig)) {
+                lastContig = store.getContig(row);
+                lastNormalized = lastContig.startsWith("chr") ? lastContig : "chr" + lastContig;
+            }
+            contigs[i] = lastNormalized;
+            if (store.isSymbolic(row)) {
+                symbolic[i] = true;
+                svIdx[svCount++] = i;
+            } else {
+                keys[i] = pack(store.getRef(row));
+                snvIdx[snvCount++] = i;
+            }
+        }
+        this.snvs = new SubList(variants, Arrays.copyOf(snvIdx, snvCount));
+        this.svs = new SubList(variants, Arrays.copyOf(svIdx, svCount));
+    }
+
+    /**
+     * Extract the positions and keys of the variants.
+     *
+     * @param variants
+     *            variants sorted by start position
+     * @return the {@link VariantKeyArray}
+     */
+    public static VariantKeyArray of(List<VariantContext> variants) {
+        return new VariantKeyArray(variants);
+    }
+
+    /**
+     * Extract the positions and keys of the ASDPs of an alternate locus directly from the columns of the store. The
+     * {@link VariantContext}s are only materialized on access.
+     *
+     * @param store
+     *            the {@link AsdpStore}
+     * @param altLocus
+     *            fasta identifier of the alternate locus
+     * @return the {@link VariantKeyArray}, empty if the locus is not in the store
+     */
+    public static VariantKeyArray of(AsdpStore store, String altLocus) {
+        int id = store.getAltLocusId(altLocus);
+        if (id < 0)
+            return new VariantKeyArray(new ArrayList<VariantContext>());
+        return new VariantKeyArray(store, id);
+    }
+
+    /**
+     * @return number of variants
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * @param i
+     *            index of the variant
+     * @return the bases of the reference allele
+     */
+    byte[] getRefBases(int i) {
+        if (store != null)
+            return store.getRef(from + i);
+        return variants.get(i).getReference().getBases();
+    }
+
+    /**
+     * Pack the bases of the reference allele into a key. Exact keys are non negative, hash based keys negative.
+     *
+     * @param bases
+     *            bases of the reference allele
+     * @return the key
+     */
+    static long pack(byte[] bases) {
+        if (bases.length <= MAX_PACKED_BASES) {
+            long key = bases.length;
+            boolean exact = true;
+            for (byte b : bases) {
+                int code = code(b);
+                if (code < 0) {
+                    exact = false;
+                    break;
+                }
+                key = (key << 2) | code;
+            }
+            if (exact)
+                return key;
+        }
+        return Long.MIN_VALUE | (Arrays.hashCode(bases) & 0xffffffffL);
+    }
+
+    private static int code(byte base) {
+        switch (base) {
+        case 'A':
+            return 0;
+        case 'C':
+            return 1;
+        case 'G':
+            return 2;
+        case 'T':
+            return 3;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Read-only view of the selected entries of a list.
+     */
+    private static class SubList extends AbstractList<VariantContext> {
+        private final List<VariantContext> list;
+        private final int[] indices;
+
+        SubList(List<VariantContext> list, int[] indices) {
+            this.list = list;
+            this.indices = indices;
+        }
+
+        @Override
+        public VariantContext get(int index) {
+            return list.get(indices[index]);
+        }
+
+        @Override
+        public int size() {
+            return indices.length;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.charite.compbio.asdpex.reference.MappedReference;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Tests the liftover of variants with a forward and a reverse aligned alternate locus on a small synthetic reference:
+ *
+ * <pre>
+ * chr1_FWD_alt  1-40 -> chr1:51-90, chr1:91-100 deleted, 41-70 -> chr1:101-130
+ * chr1_REV_alt  1-50 -> reverse complement of chr1:141-190
+ * </pre>
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class LiftoverIndexTest {
+    private static final String PRIMARY = "chr1";
+    private static final String FWD = "chr1_FWD_alt";
+    private static final String REV = "chr1_REV_alt";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String chr1;
+    private String fwd;
+    private String rev;
+    private MappedReference reference;
+    private LiftoverIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            sb.append("ACGT".charAt(random.nextInt(4)));
+        chr1 = sb.toString();
+        fwd = primary(51, 90) + primary(101, 130);
+        rev = SequenceUtil.reverseComplement(primary(141, 190));
+        reference = new MappedReference(writeFasta(new String[] { PRIMARY, FWD, REV }, chr1, fwd, rev));
+
+        NCBIgffAlignment forward = new NCBIgffAlignment(PRIMARY, FWD, 51, 130, true, 1, 70, true,
+                new PackedAlignmentElements.Builder(50, 0).add(NCBIgffAlignmentElementType.MATCH, 40)
+                        .add(NCBIgffAlignmentElementType.DELETION, 10).add(NCBIgffAlignmentElementType.MATCH, 30)
+                        .build());
+        NCBIgffAlignment reverse = new NCBIgffAlignment(PRIMARY, REV, 141, 190, true, 1, 50, false,
+                new PackedAlignmentElements.Builder(140, 0).add(NCBIgffAlignmentElementType.MATCH, 50).build());
+        index = new LiftoverIndex.Builder().add(FWD, PRIMARY, forward).add(REV, PRIMARY, reverse).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reference.close();
+    }
+
+    /** 1-based bases of chr1 (incl.) */
+    private String primary(int start, int end) {
+        return chr1.substring(start - 1, end);
+    }
+
+    private File writeFasta(String[] names, String... sequences) throws IOException {
+        File fasta = folder.newFile("ref.fa");
+        PrintWriter fa = new PrintWriter(fasta);
+        PrintWriter fai = new PrintWriter(new File(fasta.getPath() + ".fai"));
+        long offset = 0;
+        for (int i = 0; i < names.length; i++) {
+            fa.print(">" + names[i] + "\n" + sequences[i] + "\n");
+            offset += names[i].length() + 2;
+            fai.print(names[i] + "\t" + sequences[i].length() + "\t" + offset + "\t" + sequences[i].length() + "\t"
+                    + (sequences[i].length() + 1) + "\n");
+            offset += sequences[i].length() + 1;
+        }
+        fa.close();
+        fai.close();
+        return fasta;
+    }
+
+    private static VariantContext variant(String contig, int pos, String ref, String alt) {
+        return new VariantContextBuilder("test", contig, pos, pos + ref.length() - 1,
+                Arrays.asList(Allele.create(ref, true), Allele.create(alt))).make();
+    }
+
+    /** an SNV with another base than the reference */
+    private static VariantContext snv(String contig, int pos, char ref) {
+        return variant(contig, pos, String.valueOf(ref), ref == 'A' ? "C" : "A");
+    }
+
+    private Result lift(LiftoverIndex.Direction direction, VariantContext... variants) {
+        Result result = new Result();
+        Iterator<VariantContext> iterator = Arrays.asList(variants).iterator();
+        result.n = index.lift(iterator, direction, reference, result);
+        return result;
+    }
+
+    @Test
+    public void testForwardSNV() {
+        Result result = lift(LiftoverIndex.Direction.TO_PRIMARY, snv(FWD, 10, fwd.charAt(9)),
+                snv(FWD, 45, fwd.charAt(44)));
+        assertEquals(2, result.n);
+        assertEquals(0, result.rejected.size());
+        VariantContext first = result.lifted.get(0);
+        assertEquals(PRIMARY, first.getContig());
+        assertEquals(60, first.getStart());
+        assertEquals(primary(60, 60), first.getReference().getBaseString());
+        // behind the deletion of chr1:91-100
+        assertEquals(105, result.lifted.get(1).getStart());
+        assertEquals(primary(105, 105), result.lifted.get(1).getReference().getBaseString());
+    }
+
+    @Test
+    public void testForwardSNVToAlt() {
+        Result result = lift(LiftoverIndex.Direction.TO_ALT, snv(PRIMARY, 60, chr1.charAt(59)));
+        assertEquals(1, result.n);
+        VariantContext vc = result.lifted.get(0);
+        assertEquals(FWD, vc.getContig());
+        assertEquals(10, vc.getStart());
+        assertEquals(fwd.substring(9, 10), vc.getReference().getBaseString());
+    }
+
+    @Test
+    public void testReverseSNV() {
+        VariantContext vc = snv(REV, 5, rev.charAt(4));
+        Result result = lift(LiftoverIndex.Direction.TO_PRIMARY, vc);
+        assertEquals(1, result.n);
+        VariantContext lifted = result.lifted.get(0);
+        assertEquals(PRIMARY, lifted.getContig());
+        assertEquals(186, lifted.getStart());
+        assertEquals(primary(186, 186), lifted.getReference().getBaseString());
+        assertEquals(SequenceUtil.reverseComplement(vc.getAlternateAllele(0).getBaseString()),
+                lifted.getAlternateAllele(0).getBaseString());
+
+        result = lift(LiftoverIndex.Direction.TO_ALT, lifted);
+        assertEquals(1, result.n);
+        assertEquals(REV, result.lifted.get(0).getContig());
+        assertEquals(5, result.lifted.get(0).getStart());
+        assertEquals(vc.getReference(), result.lifted.get(0).getReference());
+    }
+
+    @Test
+    public void testGap() {
+        // MNV across the end of the first match block
+        Result result = lift(LiftoverIndex.Direction.TO_PRIMARY, variant(FWD, 40, fwd.substring(39, 41), "TT"));
+        assertEquals(0, result.n);
+        assertEquals(Arrays.asList("overlaps a gap of the alignment"), result.rejected);
+        // deleted on the alternate locus
+        result = lift(LiftoverIndex.Direction.TO_ALT, snv(PRIMARY, 95, chr1.charAt(94)));
+        assertEquals(0, result.n);
+        assertEquals(Arrays.asList("overlaps a gap of the alignment"), result.rejected);
+    }
+
+    @Test
+    public void testReferenceMismatch() {
+        char base = fwd.charAt(19);
+        char other = base == 'G' ? 'T' : 'G';
+        Result result = lift(LiftoverIndex.Direction.TO_PRIMARY, snv(FWD, 20, other));
+        assertEquals(0, result.n);
+        assertEquals(Arrays.asList("reference allele does not match the target assembly"), result.rejected);
+
+        base = rev.charAt(29);
+        other = base == 'G' ? 'T' : 'G';
+        result = lift(LiftoverIndex.Direction.TO_PRIMARY, snv(REV, 30, other));
+        assertEquals(0, result.n);
+        assertEquals(Arrays.asList("reference allele does not match the target assembly"), result.rejected);
+    }
+
+    @Test
+    public void testNotOnAltLocus() {
+        Result result = lift(LiftoverIndex.Direction.TO_PRIMARY, snv(PRIMARY, 10, 'N'));
+        assertEquals(1, result.n);
+        assertEquals(10, result.lifted.get(0).getStart());
+        result = lift(LiftoverIndex.Direction.TO_ALT, snv(PRIMARY, 10, chr1.charAt(9)));
+        assertEquals(0, result.n);
+        assertTrue(result.rejected.get(0).startsWith("not covered"));
+    }
+
+    private static class Result implements LiftoverIndex.Sink {
+        final List<VariantContext> lifted = new ArrayList<>();
+        final List<String> rejected = new ArrayList<>();
+        int n;
+
+        @Override
+        public void lifted(VariantContext vc) {
+            lifted.add(vc);
+        }
+
+        @Override
+        public void rejected(VariantContext vc, String reason) {
+            rejected.add(reason);
+        }
+    }
+
+}
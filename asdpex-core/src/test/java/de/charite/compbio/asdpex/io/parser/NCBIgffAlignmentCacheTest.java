@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignment;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
+
+/**
+ * Tests the {@link NCBIgffAlignmentCache}: the round trip through the cache file, the validation of the entries by
+ * modification time, length and SHA-1 hash, the re-parsing of changed GFF files and the atomic rewrite of the cache
+ * file on close.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class NCBIgffAlignmentCacheTest {
+    private static final long TIME = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File alignments;
+    private File first;
+    private File second;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        alignments = folder.newFolder("alignments");
+        first = new File(alignments, "NT_000001.1_NC_000001.11.gff");
+        second = new File(alignments, "NT_000002.1_NC_000002.12.gff");
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M100 D10 M200");
+        writeGff(second, "NC_000002.12", "NT_000002.1", "M300 I20 M50");
+        cacheFile = new File(alignments, NCBIgffAlignmentCache.CACHE_FILE);
+    }
+
+    /** a GFF file with a single alignment, the length of the file only depends on the length of the gaps */
+    private static void writeGff(File gff, String refId, String altId, String gap) throws IOException {
+        PrintWriter out = new PrintWriter(gff);
+        out.print("##gff-version 3\n" + refId + "\tRefSeq\tmatch\t1001\t1310\t.\t+\t.\tID=aln0;Target=" + altId
+                + " 1 320 +;Gap=" + gap + "\n");
+        out.close();
+        gff.setLastModified(TIME);
+    }
+
+    /** the alignments with the packed elements as text */
+    private static List<String> describe(ImmutableList<NCBIgffAlignment> alignments) {
+        ArrayList<String> result = new ArrayList<>();
+        for (NCBIgffAlignment alignment : alignments) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(alignment.getRefId()).append(' ').append(alignment.getAltId()).append(' ')
+                    .append(alignment.getRefStart()).append('-').append(alignment.getRefStop()).append(' ')
+                    .append(alignment.getAltStart()).append('-').append(alignment.getAltStop()).append(' ')
+                    .append(alignment.isRefStrand()).append(alignment.isAltStrand());
+            PackedAlignmentElements elements = alignment.getPackedElements();
+            for (int i = 0; i < elements.size(); i++)
+                sb.append(' ').append(elements.getType(i)).append(elements.getLength(i)).append('@')
+                        .append(elements.getRefStart(i)).append(',').append(elements.getAltStart(i));
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static List<String> parse(File gff) {
+        return describe(new NCBIgffAlignmentParser(gff).parse());
+    }
+
+    /** cache both files */
+    private void fillCache() {
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(alignments);
+        cache.get(first);
+        cache.get(second);
+        cache.close();
+        assertTrue(cacheFile.exists());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<String> expected = parse(first);
+        assertEquals(Arrays.asList(
+                "NC_000001.11 NT_000001.1 1001-1310 1-320 truetrue MATCH100@0,0 DELETION10@100,100 MATCH200@110,100"),
+                expected);
+        fillCache();
+        assertFalse(new File(cacheFile.getPath() + ".part").exists());
+
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(alignments);
+        assertEquals(expected, describe(cache.get(first)));
+        assertEquals(parse(second), describe(cache.get(second)));
+        // nothing changed, the cache file is not rewritten
+        long modified = cacheFile.lastModified();
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+        cache.close();
+        assertEquals(modified, cacheFile.lastModified());
+        assertArrayEquals(content, Files.readAllBytes(cacheFile.toPath()));
+    }
+
+    @Test
+    public void testSameTimeAndLength() throws IOException {
+        List<String> cached = parse(first);
+        fillCache();
+        // a change keeping the modification time and the length is not noticed
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M200 D10 M100");
+        assertEquals(cached, describe(new NCBIgffAlignmentCache(alignments).get(first)));
+    }
+
+    @Test
+    public void testLengthChanged() throws IOException {
+        fillCache();
+        // the modification time is the same, but the length changed
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M100 D10 M190 I10 M10");
+        List<String> expected = parse(first);
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(alignments);
+        assertEquals(expected, describe(cache.get(first)));
+        cache.close();
+        // the cache file was rewritten with the parsed file, i.e. a change of the same length is not noticed
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M100 D10 M190 I10 M20");
+        cache = new NCBIgffAlignmentCache(alignments);
+        assertEquals(expected, describe(cache.get(first)));
+        // the other entry is kept
+        assertEquals(parse(second), describe(cache.get(second)));
+    }
+
+    @Test
+    public void testTouched() throws IOException {
+        List<String> expected = parse(first);
+        fillCache();
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+
+        // same content with a new modification time, the SHA-1 hash is unchanged
+        first.setLastModified(TIME + 60000);
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(alignments);
+        assertEquals(expected, describe(cache.get(first)));
+        cache.close();
+        // the new modification time is stored
+        assertFalse(Arrays.equals(content, Files.readAllBytes(cacheFile.toPath())));
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M200 D10 M100");
+        first.setLastModified(TIME + 60000);
+        assertEquals(expected, describe(new NCBIgffAlignmentCache(alignments).get(first)));
+    }
+
+    @Test
+    public void testModifiedSameLength() throws IOException {
+        fillCache();
+        // new content of the same length and a new modification time, the SHA-1 hash differs
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M200 D10 M100");
+        first.setLastModified(TIME + 60000);
+        List<String> expected = parse(first);
+        assertEquals(Arrays.asList(
+                "NC_000001.11 NT_000001.1 1001-1310 1-320 truetrue MATCH200@0,0 DELETION10@200,200 MATCH100@210,200"),
+                expected);
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(alignments);
+        assertEquals(expected, describe(cache.get(first)));
+        cache.close();
+        assertEquals(expected, describe(new NCBIgffAlignmentCache(alignments).get(first)));
+    }
+
+    @Test
+    public void testAtomicRewrite() throws IOException {
+        List<String> expected = parse(second);
+        fillCache();
+        // the first cache maps the cache file, which is replaced by the second one
+        NCBIgffAlignmentCache mapped = new NCBIgffAlignmentCache(alignments);
+        writeGff(first, "NC_000001.11", "NT_000001.1", "M100 D10 M190 I10 M10");
+        NCBIgffAlignmentCache other = new NCBIgffAlignmentCache(alignments);
+        other.get(first);
+        other.close();
+        assertFalse(new File(cacheFile.getPath() + ".part").exists());
+        // the entry is still decoded from the former cache file
+        assertEquals(expected, describe(mapped.get(second)));
+        mapped.close();
+        assertEquals(expected, describe(new NCBIgffAlignmentCache(alignments).get(second)));
+    }
+
+    @Test
+    public void testCorruptCache() throws IOException {
+        List<String> expected = parse(first);
+        Files.write(cacheFile.toPath(), "no cache".getBytes("UTF-8"));
+        NCBIgffAlignmentCache cache = new NCBIgffAlignmentCache(alignments);
+        assertEquals(expected, describe(cache.get(first)));
+        cache.close();
+        assertEquals(expected, describe(new NCBIgffAlignmentCache(alignments).get(first)));
+        assertTrue(cacheFile.length() > "no cache".length());
+    }
+
+}
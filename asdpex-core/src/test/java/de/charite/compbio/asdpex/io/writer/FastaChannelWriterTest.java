@@ -0,0 +1,228 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+/**
+ * Round trip tests of the {@link FastaChannelWriter}: the records of plain and BGZF fastA files, also appended by a
+ * second writer, are read back through their <code>.fai</code> index with the htsjdk
+ * {@link IndexedFastaSequenceFile}. The BGZF files are decompressed for this, and the <code>.gzi</code> index is
+ * checked by seeking to random positions of the compressed file.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class FastaChannelWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+
+    private byte[] randomBases(int length) {
+        byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++)
+            bases[i] = (byte) "ACGTN".charAt(random.nextInt(5));
+        return bases;
+    }
+
+    /** records with lengths around the line length and some spanning several BGZF blocks */
+    private List<byte[]> randomRecords(int lineLength) {
+        ArrayList<byte[]> records = new ArrayList<>();
+        for (int length : new int[] { 1, lineLength - 1, lineLength, lineLength + 1, 3 * lineLength, 150000,
+                70001 })
+            records.add(randomBases(length));
+        return records;
+    }
+
+    private static void write(File file, int lineLength, boolean bgzf, boolean append, String prefix,
+            List<byte[]> records) throws IOException {
+        FastaChannelWriter writer = new FastaChannelWriter(file, lineLength, bgzf, append);
+        try {
+            for (int i = 0; i < records.size(); i++)
+                writer.add(prefix + i, records.get(i));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /** read all records back through the <code>.fai</code> index */
+    private static void assertRecords(File fasta, File fai, List<String> names, List<byte[]> records)
+            throws IOException {
+        if (!fai.equals(new File(fasta.getPath() + ".fai")))
+            Files.copy(fai.toPath(), new File(fasta.getPath() + ".fai").toPath());
+        IndexedFastaSequenceFile reader = new IndexedFastaSequenceFile(fasta);
+        try {
+            // all records in file order
+            for (int i = 0; i < names.size(); i++) {
+                ReferenceSequence sequence = reader.nextSequence();
+                assertEquals(names.get(i), sequence.getName());
+                assertArrayEquals(names.get(i), records.get(i), sequence.getBases());
+            }
+            assertNull(reader.nextSequence());
+            // random access through the index
+            for (int i = names.size() - 1; i >= 0; i--) {
+                byte[] bases = records.get(i);
+                assertArrayEquals(names.get(i), bases, reader.getSequence(names.get(i)).getBases());
+                int start = 1 + bases.length / 3;
+                int stop = Math.max(start, bases.length - 1);
+                assertArrayEquals(names.get(i), Arrays.copyOfRange(bases, start - 1, stop),
+                        reader.getSubsequenceAt(names.get(i), start, stop).getBases());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static byte[] decompress(File file) throws IOException {
+        BlockCompressedInputStream in = new BlockCompressedInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value |= (long) in.read() << (8 * i);
+        return value;
+    }
+
+    /** seek through the <code>.gzi</code> index to random positions of the uncompressed file */
+    private void assertGzi(File file, byte[] uncompressed) throws IOException {
+        DataInputStream gzi = new DataInputStream(new FileInputStream(file.getPath() + ".gzi"));
+        long n = readLong(gzi);
+        long[] compressed = new long[(int) n + 1];
+        long[] offsets = new long[(int) n + 1];
+        for (int i = 1; i <= n; i++) {
+            compressed[i] = readLong(gzi);
+            offsets[i] = readLong(gzi);
+        }
+        assertEquals(-1, gzi.read());
+        gzi.close();
+        assertTrue("no blocks indexed", n > 1);
+
+        BlockCompressedInputStream in = new BlockCompressedInputStream(file);
+        try {
+            for (int k = 0; k < 500; k++) {
+                int pos = k < offsets.length ? (int) offsets[k] : random.nextInt(uncompressed.length);
+                int block = 0;
+                while (block + 1 < offsets.length && offsets[block + 1] <= pos)
+                    block++;
+                assertTrue(pos - offsets[block] < 1 << 16);
+                in.seek(compressed[block] << 16 | (pos - offsets[block]));
+                assertEquals("position " + pos, uncompressed[pos], (byte) in.read());
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> names(String prefix, int n) {
+        ArrayList<String> names = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            names.add(prefix + i);
+        return names;
+    }
+
+    @Test
+    public void testPlain() throws IOException {
+        File file = new File(folder.getRoot(), "regions.fa");
+        List<byte[]> records = randomRecords(60);
+        write(file, 60, false, false, "chr1_KI270706v1_alt_", records);
+        assertRecords(file, new File(file.getPath() + ".fai"), names("chr1_KI270706v1_alt_", records.size()),
+                records);
+    }
+
+    @Test
+    public void testPlainAppend() throws IOException {
+        File file = new File(folder.getRoot(), "regions.fa");
+        List<byte[]> first = randomRecords(50);
+        List<byte[]> second = randomRecords(50);
+        write(file, 50, false, false, "a", first);
+        write(file, 50, false, true, "b", second);
+        List<String> names = names("a", first.size());
+        names.addAll(names("b", second.size()));
+        List<byte[]> records = new ArrayList<>(first);
+        records.addAll(second);
+        assertRecords(file, new File(file.getPath() + ".fai"), names, records);
+    }
+
+    @Test
+    public void testBgzf() throws IOException {
+        File file = new File(folder.getRoot(), "regions.fa.gz");
+        List<byte[]> records = randomRecords(60);
+        write(file, 60, true, false, "region", records);
+        byte[] uncompressed = decompress(file);
+        File plain = new File(folder.getRoot(), "regions.fa");
+        Files.write(plain.toPath(), uncompressed);
+        assertRecords(plain, new File(file.getPath() + ".fai"), names("region", records.size()), records);
+        assertGzi(file, uncompressed);
+    }
+
+    @Test
+    public void testBgzfAppend() throws IOException {
+        File file = new File(folder.getRoot(), "regions.fa.gz");
+        List<byte[]> first = randomRecords(60);
+        List<byte[]> second = randomRecords(60);
+        write(file, 60, true, false, "a", first);
+        write(file, 60, true, true, "b", second);
+        byte[] uncompressed = decompress(file);
+        File plain = new File(folder.getRoot(), "regions.fa");
+        Files.write(plain.toPath(), uncompressed);
+        List<String> names = names("a", first.size());
+        names.addAll(names("b", second.size()));
+        List<byte[]> records = new ArrayList<>(first);
+        records.addAll(second);
+        assertRecords(plain, new File(file.getPath() + ".fai"), names, records);
+        assertGzi(file, uncompressed);
+    }
+
+    @Test
+    public void testBgzfAppendWithoutIndex() throws IOException {
+        File file = new File(folder.getRoot(), "regions.fa.gz");
+        write(file, 60, true, false, "a", randomRecords(60));
+        new File(file.getPath() + ".gzi").delete();
+        try {
+            new FastaChannelWriter(file, 60, true, true);
+            fail("appended without the .gzi index");
+        } catch (IOException e) {
+            assertEquals("Can not append to the BGZF file without the index: " + file.getPath() + ".gzi",
+                    e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.io.writer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElement;
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
+
+/**
+ * Tests the seeds and the text output of the {@link SeedFileWriter} against the former
+ * <code>String.format</code> based output of the matches, and the round trip through the binary seed files.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class SeedFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** random alignment elements, starting with a match */
+    private static PackedAlignmentElements randomElements(Random random, int size) {
+        PackedAlignmentElements.Builder builder = new PackedAlignmentElements.Builder(random.nextInt(1000),
+                random.nextInt(1000));
+        builder.add(NCBIgffAlignmentElementType.MATCH, 1 + random.nextInt(5000));
+        NCBIgffAlignmentElementType[] gaps = new NCBIgffAlignmentElementType[] { NCBIgffAlignmentElementType.INSERTION,
+                NCBIgffAlignmentElementType.DELETION };
+        for (int i = 1; i < size; i++) {
+            NCBIgffAlignmentElementType type = i % 2 == 0 ? NCBIgffAlignmentElementType.MATCH
+                    : gaps[random.nextInt(2)];
+            builder.add(type, 1 + random.nextInt(type == NCBIgffAlignmentElementType.MATCH ? 5000 : 50));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The former output of the matches, as it was written by <code>create-seed</code> and <code>align</code>.
+     */
+    private static void writeMatches(Writer out, ImmutableList<NCBIgffAlignmentElement> elements, int offset,
+            int tail) throws IOException {
+        boolean first = true;
+        int c = 0;
+        for (NCBIgffAlignmentElement match : elements) {
+            if (match.getType() != NCBIgffAlignmentElementType.MATCH)
+                continue;
+            c++;
+            // extend the first seed to the begin of the region
+            if (first) {
+                out.write(String.format("%d\t%d\t%d\n", 0, 0, match.getLength() + offset));
+                first = false;
+                continue;
+            }
+            if (c == elements.size()) {
+                out.write(String.format("%d\t%d\t%d\n", match.getRef_start() + offset, match.getAlt_start() + offset,
+                        match.getLength() + tail));
+                continue;
+            }
+            out.write(String.format("%d\t%d\t%d\n", match.getRef_start() + offset, match.getAlt_start() + offset,
+                    match.getLength()));
+        }
+    }
+
+    private static void assertSameText(PackedAlignmentElements elements, int offset, int tail) throws IOException {
+        StringWriter expected = new StringWriter();
+        writeMatches(expected, elements.toList(), offset, tail);
+        StringWriter actual = new StringWriter();
+        SeedFileWriter.writeText(actual, SeedFileWriter.getSeeds(elements, offset, tail));
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testTextAsBefore() throws IOException {
+        Random random = new Random(42);
+        for (int k = 0; k < 500; k++)
+            assertSameText(randomElements(random, 1 + random.nextInt(40)), random.nextInt(100000),
+                    random.nextInt(100000));
+    }
+
+    @Test
+    public void testTextWithoutGaps() throws IOException {
+        // a single match is extended by the offset only
+        PackedAlignmentElements single = new PackedAlignmentElements.Builder(10, 0)
+                .add(NCBIgffAlignmentElementType.MATCH, 500).build();
+        assertSameText(single, 100, 200);
+        StringWriter out = new StringWriter();
+        SeedFileWriter.writeText(out, SeedFileWriter.getSeeds(single, 100, 200));
+        assertEquals("0\t0\t600\n", out.toString());
+        // large values and no matches at all
+        assertSameText(new PackedAlignmentElements.Builder(Integer.MAX_VALUE / 2, 7)
+                .add(NCBIgffAlignmentElementType.MATCH, 1_000_000_000)
+                .add(NCBIgffAlignmentElementType.DELETION, 10).add(NCBIgffAlignmentElementType.MATCH, 3).build(), 0,
+                0);
+        assertSameText(new PackedAlignmentElements.Builder(0, 0).build(), 5, 5);
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        int[] seeds = SeedFileWriter.getSeeds(randomElements(new Random(7), 31), 1234, 56);
+        assertEquals(3 * 16, seeds.length);
+        File file = new File(folder.getRoot(), "chr1_KI270706v1_alt_extended" + SeedFileWriter.BINARY_EXTENSION);
+        SeedFileWriter.writeBinary(file, seeds);
+        assertArrayEquals(seeds, SeedFileWriter.readBinary(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoBinarySeedFile() throws IOException {
+        SeedFileWriter.readBinary(folder.newFile("seeds.tab"));
+    }
+
+}
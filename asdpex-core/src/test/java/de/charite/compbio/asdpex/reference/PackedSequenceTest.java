@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.reference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+ * Tests the {@link PackedSequence} against the plain bases, including runs of 'N' and other IUPAC codes and soft
+ * masked (lower case) bases, and the round trip through a {@link PackedSequenceStore}.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class PackedSequenceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** random bases with runs of 'N', single IUPAC codes and lower case runs */
+    private static byte[] randomBases(Random random, int length) {
+        byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++)
+            bases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        for (int run = 0; run < length / 50; run++) {
+            int start = random.nextInt(length);
+            int end = Math.min(length, start + 1 + random.nextInt(40));
+            switch (random.nextInt(3)) {
+            case 0:
+                Arrays.fill(bases, start, end, (byte) 'N');
+                break;
+            case 1:
+                bases[start] = (byte) "RYKMn".charAt(random.nextInt(5));
+                break;
+            default:
+                for (int i = start; i < end; i++)
+                    bases[i] = (byte) Character.toLowerCase(bases[i]);
+            }
+        }
+        return bases;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testPack() {
+        byte[] bases = bytes("ACGTacgtNNNNRYACGTTTTTTTTTTTTTTTTTTTTTTTTTTTTTGCAnnnA");
+        PackedSequence packed = PackedSequence.pack("seq", bases);
+        assertEquals("seq", packed.getName());
+        assertEquals(bases.length, packed.length());
+        assertEquals(2, packed.getWordCount());
+        assertArrayEquals(bases, packed.toBytes());
+        for (int i = 0; i < bases.length; i++)
+            assertEquals("position " + i, bases[i], packed.byteAt(i));
+        // the exception runs are packed as A
+        assertEquals(0, packed.code(8));
+        assertEquals(3, packed.code(3));
+        assertEquals(3, packed.code(7));
+        // runs of the same byte are merged, but not across different bytes
+        assertEquals(4, packed.getExceptionStarts().length);
+        assertArrayEquals(new int[] { 8, 12, 13, 49 }, packed.getExceptionStarts());
+        assertArrayEquals(new int[] { 4, 1, 1, 3 }, packed.getExceptionLengths());
+        assertArrayEquals(new int[] { 4 }, packed.getMaskStarts());
+        assertArrayEquals(new int[] { 4 }, packed.getMaskLengths());
+    }
+
+    @Test
+    public void testPackRange() {
+        byte[] bases = bytes("NNACGTNN");
+        assertArrayEquals(bytes("ACGTN"), PackedSequence.pack("seq", bases, 2, 5).toBytes());
+        assertEquals(0, PackedSequence.pack("empty", new byte[0]).toBytes().length);
+    }
+
+    @Test
+    public void testCopyTo() {
+        Random random = new Random(42);
+        byte[] bases = randomBases(random, 1000);
+        PackedSequence packed = PackedSequence.pack("seq", bases);
+        for (int k = 0; k < 200; k++) {
+            int from = random.nextInt(bases.length);
+            int length = random.nextInt(bases.length - from + 1);
+            byte[] dest = new byte[length + 3];
+            packed.copyTo(from, length, dest, 3);
+            assertArrayEquals(Arrays.copyOfRange(bases, from, from + length),
+                    Arrays.copyOfRange(dest, 3, 3 + length));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testCopyToOutOfRange() {
+        PackedSequence.pack("seq", bytes("ACGT")).copyTo(2, 3, new byte[3], 0);
+    }
+
+    @Test
+    public void testReverseComplement() {
+        Random random = new Random(7);
+        // lengths around the word boundaries
+        for (int length : new int[] { 1, 31, 32, 33, 63, 64, 65, 500, 1001 }) {
+            byte[] bases = randomBases(random, length);
+            byte[] expected = Arrays.copyOf(bases, length);
+            SequenceUtil.reverseComplement(expected);
+            PackedSequence reversed = PackedSequence.pack("seq", bases).reverseComplement();
+            assertEquals("seq", reversed.getName());
+            assertArrayEquals("length " + length, expected, reversed.toBytes());
+            assertArrayEquals("length " + length, bases, reversed.reverseComplement().toBytes());
+            // the packed words equal those of the packed reverse complement
+            PackedSequence packed = PackedSequence.pack("seq", expected);
+            for (int i = 0; i < packed.getWordCount(); i++)
+                assertEquals(packed.getWords().get(i), reversed.getWords().get(i));
+        }
+    }
+
+    @Test
+    public void testCountMismatches() {
+        Random random = new Random(3);
+        byte[] a = randomBases(random, 700);
+        byte[] b = Arrays.copyOf(a, a.length);
+        for (int k = 0; k < 60; k++) {
+            int i = random.nextInt(b.length);
+            b[i] = (byte) "ACGTNacgtR".charAt(random.nextInt(10));
+        }
+        PackedSequence pa = PackedSequence.pack("a", a);
+        PackedSequence pb = PackedSequence.pack("b", b);
+        for (int k = 0; k < 200; k++) {
+            int length = random.nextInt(300);
+            int from = random.nextInt(a.length - length + 1);
+            int otherFrom = random.nextBoolean() ? from : random.nextInt(b.length - length + 1);
+            assertEquals(countMismatches(a, b, from, otherFrom, length),
+                    pa.countMismatches(pb, from, otherFrom, length));
+        }
+    }
+
+    @Test
+    public void testCountMismatchesExceptions() {
+        PackedSequence a = PackedSequence.pack("a", bytes("ACGTNNNNacgtAAAA"));
+        // case is ignored, 'N' matches only 'N' and not the 'A' it is packed as
+        assertEquals(0, a.countMismatches(PackedSequence.pack("b", bytes("acgtNNNNACGTAAAA")), 0, 0, 16));
+        assertEquals(8, a.countMismatches(PackedSequence.pack("b", bytes("ACGTAAAAacgtNNNN")), 0, 0, 16));
+        assertEquals(1, a.countMismatches(PackedSequence.pack("b", bytes("ACGTNNRNacgtAAAA")), 0, 0, 16));
+    }
+
+    /** the plain comparison, case insensitive */
+    private static int countMismatches(byte[] a, byte[] b, int from, int otherFrom, int length) {
+        int mismatches = 0;
+        for (int i = 0; i < length; i++)
+            if (Character.toUpperCase(a[from + i]) != Character.toUpperCase(b[otherFrom + i]))
+                mismatches++;
+        return mismatches;
+    }
+
+    @Test
+    public void testStoreRoundTrip() throws IOException {
+        Random random = new Random(11);
+        PackedSequence[] sequences = new PackedSequence[] { PackedSequence.pack("chr1", randomBases(random, 1000)),
+                PackedSequence.pack("chr1_KI270706v1_alt", randomBases(random, 33)),
+                PackedSequence.pack("empty", new byte[0]), PackedSequence.pack("NNN", bytes("NNNNNNNNNNNN")) };
+        File file = new File(folder.getRoot(), "sequences.packed");
+        PackedSequenceStore.write(file, Arrays.asList(sequences));
+        assertEquals(false, new File(file.getPath() + ".part").exists());
+
+        PackedSequenceStore store = new PackedSequenceStore(file);
+        assertEquals(Arrays.asList("chr1", "chr1_KI270706v1_alt", "empty", "NNN"),
+                Arrays.asList(store.getNames().toArray()));
+        for (PackedSequence sequence : sequences) {
+            PackedSequence mapped = store.get(sequence.getName());
+            assertEquals(sequence.length(), mapped.length());
+            assertArrayEquals(sequence.toBytes(), mapped.toBytes());
+            assertArrayEquals(sequence.reverseComplement().toBytes(), mapped.reverseComplement().toBytes());
+            assertEquals(0, mapped.countMismatches(sequence, 0, 0, sequence.length()));
+        }
+        assertNull(store.get("chr2"));
+    }
+
+    @Test
+    public void testNoStore() throws IOException {
+        File file = folder.newFile("sequences.packed");
+        Files.write(file.toPath(), bytes("no store file"));
+        try {
+            new PackedSequenceStore(file);
+            fail("no store file accepted");
+        } catch (IOException e) {
+            assertEquals("No packed sequence file: " + file, e.getMessage());
+        }
+    }
+
+}
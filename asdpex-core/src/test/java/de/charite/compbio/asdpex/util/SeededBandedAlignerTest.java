@@ -0,0 +1,294 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+import de.charite.compbio.asdpex.data.NCBIgffAlignmentElementType;
+import de.charite.compbio.asdpex.data.PackedAlignmentElements;
+import de.charite.compbio.asdpex.io.parser.NCBIgffAlignmentParser;
+import de.charite.compbio.asdpex.io.writer.FastaFileWriter;
+import de.charite.compbio.asdpex.io.writer.SeedFileWriter;
+import htsjdk.samtools.reference.FastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+/**
+ * Tests the {@link SeededBandedAligner} on a synthetic block of 5000 bases with known differences:
+ *
+ * <pre>
+ * RP  500  SNV
+ * RP 1000  3 bp deletion
+ * RP 2000  5 bp insertion
+ * RP 3000  100 bp deletion, &lt;DEL&gt;
+ * RP 4000  80 bp insertion, &lt;INS&gt;
+ * </pre>
+ *
+ * The comparison with the SeqAn program <code>regionalign2vcf</code> is skipped unless the path of the program is given
+ * with the system property <code>asdpex.regionalign2vcf</code>. It uses the synthetic block or a real block given with
+ * the properties <code>asdpex.block.ref</code> and <code>asdpex.block.alt</code> (the fastA files of the block written
+ * by the align command) and <code>asdpex.block.gff</code> (the GFF alignment, optionally with the block number
+ * <code>asdpex.block</code>).
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class SeededBandedAlignerTest {
+    private static final String CHROM = "chr1";
+    private static final String REGION = "REGION1";
+    private static final String ALT_LOCUS = "chr1_KI270706v1_alt";
+    private static final int OFFSET = 10000;
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private byte[] ref;
+    private byte[] alt;
+    private byte[] insertion;
+    private byte[] svInsertion;
+    private PackedAlignmentElements elements;
+
+    @Before
+    public void setUp() {
+        ref = randomBases(5000);
+        insertion = randomBases(5);
+        svInsertion = randomBases(80);
+        // the InDels must not be shiftable, otherwise the placement of the gap is ambiguous
+        fixDeletion(1000, 3);
+        fixDeletion(3000, 100);
+        fixInsertion(2000, insertion);
+        fixInsertion(4000, svInsertion);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ref, 0, 500);
+        out.write(ref[500] == 'A' ? 'C' : 'A');
+        out.write(ref, 501, 1000 - 501);
+        out.write(ref, 1003, 2000 - 1003);
+        out.write(insertion, 0, insertion.length);
+        out.write(ref, 2000, 3000 - 2000);
+        out.write(ref, 3100, 4000 - 3100);
+        out.write(svInsertion, 0, svInsertion.length);
+        out.write(ref, 4000, 5000 - 4000);
+        alt = out.toByteArray();
+
+        elements = new PackedAlignmentElements.Builder(0, 0).add(NCBIgffAlignmentElementType.MATCH, 1000)
+                .add(NCBIgffAlignmentElementType.DELETION, 3).add(NCBIgffAlignmentElementType.MATCH, 997)
+                .add(NCBIgffAlignmentElementType.INSERTION, 5).add(NCBIgffAlignmentElementType.MATCH, 1000)
+                .add(NCBIgffAlignmentElementType.DELETION, 100).add(NCBIgffAlignmentElementType.MATCH, 900)
+                .add(NCBIgffAlignmentElementType.INSERTION, 80).add(NCBIgffAlignmentElementType.MATCH, 1000).build();
+    }
+
+    private byte[] randomBases(int length) {
+        byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++)
+            bases[i] = BASES[random.nextInt(4)];
+        return bases;
+    }
+
+    private static byte other(byte base) {
+        return base == 'A' ? (byte) 'C' : (byte) 'A';
+    }
+
+    /** deletion of ref[pos, pos + length) */
+    private void fixDeletion(int pos, int length) {
+        if (ref[pos - 1 + length] == ref[pos - 1])
+            ref[pos - 1 + length] = other(ref[pos - 1]);
+        if (ref[pos + length] == ref[pos])
+            ref[pos + length] = other(ref[pos]);
+    }
+
+    /** insertion in front of ref[pos] */
+    private void fixInsertion(int pos, byte[] bases) {
+        if (bases[bases.length - 1] == ref[pos - 1])
+            bases[bases.length - 1] = other(ref[pos - 1]);
+        if (bases[0] == ref[pos])
+            bases[0] = other(ref[pos]);
+    }
+
+    private static String bases(byte[] bases, int from, int to) {
+        return new String(bases, from, to - from);
+    }
+
+    @Test
+    public void testGetSeeds() {
+        List<int[]> seeds = SeededBandedAligner.getSeeds(elements, ref.length, alt.length);
+        assertEquals(5, seeds.size());
+        // the first seed starts at the begin of the block, the seeds are trimmed by 5%
+        assertArrayEquals(new int[] { 50, 50, 900 }, seeds.get(0));
+        assertArrayEquals(new int[] { 1003 + 49, 1000 + 49, 997 - 98 }, seeds.get(1));
+
+        // matches shorter than SV_MIN after trimming are no seeds
+        PackedAlignmentElements shortMatch = new PackedAlignmentElements.Builder(0, 0)
+                .add(NCBIgffAlignmentElementType.MATCH, 100).add(NCBIgffAlignmentElementType.DELETION, 1)
+                .add(NCBIgffAlignmentElementType.MATCH, 55).build();
+        assertEquals(1, SeededBandedAligner.getSeeds(shortMatch, 156, 155).size());
+    }
+
+    @Test
+    public void testFindDifferences() {
+        ImmutableList<VariantContext> variants = new SeededBandedAligner().findDifferences(ref, alt, elements, CHROM,
+                REGION, ALT_LOCUS, OFFSET);
+        assertEquals(5, variants.size());
+        for (VariantContext vc : variants) {
+            assertEquals(CHROM, vc.getContig());
+            assertEquals(REGION, vc.getAttribute("RE"));
+            assertEquals(ALT_LOCUS, vc.getAttribute("AL"));
+        }
+
+        VariantContext snv = variants.get(0);
+        assertEquals(500, snv.getAttribute("RP"));
+        assertEquals(OFFSET + 501, snv.getStart());
+        assertEquals(bases(ref, 500, 501), snv.getReference().getBaseString());
+        assertEquals(bases(alt, 500, 501), snv.getAlternateAllele(0).getBaseString());
+
+        // InDels are anchored at the preceding base
+        VariantContext deletion = variants.get(1);
+        assertEquals(1000, deletion.getAttribute("RP"));
+        assertEquals(OFFSET + 1000, deletion.getStart());
+        assertEquals(OFFSET + 1003, deletion.getEnd());
+        assertEquals(bases(ref, 999, 1003), deletion.getReference().getBaseString());
+        assertEquals(bases(ref, 999, 1000), deletion.getAlternateAllele(0).getBaseString());
+
+        VariantContext ins = variants.get(2);
+        assertEquals(2000, ins.getAttribute("RP"));
+        assertEquals(OFFSET + 2000, ins.getStart());
+        assertEquals(bases(ref, 1999, 2000), ins.getReference().getBaseString());
+        assertEquals(bases(ref, 1999, 2000) + bases(insertion, 0, 5), ins.getAlternateAllele(0).getBaseString());
+
+        VariantContext svDel = variants.get(3);
+        assertEquals(3000, svDel.getAttribute("RP"));
+        assertEquals(OFFSET + 3000, svDel.getStart());
+        assertEquals(bases(ref, 2999, 3000), svDel.getReference().getBaseString());
+        assertEquals("<DEL>", svDel.getAlternateAllele(0).getDisplayString());
+        assertEquals("DEL", svDel.getAttribute("SVTYPE"));
+        assertEquals(-100, svDel.getAttribute("SVLEN"));
+        assertEquals(OFFSET + 3100, svDel.getAttribute("END"));
+
+        VariantContext svIns = variants.get(4);
+        assertEquals(4000, svIns.getAttribute("RP"));
+        assertEquals(OFFSET + 4000, svIns.getStart());
+        assertEquals(bases(ref, 3999, 4000), svIns.getReference().getBaseString());
+        assertEquals("<INS>", svIns.getAlternateAllele(0).getDisplayString());
+        assertEquals("INS", svIns.getAttribute("SVTYPE"));
+        assertEquals(80, svIns.getAttribute("SVLEN"));
+        assertEquals(OFFSET + 4000, svIns.getAttribute("END"));
+    }
+
+    @Test
+    public void testSeqAnRegression() throws Exception {
+        String program = System.getProperty("asdpex.regionalign2vcf");
+        assumeTrue("SeqAn regionalign2vcf not given", program != null && new File(program).canExecute());
+
+        String refId = REGION;
+        String altId = ALT_LOCUS;
+        PackedAlignmentElements blockElements = elements;
+        if (System.getProperty("asdpex.block.ref") != null) {
+            ReferenceSequence refSeq = readFasta(new File(System.getProperty("asdpex.block.ref")));
+            ReferenceSequence altSeq = readFasta(new File(System.getProperty("asdpex.block.alt")));
+            refId = refSeq.getName();
+            altId = altSeq.getName();
+            ref = refSeq.getBases();
+            alt = altSeq.getBases();
+            int block = Integer.parseInt(System.getProperty("asdpex.block", "1"));
+            blockElements = new NCBIgffAlignmentParser(new File(System.getProperty("asdpex.block.gff"))).parse()
+                    .get(block - 1).getPackedElements();
+        }
+
+        // the inputs as written by the align command
+        File refFile = new File(folder.getRoot(), "ref.fa");
+        File altFile = new File(folder.getRoot(), "alt.fa");
+        File seedFile = new File(folder.getRoot(), "seeds.tab");
+        File vcfFile = new File(folder.getRoot(), "seqan.vcf");
+        writeFasta(refFile, refId, ref);
+        writeFasta(altFile, altId, alt);
+        Writer out = IOUtil.getBufferedFileWriter(seedFile);
+        try {
+            SeedFileWriter.writeText(out, SeedFileWriter.getSeeds(blockElements, 0, 0));
+        } finally {
+            IOUtil.close(out);
+        }
+        Process process = new ProcessBuilder(program, "-R", refFile.getPath(), "-A", altFile.getPath(), "-S",
+                seedFile.getPath(), "-V", vcfFile.getPath(), "-N", new File(folder.getRoot(), "seqan.aln").getPath(),
+                "-o", Integer.toString(OFFSET)).redirectErrorStream(true).start();
+        InputStream log = process.getInputStream();
+        while (log.read() != -1)
+            ;
+        assertEquals(0, process.waitFor());
+
+        String chrom = altId.substring(0, Math.max(0, altId.indexOf('_')));
+        ImmutableList<VariantContext> expected = readVcf(vcfFile);
+        ImmutableList<VariantContext> actual = new SeededBandedAligner().findDifferences(ref, alt, blockElements,
+                chrom, refId, altId, OFFSET);
+        assertEquals(toStrings(expected), toStrings(actual));
+    }
+
+    private static ReferenceSequence readFasta(File file) {
+        FastaSequenceFile fasta = new FastaSequenceFile(file, true);
+        try {
+            return fasta.nextSequence();
+        } finally {
+            fasta.close();
+        }
+    }
+
+    private static void writeFasta(File file, String id, byte[] bases) throws IOException {
+        Writer out = IOUtil.getBufferedFileWriter(file);
+        try {
+            FastaFileWriter.writeFasta(out, id, bases, FastaFileWriter.fastaLineLength);
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+
+    private static ImmutableList<VariantContext> readVcf(File file) {
+        VCFFileReader reader = new VCFFileReader(file, false);
+        CloseableIterator<VariantContext> iterator = reader.iterator();
+        try {
+            return ImmutableList.copyOf(iterator);
+        } finally {
+            iterator.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * The compared fields of the variants, the INFO values are compared as strings.
+     */
+    private static List<String> toStrings(List<VariantContext> variants) {
+        ArrayList<String> result = new ArrayList<>();
+        for (VariantContext vc : variants) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(vc.getContig()).append(':').append(vc.getStart()).append('-').append(vc.getEnd()).append(' ')
+                    .append(vc.getAlleles());
+            for (String key : Arrays.asList("RE", "AL", "RP", "SVTYPE", "SVLEN", "END"))
+                sb.append(' ').append(key).append('=').append(vc.getAttributeAsString(key, ""));
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package de.charite.compbio.asdpex.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.charite.compbio.asdpex.data.PairwiseVariantContextIntersect;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContext.Type;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+/**
+ * Tests the sort-merge kernel of {@link VariantContextUtil#intersectVariantContext(VariantKeyArray, VariantKeyArray)}
+ * against the former nested loop over both sets, including duplicate positions, multi base reference alleles,
+ * alleles with hash based keys and symbolic variants.
+ *
+ * @author Marten Jäger <marten.jaeger@charite.de>
+ *
+ */
+public class VariantContextUtilTest {
+    /** reference alleles with packed keys and with hash based keys ('N', longer than 28 bases) */
+    private static final String[] REFS = new String[] { "A", "C", "G", "T", "AC", "ACGT", "TTTTTTTTTT", "N", "ACNGT",
+            "ACGTACGTACGTACGTACGTACGTACGTA", "ACGTACGTACGTACGTACGTACGTACGTC" };
+
+    private static VariantContext variant(String contig, int pos, String ref) {
+        String alt = ref.charAt(0) == 'A' ? "C" : "A";
+        return new VariantContextBuilder("test", contig, pos, pos + ref.length() - 1,
+                Arrays.asList(Allele.create(ref, true), Allele.create(alt))).make();
+    }
+
+    private static VariantContext symbolic(String contig, int pos) {
+        return new VariantContextBuilder("test", contig, pos, pos + 100,
+                Arrays.asList(Allele.create("A", true), Allele.create("<DEL>"))).make();
+    }
+
+    /** random variants sorted by position, several at the same position */
+    private static List<VariantContext> randomVariants(Random random, String contig, int n, int maxPos) {
+        ArrayList<VariantContext> variants = new ArrayList<>();
+        int pos = 1 + random.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            pos += random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(maxPos / n + 1);
+            if (random.nextInt(20) == 0)
+                variants.add(symbolic(contig, pos));
+            else
+                variants.add(variant(contig, pos, REFS[random.nextInt(REFS.length)]));
+        }
+        return variants;
+    }
+
+    /**
+     * The former intersection: a set1 SNV intersects with the first set2 SNV at or behind the last intersecting one
+     * with the same start and reference allele.
+     */
+    private static List<VariantContext> nestedLoop(List<VariantContext> set1, List<VariantContext> set2,
+            boolean[] set1IntersectFlag) {
+        ArrayList<VariantContext> intersectSNV = new ArrayList<>();
+        int offset = 0;
+        int index = 0;
+        for (VariantContext vc1 : set1) {
+            if (vc1.getType() == Type.SYMBOLIC) {
+                index++;
+                continue;
+            }
+            for (int i = offset; i < set2.size(); i++) {
+                VariantContext vc2 = set2.get(i);
+                if (vc2.getType() == Type.SYMBOLIC)
+                    continue;
+                String contig1 = vc1.getContig().startsWith("chr") ? vc1.getContig() : "chr" + vc1.getContig();
+                String contig2 = vc2.getContig().startsWith("chr") ? vc2.getContig() : "chr" + vc2.getContig();
+                if (contig1.equals(contig2) && vc1.getStart() == vc2.getStart()
+                        && vc1.hasAllele(vc2.getAlleles().get(0))) {
+                    intersectSNV.add(vc1);
+                    set1IntersectFlag[index] = true;
+                    offset = i;
+                    break;
+                }
+            }
+            index++;
+        }
+        return intersectSNV;
+    }
+
+    private static void assertSameAsNestedLoop(List<VariantContext> set1, List<VariantContext> set2) {
+        boolean[] expectedFlags = new boolean[set1.size()];
+        List<VariantContext> expected = nestedLoop(set1, set2, expectedFlags);
+        PairwiseVariantContextIntersect intersect = VariantContextUtil
+                .intersectVariantContext(VariantKeyArray.of(set1), VariantKeyArray.of(set2));
+        assertEquals(expected.size(), intersect.getIntersectSNVs().size());
+        for (int i = 0; i < expected.size(); i++)
+            assertSame(expected.get(i), intersect.getIntersectSNVs().get(i));
+        assertArrayEquals(expectedFlags, intersect.getSet1flagged());
+        assertEquals(set1.size(), intersect.getSet1SNVs().size() + intersect.getSet1SVs().size());
+        assertEquals(set2.size(), intersect.getSet2SNVs().size() + intersect.getSet2SVs().size());
+    }
+
+    @Test
+    public void testRandomSets() {
+        Random random = new Random(42);
+        for (int k = 0; k < 300; k++) {
+            List<VariantContext> set1 = randomVariants(random, "chr1", 1 + random.nextInt(60), 200);
+            List<VariantContext> set2 = randomVariants(random, random.nextBoolean() ? "chr1" : "1",
+                    1 + random.nextInt(60), 200);
+            assertSameAsNestedLoop(set1, set2);
+            assertSameAsNestedLoop(set2, set1);
+        }
+    }
+
+    @Test
+    public void testDuplicatePositions() {
+        // the same ASDP twice intersects with both sample variants, different alleles only with their own
+        List<VariantContext> set1 = Arrays.asList(variant("chr1", 10, "A"), variant("chr1", 10, "A"),
+                variant("chr1", 10, "ACGT"), variant("chr1", 10, "ACNGT"), variant("chr1", 20, "C"));
+        List<VariantContext> set2 = Arrays.asList(variant("chr1", 10, "ACNGT"), variant("chr1", 10, "A"),
+                variant("chr1", 10, "ACGT"), symbolic("chr1", 15), variant("chr1", 20, "C"));
+        assertSameAsNestedLoop(set1, set2);
+        PairwiseVariantContextIntersect intersect = VariantContextUtil.intersectVariantContext(set1, set2);
+        assertEquals(4, intersect.getIntersectSNVs().size());
+        assertArrayEquals(new boolean[] { true, true, true, false, true }, intersect.getSet1flagged());
+    }
+
+    @Test
+    public void testHashKeys() {
+        // both longer than the packed keys and only different in the last base
+        VariantContext first = variant("chr1", 5, REFS[9]);
+        VariantContext second = variant("chr1", 5, REFS[10]);
+        assertTrue(VariantKeyArray.pack(first.getReference().getBases()) < 0);
+        assertTrue(VariantKeyArray.pack(variant("chr1", 5, "ACNGT").getReference().getBases()) < 0);
+        assertTrue(VariantKeyArray.pack(variant("chr1", 5, "ACGT").getReference().getBases()) >= 0);
+        assertEquals(0, VariantContextUtil.intersectVariantContext(Arrays.asList(first), Arrays.asList(second))
+                .getIntersectSNVs().size());
+        assertEquals(1, VariantContextUtil
+                .intersectVariantContext(Arrays.asList(first), Arrays.asList(variant("1", 5, REFS[9])))
+                .getIntersectSNVs().size());
+    }
+
+}